@@ -0,0 +1,99 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.benchmarks;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import io.wcm.testing.mock.aem.junit.AemContext;
+
+/**
+ * Base class for benchmarks running against an AEM context as set up by the unit tests of the handler modules.
+ * The context is set up once per trial outside a JUnit test run and stays active until the trial is finished.
+ */
+@State(Scope.Benchmark)
+public abstract class AbstractAemContextBenchmark {
+
+  @Param({ "SMALL", "MEDIUM", "LARGE" })
+  protected DataSet dataSet;
+
+  protected AemContext context;
+
+  private Thread contextThread;
+  private CountDownLatch contextTearDown;
+
+  /**
+   * @return New AEM context, e.g. from the AppAemContext of a handler module
+   */
+  protected abstract AemContext newAemContext();
+
+  /**
+   * Create synthetic content for the data set and prepare the objects under test.
+   * @throws Exception Exception
+   */
+  protected abstract void setUp() throws Exception;
+
+  @Setup
+  public final void setUpContext() throws Throwable {
+    context = newAemContext();
+    CountDownLatch contextSetUp = new CountDownLatch(1);
+    contextTearDown = new CountDownLatch(1);
+    Throwable[] setUpError = new Throwable[1];
+
+    // the AEM context is a JUnit rule - keep the rule's statement running until tear down
+    Statement statement = context.apply(new Statement() {
+      @Override
+      public void evaluate() throws Throwable {
+        contextSetUp.countDown();
+        contextTearDown.await();
+      }
+    }, Description.EMPTY);
+    contextThread = new Thread(() -> {
+      try {
+        statement.evaluate();
+      }
+      catch (Throwable ex) {
+        setUpError[0] = ex;
+        contextSetUp.countDown();
+      }
+    }, "aem-context");
+    contextThread.start();
+    contextSetUp.await();
+    if (setUpError[0] != null) {
+      throw setUpError[0];
+    }
+
+    setUp();
+  }
+
+  @TearDown
+  public final void tearDownContext() throws InterruptedException {
+    contextTearDown.countDown();
+    contextThread.join();
+  }
+
+}
@@ -0,0 +1,51 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the handler benchmarks with the GC profiler, reporting throughput and allocation rate per operation.
+ * Run with <code>mvn test-compile exec:exec</code>, select benchmarks with
+ * <code>-Dbenchmarks.include=&lt;regex&gt;</code>.
+ */
+public final class BenchmarkRunner {
+
+  private static final String DEFAULT_INCLUDE = "io\\.wcm\\.handler\\..*Benchmark";
+
+  private BenchmarkRunner() {
+    // static methods only
+  }
+
+  /**
+   * @param args Optional regular expression to select the benchmarks
+   * @throws RunnerException Runner exception
+   */
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+        .include(args.length > 0 ? args[0] : DEFAULT_INCLUDE)
+        .addProfiler(GCProfiler.class)
+        .build()).run();
+  }
+
+}
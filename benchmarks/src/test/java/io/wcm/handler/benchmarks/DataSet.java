@@ -0,0 +1,55 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.benchmarks;
+
+/**
+ * Size of the synthetic content set a benchmark operation is executed on.
+ */
+public enum DataSet {
+
+  /**
+   * Few items, e.g. a simple page.
+   */
+  SMALL(10),
+
+  /**
+   * Typical listing or gallery.
+   */
+  MEDIUM(100),
+
+  /**
+   * Large listing, sitemap or asset with many renditions.
+   */
+  LARGE(1000);
+
+  private final int size;
+
+  DataSet(int size) {
+    this.size = size;
+  }
+
+  /**
+   * @return Number of items in content set
+   */
+  public int getSize() {
+    return this.size;
+  }
+
+}
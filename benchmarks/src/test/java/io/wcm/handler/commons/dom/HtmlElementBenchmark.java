@@ -0,0 +1,82 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.commons.dom;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.wcm.handler.benchmarks.DataSet;
+
+/**
+ * Benchmarks building and serializing HTML element trees with a number of children depending on the data set.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HtmlElementBenchmark {
+
+  @Param({ "SMALL", "MEDIUM", "LARGE" })
+  private DataSet dataSet;
+
+  private Div div;
+
+  @Setup
+  public void setUp() {
+    div = buildElement();
+  }
+
+  @Benchmark
+  public void build(Blackhole blackhole) {
+    blackhole.consume(buildElement());
+  }
+
+  @Benchmark
+  public void serialize(Blackhole blackhole) {
+    blackhole.consume(div.toString());
+  }
+
+  private Div buildElement() {
+    Div element = new Div();
+    element.setCssClass("benchmark");
+    for (int i = 0; i < dataSet.getSize(); i++) {
+      Anchor anchor = element.add(new Anchor("/content/page" + i + ".html", "_blank"));
+      anchor.setTitle("Link & title " + i);
+      anchor.setData("index", Integer.toString(i));
+      anchor.add(new Image("/content/dam/image" + i + ".jpg", "Alt text <" + i + ">", 100, 50));
+    }
+    return element;
+  }
+
+}
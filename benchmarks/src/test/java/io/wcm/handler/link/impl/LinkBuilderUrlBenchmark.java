@@ -0,0 +1,88 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.link.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.day.cq.wcm.api.Page;
+
+import io.wcm.handler.benchmarks.AbstractAemContextBenchmark;
+import io.wcm.handler.link.LinkHandler;
+import io.wcm.handler.link.testcontext.AppAemContext;
+import io.wcm.handler.link.testcontext.DummyAppTemplate;
+import io.wcm.sling.commons.adapter.AdaptTo;
+import io.wcm.testing.mock.aem.junit.AemContext;
+
+/**
+ * Compares resolving link URLs via {@link io.wcm.handler.link.LinkBuilder#build()} with the URL-only
+ * resolution via {@link io.wcm.handler.link.LinkBuilder#buildUrl()} which skips the markup builders,
+ * for a number of target pages depending on the data set.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LinkBuilderUrlBenchmark extends AbstractAemContextBenchmark {
+
+  private LinkHandler linkHandler;
+  private List<Page> targetPages;
+
+  @Override
+  protected AemContext newAemContext() {
+    return AppAemContext.newAemContext();
+  }
+
+  @Override
+  protected void setUp() {
+    targetPages = new ArrayList<>();
+    for (int i = 0; i < dataSet.getSize(); i++) {
+      targetPages.add(context.create().page(AppAemContext.ROOTPATH_CONTENT + "/benchmark" + i,
+          DummyAppTemplate.CONTENT.getTemplatePath()));
+    }
+    linkHandler = AdaptTo.notNull(context.request(), LinkHandler.class);
+  }
+
+  @Benchmark
+  public void build(Blackhole blackhole) {
+    for (Page targetPage : targetPages) {
+      blackhole.consume(linkHandler.get(targetPage).build().getUrl());
+    }
+  }
+
+  @Benchmark
+  public void buildUrl(Blackhole blackhole) {
+    for (Page targetPage : targetPages) {
+      blackhole.consume(linkHandler.get(targetPage).buildUrl());
+    }
+  }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.link.type.helpers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.wcm.handler.benchmarks.AbstractAemContextBenchmark;
+import io.wcm.handler.link.Link;
+import io.wcm.handler.link.LinkNameConstants;
+import io.wcm.handler.link.LinkRequest;
+import io.wcm.handler.link.SyntheticLinkResource;
+import io.wcm.handler.link.testcontext.AppAemContext;
+import io.wcm.handler.link.testcontext.DummyAppTemplate;
+import io.wcm.handler.link.type.InternalLinkType;
+import io.wcm.sling.commons.adapter.AdaptTo;
+import io.wcm.sling.commons.resource.ImmutableValueMap;
+import io.wcm.testing.mock.aem.junit.AemContext;
+
+/**
+ * Benchmarks {@link InternalLinkResolver#resolveLink(Link, InternalLinkResolverOptions)} for a number of
+ * internal links depending on the data set, pointing to pages in the current and in another site.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InternalLinkResolverBenchmark extends AbstractAemContextBenchmark {
+
+  private static final String[] SITE_ROOTS = {
+      AppAemContext.ROOTPATH_CONTENT,
+      AppAemContext.ROOTPATH_CONTENT_OTHER_SITE
+  };
+
+  private InternalLinkResolver resolver;
+  private InternalLinkType linkType;
+  private List<LinkRequest> linkRequests;
+  private final InternalLinkResolverOptions options = new InternalLinkResolverOptions();
+  private final InternalLinkResolverOptions rewritePathToContextOptions = new InternalLinkResolverOptions()
+      .rewritePathToContext(true);
+
+  @Override
+  protected AemContext newAemContext() {
+    return AppAemContext.newAemContext();
+  }
+
+  @Override
+  protected void setUp() {
+    linkRequests = new ArrayList<>();
+    for (int i = 0; i < dataSet.getSize(); i++) {
+      String path = SITE_ROOTS[i % SITE_ROOTS.length] + "/section/benchmark" + i;
+      context.create().page(path, DummyAppTemplate.CONTENT.getTemplatePath());
+      SyntheticLinkResource linkResource = new SyntheticLinkResource(context.resourceResolver(),
+          ImmutableValueMap.builder()
+          .put(LinkNameConstants.PN_LINK_TYPE, InternalLinkType.ID)
+          .put(LinkNameConstants.PN_LINK_CONTENT_REF, path)
+          .build());
+      linkRequests.add(new LinkRequest(linkResource, null, null));
+    }
+    resolver = AdaptTo.notNull(context.request(), InternalLinkResolver.class);
+    linkType = AdaptTo.notNull(context.request(), InternalLinkType.class);
+  }
+
+  @Benchmark
+  public void resolveLink(Blackhole blackhole) {
+    for (LinkRequest linkRequest : linkRequests) {
+      blackhole.consume(resolver.resolveLink(new Link(linkType, linkRequest), options));
+    }
+  }
+
+  @Benchmark
+  public void resolveLinkRewritePathToContext(Blackhole blackhole) {
+    for (LinkRequest linkRequest : linkRequests) {
+      blackhole.consume(resolver.resolveLink(new Link(linkType, linkRequest), rewritePathToContextOptions));
+    }
+  }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.media.format.impl;
+
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.osgi.framework.Constants;
+
+import io.wcm.handler.benchmarks.AbstractAemContextBenchmark;
+import io.wcm.handler.media.format.MediaFormat;
+import io.wcm.handler.media.format.MediaFormatBuilder;
+import io.wcm.handler.media.format.MediaFormatHandler;
+import io.wcm.handler.media.spi.MediaFormatProvider;
+import io.wcm.handler.media.testcontext.AppAemContext;
+import io.wcm.sling.commons.adapter.AdaptTo;
+import io.wcm.testing.mock.aem.junit.AemContext;
+
+/**
+ * Benchmarks {@link MediaFormatHandlerImpl#detectMediaFormats(String, long, long, long)} with a number of
+ * media formats depending on the data set.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MediaFormatHandlerBenchmark extends AbstractAemContextBenchmark {
+
+  private static final String[] EXTENSIONS = { "jpg", "png", "gif", "pdf" };
+
+  // file extension, file size, width, height of detected files
+  private static final Object[][] FILES = {
+      { "jpg", 120000L, 1920L, 1080L },
+      { "png", 50000L, 400L, 400L },
+      { "gif", 5000L, 300L, 100L },
+      { "pdf", 800000L, 0L, 0L },
+      { "zip", 10000L, 0L, 0L }
+  };
+
+  private MediaFormatHandler mediaFormatHandler;
+
+  @Override
+  protected AemContext newAemContext() {
+    return AppAemContext.newAemContext();
+  }
+
+  @Override
+  protected void setUp() {
+    Set<MediaFormat> mediaFormats = new TreeSet<>();
+    for (int i = 0; i < dataSet.getSize(); i++) {
+      long width = 100 + (i % 20) * 100;
+      String extension = EXTENSIONS[i % EXTENSIONS.length];
+      MediaFormatBuilder builder = MediaFormatBuilder.create("format" + i)
+          .extensions(extension);
+      if (!"pdf".equals(extension)) {
+        builder.width(width).ratio(i % 2 == 0 ? 16d / 9d : 4d / 3d);
+      }
+      else {
+        builder.download(true);
+      }
+      mediaFormats.add(builder.build());
+    }
+    context.registerService(MediaFormatProvider.class, new MediaFormatProvider(mediaFormats) {
+      // synthetic media formats
+    }, Constants.SERVICE_RANKING, 1000);
+    mediaFormatHandler = AdaptTo.notNull(context.request(), MediaFormatHandler.class);
+  }
+
+  @Benchmark
+  public void detectMediaFormats(Blackhole blackhole) {
+    for (Object[] file : FILES) {
+      blackhole.consume(mediaFormatHandler.detectMediaFormats((String)file[0],
+          (Long)file[1], (Long)file[2], (Long)file[3]));
+    }
+  }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.media.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.wcm.handler.benchmarks.AbstractAemContextBenchmark;
+import io.wcm.handler.media.MediaHandler;
+import io.wcm.handler.media.testcontext.AppAemContext;
+import io.wcm.sling.commons.adapter.AdaptTo;
+import io.wcm.testing.mock.aem.junit.AemContext;
+import io.wcm.wcm.commons.contenttype.ContentType;
+
+/**
+ * Compares resolving media URLs via {@link io.wcm.handler.media.MediaBuilder#build()} with the URL-only
+ * resolution via {@link io.wcm.handler.media.MediaBuilder#buildUrl()} which skips the markup builders,
+ * for a number of assets depending on the data set.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MediaBuilderUrlBenchmark extends AbstractAemContextBenchmark {
+
+  private MediaHandler mediaHandler;
+  private List<String> mediaRefs;
+
+  @Override
+  protected AemContext newAemContext() {
+    return AppAemContext.newAemContext();
+  }
+
+  @Override
+  protected void setUp() {
+    mediaRefs = new ArrayList<>();
+    for (int i = 0; i < dataSet.getSize(); i++) {
+      mediaRefs.add(context.create().asset(AppAemContext.DAM_PATH + "/benchmark" + i + ".jpg",
+          1024, 768, ContentType.JPEG).getPath());
+    }
+    mediaHandler = AdaptTo.notNull(context.request(), MediaHandler.class);
+  }
+
+  @Benchmark
+  public void build(Blackhole blackhole) {
+    for (String mediaRef : mediaRefs) {
+      blackhole.consume(mediaHandler.get(mediaRef).build().getUrl());
+    }
+  }
+
+  @Benchmark
+  public void buildUrl(Blackhole blackhole) {
+    for (String mediaRef : mediaRefs) {
+      blackhole.consume(mediaHandler.get(mediaRef).buildUrl());
+    }
+  }
+
+}
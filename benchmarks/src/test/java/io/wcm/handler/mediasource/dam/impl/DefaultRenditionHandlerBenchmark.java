@@ -0,0 +1,109 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.mediasource.dam.impl;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.day.cq.dam.api.Asset;
+
+import io.wcm.handler.benchmarks.AbstractAemContextBenchmark;
+import io.wcm.handler.media.MediaArgs;
+import io.wcm.handler.media.testcontext.MediaSourceDamAppAemContext;
+import io.wcm.testing.mock.aem.junit.AemContext;
+import io.wcm.wcm.commons.contenttype.ContentType;
+
+/**
+ * Benchmarks {@link DefaultRenditionHandler#getRendition(MediaArgs)} for an asset with a number of renditions
+ * depending on the data set, with and without shared {@link RenditionIndex}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DefaultRenditionHandlerBenchmark extends AbstractAemContextBenchmark {
+
+  // requested dimensions as typically requested by a component
+  private static final MediaArgs[] MEDIA_ARGS = {
+      new MediaArgs().fixedDimension(1920, 1080),
+      new MediaArgs().fixedDimension(960, 540),
+      new MediaArgs().fixedDimension(400, 400),
+      new MediaArgs().fixedWidth(300),
+      new MediaArgs()
+  };
+
+  private Asset asset;
+  private RenditionIndex renditionIndex;
+
+  @Override
+  protected AemContext newAemContext() {
+    return MediaSourceDamAppAemContext.newAemContext();
+  }
+
+  @Override
+  protected void setUp() {
+    asset = context.create().asset(MediaSourceDamAppAemContext.DAM_PATH + "/benchmark.jpg",
+        2400, 1350, ContentType.JPEG);
+    int renditionCount = dataSet.getSize() / 2;
+    for (int i = 0; i < renditionCount; i++) {
+      // mix of 16:9, 4:3 and square renditions
+      int width = 100 + (i * 2000 / renditionCount);
+      int height;
+      switch (i % 3) {
+        case 0:
+          height = width * 9 / 16;
+          break;
+        case 1:
+          height = width * 3 / 4;
+          break;
+        default:
+          height = width;
+      }
+      context.create().assetRendition(asset, "rendition" + i + ".jpg", width, height, ContentType.JPEG);
+    }
+    renditionIndex = context.registerInjectActivateService(new RenditionIndexImpl());
+  }
+
+  @Benchmark
+  public void getRendition(Blackhole blackhole) {
+    DefaultRenditionHandler renditionHandler = new DefaultRenditionHandler(asset);
+    for (MediaArgs mediaArgs : MEDIA_ARGS) {
+      blackhole.consume(renditionHandler.getRendition(mediaArgs));
+    }
+  }
+
+  @Benchmark
+  public void getRenditionWithIndex(Blackhole blackhole) {
+    DefaultRenditionHandler renditionHandler = new DefaultRenditionHandler(asset, renditionIndex);
+    for (MediaArgs mediaArgs : MEDIA_ARGS) {
+      blackhole.consume(renditionHandler.getRendition(mediaArgs));
+    }
+  }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.mediasource.dam.impl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.day.cq.dam.api.Asset;
+import com.day.cq.dam.api.Rendition;
+
+import io.wcm.handler.benchmarks.AbstractAemContextBenchmark;
+import io.wcm.handler.media.Dimension;
+import io.wcm.handler.media.testcontext.MediaSourceDamAppAemContext;
+import io.wcm.testing.mock.aem.junit.AemContext;
+import io.wcm.wcm.commons.contenttype.ContentType;
+
+/**
+ * Compares rendition lookup via {@link RenditionSelectionIndex} with the linear scan over all renditions
+ * as done by {@link DefaultRenditionHandler} without index, for an asset with a number of renditions
+ * depending on the data set.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenditionSelectionIndexBenchmark extends AbstractAemContextBenchmark {
+
+  // requested formats as typically requested by a component
+  private static final long[][] FORMATS = {
+      { 1920, 1080 },
+      { 1280, 720 },
+      { 960, 540 },
+      { 640, 480 },
+      { 400, 400 },
+      { 300, 100 }
+  };
+
+  private Set<RenditionMetadata> candidates;
+  private RenditionSelectionIndex index;
+
+  @Override
+  protected AemContext newAemContext() {
+    return MediaSourceDamAppAemContext.newAemContext();
+  }
+
+  @Override
+  protected void setUp() {
+    Asset asset = context.create().asset(MediaSourceDamAppAemContext.DAM_PATH + "/benchmark.jpg",
+        2400, 1350, ContentType.JPEG);
+    Random random = new Random(0);
+    candidates = new TreeSet<>();
+    for (int i = 0; i < dataSet.getSize(); i++) {
+      long width = 100 + random.nextInt(200) * 10;
+      long[] format = FORMATS[random.nextInt(FORMATS.length)];
+      long height = Math.max(1, width * format[1] / format[0]);
+      Rendition rendition = context.create().assetRendition(asset, "rendition" + i + ".jpg",
+          (int)width, (int)height, ContentType.JPEG);
+      candidates.add(new RenditionMetadata(rendition, width, height));
+    }
+    Map<String, Dimension> dimensions = new LinkedHashMap<>();
+    for (RenditionMetadata candidate : candidates) {
+      dimensions.put(candidate.getRendition().getName(), new Dimension(candidate.getWidth(), candidate.getHeight()));
+    }
+    index = new RenditionSelectionIndex(dimensions);
+  }
+
+  @Benchmark
+  public int linearScan() {
+    int found = 0;
+    for (long[] format : FORMATS) {
+      double ratio = (double)format[0] / (double)format[1];
+      for (RenditionMetadata candidate : candidates) {
+        if (candidate.matches(format[0], format[1], 0, 0, ratio)) {
+          found++;
+          break;
+        }
+      }
+    }
+    return found;
+  }
+
+  @Benchmark
+  public int selectionIndex() {
+    int found = 0;
+    for (long[] format : FORMATS) {
+      double ratio = (double)format[0] / (double)format[1];
+      if (index.findMatch(format[0], format[1], 0, 0, ratio, rank -> true) >= 0) {
+        found++;
+      }
+    }
+    return found;
+  }
+
+}
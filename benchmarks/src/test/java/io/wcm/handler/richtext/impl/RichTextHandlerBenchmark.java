@@ -0,0 +1,80 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.richtext.impl;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.wcm.handler.benchmarks.AbstractAemContextBenchmark;
+import io.wcm.handler.richtext.RichTextHandler;
+import io.wcm.handler.richtext.RichTextRequest;
+import io.wcm.handler.richtext.TextMode;
+import io.wcm.handler.richtext.testcontext.AppAemContext;
+import io.wcm.handler.richtext.testcontext.DummyAppTemplate;
+import io.wcm.sling.commons.adapter.AdaptTo;
+import io.wcm.testing.mock.aem.junit.AemContext;
+
+/**
+ * Benchmarks rich text processing for a text with a number of paragraphs depending on the data set,
+ * each containing an internal link that has to be resolved.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RichTextHandlerBenchmark extends AbstractAemContextBenchmark {
+
+  private RichTextHandlerImpl richTextHandler;
+  private String text;
+
+  @Override
+  protected AemContext newAemContext() {
+    return AppAemContext.newAemContext();
+  }
+
+  @Override
+  protected void setUp() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < dataSet.getSize(); i++) {
+      String path = AppAemContext.ROOTPATH_CONTENT + "/benchmark" + i;
+      context.create().page(path, DummyAppTemplate.CONTENT.getTemplatePath());
+      sb.append("<p>Paragraph ").append(i).append(" with <strong>formatted</strong> text and ")
+          .append("<a href='#' data-link-type-id='internal' data-link-content-ref='").append(path).append("'>")
+          .append("internal link</a>.</p>");
+    }
+    text = sb.toString();
+    richTextHandler = (RichTextHandlerImpl)AdaptTo.notNull(context.request(), RichTextHandler.class);
+  }
+
+  @Benchmark
+  public void processRequest(Blackhole blackhole) {
+    blackhole.consume(richTextHandler.processRequest(new RichTextRequest(null, text, null, TextMode.XHTML, null)));
+  }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.url.impl;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.google.common.collect.ImmutableSet;
+
+import io.wcm.handler.benchmarks.AbstractAemContextBenchmark;
+import io.wcm.handler.url.UrlHandler;
+import io.wcm.handler.url.testcontext.AppAemContext;
+import io.wcm.sling.commons.adapter.AdaptTo;
+import io.wcm.testing.mock.aem.junit.AemContext;
+
+/**
+ * Compares URL assembly and externalization without mapping in {@link UrlHandlerImpl} and {@link Externalizer}
+ * with the former implementation in {@link LegacyUrlAssembly}, for a number of URLs depending on the data set.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UrlAssemblyBenchmark extends AbstractAemContextBenchmark {
+
+  private static final Set<String> INHERITABLE_PARAMETER_NAMES = ImmutableSet.of("debug", "wcmmode");
+
+  private UrlHandlerImpl urlHandler;
+  private String[] paths;
+  private String[] urls;
+
+  @Override
+  protected AemContext newAemContext() {
+    return AppAemContext.newAemContext();
+  }
+
+  @Override
+  protected void setUp() {
+    context.request().setQueryString("debug=layout&other=1");
+    context.request().setContextPath("/cms");
+    urlHandler = (UrlHandlerImpl)AdaptTo.notNull(context.request(), UrlHandler.class);
+
+    paths = new String[dataSet.getSize()];
+    urls = new String[dataSet.getSize()];
+    for (int i = 0; i < paths.length; i++) {
+      paths[i] = "/content/unittest/de_test/brand/de/section/page-" + i;
+      urls[i] = paths[i] + "/jcr:content/image file " + i + ".img.png?param=" + i;
+    }
+  }
+
+  @Benchmark
+  public void build(Blackhole blackhole) {
+    for (String path : paths) {
+      blackhole.consume(urlHandler.buildUrl(path, "sel1.sel2", "html", "suffix/part",
+          "param=value", INHERITABLE_PARAMETER_NAMES, "anchor"));
+    }
+  }
+
+  @Benchmark
+  public void buildLegacy(Blackhole blackhole) {
+    for (String path : paths) {
+      blackhole.consume(LegacyUrlAssembly.build(path, "sel1.sel2", "html", "suffix/part",
+          "param=value", INHERITABLE_PARAMETER_NAMES, "anchor", context.request()));
+    }
+  }
+
+  @Benchmark
+  public void externalizeUrlWithoutMapping(Blackhole blackhole) {
+    for (String url : urls) {
+      blackhole.consume(Externalizer.externalizeUrlWithoutMapping(url, context.request()));
+    }
+  }
+
+  @Benchmark
+  public void externalizeUrlWithoutMappingLegacy(Blackhole blackhole) {
+    for (String url : urls) {
+      blackhole.consume(LegacyUrlAssembly.externalizeUrlWithoutMapping(url, context.request()));
+    }
+  }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.url.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.day.cq.wcm.api.Page;
+
+import io.wcm.handler.benchmarks.AbstractAemContextBenchmark;
+import io.wcm.handler.url.UrlHandler;
+import io.wcm.handler.url.UrlModes;
+import io.wcm.handler.url.testcontext.AppAemContext;
+import io.wcm.sling.commons.adapter.AdaptTo;
+import io.wcm.testing.mock.aem.junit.AemContext;
+
+/**
+ * Benchmarks {@link UrlHandlerImpl#externalizeLinkUrl(String, Page, io.wcm.handler.url.UrlMode)} for a number of
+ * target pages depending on the data set, in the current site and in another site.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UrlHandlerBenchmark extends AbstractAemContextBenchmark {
+
+  private static final String[] SITE_ROOTS = {
+      "/content/unittest/de_test/brand/de",
+      "/content/unittest/de_test/brand/en"
+  };
+
+  private UrlHandlerImpl urlHandler;
+  private List<Page> targetPages;
+  private List<String> targetUrls;
+
+  @Override
+  protected AemContext newAemContext() {
+    return AppAemContext.newAemContext();
+  }
+
+  @Override
+  protected void setUp() {
+    targetPages = new ArrayList<>();
+    targetUrls = new ArrayList<>();
+    for (int i = 0; i < dataSet.getSize(); i++) {
+      String path = SITE_ROOTS[i % SITE_ROOTS.length] + "/section/benchmark" + i;
+      Page page = context.create().page(path);
+      targetPages.add(page);
+      targetUrls.add(path + ".html");
+    }
+    urlHandler = (UrlHandlerImpl)AdaptTo.notNull(context.request(), UrlHandler.class);
+  }
+
+  @Benchmark
+  public void externalizeLinkUrl(Blackhole blackhole) {
+    for (int i = 0; i < targetPages.size(); i++) {
+      blackhole.consume(urlHandler.externalizeLinkUrl(targetUrls.get(i), targetPages.get(i), UrlModes.DEFAULT));
+    }
+  }
+
+  @Benchmark
+  public void externalizeLinkUrlFullUrl(Blackhole blackhole) {
+    for (int i = 0; i < targetPages.size(); i++) {
+      blackhole.consume(urlHandler.externalizeLinkUrl(targetUrls.get(i), targetPages.get(i), UrlModes.FULL_URL));
+    }
+  }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.url.suffix;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.wcm.handler.benchmarks.AbstractAemContextBenchmark;
+import io.wcm.handler.url.testcontext.AppAemContext;
+import io.wcm.testing.mock.aem.junit.AemContext;
+
+/**
+ * Benchmarks building and parsing of suffixes with a number of key-value parts depending on the data set.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SuffixBenchmark extends AbstractAemContextBenchmark {
+
+  private String[] keys;
+  private String[] values;
+
+  @Override
+  protected AemContext newAemContext() {
+    return AppAemContext.newAemContext();
+  }
+
+  @Override
+  protected void setUp() {
+    int size = dataSet.getSize();
+    keys = new String[size];
+    values = new String[size];
+    for (int i = 0; i < size; i++) {
+      keys[i] = "key" + i;
+      // include characters that have to be escaped
+      values[i] = "value/" + i + ".with=special~chars";
+    }
+    SuffixBuilder builder = new SuffixBuilder();
+    for (int i = 0; i < size; i++) {
+      builder.put(keys[i], values[i]);
+    }
+    context.requestPathInfo().setSuffix(builder.build());
+  }
+
+  @Benchmark
+  public void build(Blackhole blackhole) {
+    SuffixBuilder builder = new SuffixBuilder();
+    for (int i = 0; i < keys.length; i++) {
+      builder.put(keys[i], values[i]);
+    }
+    blackhole.consume(builder.build());
+  }
+
+  @Benchmark
+  public void parse(Blackhole blackhole) {
+    SuffixParser parser = new SuffixParser(context.request());
+    for (String key : keys) {
+      blackhole.consume(parser.get(key, String.class));
+    }
+  }
+
+}
@@ -111,6 +111,7 @@ public interface LinkBuilder {
 
   /**
    * Resolve link and get URL.
+   * No markup is generated, and link processors not affecting the URL are skipped.
    * @return Link URL or null if resolving was not successful.
    */
   String buildUrl();
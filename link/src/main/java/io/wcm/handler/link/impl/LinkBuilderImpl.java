@@ -124,8 +124,11 @@ final class LinkBuilderImpl implements LinkBuilder {
 
   @Override
   public Link build() {
-    LinkRequest request = new LinkRequest(this.resource, this.page, this.linkArgs);
-    return linkHandler.processRequest(request);
+    return linkHandler.processRequest(buildRequest(), false);
+  }
+
+  private LinkRequest buildRequest() {
+    return new LinkRequest(this.resource, this.page, this.linkArgs);
   }
 
   @Override
@@ -140,7 +143,7 @@ final class LinkBuilderImpl implements LinkBuilder {
 
   @Override
   public String buildUrl() {
-    return build().getUrl();
+    return linkHandler.processRequest(buildRequest(), true).getUrl();
   }
 
 
@@ -74,9 +74,11 @@ public final class LinkHandlerImpl implements LinkHandler {
   /**
    * Resolves the link
    * @param linkRequest Link request
+   * @param urlOnly If true only the URL is resolved: no markup is generated and processors not affecting the URL
+   *          are skipped
    * @return Link metadata (never null)
    */
-  Link processRequest(LinkRequest linkRequest) {
+  Link processRequest(LinkRequest linkRequest, boolean urlOnly) {
 
     // detect link type - first accepting wins
     LinkType linkType = null;
@@ -98,6 +100,9 @@ public final class LinkHandlerImpl implements LinkHandler {
     if (linkPreProcessors != null) {
       for (Class<? extends LinkProcessor> processorClass : linkPreProcessors) {
         LinkProcessor processor = AdaptTo.notNull(adaptable, processorClass);
+        if (urlOnly && !processor.affectsUrl()) {
+          continue;
+        }
         link = processor.process(link);
         if (link == null) {
           throw new RuntimeException("LinkPreProcessor '" + processor + "' returned null, page '" + (currentPage != null ? currentPage.getPath() : "-") + "'.");
@@ -113,9 +118,9 @@ public final class LinkHandlerImpl implements LinkHandler {
       }
     }
 
-    // generate markup (if markup builder is available) - first accepting wins
+    // generate markup (if markup builder is available and not only URL requested) - first accepting wins
     List<Class<? extends LinkMarkupBuilder>> linkMarkupBuilders = linkHandlerConfig.getMarkupBuilders();
-    if (linkMarkupBuilders != null) {
+    if (linkMarkupBuilders != null && !urlOnly) {
       for (Class<? extends LinkMarkupBuilder> linkMarkupBuilderClass : linkMarkupBuilders) {
         LinkMarkupBuilder linkMarkupBuilder = AdaptTo.notNull(adaptable, linkMarkupBuilderClass);
         if (linkMarkupBuilder.accepts(link)) {
@@ -130,6 +135,9 @@ public final class LinkHandlerImpl implements LinkHandler {
     if (linkPostProcessors != null) {
       for (Class<? extends LinkProcessor> processorClass : linkPostProcessors) {
         LinkProcessor processor = AdaptTo.notNull(adaptable, processorClass);
+        if (urlOnly && !processor.affectsUrl()) {
+          continue;
+        }
         link = processor.process(link);
         if (link == null) {
           throw new RuntimeException("LinkPostProcessor '" + processor + "' returned null, page '" + (currentPage != null ? currentPage.getPath() : "-") + "'.");
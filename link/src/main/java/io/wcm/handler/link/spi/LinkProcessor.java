@@ -40,4 +40,15 @@ public interface LinkProcessor {
    */
   Link process(Link link);
 
+  /**
+   * Declares whether this processor may change the link URL. Processors that only modify the markup or other
+   * metadata not related to the URL may return false - they are skipped when only the URL is requested
+   * (e.g. via {@link io.wcm.handler.link.LinkBuilder#buildUrl()}).
+   * If a processor is applied when only the URL is requested no anchor element is present.
+   * @return true if the processor may affect the link URL
+   */
+  default boolean affectsUrl() {
+    return true;
+  }
+
 }
@@ -20,5 +20,5 @@
 /**
  * SPI for configuring and tailoring link handler processing.
  */
-@org.osgi.annotation.versioning.Version("1.0.0")
+@org.osgi.annotation.versioning.Version("1.1.0")
 package io.wcm.handler.link.spi;
@@ -101,9 +101,27 @@ public class LinkHandlerImplTest {
     assertEquals("http://xyz/path1/pre1/post1", link.getUrl());
     assertNotNull(link.getAnchor());
     assertEquals("http://xyz/path1/pre1", link.getAnchor().getHRef());
+    assertEquals("true", link.getAnchor().getData("post2"));
 
   }
 
+  @Test
+  public void testPipelining_UrlOnly() {
+    LinkHandler linkHandler = AdaptTo.notNull(adaptable(), LinkHandler.class);
+
+    // markup builder and markup post processor are skipped
+    SyntheticLinkResource linkResource = new SyntheticLinkResource(context.resourceResolver(),
+        ImmutableValueMap.builder()
+        .put(LinkNameConstants.PN_LINK_TYPE, "dummy")
+        .put("dummyLinkRef", "/path1")
+        .build());
+    LinkRequest linkRequest = new LinkRequest(linkResource, null, new LinkArgs().urlMode(UrlModes.DEFAULT));
+    assertEquals("http://xyz/path1/pre1/post1", linkHandler.get(linkRequest).buildUrl());
+
+    // make sure initial link reference is unmodified
+    assertEquals("/path1", linkRequest.getResourceProperties().get("dummyLinkRef", String.class));
+  }
+
 
   public static class TestLinkHandlerConfig extends LinkHandlerConfig {
 
@@ -119,7 +137,7 @@ public class LinkHandlerImplTest {
 
     @Override
     public List<Class<? extends LinkProcessor>> getPostProcessors() {
-      return ImmutableList.<Class<? extends LinkProcessor>>of(TestLinkPostProcessor.class);
+      return ImmutableList.<Class<? extends LinkProcessor>>of(TestLinkPostProcessor.class, TestLinkMarkupPostProcessor.class);
     }
 
   };
@@ -187,4 +205,22 @@ public class LinkHandlerImplTest {
     }
   }
 
+  @Model(adaptables = {
+      SlingHttpServletRequest.class, Resource.class
+  })
+  public static class TestLinkMarkupPostProcessor implements LinkProcessor {
+    @Override
+    public Link process(Link link) {
+      // expects markup for all valid links
+      if (link.isValid()) {
+        link.getAnchor().setData("post2", "true");
+      }
+      return link;
+    }
+    @Override
+    public boolean affectsUrl() {
+      return false;
+    }
+  }
+
 }
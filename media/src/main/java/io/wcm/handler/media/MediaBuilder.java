@@ -191,6 +191,7 @@ public interface MediaBuilder {
 
   /**
    * Resolve media and get URL to reference it directly.
+   * No markup is generated, and media processors not affecting the URL are skipped.
    * @return URL pointing to media object or null if resolving was not successful.
    */
   String buildUrl();
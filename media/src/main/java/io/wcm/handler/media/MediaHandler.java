@@ -19,6 +19,8 @@
  */
 package io.wcm.handler.media;
 
+import java.util.List;
+
 import org.apache.sling.api.resource.Resource;
 import org.osgi.annotation.versioning.ProviderType;
 
@@ -95,6 +97,17 @@ public interface MediaHandler {
    */
   MediaBuilder get(MediaRequest mediaRequest);
 
+  /**
+   * Resolve a list of media requests in one pass, e.g. for listing or gallery components.
+   * Media sources, processors and markup builders are instantiated only once and shared for all media requests,
+   * as well as the media formats resolved by name and the rendition metadata of each asset. Identical media requests
+   * are resolved only once.
+   * @param mediaRequests Media handling requests
+   * @return Media metadata objects in order of the media requests. Never null, if the resolving of a media request
+   *         failed the isValid() method of its media metadata object returns false.
+   */
+  List<Media> build(List<MediaRequest> mediaRequests);
+
   /**
    * Checks if the given HTML element is valid.
    * It is treated as invalid if it is null, or if it e.g. contains only a dummy image (depending on markup builder).
@@ -0,0 +1,406 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.media.format.impl;
+
+import static io.wcm.handler.media.format.MediaFormatHandler.RATIO_TOLERANCE;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedSet;
+
+import io.wcm.handler.media.format.MediaFormat;
+import io.wcm.handler.media.format.MediaFormatRankingComparator;
+import io.wcm.handler.media.format.MediaFormatSizeRankingComparator;
+import io.wcm.wcm.commons.contenttype.FileExtension;
+
+/**
+ * Immutable catalog of all media formats for a combination of media format providers.
+ * It is built once when the media formats are resolved and shared by all requests, and contains
+ * precomputed lookup structures for the operations of {@link MediaFormatHandlerImpl}.
+ */
+public final class MediaFormatCatalog {
+
+  private final SortedSet<MediaFormat> mediaFormats;
+  private final Map<String, MediaFormat> mediaFormatsByName;
+
+  // media formats considered for media format detection (non-negative ranking) indexed by lower-case file extension
+  private final Map<String, List<MediaFormat>> detectionFormatsByExtension;
+  // media formats considered for media format detection without file extension restriction
+  private final List<MediaFormat> detectionFormatsAnyExtension;
+
+  // media formats partitioned by rendition group
+  private final Map<String, List<MediaFormat>> mediaFormatsByRenditionGroup;
+
+  // precomputed same bigger/same smaller relations of all media formats in catalog, with and without rendition group filter
+  private final Map<String, SortedSet<MediaFormat>> sameBiggerMediaFormats;
+  private final Map<String, SortedSet<MediaFormat>> sameBiggerMediaFormatsRenditionGroup;
+  private final Map<String, SortedSet<MediaFormat>> sameSmallerMediaFormats;
+  private final Map<String, SortedSet<MediaFormat>> sameSmallerMediaFormatsRenditionGroup;
+
+  /**
+   * @param mediaFormats Media formats. If multiple media formats with the same name are given the first one wins.
+   */
+  public MediaFormatCatalog(Collection<MediaFormat> mediaFormats) {
+    SortedSet<MediaFormat> sortedMediaFormats = new TreeSet<>();
+    sortedMediaFormats.addAll(mediaFormats);
+    this.mediaFormats = ImmutableSortedSet.copyOfSorted(sortedMediaFormats);
+
+    Map<String, MediaFormat> byName = new HashMap<>();
+    Map<String, List<MediaFormat>> byExtension = new HashMap<>();
+    List<MediaFormat> anyExtension = new ArrayList<>();
+    Map<String, List<MediaFormat>> byRenditionGroup = new HashMap<>();
+    for (MediaFormat mediaFormat : this.mediaFormats) {
+      byName.put(mediaFormat.getName(), mediaFormat);
+
+      if (mediaFormat.getRanking() >= 0) {
+        String[] extensions = mediaFormat.getExtensions();
+        if (extensions == null) {
+          anyExtension.add(mediaFormat);
+        }
+        else {
+          for (String extension : extensions) {
+            List<MediaFormat> list = byExtension.computeIfAbsent(toExtensionKey(extension), key -> new ArrayList<>());
+            if (!list.contains(mediaFormat)) {
+              list.add(mediaFormat);
+            }
+          }
+        }
+      }
+
+      if (StringUtils.isNotEmpty(mediaFormat.getRenditionGroup())) {
+        byRenditionGroup.computeIfAbsent(mediaFormat.getRenditionGroup(), key -> new ArrayList<>()).add(mediaFormat);
+      }
+    }
+    this.mediaFormatsByName = ImmutableMap.copyOf(byName);
+    this.detectionFormatsByExtension = toImmutable(byExtension);
+    this.detectionFormatsAnyExtension = ImmutableList.copyOf(anyExtension);
+    this.mediaFormatsByRenditionGroup = toImmutable(byRenditionGroup);
+
+    Map<String, SortedSet<MediaFormat>> sameBigger = new HashMap<>();
+    Map<String, SortedSet<MediaFormat>> sameBiggerRenditionGroup = new HashMap<>();
+    Map<String, SortedSet<MediaFormat>> sameSmaller = new HashMap<>();
+    Map<String, SortedSet<MediaFormat>> sameSmallerRenditionGroup = new HashMap<>();
+    for (MediaFormat mediaFormat : this.mediaFormats) {
+      String name = mediaFormat.getName();
+      sameBigger.put(name, ImmutableSortedSet.copyOfSorted(calculateSameBiggerMediaFormats(mediaFormat, false)));
+      sameBiggerRenditionGroup.put(name, ImmutableSortedSet.copyOfSorted(calculateSameBiggerMediaFormats(mediaFormat, true)));
+      sameSmaller.put(name, ImmutableSortedSet.copyOfSorted(calculateSameSmallerMediaFormats(mediaFormat, false)));
+      sameSmallerRenditionGroup.put(name, ImmutableSortedSet.copyOfSorted(calculateSameSmallerMediaFormats(mediaFormat, true)));
+    }
+    this.sameBiggerMediaFormats = ImmutableMap.copyOf(sameBigger);
+    this.sameBiggerMediaFormatsRenditionGroup = ImmutableMap.copyOf(sameBiggerRenditionGroup);
+    this.sameSmallerMediaFormats = ImmutableMap.copyOf(sameSmaller);
+    this.sameSmallerMediaFormatsRenditionGroup = ImmutableMap.copyOf(sameSmallerRenditionGroup);
+  }
+
+  private static String toExtensionKey(String extension) {
+    return StringUtils.lowerCase(extension, Locale.ENGLISH);
+  }
+
+  private static Map<String, List<MediaFormat>> toImmutable(Map<String, List<MediaFormat>> map) {
+    ImmutableMap.Builder<String, List<MediaFormat>> builder = ImmutableMap.builder();
+    for (Map.Entry<String, List<MediaFormat>> entry : map.entrySet()) {
+      builder.put(entry.getKey(), ImmutableList.copyOf(entry.getValue()));
+    }
+    return builder.build();
+  }
+
+  /**
+   * @return All media formats sorted by name
+   */
+  public SortedSet<MediaFormat> getMediaFormats() {
+    return this.mediaFormats;
+  }
+
+  /**
+   * @param mediaFormatName Media format name
+   * @return Media format or null if no match found
+   */
+  public MediaFormat getMediaFormat(String mediaFormatName) {
+    return this.mediaFormatsByName.get(mediaFormatName);
+  }
+
+  /**
+   * Get media formats that have the same (or bigger) resolution as the requested media format
+   * and (nearly) the same aspect ratio.
+   * @param mediaFormatRequested Requested media format
+   * @param filterRenditionGroup Only check media formats of the same rendition group.
+   * @return Matching media formats, sorted by size (biggest first), ranking, name
+   */
+  public SortedSet<MediaFormat> getSameBiggerMediaFormats(MediaFormat mediaFormatRequested, boolean filterRenditionGroup) {
+    SortedSet<MediaFormat> precomputed = getPrecomputed(mediaFormatRequested,
+        filterRenditionGroup ? sameBiggerMediaFormatsRenditionGroup : sameBiggerMediaFormats);
+    if (precomputed != null) {
+      // return a copy - callers may modify the result
+      return new TreeSet<>(precomputed);
+    }
+    return calculateSameBiggerMediaFormats(mediaFormatRequested, filterRenditionGroup);
+  }
+
+  /**
+   * Get possible media formats that can be rendered from the given media format, i.e. same size or smaller
+   * and (nearly) the same aspect ratio.
+   * @param mediaFormatRequested Available media format
+   * @param filterRenditionGroup Only check media formats of the same rendition group.
+   * @return Matching media formats, sorted by size (biggest first), ranking, name
+   */
+  public SortedSet<MediaFormat> getSameSmallerMediaFormats(MediaFormat mediaFormatRequested, boolean filterRenditionGroup) {
+    SortedSet<MediaFormat> precomputed = getPrecomputed(mediaFormatRequested,
+        filterRenditionGroup ? sameSmallerMediaFormatsRenditionGroup : sameSmallerMediaFormats);
+    if (precomputed != null) {
+      // return a copy - callers may modify the result
+      return new TreeSet<>(precomputed);
+    }
+    return calculateSameSmallerMediaFormats(mediaFormatRequested, filterRenditionGroup);
+  }
+
+  /**
+   * Precomputed relations can only be used if the requested media format is the instance from the catalog
+   * - media formats with the same name but different definition may be passed in.
+   */
+  private SortedSet<MediaFormat> getPrecomputed(MediaFormat mediaFormatRequested, Map<String, SortedSet<MediaFormat>> relations) {
+    if (this.mediaFormatsByName.get(mediaFormatRequested.getName()) == mediaFormatRequested) {
+      return relations.get(mediaFormatRequested.getName());
+    }
+    return null;
+  }
+
+  private SortedSet<MediaFormat> calculateSameBiggerMediaFormats(MediaFormat mediaFormatRequested, boolean filterRenditionGroup) {
+    SortedSet<MediaFormat> matchingFormats = new TreeSet<>(new MediaFormatSizeRankingComparator());
+
+    // if filter by rendition group is enabled, but the requested media format does not define one,
+    // use only the requested format
+    if (filterRenditionGroup && StringUtils.isEmpty(mediaFormatRequested.getRenditionGroup())) {
+      matchingFormats.add(mediaFormatRequested);
+    }
+    else {
+      for (MediaFormat mediaFormat : getCandidates(mediaFormatRequested, filterRenditionGroup)) {
+
+        // check if size matched (image size is same or bigger)
+        if (isRenditionMatchSizeSameBigger(mediaFormat, mediaFormatRequested)) { //NOPMD
+
+          // if media formats have ratios, check ratio (with tolerance)
+          // otherwise add to list anyway, it *can* contain matching media items
+          if (isRenditionMatchRatio(mediaFormat, mediaFormatRequested) //NOPMD
+              || !mediaFormat.hasRatio() || !mediaFormatRequested.hasRatio()) {
+
+            // check for supported file extension
+            if (isRenditionMatchExtension(mediaFormat)) { //NOPMD
+              matchingFormats.add(mediaFormat);
+            }
+          }
+
+        }
+
+      }
+    }
+
+    return matchingFormats;
+  }
+
+  private SortedSet<MediaFormat> calculateSameSmallerMediaFormats(MediaFormat mediaFormatRequested, boolean filterRenditionGroup) {
+    SortedSet<MediaFormat> matchingFormats = new TreeSet<>(new MediaFormatSizeRankingComparator());
+
+    // if filter by rendition group is enabled, but the requested media format does not define one,
+    // use only the requested format
+    if (filterRenditionGroup && StringUtils.isEmpty(mediaFormatRequested.getRenditionGroup())) {
+      matchingFormats.add(mediaFormatRequested);
+    }
+    else {
+      for (MediaFormat mediaFormat : getCandidates(mediaFormatRequested, filterRenditionGroup)) {
+
+        // check if size matched (image size is same or smaller)
+        if (isRenditionMatchSizeSameSmaller(mediaFormat, mediaFormatRequested)) { //NOPMD
+
+          // if media formats have ratios, check ratio (with tolerance)
+          // otherwise add to list anyway, it *can* contain matching media items
+          if (isRenditionMatchRatio(mediaFormat, mediaFormatRequested) //NOPMD
+              || !mediaFormat.hasRatio() || !mediaFormatRequested.hasRatio()) {
+
+            // check for supported file extension
+            if (isRenditionMatchExtension(mediaFormat)) { //NOPMD
+              matchingFormats.add(mediaFormat);
+            }
+          }
+
+        }
+
+      }
+    }
+
+    return matchingFormats;
+  }
+
+  /**
+   * @param mediaFormatRequested Requested media format
+   * @param filterRenditionGroup Only media formats of the same rendition group.
+   * @return All media formats, or the media formats of the rendition group of the requested media format
+   */
+  private Collection<MediaFormat> getCandidates(MediaFormat mediaFormatRequested, boolean filterRenditionGroup) {
+    if (filterRenditionGroup) {
+      List<MediaFormat> candidates = this.mediaFormatsByRenditionGroup.get(mediaFormatRequested.getRenditionGroup());
+      return candidates != null ? candidates : Collections.<MediaFormat>emptyList();
+    }
+    return this.mediaFormats;
+  }
+
+  /**
+   * Checks if the ratio of the given media format matches with the ratio of the requested one (with tolerance).
+   * @param mediaFormat Media format
+   * @param mediaFormatRequested Requested media format
+   * @return true if ratio matches
+   */
+  private static boolean isRenditionMatchRatio(MediaFormat mediaFormat, MediaFormat mediaFormatRequested) {
+    if (!mediaFormat.hasRatio() || !mediaFormatRequested.hasRatio()) {
+      return false;
+    }
+    double ratioRequested = mediaFormatRequested.getRatio();
+    double ratio = mediaFormat.getRatio();
+    return (ratio > ratioRequested - RATIO_TOLERANCE) && (ratio < ratioRequested + RATIO_TOLERANCE);
+  }
+
+  /**
+   * Checks if the given media format size is same size or bigger than the requested one.
+   * @param mediaFormat Media format
+   * @param mediaFormatRequested Requested media format
+   * @return true if media format is same size or bigger
+   */
+  private static boolean isRenditionMatchSizeSameBigger(MediaFormat mediaFormat, MediaFormat mediaFormatRequested) {
+    long widthRequested = mediaFormatRequested.getEffectiveMinWidth();
+    long heightRequested = mediaFormatRequested.getEffectiveMinHeight();
+
+    long widthMax = mediaFormat.getEffectiveMaxWidth();
+    long heightMax = mediaFormat.getEffectiveMaxHeight();
+
+    return ((widthMax >= widthRequested) || (widthMax == 0))
+        && ((heightMax >= heightRequested) || (heightMax == 0));
+  }
+
+  /**
+   * Checks if the given media format size is same size or smaller than the requested one.
+   * @param mediaFormat Media format
+   * @param mediaFormatRequested Requested media format
+   * @return true if media format is same size or smaller
+   */
+  private static boolean isRenditionMatchSizeSameSmaller(MediaFormat mediaFormat, MediaFormat mediaFormatRequested) {
+    long widthRequested = mediaFormatRequested.getEffectiveMinWidth();
+    long heightRequested = mediaFormatRequested.getEffectiveMinHeight();
+
+    long widthMin = mediaFormat.getEffectiveMinWidth();
+    long heightMin = mediaFormat.getEffectiveMinHeight();
+
+    return widthMin <= widthRequested && heightMin <= heightRequested;
+  }
+
+  /**
+   * Checks if one of the extensions of the given media format are supported for renditions.
+   * @param mediaFormat Media format
+   * @return true if supported extension found
+   */
+  private static boolean isRenditionMatchExtension(MediaFormat mediaFormat) {
+    String[] extensions = mediaFormat.getExtensions();
+    if (extensions == null) {
+      return false;
+    }
+    for (String extension : extensions) {
+      if (FileExtension.isImage(extension)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Detect all matching media formats.
+   * @param extension File extension
+   * @param fileSize File size
+   * @param width Image width (or 0 if not image)
+   * @param height Image height (or 0 if not image)
+   * @return Matching media formats sorted by their ranking or an empty list if no matching format was found
+   */
+  public SortedSet<MediaFormat> detectMediaFormats(String extension, long fileSize, long width, long height) {
+
+    // sort media formats by ranking
+    SortedSet<MediaFormat> matchingFormats = new TreeSet<>(new MediaFormatRankingComparator());
+
+    // only media formats matching the extension or without extension restriction have to be checked
+    List<MediaFormat> extensionFormats = extension != null ? this.detectionFormatsByExtension.get(toExtensionKey(extension)) : null;
+    if (extensionFormats != null) {
+      addDetectedMediaFormats(matchingFormats, extensionFormats, fileSize, width, height);
+    }
+    addDetectedMediaFormats(matchingFormats, this.detectionFormatsAnyExtension, fileSize, width, height);
+
+    return matchingFormats;
+  }
+
+  private static void addDetectedMediaFormats(SortedSet<MediaFormat> matchingFormats, List<MediaFormat> candidates,
+      long fileSize, long width, long height) {
+    for (MediaFormat mediaFormat : candidates) {
+
+      // check file size
+      boolean fileSizeMatch = false;
+      if (mediaFormat.getFileSizeMax() > 0) {
+        fileSizeMatch = (fileSize <= mediaFormat.getFileSizeMax());
+      }
+      else {
+        fileSizeMatch = true;
+      }
+
+      // width/height match
+      boolean dimensionMatch = false;
+      if (width > 0 && height > 0) {
+        dimensionMatch = (mediaFormat.getEffectiveMinWidth() == 0 || width >= mediaFormat.getEffectiveMinWidth())
+            && (mediaFormat.getEffectiveMaxWidth() == 0 || width <= mediaFormat.getEffectiveMaxWidth())
+            && (mediaFormat.getEffectiveMinHeight() == 0 || height >= mediaFormat.getEffectiveMinHeight())
+            && (mediaFormat.getEffectiveMaxHeight() == 0 || height <= mediaFormat.getEffectiveMaxHeight());
+      }
+      else {
+        dimensionMatch = true;
+      }
+
+      boolean ratioMatch = false;
+      if (mediaFormat.hasRatio() && width > 0 && height > 0) {
+        double formatRatio = mediaFormat.getRatio();
+        double ratio = (double)width / height;
+        ratioMatch = (ratio > formatRatio - RATIO_TOLERANCE) && (ratio < formatRatio + RATIO_TOLERANCE);
+      }
+      else {
+        ratioMatch = true;
+      }
+
+      if (fileSizeMatch && dimensionMatch && ratioMatch) {
+        matchingFormats.add(mediaFormat);
+      }
+    }
+  }
+
+}
@@ -38,4 +38,11 @@ public interface MediaFormatProviderManager {
    */
   SortedSet<MediaFormat> getMediaFormats(Resource contextResource);
 
+  /**
+   * Get catalog with all media format definitions for application and precomputed lookup structures.
+   * @param contextResource Context resource to get media formats for
+   * @return Media format catalog
+   */
+  MediaFormatCatalog getMediaFormatCatalog(Resource contextResource);
+
 }
@@ -20,7 +20,6 @@
 package io.wcm.handler.media.format.impl;
 
 import java.util.SortedSet;
-import java.util.TreeSet;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
@@ -28,6 +27,9 @@ import java.util.stream.Collectors;
 import org.apache.sling.api.resource.Resource;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicy;
+import org.osgi.service.component.annotations.ReferencePolicyOption;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
@@ -46,23 +48,39 @@ public final class MediaFormatProviderManagerImpl implements MediaFormatProvider
   @Reference
   private ContextAwareServiceResolver serviceResolver;
 
-  // cache resolving of media formats per combined cache key of context-aware services
-  private final Cache<String, SortedSet<MediaFormat>> cache = CacheBuilder.newBuilder()
+  // cache media format catalog per combined cache key of context-aware services
+  private final Cache<String, MediaFormatCatalog> cache = CacheBuilder.newBuilder()
       .expireAfterWrite(1, TimeUnit.HOURS)
       .build();
 
   @Override
   public SortedSet<MediaFormat> getMediaFormats(Resource contextResource) {
+    return getMediaFormatCatalog(contextResource).getMediaFormats();
+  }
+
+  @Override
+  public MediaFormatCatalog getMediaFormatCatalog(Resource contextResource) {
     ResolveAllResult<MediaFormatProvider> result = serviceResolver.resolveAll(MediaFormatProvider.class, contextResource);
     String key = result.getCombinedKey();
     try {
-      return cache.get(key, () -> result.getServices()
+      return cache.get(key, () -> new MediaFormatCatalog(result.getServices()
           .flatMap(provider -> provider.getMediaFormats().stream())
-          .collect(Collectors.toCollection(() -> new TreeSet<MediaFormat>())));
+          .collect(Collectors.toList())));
     }
     catch (ExecutionException ex) {
       throw new RuntimeException("Error accessing media format provider result cache.", ex);
     }
   }
 
+  // cached catalogs are built from the provider services - invalidate them whenever a provider is added or removed
+  @Reference(cardinality = ReferenceCardinality.MULTIPLE, policy = ReferencePolicy.DYNAMIC,
+      policyOption = ReferencePolicyOption.GREEDY)
+  void bindMediaFormatProvider(MediaFormatProvider mediaFormatProvider) {
+    cache.invalidateAll();
+  }
+
+  void unbindMediaFormatProvider(MediaFormatProvider mediaFormatProvider) {
+    cache.invalidateAll();
+  }
+
 }
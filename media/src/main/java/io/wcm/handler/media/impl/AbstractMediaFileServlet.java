@@ -19,10 +19,18 @@
  */
 package io.wcm.handler.media.impl;
 
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
 
+import javax.jcr.Binary;
+import javax.jcr.RepositoryException;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletResponse;
 
@@ -35,11 +43,14 @@ import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
 
 import io.wcm.sling.commons.request.RequestPath;
 import io.wcm.wcm.commons.caching.CacheHeader;
+import io.wcm.wcm.commons.caching.ModificationDate;
 import io.wcm.wcm.commons.contenttype.ContentType;
 
 /**
  * Stream binary data stored in a nt:file or nt:resource node.
  * Optional support for Content-Disposition header ("download_attachment").
+ * If the length of the binary data is known the data is streamed directly from the repository without
+ * loading it into memory, optionally supporting partial content requests via HTTP "Range" header.
  */
 abstract class AbstractMediaFileServlet extends SlingSafeMethodsServlet {
   private static final long serialVersionUID = 1L;
@@ -54,6 +65,41 @@ abstract class AbstractMediaFileServlet extends SlingSafeMethodsServlet {
    */
   public static final String HEADER_CONTENT_DISPOSITION = "Content-Disposition";
 
+  /**
+   * Content length header
+   */
+  static final String HEADER_CONTENT_LENGTH = "Content-Length";
+
+  /**
+   * Accept ranges header
+   */
+  static final String HEADER_ACCEPT_RANGES = "Accept-Ranges";
+
+  /**
+   * Range request header
+   */
+  static final String HEADER_RANGE = "Range";
+
+  /**
+   * If-Range request header
+   */
+  static final String HEADER_IF_RANGE = "If-Range";
+
+  /**
+   * Content range header
+   */
+  static final String HEADER_CONTENT_RANGE = "Content-Range";
+
+  /**
+   * Content type for responses with multiple byte ranges
+   */
+  static final String CONTENT_TYPE_MULTIPART_BYTERANGES = "multipart/byteranges";
+
+  /**
+   * Size of buffer used for copying binary data to the response
+   */
+  static final int STREAM_BUFFER_SIZE = 8 * 1024;
+
   @Override
   protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response) throws ServletException, IOException {
 
@@ -69,6 +115,46 @@ abstract class AbstractMediaFileServlet extends SlingSafeMethodsServlet {
       return;
     }
 
+    // send binary data from cache if available
+    if (sendCachedBinaryData(resource, request, response)) {
+      return;
+    }
+
+    // stream binary data directly to client if the binary length is known in advance
+    if (isStreamingSupported(resource, request)) {
+      long binaryDataLength = JcrBinary.getDataLength(resource);
+      if (binaryDataLength == 0) {
+        response.sendError(HttpServletResponse.SC_NOT_FOUND);
+        return;
+      }
+      if (binaryDataLength > 0) {
+        String contentType = getContentType(resource, request);
+
+        // serve only requested byte ranges if partial content is requested
+        if (isRangeRequestSupported(resource, request)) {
+          response.setHeader(HEADER_ACCEPT_RANGES, HttpByteRange.UNIT_BYTES);
+          List<HttpByteRange> ranges = getRequestedRanges(resource, binaryDataLength, request);
+          if (ranges != null) {
+            sendBinaryDataRanges(resource, ranges, binaryDataLength, contentType, request, response);
+            return;
+          }
+        }
+
+        InputStream is = resource.adaptTo(InputStream.class);
+        if (is == null) {
+          response.sendError(HttpServletResponse.SC_NOT_FOUND);
+          return;
+        }
+        try {
+          sendBinaryData(is, binaryDataLength, contentType, request, response);
+        }
+        finally {
+          is.close();
+        }
+        return;
+      }
+    }
+
     // get binary data and send to client
     byte[] binaryData = getBinaryData(resource, request);
     if (binaryData == null || binaryData.length == 0) {
@@ -106,6 +192,74 @@ abstract class AbstractMediaFileServlet extends SlingSafeMethodsServlet {
     return CacheHeader.isNotModified(resource, request, response, false);
   }
 
+  /**
+   * Sends binary data that was processed and cached in a previous request, if available.
+   * @param resource Resource pointing to nt:file or nt:resource node
+   * @param request Request
+   * @param response Response
+   * @return true if the binary data was sent from cache
+   * @throws IOException
+   */
+  protected boolean sendCachedBinaryData(Resource resource, SlingHttpServletRequest request,
+      SlingHttpServletResponse response) throws IOException {
+    return false;
+  }
+
+  /**
+   * Checks if the binary data of the resource can be streamed unmodified to the client.
+   * If true and the length of the binary data is known it is copied directly from the repository to the response
+   * without loading it into memory. Otherwise {@link #getBinaryData(Resource, SlingHttpServletRequest)} is used.
+   * @param resource Resource pointing to nt:file or nt:resource node
+   * @param request Request
+   * @return true if streaming is supported
+   */
+  protected boolean isStreamingSupported(Resource resource, SlingHttpServletRequest request) {
+    return true;
+  }
+
+  /**
+   * Checks if partial content requests via HTTP "Range" header are supported.
+   * Only applies if the binary data is streamed as-is to the client.
+   * @param resource Resource pointing to nt:file or nt:resource node
+   * @param request Request
+   * @return true if range requests are supported
+   */
+  protected boolean isRangeRequestSupported(Resource resource, SlingHttpServletRequest request) {
+    return false;
+  }
+
+  /**
+   * Get byte ranges requested via "Range" header. The ranges are ignored if an "If-Range" header is present
+   * which does not match the last modification date of the resource.
+   * @param resource Resource pointing to nt:file or nt:resource node
+   * @param contentLength Complete length of binary data
+   * @param request Request
+   * @return Satisfiable ranges, empty list if no range is satisfiable or null if the full content should be sent
+   */
+  private List<HttpByteRange> getRequestedRanges(Resource resource, long contentLength, SlingHttpServletRequest request) {
+    List<HttpByteRange> ranges = HttpByteRange.parse(request.getHeader(HEADER_RANGE), contentLength);
+    if (ranges == null) {
+      return null;
+    }
+    if (request.getHeader(HEADER_IF_RANGE) == null) {
+      return HttpByteRange.merge(ranges);
+    }
+
+    // only date validators are supported - this servlet does not send any entity tags
+    long ifRangeDate;
+    try {
+      ifRangeDate = request.getDateHeader(HEADER_IF_RANGE);
+    }
+    catch (IllegalArgumentException ex) {
+      return null;
+    }
+    Date lastModified = ModificationDate.get(resource);
+    if (lastModified == null || ifRangeDate / 1000 != lastModified.getTime() / 1000) {
+      return null;
+    }
+    return HttpByteRange.merge(ranges);
+  }
+
   /**
    * Get binary data from the referenced nt:file or nt:resourcer resource.
    * @param resource Resource
@@ -148,10 +302,194 @@ abstract class AbstractMediaFileServlet extends SlingSafeMethodsServlet {
    */
   protected void sendBinaryData(byte[] binaryData, String contentType,
       SlingHttpServletRequest request, SlingHttpServletResponse response) throws IOException {
+    sendBinaryData(new ByteArrayInputStream(binaryData), binaryData.length, contentType, request, response);
+  }
+
+  /**
+   * Stream binary data to output stream using a small copy buffer. Respect optional content disposition header
+   * handling.
+   * @param is Input stream with binary data. The stream is not closed by this method.
+   * @param contentLength Length of binary data in bytes
+   * @param contentType Content type
+   * @param request Request
+   * @param response Response
+   * @throws IOException
+   */
+  protected void sendBinaryData(InputStream is, long contentLength, String contentType,
+      SlingHttpServletRequest request, SlingHttpServletResponse response) throws IOException {
 
     // set content type and length
+    setContentType(contentType, request, response);
+    setContentLength(response, contentLength);
+
+    // stream binary data
+    OutputStream out = response.getOutputStream();
+    IOUtils.copyLarge(is, out, new byte[STREAM_BUFFER_SIZE]);
+    out.flush();
+
+  }
+
+  /**
+   * Send requested byte ranges of binary data to output stream with status 206 (partial content).
+   * Only the bytes of the requested ranges are read from the binary data.
+   * Multiple ranges are sent as multipart/byteranges response.
+   * @param resource Resource pointing to nt:file or nt:resource node
+   * @param ranges Requested ranges, sorted and not overlapping
+   * @param contentLength Complete length of binary data
+   * @param contentType Content type
+   * @param request Request
+   * @param response Response
+   * @throws IOException
+   */
+  private void sendBinaryDataRanges(Resource resource, List<HttpByteRange> ranges, long contentLength, String contentType,
+      SlingHttpServletRequest request, SlingHttpServletResponse response) throws IOException {
+
+    // none of the requested ranges is satisfiable
+    if (ranges.isEmpty()) {
+      response.setHeader(HEADER_CONTENT_RANGE, HttpByteRange.UNIT_BYTES + " */" + contentLength);
+      response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+      return;
+    }
+
+    // single range
+    if (ranges.size() == 1) {
+      HttpByteRange range = ranges.get(0);
+      response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+      setContentType(contentType, request, response);
+      setContentLength(response, range.getLength());
+      response.setHeader(HEADER_CONTENT_RANGE, range.toContentRange(contentLength));
+      OutputStream out = response.getOutputStream();
+      copyRanges(resource, ranges, null, out);
+      out.flush();
+      return;
+    }
+
+    // multiple ranges - calculate complete length of multipart response in advance
+    String partContentType = RequestPath.hasSelector(request, SELECTOR_DOWNLOAD) ? ContentType.DOWNLOAD : contentType;
+    String boundary = Long.toHexString(System.nanoTime()) + Long.toHexString(contentLength);
+    List<byte[]> partHeaders = new ArrayList<>(ranges.size());
+    long multipartLength = 0;
+    for (HttpByteRange range : ranges) {
+      byte[] partHeader = ("\r\n--" + boundary + "\r\n"
+          + "Content-Type: " + partContentType + "\r\n"
+          + HEADER_CONTENT_RANGE + ": " + range.toContentRange(contentLength) + "\r\n\r\n")
+          .getBytes(StandardCharsets.US_ASCII);
+      partHeaders.add(partHeader);
+      multipartLength += partHeader.length + range.getLength();
+    }
+    byte[] endBoundary = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+    multipartLength += endBoundary.length;
+
+    response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+    setContentType(contentType, request, response);
+    response.setContentType(CONTENT_TYPE_MULTIPART_BYTERANGES + "; boundary=" + boundary);
+    setContentLength(response, multipartLength);
+    OutputStream out = response.getOutputStream();
+    copyRanges(resource, ranges, partHeaders, out);
+    out.write(endBoundary);
+    out.flush();
+  }
+
+  /**
+   * Copies the given byte ranges from the binary data to the output stream.
+   * If the resource is backed by a JCR binary the ranges are read at their offsets, otherwise the binary data is
+   * read once as stream, skipping the bytes between the ranges.
+   * @param resource Resource pointing to nt:file or nt:resource node
+   * @param ranges Byte ranges, sorted and not overlapping
+   * @param partHeaders Header to write before each range or null
+   * @param out Output stream
+   * @throws IOException
+   */
+  private void copyRanges(Resource resource, List<HttpByteRange> ranges, List<byte[]> partHeaders,
+      OutputStream out) throws IOException {
+    byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+
+    Binary binary = JcrBinary.getBinary(resource);
+    if (binary != null) {
+      try {
+        for (int i = 0; i < ranges.size(); i++) {
+          if (partHeaders != null) {
+            out.write(partHeaders.get(i));
+          }
+          copyRange(binary, ranges.get(i), out, buffer);
+        }
+      }
+      catch (RepositoryException ex) {
+        throw new IOException("Unable to read binary data from " + resource.getPath(), ex);
+      }
+      finally {
+        binary.dispose();
+      }
+      return;
+    }
+
+    InputStream is = resource.adaptTo(InputStream.class);
+    if (is == null) {
+      throw new IOException("Binary data not available for " + resource.getPath());
+    }
+    try {
+      long position = 0;
+      for (int i = 0; i < ranges.size(); i++) {
+        HttpByteRange range = ranges.get(i);
+        if (partHeaders != null) {
+          out.write(partHeaders.get(i));
+        }
+        skipFully(is, range.getStart() - position, buffer);
+        IOUtils.copyLarge(is, out, 0, range.getLength(), buffer);
+        position = range.getEnd() + 1;
+      }
+    }
+    finally {
+      is.close();
+    }
+  }
+
+  /**
+   * Copies a byte range from the binary to the output stream, reading only the bytes of the range.
+   */
+  private static void copyRange(Binary binary, HttpByteRange range, OutputStream out, byte[] buffer)
+      throws IOException, RepositoryException {
+    long position = range.getStart();
+    long remaining = range.getLength();
+    while (remaining > 0) {
+      int read = binary.read(buffer, position);
+      if (read < 0) {
+        throw new EOFException("Unexpected end of binary data at position " + position);
+      }
+      int length = (int)Math.min(read, remaining);
+      out.write(buffer, 0, length);
+      position += length;
+      remaining -= length;
+    }
+  }
+
+  /**
+   * Skips the given number of bytes using {@link InputStream#skip(long)}. Falls back to reading and discarding
+   * the bytes if the stream does not support skipping.
+   */
+  private static void skipFully(InputStream is, long count, byte[] buffer) throws IOException {
+    long remaining = count;
+    while (remaining > 0) {
+      long skipped = is.skip(remaining);
+      if (skipped <= 0) {
+        int read = is.read(buffer, 0, (int)Math.min(buffer.length, remaining));
+        if (read < 0) {
+          throw new EOFException("Unexpected end of binary data");
+        }
+        skipped = read;
+      }
+      remaining -= skipped;
+    }
+  }
+
+  /**
+   * Set content type. Respect optional content disposition header handling.
+   * @param contentType Content type
+   * @param request Request
+   * @param response Response
+   */
+  private void setContentType(String contentType, SlingHttpServletRequest request, SlingHttpServletResponse response) {
     response.setContentType(contentType);
-    response.setContentLength(binaryData.length);
 
     // Handling of the "force download" selector
     if (RequestPath.hasSelector(request, SELECTOR_DOWNLOAD)) {
@@ -168,12 +506,20 @@ abstract class AbstractMediaFileServlet extends SlingSafeMethodsServlet {
 
       response.setHeader(HEADER_CONTENT_DISPOSITION, dispositionHeader.toString());
     }
+  }
 
-    // write binary data
-    OutputStream out = response.getOutputStream();
-    out.write(binaryData);
-    out.flush();
-
+  /**
+   * Set content length header - supports binaries larger than 2 GB.
+   * @param response Response
+   * @param contentLength Content length
+   */
+  protected static void setContentLength(SlingHttpServletResponse response, long contentLength) {
+    if (contentLength <= Integer.MAX_VALUE) {
+      response.setContentLength((int)contentLength);
+    }
+    else {
+      response.setHeader(HEADER_CONTENT_LENGTH, Long.toString(contentLength));
+    }
   }
 
 }
@@ -0,0 +1,191 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.media.impl;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Single byte range as requested via HTTP "Range" header (RFC 7233).
+ */
+final class HttpByteRange {
+
+  /**
+   * Range unit supported for byte ranges.
+   */
+  static final String UNIT_BYTES = "bytes";
+
+  /**
+   * Max. number of ranges accepted in a single request - requests with more ranges are served completely.
+   */
+  static final int MAX_RANGES = 20;
+
+  private final long start;
+  private final long end;
+
+  /**
+   * @param start First byte position (inclusive)
+   * @param end Last byte position (inclusive)
+   */
+  HttpByteRange(long start, long end) {
+    this.start = start;
+    this.end = end;
+  }
+
+  /**
+   * @return First byte position (inclusive)
+   */
+  public long getStart() {
+    return this.start;
+  }
+
+  /**
+   * @return Last byte position (inclusive)
+   */
+  public long getEnd() {
+    return this.end;
+  }
+
+  /**
+   * @return Number of bytes in this range
+   */
+  public long getLength() {
+    return this.end - this.start + 1;
+  }
+
+  /**
+   * @param contentLength Complete length of binary data
+   * @return Value for Content-Range header
+   */
+  public String toContentRange(long contentLength) {
+    return UNIT_BYTES + " " + this.start + "-" + this.end + "/" + contentLength;
+  }
+
+  @Override
+  public String toString() {
+    return this.start + "-" + this.end;
+  }
+
+  /**
+   * Parse value of HTTP "Range" header.
+   * @param header Header value
+   * @param contentLength Complete length of binary data
+   * @return List of satisfiable ranges. Empty list if none of the ranges is satisfiable.
+   *         Null if the header is missing, has an invalid syntax, or contains too many ranges - in this case
+   *         the range header has to be ignored.
+   */
+  public static List<HttpByteRange> parse(String header, long contentLength) {
+    if (StringUtils.isBlank(header)) {
+      return null;
+    }
+    String value = header.trim();
+    if (!StringUtils.startsWithIgnoreCase(value, UNIT_BYTES + "=")) {
+      return null;
+    }
+    String[] specs = StringUtils.split(value.substring(UNIT_BYTES.length() + 1), ',');
+    if (specs.length == 0 || specs.length > MAX_RANGES) {
+      return null;
+    }
+
+    List<HttpByteRange> ranges = new ArrayList<>(specs.length);
+    for (String spec : specs) {
+      String rangeSpec = spec.trim();
+      int separator = rangeSpec.indexOf('-');
+      if (separator < 0) {
+        return null;
+      }
+      long first = toPosition(rangeSpec.substring(0, separator).trim());
+      long last = toPosition(rangeSpec.substring(separator + 1).trim());
+
+      // suffix range, e.g. "-500"
+      if (separator == 0) {
+        if (last < 0) {
+          return null;
+        }
+        if (last > 0 && contentLength > 0) {
+          ranges.add(new HttpByteRange(Math.max(0, contentLength - last), contentLength - 1));
+        }
+        continue;
+      }
+
+      // first/last position, e.g. "100-200" or "100-"
+      if (first < 0) {
+        return null;
+      }
+      if (separator < rangeSpec.length() - 1) {
+        if (last < first) {
+          return null;
+        }
+      }
+      else {
+        last = Long.MAX_VALUE;
+      }
+      if (first < contentLength) {
+        ranges.add(new HttpByteRange(first, Math.min(last, contentLength - 1)));
+      }
+    }
+    return ranges;
+  }
+
+  /**
+   * Sorts the ranges by start position and coalesces overlapping or adjacent ranges, so each byte of the binary data
+   * is sent at most once and the ranges can be read in a single forward pass.
+   * @param ranges Satisfiable ranges
+   * @return Sorted, non-overlapping ranges
+   */
+  public static List<HttpByteRange> merge(List<HttpByteRange> ranges) {
+    if (ranges.size() < 2) {
+      return ranges;
+    }
+    List<HttpByteRange> sorted = new ArrayList<>(ranges);
+    sorted.sort(Comparator.comparingLong(HttpByteRange::getStart));
+
+    List<HttpByteRange> merged = new ArrayList<>(sorted.size());
+    HttpByteRange current = sorted.get(0);
+    for (int i = 1; i < sorted.size(); i++) {
+      HttpByteRange range = sorted.get(i);
+      if (range.getStart() <= current.getEnd() + 1) {
+        current = new HttpByteRange(current.getStart(), Math.max(current.getEnd(), range.getEnd()));
+      }
+      else {
+        merged.add(current);
+        current = range;
+      }
+    }
+    merged.add(current);
+    return merged;
+  }
+
+  private static long toPosition(String value) {
+    if (value.isEmpty() || !StringUtils.isNumeric(value)) {
+      return -1;
+    }
+    try {
+      return Long.parseLong(value);
+    }
+    catch (NumberFormatException ex) {
+      return -1;
+    }
+  }
+
+}
@@ -0,0 +1,42 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.media.impl;
+
+import org.apache.sling.api.resource.Resource;
+import org.osgi.annotation.versioning.ProviderType;
+
+import io.wcm.handler.media.Dimension;
+
+/**
+ * Caches dimensions of image binaries stored inline in content pages, to avoid reading the binary
+ * each time a rendition is resolved.
+ */
+@ProviderType
+public interface ImageDimensionCache {
+
+  /**
+   * Get dimension of the image stored in the given resource. The dimension is detected via
+   * {@link ImageDimensionProbe} if not cached already, or if the binary has changed.
+   * @param resource Resource pointing to nt:file or nt:resource node with an image binary
+   * @return Dimension or null if resource does not contain an image
+   */
+  Dimension getDimension(Resource resource);
+
+}
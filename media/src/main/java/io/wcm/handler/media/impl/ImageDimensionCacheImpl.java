@@ -0,0 +1,334 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.media.impl;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.ValueMap;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.day.cq.commons.jcr.JcrConstants;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import io.wcm.handler.media.Dimension;
+import io.wcm.wcm.commons.caching.ModificationDate;
+
+/**
+ * Caches image dimensions in memory, keyed by binary path, last modification date and binary length.
+ * Optionally the dimension is written to a metadata node next to the binary, so it survives restarts
+ * and is shared between instances. The metadata nodes are written asynchronously in a background thread using
+ * the service user mapped to the subservice 'image-dimension-cache' of bundle 'io.wcm.handler.media'.
+ */
+@Component(service = ImageDimensionCache.class, immediate = true)
+@Designate(ocd = ImageDimensionCacheImpl.Config.class)
+public final class ImageDimensionCacheImpl implements ImageDimensionCache {
+
+  @ObjectClassDefinition(name = "wcm.io Media Handler Image Dimension Cache",
+      description = "Caches dimensions of images stored inline in content pages.")
+  static @interface Config {
+
+    @AttributeDefinition(name = "Enabled", description = "Switch to enable or disable this service.")
+    boolean enabled() default true;
+
+    @AttributeDefinition(name = "Max. size", description = "Max. number of image dimensions cached in memory.")
+    long maxSize() default 10000;
+
+    @AttributeDefinition(name = "Write-through",
+        description = "Store detected image dimensions in a metadata node next to the binary node.")
+    boolean writeThrough() default false;
+
+    @AttributeDefinition(name = "Max. write queue size",
+        description = "Max. number of metadata nodes waiting to be written. If the queue is full, further writes are skipped.")
+    int maxWriteQueueSize() default 1000;
+
+  }
+
+  /**
+   * Subservice name for writing metadata nodes
+   */
+  static final String SUBSERVICE_NAME = "image-dimension-cache";
+
+  /**
+   * Suffix for the name of the metadata node stored next to the binary node.
+   */
+  static final String NN_METADATA_SUFFIX = "Metadata";
+
+  /**
+   * Property for image width in pixels
+   */
+  static final String PN_IMAGE_WIDTH = "imageWidth";
+
+  /**
+   * Property for image height in pixels
+   */
+  static final String PN_IMAGE_HEIGHT = "imageHeight";
+
+  /**
+   * Property for last modification date of the binary the dimension was detected from (milliseconds)
+   */
+  static final String PN_BINARY_LAST_MODIFIED = "binaryLastModified";
+
+  /**
+   * Property for length of the binary the dimension was detected from
+   */
+  static final String PN_BINARY_LENGTH = "binaryLength";
+
+  private static final Logger log = LoggerFactory.getLogger(ImageDimensionCacheImpl.class);
+
+  @Reference
+  private ResourceResolverFactory resourceResolverFactory;
+
+  private boolean enabled;
+  private boolean writeThrough;
+  private Cache<String, Dimension> cache;
+  private volatile ExecutorService writeExecutor;
+
+  // paths of metadata nodes queued for writing but not yet written
+  private final Set<String> pendingWrites = ConcurrentHashMap.newKeySet();
+
+  @Activate
+  private void activate(Config config) {
+    enabled = config.enabled();
+    writeThrough = config.writeThrough();
+    cache = CacheBuilder.newBuilder()
+        .maximumSize(config.maxSize())
+        .build();
+    if (enabled && writeThrough) {
+      writeExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+          new LinkedBlockingQueue<>(Math.max(1, config.maxWriteQueueSize())),
+          new ThreadFactoryBuilder().setNameFormat("wcmio-media-image-dimension-cache").setDaemon(true).build());
+    }
+  }
+
+  @Deactivate
+  private void deactivate() {
+    if (writeExecutor != null) {
+      writeExecutor.shutdownNow();
+      writeExecutor = null;
+    }
+    pendingWrites.clear();
+  }
+
+  @Override
+  public Dimension getDimension(Resource resource) {
+    if (!enabled) {
+      return ImageDimensionProbe.getDimension(resource);
+    }
+
+    Date lastModifiedDate = ModificationDate.get(resource);
+    long lastModified = lastModifiedDate != null ? lastModifiedDate.getTime() : 0L;
+    long length = JcrBinary.getDataLength(resource);
+    String key = resource.getPath() + "|" + lastModified + "|" + length;
+
+    Dimension dimension = cache.getIfPresent(key);
+    if (dimension != null) {
+      return dimension;
+    }
+
+    MetadataLocation location = writeThrough ? MetadataLocation.of(resource) : null;
+    if (location != null) {
+      dimension = readMetadata(resource.getResourceResolver(), location, lastModified, length);
+    }
+    if (dimension == null) {
+      dimension = ImageDimensionProbe.getDimension(resource);
+      if (dimension != null && location != null) {
+        queueWriteMetadata(location, dimension, lastModified, length);
+      }
+    }
+
+    if (dimension != null) {
+      cache.put(key, dimension);
+    }
+    return dimension;
+  }
+
+  private Dimension readMetadata(ResourceResolver resolver, MetadataLocation location, long lastModified, long length) {
+    Resource metadata = resolver.getResource(location.getPath());
+    if (metadata == null) {
+      return null;
+    }
+    ValueMap props = metadata.getValueMap();
+    if (props.get(PN_BINARY_LAST_MODIFIED, 0L) != lastModified || props.get(PN_BINARY_LENGTH, -1L) != length) {
+      // outdated
+      return null;
+    }
+    long width = props.get(PN_IMAGE_WIDTH, 0L);
+    long height = props.get(PN_IMAGE_HEIGHT, 0L);
+    if (width <= 0 || height <= 0) {
+      return null;
+    }
+    return new Dimension(width, height);
+  }
+
+  /**
+   * Queues writing the metadata node in the background, the current request usually has no write access to the
+   * content and should not be delayed by a repository commit.
+   */
+  private void queueWriteMetadata(MetadataLocation location, Dimension dimension, long lastModified, long length) {
+    ExecutorService executor = writeExecutor;
+    String path = location.getPath();
+    if (executor == null || !pendingWrites.add(path)) {
+      // already queued
+      return;
+    }
+    try {
+      executor.execute(() -> {
+        try {
+          writeMetadata(location, dimension, lastModified, length);
+        }
+        finally {
+          pendingWrites.remove(path);
+        }
+      });
+    }
+    catch (RejectedExecutionException ex) {
+      pendingWrites.remove(path);
+      log.debug("Write queue full, skip storing image dimension at {}", path);
+    }
+  }
+
+  private void writeMetadata(MetadataLocation location, Dimension dimension, long lastModified, long length) {
+    Map<String, Object> props = new HashMap<>();
+    props.put(PN_IMAGE_WIDTH, dimension.getWidth());
+    props.put(PN_IMAGE_HEIGHT, dimension.getHeight());
+    props.put(PN_BINARY_LAST_MODIFIED, lastModified);
+    props.put(PN_BINARY_LENGTH, length);
+
+    ResourceResolver serviceResourceResolver = null;
+    try {
+      serviceResourceResolver = resourceResolverFactory.getServiceResourceResolver(
+          Collections.singletonMap(ResourceResolverFactory.SUBSERVICE, SUBSERVICE_NAME));
+      Resource parent = serviceResourceResolver.getResource(location.getParentPath());
+      if (parent == null) {
+        return;
+      }
+      Resource metadata = parent.getChild(location.getName());
+      if (metadata != null) {
+        ModifiableValueMap modifiableProps = metadata.adaptTo(ModifiableValueMap.class);
+        if (modifiableProps == null) {
+          return;
+        }
+        modifiableProps.putAll(props);
+      }
+      else {
+        props.put(JcrConstants.JCR_PRIMARYTYPE, JcrConstants.NT_UNSTRUCTURED);
+        serviceResourceResolver.create(parent, location.getName(), props);
+      }
+      serviceResourceResolver.commit();
+    }
+    catch (LoginException ex) {
+      log.warn("Getting service resource resolver failed. "
+          + "Please make sure a service user is defined for bundle 'io.wcm.handler.media' "
+          + "and subservice '" + SUBSERVICE_NAME + "'.", ex);
+    }
+    catch (PersistenceException ex) {
+      log.warn("Unable to store image dimension at " + location.getPath(), ex);
+    }
+    finally {
+      if (serviceResourceResolver != null) {
+        serviceResourceResolver.close();
+      }
+    }
+  }
+
+
+  /**
+   * Blocks until all queued metadata nodes are written.
+   * @param timeoutMs Max. time to wait
+   * @return true if all metadata nodes are written, false if timeout was reached
+   */
+  boolean awaitWritten(long timeoutMs) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + timeoutMs;
+    while (!pendingWrites.isEmpty()) {
+      if (System.currentTimeMillis() > deadline) {
+        return false;
+      }
+      TimeUnit.MILLISECONDS.sleep(5);
+    }
+    return true;
+  }
+
+  /**
+   * Location of the metadata node for a binary: a sibling of the nt:resource node, or a sibling of the nt:file node
+   * if the nt:resource is the content node of an nt:file (nt:file nodes do not allow additional child nodes).
+   */
+  static final class MetadataLocation {
+
+    private final String parentPath;
+    private final String name;
+
+    private MetadataLocation(String parentPath, String name) {
+      this.parentPath = parentPath;
+      this.name = name;
+    }
+
+    static MetadataLocation of(Resource resource) {
+      Resource binaryNode = resource;
+      if (JcrBinary.isNtResource(resource) && resource.getParent() != null && JcrBinary.isNtFile(resource.getParent())) {
+        binaryNode = resource.getParent();
+      }
+      Resource parent = binaryNode.getParent();
+      if (parent == null) {
+        return null;
+      }
+      return new MetadataLocation(parent.getPath(), binaryNode.getName() + NN_METADATA_SUFFIX);
+    }
+
+    String getParentPath() {
+      return parentPath;
+    }
+
+    String getName() {
+      return name;
+    }
+
+    String getPath() {
+      return parentPath + "/" + name;
+    }
+
+  }
+
+}
@@ -0,0 +1,349 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.media.impl;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.sling.api.resource.Resource;
+import org.osgi.annotation.versioning.ProviderType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.day.image.Layer;
+
+import io.wcm.handler.media.Dimension;
+
+/**
+ * Detects the dimension of an image by parsing only the header of the image file (JPEG, PNG, GIF, WebP, TIFF).
+ * Decoding the full image via {@link Layer} is used only as fallback if the header cannot be parsed.
+ */
+@ProviderType
+public final class ImageDimensionProbe {
+
+  /**
+   * Max. number of bytes read from the stream while looking for the dimension (JPEG files may contain large
+   * EXIF, XMP or ICC profile segments before the frame header).
+   */
+  static final int MAX_PROBE_BYTES = 512 * 1024;
+
+  private static final int BUFFER_SIZE = 8 * 1024;
+
+  private static final Logger log = LoggerFactory.getLogger(ImageDimensionProbe.class);
+
+  private ImageDimensionProbe() {
+    // static methods only
+  }
+
+  /**
+   * Get dimension of the image stored in the given resource.
+   * @param resource Resource pointing to nt:file or nt:resource node with an image binary
+   * @return Dimension or null if resource does not contain an image
+   */
+  public static Dimension getDimension(Resource resource) {
+    InputStream is = resource.adaptTo(InputStream.class);
+    if (is != null) {
+      try {
+        Dimension dimension = probe(is);
+        if (dimension != null) {
+          return dimension;
+        }
+      }
+      catch (IOException ex) {
+        log.debug("Unable to read image header from " + resource.getPath(), ex);
+      }
+      finally {
+        try {
+          is.close();
+        }
+        catch (IOException ex) {
+          // ignore
+        }
+      }
+    }
+
+    // fallback: decode full image
+    Layer layer = resource.adaptTo(Layer.class);
+    if (layer != null) {
+      return new Dimension(layer.getWidth(), layer.getHeight());
+    }
+    return null;
+  }
+
+  /**
+   * Parse image dimension from image file header.
+   * @param is Input stream with image binary data. The stream is not closed.
+   * @return Dimension or null if image format is not supported or header is invalid
+   * @throws IOException I/O exception
+   */
+  static Dimension probe(InputStream is) throws IOException {
+    HeaderReader reader = new HeaderReader(is);
+    int b0 = reader.read();
+    int b1 = reader.read();
+    if (b0 == 0xFF && b1 == 0xD8) {
+      return probeJpeg(reader);
+    }
+    if (b0 == 0x89 && b1 == 'P') {
+      return probePng(reader);
+    }
+    if (b0 == 'G' && b1 == 'I') {
+      return probeGif(reader);
+    }
+    if (b0 == 'R' && b1 == 'I') {
+      return probeWebp(reader);
+    }
+    if ((b0 == 'I' && b1 == 'I') || (b0 == 'M' && b1 == 'M')) {
+      return probeTiff(reader, b0 == 'I');
+    }
+    return null;
+  }
+
+  private static Dimension probeJpeg(HeaderReader reader) throws IOException {
+    while (true) {
+      // find next marker, skipping fill bytes
+      if (reader.read() != 0xFF) {
+        return null;
+      }
+      int marker = reader.read();
+      while (marker == 0xFF) {
+        marker = reader.read();
+      }
+      // standalone markers without length
+      if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD8)) {
+        continue;
+      }
+      // end of image or start of scan reached without frame header
+      if (marker == 0xD9 || marker == 0xDA) {
+        return null;
+      }
+      int length = reader.readUnsignedShort(false);
+      if (length < 2) {
+        return null;
+      }
+      // SOF0..SOF15, excluding DHT (C4), JPG (C8) and DAC (CC)
+      if (marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC) {
+        reader.skip(1); // sample precision
+        int height = reader.readUnsignedShort(false);
+        int width = reader.readUnsignedShort(false);
+        return toDimension(width, height);
+      }
+      reader.skip(length - 2);
+    }
+  }
+
+  private static Dimension probePng(HeaderReader reader) throws IOException {
+    if (!reader.matches("NG\r\n\u001A\n")) {
+      return null;
+    }
+    reader.skip(4); // chunk length
+    if (!reader.matches("IHDR")) {
+      return null;
+    }
+    long width = reader.readInt(false);
+    long height = reader.readInt(false);
+    return toDimension(width, height);
+  }
+
+  private static Dimension probeGif(HeaderReader reader) throws IOException {
+    if (!reader.matches("F8")) {
+      return null;
+    }
+    int version = reader.read();
+    if ((version != '7' && version != '9') || reader.read() != 'a') {
+      return null;
+    }
+    int width = reader.readUnsignedShort(true);
+    int height = reader.readUnsignedShort(true);
+    return toDimension(width, height);
+  }
+
+  private static Dimension probeWebp(HeaderReader reader) throws IOException {
+    if (!reader.matches("FF")) {
+      return null;
+    }
+    reader.skip(4); // file size
+    if (!reader.matches("WEBP")) {
+      return null;
+    }
+    if (!reader.matches("VP8")) {
+      return null;
+    }
+    int format = reader.read();
+    reader.skip(4); // chunk size
+    if (format == ' ') {
+      // lossy: frame tag (3 bytes), start code (3 bytes), 14 bit width and height
+      reader.skip(3);
+      if (reader.read() != 0x9D || reader.read() != 0x01 || reader.read() != 0x2A) {
+        return null;
+      }
+      int width = reader.readUnsignedShort(true) & 0x3FFF;
+      int height = reader.readUnsignedShort(true) & 0x3FFF;
+      return toDimension(width, height);
+    }
+    if (format == 'L') {
+      // lossless: signature byte, 14 bit width-1 and height-1
+      if (reader.read() != 0x2F) {
+        return null;
+      }
+      long bits = reader.readInt(true);
+      long width = (bits & 0x3FFF) + 1;
+      long height = ((bits >> 14) & 0x3FFF) + 1;
+      return toDimension(width, height);
+    }
+    if (format == 'X') {
+      // extended: flags (4 bytes), 24 bit canvas width-1 and height-1
+      reader.skip(4);
+      long width = reader.readUnsigned24(true) + 1;
+      long height = reader.readUnsigned24(true) + 1;
+      return toDimension(width, height);
+    }
+    return null;
+  }
+
+  private static Dimension probeTiff(HeaderReader reader, boolean littleEndian) throws IOException {
+    if (reader.readUnsignedShort(littleEndian) != 42) {
+      return null;
+    }
+    long ifdOffset = reader.readInt(littleEndian);
+    if (ifdOffset < reader.getPosition()) {
+      return null;
+    }
+    reader.skip(ifdOffset - reader.getPosition());
+    int entryCount = reader.readUnsignedShort(littleEndian);
+    long width = 0;
+    long height = 0;
+    for (int i = 0; i < entryCount && (width == 0 || height == 0); i++) {
+      int tag = reader.readUnsignedShort(littleEndian);
+      int type = reader.readUnsignedShort(littleEndian);
+      reader.skip(4); // count
+      long value;
+      if (type == 3) {
+        // SHORT: value left-aligned in 4 byte field
+        value = reader.readUnsignedShort(littleEndian);
+        reader.skip(2);
+      }
+      else if (type == 4) {
+        // LONG
+        value = reader.readInt(littleEndian);
+      }
+      else {
+        reader.skip(4);
+        continue;
+      }
+      if (tag == 256) {
+        width = value;
+      }
+      else if (tag == 257) {
+        height = value;
+      }
+    }
+    return toDimension(width, height);
+  }
+
+  private static Dimension toDimension(long width, long height) {
+    if (width <= 0 || height <= 0) {
+      return null;
+    }
+    return new Dimension(width, height);
+  }
+
+
+  /**
+   * Reads header bytes from a stream and ensures no more than {@link #MAX_PROBE_BYTES} are consumed.
+   */
+  private static final class HeaderReader {
+
+    private final InputStream is;
+    private long position;
+
+    HeaderReader(InputStream is) {
+      this.is = new BufferedInputStream(is, BUFFER_SIZE);
+    }
+
+    long getPosition() {
+      return position;
+    }
+
+    int read() throws IOException {
+      checkLimit(1);
+      int value = is.read();
+      if (value < 0) {
+        throw new EOFException();
+      }
+      position++;
+      return value;
+    }
+
+    void skip(long count) throws IOException {
+      checkLimit(count);
+      long remaining = count;
+      while (remaining > 0) {
+        long skipped = is.skip(remaining);
+        if (skipped <= 0) {
+          // skip may return 0 before end of stream - read a single byte to detect EOF
+          read();
+          skipped = 1;
+        }
+        else {
+          position += skipped;
+        }
+        remaining -= skipped;
+      }
+    }
+
+    boolean matches(String expected) throws IOException {
+      for (int i = 0; i < expected.length(); i++) {
+        if (read() != expected.charAt(i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    int readUnsignedShort(boolean littleEndian) throws IOException {
+      int b0 = read();
+      int b1 = read();
+      return littleEndian ? (b1 << 8) | b0 : (b0 << 8) | b1;
+    }
+
+    long readUnsigned24(boolean littleEndian) throws IOException {
+      long b0 = read();
+      long b1 = read();
+      long b2 = read();
+      return littleEndian ? (b2 << 16) | (b1 << 8) | b0 : (b0 << 16) | (b1 << 8) | b2;
+    }
+
+    long readInt(boolean littleEndian) throws IOException {
+      long s0 = readUnsignedShort(littleEndian);
+      long s1 = readUnsignedShort(littleEndian);
+      return littleEndian ? (s1 << 16) | s0 : (s0 << 16) | s1;
+    }
+
+    private void checkLimit(long count) throws IOException {
+      if (position + count > MAX_PROBE_BYTES) {
+        throw new IOException("Image header exceeds " + MAX_PROBE_BYTES + " bytes.");
+      }
+    }
+
+  }
+
+}
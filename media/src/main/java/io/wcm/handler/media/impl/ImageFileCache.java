@@ -0,0 +1,49 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.media.impl;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * Persistent cache for images that are resized and/or cropped by {@link ImageFileServlet}.
+ */
+@ProviderType
+public interface ImageFileCache {
+
+  /**
+   * Get cached image.
+   * @param key Cache key
+   * @return Cached file or null if not cached
+   */
+  File get(ImageFileCacheKey key);
+
+  /**
+   * Store rendered image in cache. Cached images rendered from an older version of the same source rendition
+   * are removed.
+   * @param key Cache key
+   * @param data Binary data of rendered image
+   * @throws IOException if writing to the cache fails
+   */
+  void put(ImageFileCacheKey key, byte[] data) throws IOException;
+
+}
@@ -0,0 +1,264 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.media.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.osgi.service.component.ComponentContext;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.hash.Hashing;
+
+/**
+ * Stores images rendered by {@link ImageFileServlet} on local disk.
+ * The cache size is bounded, least recently used images are removed first.
+ * Cached images survive restarts, the cache index is rebuilt from the cache directory on activation.
+ */
+@Component(service = ImageFileCache.class, immediate = true)
+@Designate(ocd = ImageFileCacheImpl.Config.class)
+public final class ImageFileCacheImpl implements ImageFileCache {
+
+  @ObjectClassDefinition(name = "wcm.io Media Handler Image File Cache",
+      description = "Caches images resized or cropped by the image file servlet on local disk.")
+  static @interface Config {
+
+    @AttributeDefinition(name = "Enabled", description = "Switch to enable or disable this service.")
+    boolean enabled() default true;
+
+    @AttributeDefinition(name = "Cache directory",
+        description = "Absolute path of the directory to store cached images. If empty the bundle data area is used.")
+    String cacheDirectory() default "";
+
+    @AttributeDefinition(name = "Max. size (MB)", description = "Max. size of all cached images in megabytes.")
+    long maxSizeMb() default 512;
+
+  }
+
+  static final String TEMP_FILE_PREFIX = "tmp";
+  private static final String DEFAULT_CACHE_DIRECTORY = "imagefilecache";
+  private static final long MB = 1024L * 1024L;
+
+  private static final Logger log = LoggerFactory.getLogger(ImageFileCacheImpl.class);
+
+  private boolean enabled;
+  private File cacheDirectory;
+  private long maxSize;
+
+  // cached files in least-recently-used order with their size
+  private final LinkedHashMap<File, Long> index = new LinkedHashMap<>(16, 0.75f, true);
+  private long totalSize;
+
+  @Activate
+  private void activate(ComponentContext componentContext, Config config) {
+    enabled = config.enabled();
+    if (!enabled) {
+      return;
+    }
+    if (StringUtils.isNotBlank(config.cacheDirectory())) {
+      cacheDirectory = new File(config.cacheDirectory());
+    }
+    else {
+      cacheDirectory = componentContext.getBundleContext().getDataFile(DEFAULT_CACHE_DIRECTORY);
+    }
+    if (cacheDirectory == null || !(cacheDirectory.isDirectory() || cacheDirectory.mkdirs())) {
+      log.warn("Unable to create image file cache directory {} - image file cache is disabled.", cacheDirectory);
+      enabled = false;
+      return;
+    }
+    maxSize = config.maxSizeMb() * MB;
+    rebuildIndex();
+  }
+
+  @Deactivate
+  private synchronized void deactivate() {
+    index.clear();
+    totalSize = 0;
+  }
+
+  /**
+   * Reads all files from the cache directory into the LRU index, oldest first.
+   */
+  private synchronized void rebuildIndex() {
+    index.clear();
+    totalSize = 0;
+    List<File> files = new ArrayList<>();
+    File[] renditionDirectories = cacheDirectory.listFiles(File::isDirectory);
+    if (renditionDirectories != null) {
+      for (File renditionDirectory : renditionDirectories) {
+        File[] renditionFiles = renditionDirectory.listFiles(File::isFile);
+        if (renditionFiles != null) {
+          for (File file : renditionFiles) {
+            if (file.getName().startsWith(TEMP_FILE_PREFIX)) {
+              // remove leftovers from interrupted writes
+              FileUtils.deleteQuietly(file);
+            }
+            else {
+              files.add(file);
+            }
+          }
+        }
+      }
+    }
+    files.sort(Comparator.comparingLong(File::lastModified));
+    for (File file : files) {
+      long size = file.length();
+      index.put(file, size);
+      totalSize += size;
+    }
+    evict();
+    log.debug("Image file cache {} contains {} files with {} bytes.", cacheDirectory, index.size(), totalSize);
+  }
+
+  @Override
+  public File get(ImageFileCacheKey key) {
+    if (!enabled) {
+      return null;
+    }
+    File file = getFile(key);
+    synchronized (this) {
+      Long size = index.get(file);
+      if (size == null) {
+        return null;
+      }
+      if (!file.exists()) {
+        index.remove(file);
+        totalSize -= size;
+        return null;
+      }
+    }
+    return file;
+  }
+
+  @Override
+  public void put(ImageFileCacheKey key, byte[] data) throws IOException {
+    if (!enabled) {
+      return;
+    }
+    File file = getFile(key);
+    File renditionDirectory = file.getParentFile();
+    if (!(renditionDirectory.isDirectory() || renditionDirectory.mkdirs())) {
+      throw new IOException("Unable to create directory " + renditionDirectory);
+    }
+
+    // write to temp file first and move it to its final location to make sure only complete files are served
+    File tempFile = File.createTempFile(TEMP_FILE_PREFIX, null, renditionDirectory);
+    try {
+      Files.write(tempFile.toPath(), data);
+      Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    finally {
+      FileUtils.deleteQuietly(tempFile);
+    }
+
+    synchronized (this) {
+      Long previousSize = index.put(file, (long)data.length);
+      totalSize += data.length - (previousSize != null ? previousSize : 0L);
+      removeOutdated(renditionDirectory, getFilePrefix(key));
+      evict();
+    }
+  }
+
+  /**
+   * Removes all cached files of the same source rendition that were rendered from another version of the rendition.
+   * @param renditionDirectory Directory containing cached files of source rendition
+   * @param currentPrefix File name prefix of current version of source rendition
+   */
+  private void removeOutdated(File renditionDirectory, String currentPrefix) {
+    File[] files = renditionDirectory.listFiles(File::isFile);
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      String name = file.getName();
+      if (!name.startsWith(currentPrefix) && !name.startsWith(TEMP_FILE_PREFIX)) {
+        remove(file);
+      }
+    }
+  }
+
+  /**
+   * Removes least recently used files until the max. cache size is no longer exceeded.
+   */
+  private void evict() {
+    Iterator<Map.Entry<File, Long>> entries = index.entrySet().iterator();
+    while (totalSize > maxSize && entries.hasNext()) {
+      Map.Entry<File, Long> entry = entries.next();
+      entries.remove();
+      totalSize -= entry.getValue();
+      FileUtils.deleteQuietly(entry.getKey());
+      log.trace("Evicted {} from image file cache.", entry.getKey());
+    }
+  }
+
+  private void remove(File file) {
+    Long size = index.remove(file);
+    if (size != null) {
+      totalSize -= size;
+    }
+    FileUtils.deleteQuietly(file);
+  }
+
+  /**
+   * @return Number of cached files
+   */
+  synchronized int getSize() {
+    return index.size();
+  }
+
+  /**
+   * @return Total size of cached files in bytes
+   */
+  synchronized long getTotalSize() {
+    return totalSize;
+  }
+
+  private File getFile(ImageFileCacheKey key) {
+    File renditionDirectory = new File(cacheDirectory, hash(key.getRenditionPath()));
+    return new File(renditionDirectory, getFilePrefix(key) + hash(key.getVariant()));
+  }
+
+  private static String getFilePrefix(ImageFileCacheKey key) {
+    return key.getLastModified() + "_";
+  }
+
+  private static String hash(String value) {
+    return Hashing.md5().hashString(value, StandardCharsets.UTF_8).toString();
+  }
+
+}
@@ -0,0 +1,179 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.media.impl;
+
+import java.util.Date;
+
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.sling.api.resource.Resource;
+import org.osgi.annotation.versioning.ProviderType;
+
+import com.day.cq.commons.jcr.JcrConstants;
+
+import io.wcm.handler.media.CropDimension;
+import io.wcm.wcm.commons.caching.ModificationDate;
+import io.wcm.wcm.commons.util.ToStringStyle;
+
+/**
+ * Identifies an image rendered by {@link ImageFileServlet} from a source rendition.
+ */
+@ProviderType
+public final class ImageFileCacheKey {
+
+  private final String renditionPath;
+  private final long lastModified;
+  private final long width;
+  private final long height;
+  private final String cropString;
+  private final double quality;
+  private final String contentType;
+
+  /**
+   * @param renditionPath Path of source rendition
+   * @param lastModified Last modification date of source rendition (milliseconds)
+   * @param width Output width
+   * @param height Output height
+   * @param cropString Crop string or null if not cropped
+   * @param quality Output quality
+   * @param contentType Output content type
+   */
+  public ImageFileCacheKey(String renditionPath, long lastModified, long width, long height,
+      String cropString, double quality, String contentType) {
+    this.renditionPath = renditionPath;
+    this.lastModified = lastModified;
+    this.width = width;
+    this.height = height;
+    this.cropString = cropString;
+    this.quality = quality;
+    this.contentType = contentType;
+  }
+
+  /**
+   * Create cache key for image rendered from the given resource.
+   * Without a modification date a changed binary could not be told apart from the cached one, so no key is created.
+   * @param resource Resource pointing to nt:file or nt:resource node with the source image
+   * @param width Output width
+   * @param height Output height
+   * @param cropDimension Crop dimension or null
+   * @param quality Output quality
+   * @param contentType Output content type
+   * @return Cache key or null if the resource has no modification date
+   */
+  public static ImageFileCacheKey of(Resource resource, long width, long height, CropDimension cropDimension,
+      double quality, String contentType) {
+    Date lastModified = getLastModified(resource);
+    if (lastModified == null) {
+      return null;
+    }
+    return new ImageFileCacheKey(resource.getPath(), lastModified.getTime(),
+        width, height,
+        cropDimension != null ? cropDimension.getCropString() : null,
+        quality, contentType);
+  }
+
+  private static Date getLastModified(Resource resource) {
+    Date lastModified = ModificationDate.get(resource);
+    if (lastModified == null) {
+      // fallback to jcr:lastModified of the nt:resource node holding the binary data
+      Resource contentResource = JcrBinary.isNtFile(resource) ? resource.getChild(JcrConstants.JCR_CONTENT) : resource;
+      if (contentResource != null) {
+        lastModified = contentResource.getValueMap().get(JcrConstants.JCR_LASTMODIFIED, Date.class);
+      }
+    }
+    return lastModified;
+  }
+
+  /**
+   * @return Path of source rendition
+   */
+  public String getRenditionPath() {
+    return this.renditionPath;
+  }
+
+  /**
+   * @return Last modification date of source rendition (milliseconds)
+   */
+  public long getLastModified() {
+    return this.lastModified;
+  }
+
+  /**
+   * @return Output width
+   */
+  public long getWidth() {
+    return this.width;
+  }
+
+  /**
+   * @return Output height
+   */
+  public long getHeight() {
+    return this.height;
+  }
+
+  /**
+   * @return Crop string or null if not cropped
+   */
+  public String getCropString() {
+    return this.cropString;
+  }
+
+  /**
+   * @return Output quality
+   */
+  public double getQuality() {
+    return this.quality;
+  }
+
+  /**
+   * @return Output content type
+   */
+  public String getContentType() {
+    return this.contentType;
+  }
+
+  /**
+   * @return String containing all parameters except rendition path and last modification date
+   */
+  String getVariant() {
+    return this.width + "x" + this.height
+        + "_" + (this.cropString != null ? this.cropString : "")
+        + "_" + this.quality
+        + "_" + this.contentType;
+  }
+
+  @Override
+  public int hashCode() {
+    return HashCodeBuilder.reflectionHashCode(this);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return EqualsBuilder.reflectionEquals(this, obj);
+  }
+
+  @Override
+  public String toString() {
+    return ToStringBuilder.reflectionToString(this, ToStringStyle.SHORT_PREFIX_OMIT_NULL_STYLE);
+  }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.media.impl;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.resource.Resource;
+import org.osgi.annotation.versioning.ProviderType;
+
+import com.day.image.Layer;
+
+import io.wcm.handler.media.CropDimension;
+import io.wcm.wcm.commons.contenttype.ContentType;
+import io.wcm.wcm.commons.contenttype.FileExtension;
+
+/**
+ * Renders resized or cropped images as delivered by {@link ImageFileServlet}.
+ */
+@ProviderType
+public final class ImageFileRenderer {
+
+  private ImageFileRenderer() {
+    // static methods only
+  }
+
+  /**
+   * Render image.
+   * @param resource Resource pointing to nt:file or nt:resource node with the source image
+   * @param width Target width
+   * @param height Target height
+   * @param cropDimension Crop dimension or null
+   * @param contentType Content type of rendered image
+   * @param quality Quality of rendered image
+   * @return Binary data of rendered image or null if resource does not contain an image
+   * @throws IOException
+   */
+  public static byte[] render(Resource resource, int width, int height, CropDimension cropDimension,
+      String contentType, double quality) throws IOException {
+
+    // try to decode only the pixels required for cropping and resizing
+    Layer layer = getSubsampledLayer(resource, cropDimension, width, height);
+
+    // otherwise decode full image via layer
+    if (layer == null) {
+      layer = resource.adaptTo(Layer.class);
+      if (layer == null) {
+        return null;
+      }
+
+      // if required: crop image
+      if (cropDimension != null) {
+        layer.crop(cropDimension.getRectangle());
+      }
+    }
+
+    // resize layer
+    if (width <= layer.getWidth() && height <= layer.getHeight()) {
+      layer.resize(width, height);
+    }
+
+    // stream to byte array
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    layer.write(contentType, quality, bos);
+    bos.flush();
+    return bos.toByteArray();
+  }
+
+  /**
+   * Decode image with source region and subsampling, reading only the pixels required for the output.
+   * @param resource Resource
+   * @param cropDimension Crop dimension or null
+   * @param width Target width
+   * @param height Target height
+   * @return Layer with cropped image or null if subsampled decoding is not possible
+   * @throws IOException
+   */
+  private static Layer getSubsampledLayer(Resource resource, CropDimension cropDimension, int width, int height)
+      throws IOException {
+    InputStream is = resource.adaptTo(InputStream.class);
+    if (is == null) {
+      return null;
+    }
+    try {
+      BufferedImage image = SubsampledImageDecoder.decode(is, cropDimension, width, height);
+      if (image == null) {
+        return null;
+      }
+      return new Layer(image);
+    }
+    finally {
+      is.close();
+    }
+  }
+
+  /**
+   * Get content type of image rendered for the given file name.
+   * @param fileName File name
+   * @return PNG content type for PNG files, JPEG content type for all others
+   */
+  public static String getContentType(String fileName) {
+    if (StringUtils.isNotEmpty(fileName)) {
+      // if extension is PNG use PNG content type, otherwise fallback to JPEG
+      String fileExtension = StringUtils.substringAfterLast(fileName, ".");
+      if (StringUtils.equalsIgnoreCase(fileExtension, FileExtension.PNG)) {
+        return ContentType.PNG;
+      }
+    }
+
+    // for rendered images use JPEG mime type as default fallback
+    return ContentType.JPEG;
+  }
+
+}
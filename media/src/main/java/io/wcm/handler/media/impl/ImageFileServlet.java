@@ -19,30 +19,40 @@
  */
 package io.wcm.handler.media.impl;
 
-import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.servlet.Servlet;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.math.NumberUtils;
 import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.servlets.HttpConstants;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicy;
+import org.osgi.service.component.annotations.ReferencePolicyOption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.day.cq.commons.jcr.JcrConstants;
-import com.day.image.Layer;
 
-import io.wcm.handler.media.CropDimension;
 import io.wcm.handler.media.spi.MediaHandlerConfig;
 import io.wcm.sling.commons.adapter.AdaptTo;
-import io.wcm.wcm.commons.contenttype.ContentType;
 import io.wcm.wcm.commons.contenttype.FileExtension;
 
 /**
  * Stream resized or cropped image from binary data stored in a nt:file or nt:resource node.
  * Optional support for Content-Disposition header ("download_attachment").
+ * Rendered images are stored in the {@link ImageFileCache}, if available.
+ * Renderings are scheduled via {@link ImageRenderScheduler}, if available.
  */
 @Component(service = Servlet.class, immediate = true, property = {
     "sling.servlet.extensions=" + MediaFileServlet.EXTENSION,
@@ -59,74 +69,128 @@ public final class ImageFileServlet extends AbstractMediaFileServlet {
    */
   public static final String SELECTOR = "image_file";
 
+  private static final Logger log = LoggerFactory.getLogger(ImageFileServlet.class);
+
+  @Reference(cardinality = ReferenceCardinality.OPTIONAL, policy = ReferencePolicy.DYNAMIC,
+      policyOption = ReferencePolicyOption.GREEDY)
+  private transient volatile ImageFileCache imageFileCache;
+
+  @Reference(cardinality = ReferenceCardinality.OPTIONAL, policy = ReferencePolicy.DYNAMIC,
+      policyOption = ReferencePolicyOption.GREEDY)
+  private transient volatile ImageRenderScheduler imageRenderScheduler;
+
   @Override
-  protected byte[] getBinaryData(Resource resource, SlingHttpServletRequest request) throws IOException {
-    // get media app config
-    MediaHandlerConfig config = AdaptTo.notNull(request, MediaHandlerConfig.class);
+  protected boolean isStreamingSupported(Resource resource, SlingHttpServletRequest request) {
+    // images are always rendered via layer, the binary data cannot be streamed as-is
+    return false;
+  }
 
-    // check for image scaling parameters
-    int width = 0;
-    int height = 0;
-    String[] selectors = request.getRequestPathInfo().getSelectors();
-    if (selectors.length >= 3) {
-      width = NumberUtils.toInt(selectors[1]);
-      height = NumberUtils.toInt(selectors[2]);
+  @Override
+  protected boolean sendCachedBinaryData(Resource resource, SlingHttpServletRequest request,
+      SlingHttpServletResponse response) throws IOException {
+    ImageFileCache cache = this.imageFileCache;
+    if (cache == null) {
+      return false;
     }
-    if (width <= 0 || height <= 0) {
-      return null;
+    ImageFileServletSelector selector = ImageFileServletSelector.parse(request.getRequestPathInfo().getSelectors());
+    if (selector == null) {
+      return false;
+    }
+    ImageFileCacheKey key = getCacheKey(resource, selector, request);
+    if (key == null) {
+      return false;
+    }
+    File file = cache.get(key);
+    if (file == null) {
+      return false;
     }
+    FileInputStream is;
+    try {
+      is = new FileInputStream(file);
+    }
+    catch (FileNotFoundException ex) {
+      // file was evicted concurrently - render again
+      return false;
+    }
+    try {
+      sendBinaryData(is, is.getChannel().size(), getContentType(resource, request), request, response);
+    }
+    finally {
+      is.close();
+    }
+    return true;
+  }
 
-    // check for cropping parameter
-    CropDimension cropDimension = null;
-    if (selectors.length >= 4) {
-      String cropString = selectors[3];
-      try {
-        cropDimension = CropDimension.fromCropString(cropString);
-      }
-      catch (IllegalArgumentException ex) {
-        // ignore
-      }
+  @Override
+  protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response) throws ServletException, IOException {
+    try {
+      super.doGet(request, response);
     }
+    catch (RejectedExecutionException ex) {
+      log.warn("Rendering image for {} rejected: {}", request.getRequestURI(), ex.getMessage());
+      response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+    }
+  }
 
-    // if resizing requested rescale via layer
-    Layer layer = resource.adaptTo(Layer.class);
-    if (layer == null) {
+  @Override
+  protected byte[] getBinaryData(Resource resource, SlingHttpServletRequest request) throws IOException {
+    // check for image scaling and cropping parameters
+    ImageFileServletSelector selector = ImageFileServletSelector.parse(request.getRequestPathInfo().getSelectors());
+    if (selector == null) {
       return null;
     }
+    ImageFileCacheKey key = getCacheKey(resource, selector, request);
 
-    // if required: crop image
-    if (cropDimension != null) {
-      layer.crop(cropDimension.getRectangle());
+    // render via scheduler to coalesce identical renderings and limit concurrent renderings
+    ImageRenderScheduler scheduler = this.imageRenderScheduler;
+    if (scheduler != null) {
+      return scheduler.render(key, () -> renderImageAndCache(resource, selector, key, request));
+    }
+    else {
+      return renderImageAndCache(resource, selector, key, request);
     }
+  }
+
+  private byte[] renderImageAndCache(Resource resource, ImageFileServletSelector selector, ImageFileCacheKey key,
+      SlingHttpServletRequest request) throws IOException {
+    byte[] binaryData = renderImage(resource, selector, request);
 
-    // resize layer
-    if (width <= layer.getWidth() && height <= layer.getHeight()) {
-      layer.resize(width, height);
+    // store rendered image in cache
+    ImageFileCache cache = this.imageFileCache;
+    if (binaryData != null && cache != null && key != null) {
+      try {
+        cache.put(key, binaryData);
+      }
+      catch (IOException ex) {
+        log.warn("Unable to store rendered image for " + resource.getPath() + " in image file cache.", ex);
+      }
     }
 
-    // stream to byte array
-    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    return binaryData;
+  }
+
+  private byte[] renderImage(Resource resource, ImageFileServletSelector selector, SlingHttpServletRequest request)
+      throws IOException {
+    // get media app config
+    MediaHandlerConfig config = AdaptTo.notNull(request, MediaHandlerConfig.class);
+
     String contentType = getContentType(resource, request);
-    layer.write(contentType, config.getDefaultImageQuality(contentType), bos);
-    bos.flush();
-    return bos.toByteArray();
+    return ImageFileRenderer.render(resource, selector.getWidth(), selector.getHeight(), selector.getCropDimension(),
+        contentType, config.getDefaultImageQuality(contentType));
+  }
+
+  private ImageFileCacheKey getCacheKey(Resource resource, ImageFileServletSelector selector,
+      SlingHttpServletRequest request) {
+    MediaHandlerConfig config = AdaptTo.notNull(request, MediaHandlerConfig.class);
+    String contentType = getContentType(resource, request);
+    return ImageFileCacheKey.of(resource, selector.getWidth(), selector.getHeight(), selector.getCropDimension(),
+        config.getDefaultImageQuality(contentType), contentType);
   }
 
   @Override
   protected String getContentType(Resource resource, SlingHttpServletRequest request) {
-
     // get filename from suffix to get extension
-    String fileName = request.getRequestPathInfo().getSuffix();
-    if (StringUtils.isNotEmpty(fileName)) {
-      // if extension is PNG use PNG content type, otherwise fallback to JPEG
-      String fileExtension = StringUtils.substringAfterLast(fileName, ".");
-      if (StringUtils.equalsIgnoreCase(fileExtension, FileExtension.PNG)) {
-        return ContentType.PNG;
-      }
-    }
-
-    // for rendered images use JPEG mime type as default fallback
-    return ContentType.JPEG;
+    return ImageFileRenderer.getContentType(request.getRequestPathInfo().getSuffix());
   }
 
   /**
@@ -0,0 +1,99 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.media.impl;
+
+import org.apache.commons.lang3.math.NumberUtils;
+
+import io.wcm.handler.media.CropDimension;
+
+/**
+ * Parses the selectors of requests to {@link ImageFileServlet}: <code>image_file.&lt;width&gt;.&lt;height&gt;[.&lt;crop&gt;]</code>.
+ */
+final class ImageFileServletSelector {
+
+  private final int width;
+  private final int height;
+  private final CropDimension cropDimension;
+
+  /**
+   * @param width Width
+   * @param height Height
+   * @param cropDimension Crop dimension or null
+   */
+  ImageFileServletSelector(int width, int height, CropDimension cropDimension) {
+    this.width = width;
+    this.height = height;
+    this.cropDimension = cropDimension;
+  }
+
+  /**
+   * @return Requested width
+   */
+  public int getWidth() {
+    return this.width;
+  }
+
+  /**
+   * @return Requested height
+   */
+  public int getHeight() {
+    return this.height;
+  }
+
+  /**
+   * @return Crop dimension or null if no cropping requested
+   */
+  public CropDimension getCropDimension() {
+    return this.cropDimension;
+  }
+
+  /**
+   * @param selectors Request selectors
+   * @return Parsed selector or null if no valid width/height given
+   */
+  public static ImageFileServletSelector parse(String[] selectors) {
+
+    // check for image scaling parameters
+    int width = 0;
+    int height = 0;
+    if (selectors.length >= 3) {
+      width = NumberUtils.toInt(selectors[1]);
+      height = NumberUtils.toInt(selectors[2]);
+    }
+    if (width <= 0 || height <= 0) {
+      return null;
+    }
+
+    // check for cropping parameter
+    CropDimension cropDimension = null;
+    if (selectors.length >= 4) {
+      String cropString = selectors[3];
+      try {
+        cropDimension = CropDimension.fromCropString(cropString);
+      }
+      catch (IllegalArgumentException ex) {
+        // ignore
+      }
+    }
+
+    return new ImageFileServletSelector(width, height, cropDimension);
+  }
+
+}
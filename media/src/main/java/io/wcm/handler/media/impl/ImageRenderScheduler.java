@@ -0,0 +1,45 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.media.impl;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * Schedules image renderings of {@link ImageFileServlet}: Identical renderings running at the same time are
+ * executed only once and share their result, and the number of concurrent renderings is limited.
+ */
+@ProviderType
+public interface ImageRenderScheduler {
+
+  /**
+   * Render image or wait for an identical rendering already in progress.
+   * @param key Identifies the rendered image. If null the rendering is not coalesced with other renderings.
+   * @param renderer Renders the image
+   * @return Binary data of rendered image or null if rendering was not possible
+   * @throws IOException if rendering failed
+   * @throws RejectedExecutionException if no rendering slot was available in time
+   */
+  byte[] render(ImageFileCacheKey key, Callable<byte[]> renderer) throws IOException;
+
+}
@@ -0,0 +1,218 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.media.impl;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+/**
+ * Default implementation of {@link ImageRenderScheduler}.
+ * Metrics are exposed via JMX.
+ */
+@Component(service = ImageRenderScheduler.class, immediate = true, property = {
+    "jmx.objectname=io.wcm.handler.media:type=ImageRenderScheduler"
+})
+@Designate(ocd = ImageRenderSchedulerImpl.Config.class)
+public final class ImageRenderSchedulerImpl implements ImageRenderScheduler, ImageRenderSchedulerMXBean {
+
+  @ObjectClassDefinition(name = "wcm.io Media Handler Image Render Scheduler",
+      description = "Limits and coalesces concurrent image renderings of the image file servlet.")
+  static @interface Config {
+
+    @AttributeDefinition(name = "Max. concurrent renders",
+        description = "Max. number of images rendered at the same time. If 0 the number of available processors is used.")
+    int maxConcurrentRenders() default 0;
+
+    @AttributeDefinition(name = "Queue timeout (ms)",
+        description = "Max. time a rendering waits for a free rendering slot before it is rejected.")
+    long queueTimeoutMs() default 30000;
+
+  }
+
+  private int maxConcurrentRenders;
+  private long queueTimeoutMs;
+  private Semaphore semaphore;
+
+  private final ConcurrentMap<ImageFileCacheKey, CompletableFuture<byte[]>> inFlight = new ConcurrentHashMap<>();
+
+  private final AtomicInteger activeRenders = new AtomicInteger();
+  private final AtomicInteger queuedRenders = new AtomicInteger();
+  private final AtomicLong renderCount = new AtomicLong();
+  private final AtomicLong coalescedCount = new AtomicLong();
+  private final AtomicLong rejectedCount = new AtomicLong();
+  private final AtomicLong totalQueueTimeMs = new AtomicLong();
+  private final AtomicLong maxQueueTimeMs = new AtomicLong();
+
+  @Activate
+  private void activate(Config config) {
+    maxConcurrentRenders = config.maxConcurrentRenders() > 0
+        ? config.maxConcurrentRenders()
+        : Runtime.getRuntime().availableProcessors();
+    queueTimeoutMs = config.queueTimeoutMs();
+    semaphore = new Semaphore(maxConcurrentRenders, true);
+  }
+
+  @Override
+  public byte[] render(ImageFileCacheKey key, Callable<byte[]> renderer) throws IOException {
+    if (key == null) {
+      return renderWithPermit(renderer);
+    }
+
+    // join identical rendering already in progress
+    CompletableFuture<byte[]> future = new CompletableFuture<>();
+    CompletableFuture<byte[]> existing = inFlight.putIfAbsent(key, future);
+    if (existing != null) {
+      coalescedCount.incrementAndGet();
+      return await(existing);
+    }
+
+    try {
+      byte[] result = renderWithPermit(renderer);
+      future.complete(result);
+      return result;
+    }
+    catch (Throwable ex) {
+      // make sure waiting requests are released in any case
+      future.completeExceptionally(ex);
+      throw ex;
+    }
+    finally {
+      inFlight.remove(key, future);
+    }
+  }
+
+  private byte[] renderWithPermit(Callable<byte[]> renderer) throws IOException {
+    long queueStart = System.currentTimeMillis();
+    queuedRenders.incrementAndGet();
+    boolean acquired;
+    try {
+      acquired = semaphore.tryAcquire(queueTimeoutMs, TimeUnit.MILLISECONDS);
+    }
+    catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for image rendering slot.", ex);
+    }
+    finally {
+      queuedRenders.decrementAndGet();
+      long queueTime = System.currentTimeMillis() - queueStart;
+      totalQueueTimeMs.addAndGet(queueTime);
+      maxQueueTimeMs.accumulateAndGet(queueTime, Math::max);
+    }
+    if (!acquired) {
+      rejectedCount.incrementAndGet();
+      throw new RejectedExecutionException("No image rendering slot available within " + queueTimeoutMs + "ms.");
+    }
+
+    activeRenders.incrementAndGet();
+    try {
+      renderCount.incrementAndGet();
+      return renderer.call();
+    }
+    catch (IOException | RuntimeException ex) {
+      throw ex;
+    }
+    catch (Exception ex) {
+      throw new IOException("Image rendering failed.", ex);
+    }
+    finally {
+      activeRenders.decrementAndGet();
+      semaphore.release();
+    }
+  }
+
+  private static byte[] await(CompletableFuture<byte[]> future) throws IOException {
+    try {
+      return future.get();
+    }
+    catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for image rendering.", ex);
+    }
+    catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException)cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException)cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error)cause;
+      }
+      throw new IOException("Image rendering failed.", cause);
+    }
+  }
+
+  @Override
+  public int getMaxConcurrentRenders() {
+    return maxConcurrentRenders;
+  }
+
+  @Override
+  public int getActiveRenders() {
+    return activeRenders.get();
+  }
+
+  @Override
+  public int getQueuedRenders() {
+    return queuedRenders.get();
+  }
+
+  @Override
+  public long getRenderCount() {
+    return renderCount.get();
+  }
+
+  @Override
+  public long getCoalescedCount() {
+    return coalescedCount.get();
+  }
+
+  @Override
+  public long getRejectedCount() {
+    return rejectedCount.get();
+  }
+
+  @Override
+  public long getTotalQueueTimeMs() {
+    return totalQueueTimeMs.get();
+  }
+
+  @Override
+  public long getMaxQueueTimeMs() {
+    return maxQueueTimeMs.get();
+  }
+
+}
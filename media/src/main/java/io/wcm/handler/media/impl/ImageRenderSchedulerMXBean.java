@@ -0,0 +1,67 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.media.impl;
+
+/**
+ * JMX metrics for {@link ImageRenderScheduler}.
+ */
+public interface ImageRenderSchedulerMXBean {
+
+  /**
+   * @return Max. number of concurrent renderings
+   */
+  int getMaxConcurrentRenders();
+
+  /**
+   * @return Number of renderings currently running
+   */
+  int getActiveRenders();
+
+  /**
+   * @return Number of renderings currently waiting for a free rendering slot
+   */
+  int getQueuedRenders();
+
+  /**
+   * @return Number of renderings executed
+   */
+  long getRenderCount();
+
+  /**
+   * @return Number of requests that shared the result of an identical rendering in progress
+   */
+  long getCoalescedCount();
+
+  /**
+   * @return Number of renderings rejected because no rendering slot was available in time
+   */
+  long getRejectedCount();
+
+  /**
+   * @return Accumulated time renderings waited for a free rendering slot in milliseconds
+   */
+  long getTotalQueueTimeMs();
+
+  /**
+   * @return Max. time a rendering waited for a free rendering slot in milliseconds
+   */
+  long getMaxQueueTimeMs();
+
+}
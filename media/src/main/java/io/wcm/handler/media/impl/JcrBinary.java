@@ -19,6 +19,10 @@
  */
 package io.wcm.handler.media.impl;
 
+import javax.jcr.Binary;
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+
 import org.apache.commons.lang3.StringUtils;
 import org.apache.sling.api.resource.Resource;
 import org.osgi.annotation.versioning.ProviderType;
@@ -77,6 +81,63 @@ public final class JcrBinary {
     return null;
   }
 
+  /**
+   * Get length of the binary data stored in the referenced nt:file or nt:resource node.
+   * The length is read from the resource metadata or the JCR property definition, the binary data itself is not read.
+   * @param resource Resource pointing to JCR node with primary type nt:file or nt:resource
+   * @return Length in bytes or -1 if the length is unknown or if node is not of type nt:resource or nt:file
+   */
+  public static long getDataLength(Resource resource) {
+    if (isNtResource(resource)) {
+      long contentLength = resource.getResourceMetadata().getContentLength();
+      if (contentLength >= 0) {
+        return contentLength;
+      }
+      Node node = resource.adaptTo(Node.class);
+      if (node != null) {
+        try {
+          if (node.hasProperty(JcrConstants.JCR_DATA)) {
+            return node.getProperty(JcrConstants.JCR_DATA).getLength();
+          }
+        }
+        catch (RepositoryException ex) {
+          // ignore - length is unknown
+        }
+      }
+    }
+    else if (isNtFile(resource)) {
+      return getDataLength(resource.getChild(JcrConstants.JCR_CONTENT));
+    }
+    return -1;
+  }
+
+  /**
+   * Get binary value stored in the referenced nt:file or nt:resource node. The binary value supports reading
+   * from arbitrary positions without reading the data before.
+   * @param resource Resource pointing to JCR node with primary type nt:file or nt:resource
+   * @return Binary value or null if the resource is not backed by a JCR node with binary data.
+   *         The caller has to dispose the binary value after use.
+   */
+  public static Binary getBinary(Resource resource) {
+    if (isNtResource(resource)) {
+      Node node = resource.adaptTo(Node.class);
+      if (node != null) {
+        try {
+          if (node.hasProperty(JcrConstants.JCR_DATA)) {
+            return node.getProperty(JcrConstants.JCR_DATA).getBinary();
+          }
+        }
+        catch (RepositoryException ex) {
+          // ignore - binary is not available
+        }
+      }
+    }
+    else if (isNtFile(resource)) {
+      return getBinary(resource.getChild(JcrConstants.JCR_CONTENT));
+    }
+    return null;
+  }
+
   /**
    * Checks if the given resource is a node with the given node type name
    * @param resource Resource
@@ -194,9 +194,12 @@ final class MediaBuilderImpl implements MediaBuilder {
 
   @Override
   public Media build() {
-    MediaRequest request = new MediaRequest(this.resource, this.mediaRef, this.mediaArgs,
+    return mediaHandler.processRequest(buildRequest(), false);
+  }
+
+  private MediaRequest buildRequest() {
+    return new MediaRequest(this.resource, this.mediaRef, this.mediaArgs,
         this.refProperty, this.cropProperty);
-    return mediaHandler.processRequest(request);
   }
 
   @Override
@@ -211,7 +214,7 @@ final class MediaBuilderImpl implements MediaBuilder {
 
   @Override
   public String buildUrl() {
-    return build().getUrl();
+    return mediaHandler.processRequest(buildRequest(), true).getUrl();
   }
 
 }
@@ -21,6 +21,8 @@ package io.wcm.handler.media.impl;
 
 import javax.servlet.Servlet;
 
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.servlets.HttpConstants;
 import org.osgi.service.component.annotations.Component;
 
@@ -29,6 +31,7 @@ import com.day.cq.commons.jcr.JcrConstants;
 /**
  * Stream binary data stored in a nt:file or nt:resource node.
  * Optional support for Content-Disposition header ("download_attachment").
+ * Supports partial content requests via HTTP "Range" header.
  */
 @Component(service = Servlet.class, immediate = true, property = {
     "sling.servlet.extensions=" + MediaFileServlet.EXTENSION,
@@ -50,4 +53,9 @@ public final class MediaFileServlet extends AbstractMediaFileServlet {
    */
   public static final String EXTENSION = "file";
 
+  @Override
+  protected boolean isRangeRequestSupported(Resource resource, SlingHttpServletRequest request) {
+    return true;
+  }
+
 }
@@ -20,16 +20,26 @@
 package io.wcm.handler.media.impl;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import org.apache.commons.lang3.ArrayUtils;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.adapter.Adaptable;
 import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.caconfig.resource.ConfigurationResourceResolver;
 import org.apache.sling.models.annotations.Model;
+import org.apache.sling.models.annotations.injectorspecific.InjectionStrategy;
+import org.apache.sling.models.annotations.injectorspecific.OSGiService;
 import org.apache.sling.models.annotations.injectorspecific.Self;
+import org.apache.sling.models.annotations.injectorspecific.SlingObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.day.cq.wcm.api.WCMMode;
 import com.google.common.collect.ImmutableList;
 
 import io.wcm.handler.commons.dom.HtmlElement;
@@ -46,6 +56,7 @@ import io.wcm.handler.media.spi.MediaMarkupBuilder;
 import io.wcm.handler.media.spi.MediaProcessor;
 import io.wcm.handler.media.spi.MediaSource;
 import io.wcm.sling.commons.adapter.AdaptTo;
+import io.wcm.sling.models.annotations.AemObject;
 
 /**
  * Default Implementation of a {@link MediaHandler}.
@@ -61,6 +72,18 @@ public final class MediaHandlerImpl implements MediaHandler {
   private MediaHandlerConfig mediaHandlerConfig;
   @Self
   private MediaFormatHandler mediaFormatHandler;
+  @SlingObject
+  private ResourceResolver resourceResolver;
+  @SlingObject(injectionStrategy = InjectionStrategy.OPTIONAL)
+  private Resource currentResource;
+  @SlingObject(injectionStrategy = InjectionStrategy.OPTIONAL)
+  private SlingHttpServletRequest request;
+  @AemObject(injectionStrategy = InjectionStrategy.OPTIONAL)
+  private WCMMode wcmMode;
+  @OSGiService(injectionStrategy = InjectionStrategy.OPTIONAL)
+  private MediaResolutionCache mediaResolutionCache;
+  @OSGiService(injectionStrategy = InjectionStrategy.OPTIONAL)
+  private ConfigurationResourceResolver configurationResourceResolver;
 
   private static final Logger log = LoggerFactory.getLogger(MediaHandlerImpl.class);
 
@@ -99,12 +122,131 @@ public final class MediaHandlerImpl implements MediaHandler {
     return new MediaBuilderImpl(mediaRequest, this);
   }
 
+  @Override
+  public List<Media> build(List<MediaRequest> mediaRequests) {
+    ResolveContext resolveContext = new ResolveContext(true);
+    List<Media> result = new ArrayList<>(mediaRequests.size());
+    Map<String, Media> resolvedMedia = new HashMap<>();
+    for (MediaRequest mediaRequest : mediaRequests) {
+      if (mediaRequest == null) {
+        throw new IllegalArgumentException("Media request is null.");
+      }
+      // clone media args to make sure the original object is not modified
+      MediaRequest request = new MediaRequest(mediaRequest.getResource(), mediaRequest.getMediaRef(),
+          mediaRequest.getMediaArgs().clone(), mediaRequest.getRefProperty(), mediaRequest.getCropProperty());
+
+      // identical media requests are resolved only once
+      String key = MediaResolutionCacheKey.build(request, "", mediaFormatHandler);
+      Media media = key != null ? resolvedMedia.get(key) : null;
+      if (media != null) {
+        media = copyOf(media, request);
+      }
+      else {
+        media = processRequest(request, false, resolveContext);
+        // media request replaced by a processor is not reused
+        if (key != null && media.getMediaRequest() == request) {
+          resolvedMedia.put(key, media);
+        }
+      }
+      result.add(media);
+    }
+    return result;
+  }
+
+  /**
+   * Copy media resolved for an identical media request.
+   * @param media Resolved media
+   * @param mediaRequest Identical media request
+   * @return Media with the same resolving result
+   */
+  private static Media copyOf(Media media, MediaRequest mediaRequest) {
+    // media args contain e.g. the resolved media formats
+    MediaRequest request = new MediaRequest(mediaRequest.getResource(), mediaRequest.getMediaRef(),
+        media.getMediaRequest().getMediaArgs().clone(), mediaRequest.getRefProperty(), mediaRequest.getCropProperty());
+    Media copy = new Media(media.getMediaSource(), request);
+    copy.setUrl(media.getUrl());
+    copy.setElement(media.getElement() != null ? (HtmlElement<?>)media.getElement().clone() : null);
+    copy.setAsset(media.getAsset());
+    copy.setRenditions(new ArrayList<>(media.getRenditions()));
+    copy.setCropDimension(media.getCropDimension());
+    copy.setMediaInvalidReason(media.getMediaInvalidReason());
+    return copy;
+  }
+
+  /**
+   * Resolves the media request, or returns the result from the media resolution cache if enabled.
+   * @param mediaRequest Media request
+   * @param urlOnly If true only the URL is resolved: no markup is generated and processors not affecting the URL
+   *          are skipped
+   * @return Media metadata (never null)
+   */
+  Media processRequest(final MediaRequest mediaRequest, final boolean urlOnly) {
+    return processRequest(mediaRequest, urlOnly, new ResolveContext(false));
+  }
+
+  private Media processRequest(final MediaRequest mediaRequest, final boolean urlOnly,
+      final ResolveContext resolveContext) {
+    String cacheKey = getCacheKey(mediaRequest);
+    if (cacheKey == null) {
+      return resolveMedia(mediaRequest, urlOnly, resolveContext);
+    }
+
+    MediaResolutionCacheEntry entry = mediaResolutionCache.get(cacheKey, resourceResolver);
+    if (entry != null) {
+      MediaSource mediaSource = null;
+      if (entry.getMediaSourceClass() != null) {
+        mediaSource = resolveContext.get(entry.getMediaSourceClass());
+      }
+      return entry.toMedia(mediaSource, mediaRequest, () -> resolveMedia(mediaRequest, false, resolveContext));
+    }
+
+    Media media = resolveMedia(mediaRequest, urlOnly, resolveContext);
+    // media request replaced by a processor cannot be restored from cache, URL-only results lack the markup
+    if (!urlOnly && media.getMediaRequest() == mediaRequest) {
+      MediaResolutionCacheEntry newEntry = MediaResolutionCacheEntry.create(media, resourceResolver);
+      if (newEntry != null) {
+        mediaResolutionCache.put(cacheKey, newEntry);
+      }
+    }
+    return media;
+  }
+
+  /**
+   * Builds key for media resolution cache.
+   * @param mediaRequest Media request
+   * @return Cache key or null if media request should not be cached
+   */
+  private String getCacheKey(MediaRequest mediaRequest) {
+    if (mediaResolutionCache == null || !mediaResolutionCache.isEnabled()
+        || configurationResourceResolver == null || currentResource == null) {
+      return null;
+    }
+    // markup in author modes contains edit-mode specific elements
+    if (wcmMode != null && wcmMode != WCMMode.DISABLED) {
+      return null;
+    }
+    // URLs depend on the configuration context, and may depend on host and selectors (integrator mode) of the request
+    StringBuilder context = new StringBuilder()
+        .append(mediaHandlerConfig.getClass().getName())
+        .append('|').append(configurationResourceResolver.getContextPath(currentResource));
+    if (request != null) {
+      context.append('|').append(request.getScheme())
+          .append("://").append(request.getServerName())
+          .append(':').append(request.getServerPort())
+          .append('|').append(request.getRequestPathInfo().getSelectorString());
+    }
+    return MediaResolutionCacheKey.build(mediaRequest, context.toString(), mediaFormatHandler);
+  }
+
   /**
    * Resolves the media request
    * @param mediaRequest Media request
+   * @param urlOnly Skip markup builders and processors not affecting the URL
+   * @param resolveContext Resolve context
    * @return Media metadata (never null)
    */
-  Media processRequest(final MediaRequest mediaRequest) {
+  private Media resolveMedia(final MediaRequest mediaRequest, final boolean urlOnly,
+      final ResolveContext resolveContext) {
 
     // detect media source
     MediaSource mediaSource = null;
@@ -113,7 +255,7 @@ public final class MediaHandlerImpl implements MediaHandler {
       throw new RuntimeException("No media sources defined.");
     }
     for (Class<? extends MediaSource> candidateMediaSourceClass : mediaTypes) {
-      MediaSource candidateMediaSource = AdaptTo.notNull(adaptable, candidateMediaSourceClass);
+      MediaSource candidateMediaSource = resolveContext.get(candidateMediaSourceClass);
       if (candidateMediaSource.accepts(mediaRequest)) {
         mediaSource = candidateMediaSource;
         break;
@@ -122,7 +264,7 @@ public final class MediaHandlerImpl implements MediaHandler {
     Media media = new Media(mediaSource, mediaRequest);
 
     // resolve media format names to media formats
-    if (!resolveMediaFormats(mediaRequest.getMediaArgs())) {
+    if (!resolveMediaFormats(mediaRequest.getMediaArgs(), resolveContext)) {
       media.setMediaInvalidReason(MediaInvalidReason.INVALID_MEDIA_FORMAT);
       return media;
     }
@@ -137,7 +279,10 @@ public final class MediaHandlerImpl implements MediaHandler {
     List<Class<? extends MediaProcessor>> mediaPreProcessors = mediaHandlerConfig.getPreProcessors();
     if (mediaPreProcessors != null) {
       for (Class<? extends MediaProcessor> processorClass : mediaPreProcessors) {
-        MediaProcessor processor = AdaptTo.notNull(adaptable, processorClass);
+        MediaProcessor processor = resolveContext.get(processorClass);
+        if (urlOnly && !processor.affectsUrl()) {
+          continue;
+        }
         media = processor.process(media);
         if (media == null) {
           throw new RuntimeException("MediaPreProcessor '" + processor + "' returned null, request: " + mediaRequest);
@@ -156,11 +301,11 @@ public final class MediaHandlerImpl implements MediaHandler {
       media.setMediaInvalidReason(MediaInvalidReason.NO_MEDIA_SOURCE);
     }
 
-    // generate markup (if markup builder is available) - first accepting wins
+    // generate markup (if markup builder is available and not only URL requested) - first accepting wins
     List<Class<? extends MediaMarkupBuilder>> mediaMarkupBuilders = mediaHandlerConfig.getMarkupBuilders();
-    if (mediaMarkupBuilders != null) {
+    if (mediaMarkupBuilders != null && !urlOnly) {
       for (Class<? extends MediaMarkupBuilder> mediaMarkupBuilderClass : mediaMarkupBuilders) {
-        MediaMarkupBuilder mediaMarkupBuilder = AdaptTo.notNull(adaptable, mediaMarkupBuilderClass);
+        MediaMarkupBuilder mediaMarkupBuilder = resolveContext.get(mediaMarkupBuilderClass);
         if (mediaMarkupBuilder.accepts(media)) {
           media.setElement(mediaMarkupBuilder.build(media));
           break;
@@ -172,7 +317,10 @@ public final class MediaHandlerImpl implements MediaHandler {
     List<Class<? extends MediaProcessor>> mediaPostProcessors = mediaHandlerConfig.getPostProcessors();
     if (mediaPostProcessors != null) {
       for (Class<? extends MediaProcessor> processorClass : mediaPostProcessors) {
-        MediaProcessor processor = AdaptTo.notNull(adaptable, processorClass);
+        MediaProcessor processor = resolveContext.get(processorClass);
+        if (urlOnly && !processor.affectsUrl()) {
+          continue;
+        }
         media = processor.process(media);
         if (media == null) {
           throw new RuntimeException("MediaPostProcessor '" + processor + "' returned null, request: " + mediaRequest);
@@ -209,9 +357,10 @@ public final class MediaHandlerImpl implements MediaHandler {
    * Resolve media format names to media formats so all downstream logic has only to handle the resolved media formats.
    * If resolving fails an exception is thrown.
    * @param mediaArgs Media args
+   * @param resolveContext Resolve context
    * @return true if resolving was successful.
    */
-  private boolean resolveMediaFormats(MediaArgs mediaArgs) {
+  private boolean resolveMediaFormats(MediaArgs mediaArgs, ResolveContext resolveContext) {
     // resolved media formats already set? done.
     if (mediaArgs.getMediaFormats() != null) {
       return true;
@@ -221,16 +370,19 @@ public final class MediaHandlerImpl implements MediaHandler {
       return true;
     }
     String[] mediaFormatNames = mediaArgs.getMediaFormatNames();
-    MediaFormat[] mediaFormats = new MediaFormat[mediaFormatNames.length];
-    boolean resolutionSuccessful = true;
-    for (int i = 0; i < mediaFormatNames.length; i++) {
-      mediaFormats[i] = mediaFormatHandler.getMediaFormat(mediaFormatNames[i]);
-      if (mediaFormats[i] == null) {
-        log.warn("Media format name '" + mediaFormatNames[i] + "' is invalid.");
-        resolutionSuccessful = false;
+    MediaFormat[] mediaFormats = resolveContext.getMediaFormats(mediaFormatNames);
+    if (mediaFormats == null) {
+      mediaFormats = new MediaFormat[mediaFormatNames.length];
+      for (int i = 0; i < mediaFormatNames.length; i++) {
+        mediaFormats[i] = mediaFormatHandler.getMediaFormat(mediaFormatNames[i]);
+        if (mediaFormats[i] == null) {
+          log.warn("Media format name '" + mediaFormatNames[i] + "' is invalid.");
+        }
       }
+      resolveContext.putMediaFormats(mediaFormatNames, mediaFormats);
     }
-    mediaArgs.mediaFormats(mediaFormats);
+    boolean resolutionSuccessful = !ArrayUtils.contains(mediaFormats, null);
+    mediaArgs.mediaFormats(mediaFormats.clone());
     mediaArgs.mediaFormatNames((String[])null);
     return resolutionSuccessful;
   }
@@ -266,4 +418,40 @@ public final class MediaHandlerImpl implements MediaHandler {
     }
   }
 
+
+
+  /**
+   * Holds the media sources, processors and markup builders used for resolving, and the media formats resolved
+   * by name. If shared they are reused for all media requests resolved with this context, e.g. in a batch.
+   */
+  private final class ResolveContext {
+
+    private final Map<Class<?>, Object> instances;
+    private final Map<List<String>, MediaFormat[]> mediaFormatsByNames;
+
+    ResolveContext(boolean shared) {
+      this.instances = shared ? new HashMap<>() : null;
+      this.mediaFormatsByNames = shared ? new HashMap<>() : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> T get(Class<T> type) {
+      if (instances == null) {
+        return AdaptTo.notNull(adaptable, type);
+      }
+      return (T)instances.computeIfAbsent(type, key -> AdaptTo.notNull(adaptable, key));
+    }
+
+    MediaFormat[] getMediaFormats(String[] mediaFormatNames) {
+      return mediaFormatsByNames != null ? mediaFormatsByNames.get(Arrays.asList(mediaFormatNames)) : null;
+    }
+
+    void putMediaFormats(String[] mediaFormatNames, MediaFormat[] mediaFormats) {
+      if (mediaFormatsByNames != null) {
+        mediaFormatsByNames.put(Arrays.asList(mediaFormatNames.clone()), mediaFormats);
+      }
+    }
+
+  }
+
 }
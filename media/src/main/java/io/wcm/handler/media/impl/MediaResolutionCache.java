@@ -0,0 +1,58 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.media.impl;
+
+import org.apache.sling.api.resource.ResourceResolver;
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * Caches the result of media resolutions by {@link MediaHandlerImpl} across requests.
+ */
+@ProviderType
+public interface MediaResolutionCache {
+
+  /**
+   * @return true if caching is enabled
+   */
+  boolean isEnabled();
+
+  /**
+   * Get cached resolution result. Entries pointing to an asset that was modified or removed since they were cached
+   * are removed and not returned.
+   * @param key Cache key
+   * @param resourceResolver Resource resolver to validate the modification date of the referenced asset
+   * @return Cache entry or null if not cached
+   */
+  MediaResolutionCacheEntry get(String key, ResourceResolver resourceResolver);
+
+  /**
+   * Store resolution result in cache.
+   * @param key Cache key
+   * @param entry Cache entry
+   */
+  void put(String key, MediaResolutionCacheEntry entry);
+
+  /**
+   * Removes all cache entries that reference the given path, a parent or a child of it.
+   * @param path Content path
+   */
+  void invalidate(String path);
+
+}
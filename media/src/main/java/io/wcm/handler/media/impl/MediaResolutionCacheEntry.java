@@ -0,0 +1,461 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.media.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ValueMap;
+import org.osgi.annotation.versioning.ProviderType;
+
+import com.day.cq.commons.jcr.JcrConstants;
+
+import io.wcm.handler.commons.dom.HtmlElement;
+import io.wcm.handler.media.Asset;
+import io.wcm.handler.media.CropDimension;
+import io.wcm.handler.media.Media;
+import io.wcm.handler.media.MediaArgs;
+import io.wcm.handler.media.MediaInvalidReason;
+import io.wcm.handler.media.MediaRequest;
+import io.wcm.handler.media.Rendition;
+import io.wcm.handler.media.format.MediaFormat;
+import io.wcm.handler.media.spi.MediaSource;
+import io.wcm.wcm.commons.caching.ModificationDate;
+
+/**
+ * Immutable snapshot of a resolved {@link Media} that is shared across requests by {@link MediaResolutionCache}.
+ * <p>
+ * Asset and renditions are stored as snapshots of their metadata. Operations that require access to the repository
+ * (e.g. resolving other renditions of the asset or adapting to a resource) resolve the media request again
+ * on first access.
+ * </p>
+ */
+@ProviderType
+public final class MediaResolutionCacheEntry {
+
+  private final Class<? extends MediaSource> mediaSourceClass;
+  private final MediaFormat[] mediaFormats;
+  private final String url;
+  private final HtmlElement<?> element;
+  private final CropDimension cropDimension;
+  private final MediaInvalidReason mediaInvalidReason;
+  private final AssetSnapshot asset;
+  private final List<RenditionSnapshot> renditions;
+  private final String assetPath;
+  private final long assetLastModified;
+  private final String[] referencedPaths;
+
+  private MediaResolutionCacheEntry(Media media, String assetPath, long assetLastModified) {
+    MediaRequest mediaRequest = media.getMediaRequest();
+    this.mediaSourceClass = media.getMediaSource() != null ? media.getMediaSource().getClass() : null;
+    this.mediaFormats = ArrayUtils.clone(mediaRequest.getMediaArgs().getMediaFormats());
+    this.url = media.getUrl();
+    this.element = media.getElement() != null ? (HtmlElement<?>)media.getElement().clone() : null;
+    this.cropDimension = media.getCropDimension();
+    this.mediaInvalidReason = media.getMediaInvalidReason();
+    this.asset = media.getAsset() != null ? new AssetSnapshot(media.getAsset()) : null;
+    this.renditions = new ArrayList<>();
+    int index = 0;
+    for (Rendition rendition : media.getRenditions()) {
+      this.renditions.add(new RenditionSnapshot(rendition, index++));
+    }
+    this.assetPath = assetPath;
+    this.assetLastModified = assetLastModified;
+    this.referencedPaths = new String[] {
+        mediaRequest.getMediaRef(),
+        mediaRequest.getResource() != null ? mediaRequest.getResource().getPath() : null,
+        assetPath
+    };
+  }
+
+  /**
+   * Create cache entry for resolved media.
+   * @param media Resolved media
+   * @param resourceResolver Resource resolver
+   * @return Cache entry or null if the media cannot be cached
+   */
+  static MediaResolutionCacheEntry create(Media media, ResourceResolver resourceResolver) {
+    String assetPath = null;
+    long assetLastModified = 0L;
+    if (media.getAsset() != null) {
+      assetPath = media.getAsset().getPath();
+      Resource assetResource = assetPath != null ? resourceResolver.getResource(assetPath) : null;
+      if (assetResource == null) {
+        // unable to detect changes of the asset
+        return null;
+      }
+      assetLastModified = getModificationTime(assetResource);
+    }
+    return new MediaResolutionCacheEntry(media, assetPath, assetLastModified);
+  }
+
+  /**
+   * @param resource Asset resource
+   * @return Last modification time of asset content
+   */
+  private static long getModificationTime(Resource resource) {
+    Resource contentResource = resource.getChild(JcrConstants.JCR_CONTENT);
+    Date lastModified = ModificationDate.get(contentResource != null ? contentResource : resource);
+    return lastModified != null ? lastModified.getTime() : 0L;
+  }
+
+  /**
+   * @return Class of media source that resolved the media, or null if no media source accepted the media request
+   */
+  public Class<? extends MediaSource> getMediaSourceClass() {
+    return this.mediaSourceClass;
+  }
+
+  /**
+   * Checks if the asset referenced by this entry was not changed or removed since the entry was created.
+   * @param resourceResolver Resource resolver
+   * @return true if entry is still valid
+   */
+  boolean isValid(ResourceResolver resourceResolver) {
+    if (this.assetPath == null) {
+      return true;
+    }
+    Resource assetResource = resourceResolver.getResource(this.assetPath);
+    return assetResource != null && getModificationTime(assetResource) == this.assetLastModified;
+  }
+
+  /**
+   * @return Paths of media reference, resource and asset of this entry (without null values)
+   */
+  List<String> getReferencedPaths() {
+    List<String> paths = new ArrayList<>(this.referencedPaths.length);
+    for (String referencedPath : this.referencedPaths) {
+      if (referencedPath != null && !paths.contains(referencedPath)) {
+        paths.add(referencedPath);
+      }
+    }
+    return paths;
+  }
+
+  /**
+   * Create media from this cache entry.
+   * @param mediaSource Media source instance of current request
+   * @param mediaRequest Media request of current request. The resolved media formats are applied to its media args.
+   * @param liveMediaSupplier Resolves the media request without cache, used when repository access is required
+   * @return Media
+   */
+  Media toMedia(MediaSource mediaSource, MediaRequest mediaRequest, Supplier<Media> liveMediaSupplier) {
+    MediaArgs mediaArgs = mediaRequest.getMediaArgs();
+    if (this.mediaFormats != null) {
+      mediaArgs.mediaFormats(this.mediaFormats.clone());
+      mediaArgs.mediaFormatNames((String[])null);
+    }
+
+    LiveMedia liveMedia = new LiveMedia(liveMediaSupplier);
+    Media media = new Media(mediaSource, mediaRequest);
+    media.setUrl(this.url);
+    media.setElement(this.element != null ? (HtmlElement<?>)this.element.clone() : null);
+    media.setCropDimension(this.cropDimension);
+    media.setMediaInvalidReason(this.mediaInvalidReason);
+    if (this.asset != null) {
+      media.setAsset(new CachedAsset(this.asset, liveMedia));
+    }
+    if (!this.renditions.isEmpty()) {
+      List<Rendition> mediaRenditions = new ArrayList<>(this.renditions.size());
+      for (RenditionSnapshot rendition : this.renditions) {
+        mediaRenditions.add(new CachedRendition(rendition, liveMedia));
+      }
+      media.setRenditions(mediaRenditions);
+    }
+    return media;
+  }
+
+
+  /**
+   * Resolves the media request without cache on first access.
+   */
+  private static final class LiveMedia {
+
+    private final Supplier<Media> supplier;
+    private Media media;
+
+    LiveMedia(Supplier<Media> supplier) {
+      this.supplier = supplier;
+    }
+
+    Media get() {
+      if (this.media == null) {
+        this.media = supplier.get();
+      }
+      return this.media;
+    }
+
+    Asset getAsset() {
+      return get().getAsset();
+    }
+
+    Rendition getRendition(int index) {
+      Collection<Rendition> liveRenditions = get().getRenditions();
+      Iterator<Rendition> iterator = liveRenditions.iterator();
+      for (int i = 0; i < index && iterator.hasNext(); i++) {
+        iterator.next();
+      }
+      return iterator.hasNext() ? iterator.next() : null;
+    }
+
+  }
+
+  private static final class AssetSnapshot {
+
+    private final String title;
+    private final String altText;
+    private final String description;
+    private final String path;
+
+    AssetSnapshot(Asset asset) {
+      this.title = asset.getTitle();
+      this.altText = asset.getAltText();
+      this.description = asset.getDescription();
+      this.path = asset.getPath();
+    }
+
+  }
+
+  private static final class RenditionSnapshot {
+
+    private final int index;
+    private final String url;
+    private final String path;
+    private final String fileName;
+    private final String fileExtension;
+    private final long fileSize;
+    private final String mimeType;
+    private final MediaFormat mediaFormat;
+    private final boolean image;
+    private final boolean flash;
+    private final boolean download;
+    private final long width;
+    private final long height;
+    private final Date modificationDate;
+
+    RenditionSnapshot(Rendition rendition, int index) {
+      this.index = index;
+      this.url = rendition.getUrl();
+      this.path = rendition.getPath();
+      this.fileName = rendition.getFileName();
+      this.fileExtension = rendition.getFileExtension();
+      this.fileSize = rendition.getFileSize();
+      this.mimeType = rendition.getMimeType();
+      this.mediaFormat = rendition.getMediaFormat();
+      this.image = rendition.isImage();
+      this.flash = rendition.isFlash();
+      this.download = rendition.isDownload();
+      this.width = rendition.getWidth();
+      this.height = rendition.getHeight();
+      Date date = rendition.getModificationDate();
+      this.modificationDate = date != null ? new Date(date.getTime()) : null;
+    }
+
+  }
+
+  private static final class CachedAsset implements Asset {
+
+    private final AssetSnapshot snapshot;
+    private final LiveMedia liveMedia;
+
+    CachedAsset(AssetSnapshot snapshot, LiveMedia liveMedia) {
+      this.snapshot = snapshot;
+      this.liveMedia = liveMedia;
+    }
+
+    private Asset getLiveAsset() {
+      return liveMedia.getAsset();
+    }
+
+    @Override
+    public String getTitle() {
+      return snapshot.title;
+    }
+
+    @Override
+    public String getAltText() {
+      return snapshot.altText;
+    }
+
+    @Override
+    public String getDescription() {
+      return snapshot.description;
+    }
+
+    @Override
+    public String getPath() {
+      return snapshot.path;
+    }
+
+    @Override
+    public ValueMap getProperties() {
+      Asset liveAsset = getLiveAsset();
+      return liveAsset != null ? liveAsset.getProperties() : ValueMap.EMPTY;
+    }
+
+    @Override
+    public Rendition getDefaultRendition() {
+      Asset liveAsset = getLiveAsset();
+      return liveAsset != null ? liveAsset.getDefaultRendition() : null;
+    }
+
+    @Override
+    public Rendition getRendition(MediaArgs mediaArgs) {
+      Asset liveAsset = getLiveAsset();
+      return liveAsset != null ? liveAsset.getRendition(mediaArgs) : null;
+    }
+
+    @Override
+    public Rendition getImageRendition(MediaArgs mediaArgs) {
+      Asset liveAsset = getLiveAsset();
+      return liveAsset != null ? liveAsset.getImageRendition(mediaArgs) : null;
+    }
+
+    @Override
+    public Rendition getFlashRendition(MediaArgs mediaArgs) {
+      Asset liveAsset = getLiveAsset();
+      return liveAsset != null ? liveAsset.getFlashRendition(mediaArgs) : null;
+    }
+
+    @Override
+    public Rendition getDownloadRendition(MediaArgs mediaArgs) {
+      Asset liveAsset = getLiveAsset();
+      return liveAsset != null ? liveAsset.getDownloadRendition(mediaArgs) : null;
+    }
+
+    @Override
+    public <AdapterType> AdapterType adaptTo(Class<AdapterType> type) {
+      Asset liveAsset = getLiveAsset();
+      return liveAsset != null ? liveAsset.adaptTo(type) : null;
+    }
+
+    @Override
+    public String toString() {
+      return snapshot.path;
+    }
+
+  }
+
+  private static final class CachedRendition implements Rendition {
+
+    private final RenditionSnapshot snapshot;
+    private final LiveMedia liveMedia;
+
+    CachedRendition(RenditionSnapshot snapshot, LiveMedia liveMedia) {
+      this.snapshot = snapshot;
+      this.liveMedia = liveMedia;
+    }
+
+    private Rendition getLiveRendition() {
+      return liveMedia.getRendition(snapshot.index);
+    }
+
+    @Override
+    public String getUrl() {
+      return snapshot.url;
+    }
+
+    @Override
+    public String getPath() {
+      return snapshot.path;
+    }
+
+    @Override
+    public String getFileName() {
+      return snapshot.fileName;
+    }
+
+    @Override
+    public String getFileExtension() {
+      return snapshot.fileExtension;
+    }
+
+    @Override
+    public long getFileSize() {
+      return snapshot.fileSize;
+    }
+
+    @Override
+    public String getMimeType() {
+      return snapshot.mimeType;
+    }
+
+    @Override
+    public MediaFormat getMediaFormat() {
+      return snapshot.mediaFormat;
+    }
+
+    @Override
+    public ValueMap getProperties() {
+      Rendition liveRendition = getLiveRendition();
+      return liveRendition != null ? liveRendition.getProperties() : ValueMap.EMPTY;
+    }
+
+    @Override
+    public boolean isImage() {
+      return snapshot.image;
+    }
+
+    @Override
+    public boolean isFlash() {
+      return snapshot.flash;
+    }
+
+    @Override
+    public boolean isDownload() {
+      return snapshot.download;
+    }
+
+    @Override
+    public long getWidth() {
+      return snapshot.width;
+    }
+
+    @Override
+    public long getHeight() {
+      return snapshot.height;
+    }
+
+    @Override
+    public Date getModificationDate() {
+      return snapshot.modificationDate != null ? new Date(snapshot.modificationDate.getTime()) : null;
+    }
+
+    @Override
+    public <AdapterType> AdapterType adaptTo(Class<AdapterType> type) {
+      Rendition liveRendition = getLiveRendition();
+      return liveRendition != null ? liveRendition.adaptTo(type) : null;
+    }
+
+    @Override
+    public String toString() {
+      return snapshot.path;
+    }
+
+  }
+
+}
@@ -0,0 +1,285 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.media.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.SlingConstants;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventConstants;
+import org.osgi.service.event.EventHandler;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+import com.day.cq.commons.jcr.JcrConstants;
+import com.day.cq.dam.api.DamEvent;
+import com.day.cq.replication.ReplicationAction;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+
+/**
+ * Caches media resolution results in memory. Entries are invalidated by DAM events and replication events
+ * for the referenced asset, media reference or resource, and by resource events inside the content of a DAM asset
+ * (e.g. rendition metadata written asynchronously after the DAM event without changing the asset modification date).
+ * <p>
+ * The cache keys are indexed by the paths referenced by the entries, so invalidating a path only looks up the path,
+ * its parents and its children in the index instead of checking all entries.
+ * </p>
+ */
+@Component(service = { MediaResolutionCache.class, EventHandler.class }, immediate = true, property = {
+    EventConstants.EVENT_TOPIC + "=" + DamEvent.EVENT_TOPIC,
+    EventConstants.EVENT_TOPIC + "=" + ReplicationAction.EVENT_TOPIC,
+    EventConstants.EVENT_TOPIC + "=" + SlingConstants.TOPIC_RESOURCE_ADDED,
+    EventConstants.EVENT_TOPIC + "=" + SlingConstants.TOPIC_RESOURCE_CHANGED,
+    EventConstants.EVENT_TOPIC + "=" + SlingConstants.TOPIC_RESOURCE_REMOVED,
+    EventConstants.EVENT_FILTER + "=(|"
+        + "(" + EventConstants.EVENT_TOPIC + "=" + DamEvent.EVENT_TOPIC + ")"
+        + "(" + EventConstants.EVENT_TOPIC + "=" + ReplicationAction.EVENT_TOPIC + ")"
+        + "(" + SlingConstants.PROPERTY_PATH + "=" + MediaResolutionCacheImpl.DAM_ROOT + "*)"
+        + ")",
+    "jmx.objectname=io.wcm.handler.media:type=MediaResolutionCache"
+})
+@Designate(ocd = MediaResolutionCacheImpl.Config.class)
+public final class MediaResolutionCacheImpl implements MediaResolutionCache, EventHandler, MediaResolutionCacheMXBean {
+
+  @ObjectClassDefinition(name = "wcm.io Media Handler Media Resolution Cache",
+      description = "Caches resolved media (URLs, renditions and markup) across requests. "
+          + "Enable only if all media sources, processors and markup builders of the application "
+          + "produce the same result for the same media reference and media args.")
+  static @interface Config {
+
+    @AttributeDefinition(name = "Enabled", description = "Switch to enable or disable this service.")
+    boolean enabled() default false;
+
+    @AttributeDefinition(name = "Max. size", description = "Max. number of cached media resolutions.")
+    long maxSize() default 10000;
+
+    @AttributeDefinition(name = "Max. age (sec)", description = "Max. time in seconds a media resolution is cached. "
+        + "Covers changes not signaled by DAM or replication events, e.g. of the context-aware configuration.")
+    long maxAgeSec() default 3600;
+
+  }
+
+  private static final String CONF_ROOT = "/conf/";
+  static final String DAM_ROOT = "/content/dam/";
+  private static final String JCR_CONTENT_SEGMENT = "/" + JcrConstants.JCR_CONTENT;
+
+  private boolean enabled;
+  private Cache<String, MediaResolutionCacheEntry> cache;
+
+  // cache keys by referenced path - guarded by itself for modifications
+  private final ConcurrentNavigableMap<String, Set<String>> keysByPath = new ConcurrentSkipListMap<>();
+
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+  private final AtomicLong invalidationCount = new AtomicLong();
+
+  @Activate
+  private void activate(Config config) {
+    enabled = config.enabled();
+    cache = CacheBuilder.newBuilder()
+        .maximumSize(config.maxSize())
+        .expireAfterWrite(config.maxAgeSec(), TimeUnit.SECONDS)
+        .removalListener(this::onRemoval)
+        .build();
+  }
+
+  @Override
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  @Override
+  public MediaResolutionCacheEntry get(String key, ResourceResolver resourceResolver) {
+    if (!enabled) {
+      return null;
+    }
+    MediaResolutionCacheEntry entry = cache.getIfPresent(key);
+    if (entry != null && !entry.isValid(resourceResolver)) {
+      cache.invalidate(key);
+      entry = null;
+    }
+    if (entry != null) {
+      hitCount.incrementAndGet();
+    }
+    else {
+      missCount.incrementAndGet();
+    }
+    return entry;
+  }
+
+  @Override
+  public void put(String key, MediaResolutionCacheEntry entry) {
+    if (enabled) {
+      synchronized (keysByPath) {
+        cache.put(key, entry);
+        for (String path : entry.getReferencedPaths()) {
+          keysByPath.computeIfAbsent(path, p -> ConcurrentHashMap.newKeySet()).add(key);
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes the key of a removed or replaced entry from the index for all paths not referenced by the current entry.
+   */
+  private void onRemoval(RemovalNotification<String, MediaResolutionCacheEntry> notification) {
+    String key = notification.getKey();
+    MediaResolutionCacheEntry removed = notification.getValue();
+    if (key == null || removed == null) {
+      return;
+    }
+    synchronized (keysByPath) {
+      MediaResolutionCacheEntry current = cache.asMap().get(key);
+      List<String> currentPaths = current != null ? current.getReferencedPaths() : null;
+      for (String path : removed.getReferencedPaths()) {
+        if (currentPaths != null && currentPaths.contains(path)) {
+          continue;
+        }
+        Set<String> keys = keysByPath.get(path);
+        if (keys != null) {
+          keys.remove(key);
+          if (keys.isEmpty()) {
+            keysByPath.remove(path);
+          }
+        }
+      }
+    }
+  }
+
+  @Override
+  public void invalidate(String path) {
+    if (StringUtils.isEmpty(path)) {
+      return;
+    }
+    if (StringUtils.startsWith(path, CONF_ROOT)) {
+      // configuration change may affect all media resolutions
+      invalidationCount.addAndGet(cache.size());
+      cache.invalidateAll();
+      return;
+    }
+    for (String key : getKeysReferencing(path)) {
+      if (cache.asMap().remove(key) != null) {
+        invalidationCount.incrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * @param path Content path
+   * @return Keys of all entries referencing the given path, a parent or a child of it
+   */
+  private List<String> getKeysReferencing(String path) {
+    List<String> keys = new ArrayList<>();
+
+    // entries referencing the path itself or a child of it ('0' is the character following '/')
+    addKeys(keys, keysByPath.get(path));
+    for (Set<String> childKeys : keysByPath.subMap(path + "/", path + "0").values()) {
+      addKeys(keys, childKeys);
+    }
+
+    // entries referencing a parent of the path
+    String parentPath = StringUtils.substringBeforeLast(path, "/");
+    while (StringUtils.isNotEmpty(parentPath)) {
+      addKeys(keys, keysByPath.get(parentPath));
+      parentPath = StringUtils.substringBeforeLast(parentPath, "/");
+    }
+
+    return keys;
+  }
+
+  private static void addKeys(List<String> keys, Set<String> keysToAdd) {
+    if (keysToAdd != null) {
+      keys.addAll(keysToAdd);
+    }
+  }
+
+  @Override
+  public void handleEvent(Event event) {
+    if (!enabled) {
+      return;
+    }
+    if (StringUtils.equals(event.getTopic(), DamEvent.EVENT_TOPIC)) {
+      DamEvent damEvent = DamEvent.fromEvent(event);
+      invalidate(damEvent.getAssetPath());
+    }
+    else if (StringUtils.equals(event.getTopic(), ReplicationAction.EVENT_TOPIC)) {
+      ReplicationAction action = ReplicationAction.fromEvent(event);
+      if (action != null && action.getPaths() != null) {
+        for (String path : action.getPaths()) {
+          invalidate(path);
+        }
+      }
+    }
+    else {
+      // resource event for a path inside the content of a DAM asset, e.g. rendition or rendition metadata
+      String path = (String)event.getProperty(SlingConstants.PROPERTY_PATH);
+      if (StringUtils.startsWith(path, DAM_ROOT) && StringUtils.contains(path, JCR_CONTENT_SEGMENT + "/")) {
+        invalidate(StringUtils.substringBefore(path, JCR_CONTENT_SEGMENT + "/"));
+      }
+    }
+  }
+
+  @Override
+  public long getSize() {
+    return cache.size();
+  }
+
+  /**
+   * @return Number of paths in the reverse index
+   */
+  int getIndexedPathCount() {
+    return keysByPath.size();
+  }
+
+  @Override
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  @Override
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  @Override
+  public long getInvalidationCount() {
+    return invalidationCount.get();
+  }
+
+  @Override
+  public void clear() {
+    cache.invalidateAll();
+  }
+
+}
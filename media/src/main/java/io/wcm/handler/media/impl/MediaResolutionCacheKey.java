@@ -0,0 +1,194 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.media.impl;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.sling.api.resource.Resource;
+
+import io.wcm.handler.media.MediaArgs;
+import io.wcm.handler.media.MediaRequest;
+import io.wcm.handler.media.format.MediaFormat;
+import io.wcm.handler.media.format.MediaFormatHandler;
+import io.wcm.wcm.commons.caching.ModificationDate;
+
+/**
+ * Builds keys for {@link MediaResolutionCache} from a media request with a canonical fingerprint of the media args.
+ */
+final class MediaResolutionCacheKey {
+
+  private final StringBuilder key = new StringBuilder();
+
+  private MediaResolutionCacheKey() {
+    // use build method
+  }
+
+  /**
+   * Build cache key.
+   * @param mediaRequest Media request
+   * @param context String identifying the context of the current request, e.g. the configuration context
+   * @param mediaFormatHandler Media format handler
+   * @return Cache key or null if the media request cannot be cached
+   */
+  static String build(MediaRequest mediaRequest, String context, MediaFormatHandler mediaFormatHandler) {
+    MediaResolutionCacheKey builder = new MediaResolutionCacheKey();
+    builder.append(context);
+    builder.append(mediaRequest.getMediaRef());
+    builder.append(mediaRequest.getRefProperty());
+    builder.append(mediaRequest.getCropProperty());
+
+    Resource resource = mediaRequest.getResource();
+    if (resource != null) {
+      builder.append(resource.getPath());
+      Date lastModified = ModificationDate.get(resource);
+      builder.append(lastModified != null ? lastModified.getTime() : 0L);
+      // values not supported in the key (e.g. binary data) are ignored, they are covered by the modification date
+      builder.appendProperties(mediaRequest.getResourceProperties(), false);
+    }
+
+    if (!builder.appendMediaArgs(mediaRequest.getMediaArgs(), mediaFormatHandler)) {
+      return null;
+    }
+    return builder.key.toString();
+  }
+
+  private boolean appendMediaArgs(MediaArgs mediaArgs, MediaFormatHandler mediaFormatHandler) {
+    MediaFormat[] mediaFormats = mediaArgs.getMediaFormats();
+    if (mediaFormats != null) {
+      append(mediaFormats.length);
+      for (MediaFormat mediaFormat : mediaFormats) {
+        // media formats are identified by name - this works only for media formats defined by the application
+        if (mediaFormat != null && mediaFormatHandler.getMediaFormat(mediaFormat.getName()) != mediaFormat) {
+          return false;
+        }
+        append(mediaFormat != null ? mediaFormat.getName() : null);
+      }
+    }
+    else {
+      append(null);
+    }
+    appendArray(mediaArgs.getMediaFormatNames());
+    append(mediaArgs.isMediaFormatsMandatory());
+    appendArray(mediaArgs.getFileExtensions());
+    append(mediaArgs.getUrlMode() != null ? mediaArgs.getUrlMode().getId() : null);
+    append(mediaArgs.getFixedWidth());
+    append(mediaArgs.getFixedHeight());
+    append(mediaArgs.isDownload());
+    append(mediaArgs.isContentDispositionAttachment());
+    append(mediaArgs.getAltText());
+    append(mediaArgs.isDummyImage());
+    append(mediaArgs.getDummyImageUrl());
+    append(mediaArgs.isIncludeAssetThumbnails());
+    append(mediaArgs.getDragDropSupport());
+    return appendProperties(mediaArgs.getProperties(), true);
+  }
+
+  /**
+   * Append properties sorted by name.
+   * @param properties Properties
+   * @param strict If true returns false if unsupported values are found, otherwise they are ignored
+   * @return false if unsupported values are found in strict mode
+   */
+  private boolean appendProperties(Map<String, Object> properties, boolean strict) {
+    Map<String, Object> sortedProperties = new TreeMap<>(properties);
+    for (Map.Entry<String, Object> entry : sortedProperties.entrySet()) {
+      Object value = entry.getValue();
+      if (!isSupportedValue(value)) {
+        if (strict) {
+          return false;
+        }
+        continue;
+      }
+      append(entry.getKey());
+      if (value instanceof Object[]) {
+        Object[] values = (Object[])value;
+        append(values.length);
+        for (Object item : values) {
+          appendValue(item);
+        }
+      }
+      else {
+        appendValue(value);
+      }
+    }
+    return true;
+  }
+
+  private static boolean isSupportedValue(Object value) {
+    if (value instanceof Object[]) {
+      for (Object item : (Object[])value) {
+        if (!isSupportedScalarValue(item)) {
+          return false;
+        }
+      }
+      return true;
+    }
+    return isSupportedScalarValue(value);
+  }
+
+  private static boolean isSupportedScalarValue(Object value) {
+    return value == null
+        || value instanceof String
+        || value instanceof Number
+        || value instanceof Boolean
+        || value instanceof Enum
+        || value instanceof Date
+        || value instanceof Calendar;
+  }
+
+  private void appendValue(Object value) {
+    if (value instanceof Date) {
+      append(((Date)value).getTime());
+    }
+    else if (value instanceof Calendar) {
+      append(((Calendar)value).getTimeInMillis());
+    }
+    else {
+      append(value);
+    }
+  }
+
+  private void appendArray(String[] values) {
+    if (values == null) {
+      append(null);
+      return;
+    }
+    append(values.length);
+    for (String value : values) {
+      append(value);
+    }
+  }
+
+  /**
+   * Appends value with length prefix so the key is unambiguous regardless of the characters contained in the values.
+   */
+  private void append(Object value) {
+    if (value == null) {
+      key.append("-;");
+      return;
+    }
+    String stringValue = value.toString();
+    key.append(stringValue.length()).append(':').append(stringValue).append(';');
+  }
+
+}
@@ -0,0 +1,52 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.media.impl;
+
+/**
+ * JMX metrics for {@link MediaResolutionCache}.
+ */
+public interface MediaResolutionCacheMXBean {
+
+  /**
+   * @return Number of cached media resolutions
+   */
+  long getSize();
+
+  /**
+   * @return Number of media resolutions served from cache
+   */
+  long getHitCount();
+
+  /**
+   * @return Number of media resolutions not found in cache, or found with outdated asset
+   */
+  long getMissCount();
+
+  /**
+   * @return Number of cache entries removed by DAM or replication events
+   */
+  long getInvalidationCount();
+
+  /**
+   * Removes all cache entries.
+   */
+  void clear();
+
+}
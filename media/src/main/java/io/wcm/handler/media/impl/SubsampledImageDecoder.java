@@ -0,0 +1,124 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.media.impl;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import io.wcm.handler.media.CropDimension;
+
+/**
+ * Decodes only the pixels of an image that are required for rendering a downscaled and/or cropped version of it,
+ * using ImageIO source region and source subsampling.
+ */
+final class SubsampledImageDecoder {
+
+  /**
+   * The decoded image is kept at least this factor larger than the target size to allow a high-quality downscaling
+   * of the subsampled image afterwards.
+   */
+  static final int MIN_OVERSAMPLING = 2;
+
+  private SubsampledImageDecoder() {
+    // static methods only
+  }
+
+  /**
+   * Decode image with only the pixels required for the given target size and crop dimension.
+   * If the target size is bigger than the (cropped) image no subsampling is applied.
+   * @param is Image binary data
+   * @param cropDimension Crop dimension or null
+   * @param targetWidth Target width
+   * @param targetHeight Target height
+   * @return Cropped and subsampled image, or null if the image format does not support subsampled decoding or
+   *         decoding the full image would not require considerably more memory.
+   */
+  public static BufferedImage decode(InputStream is, CropDimension cropDimension, int targetWidth, int targetHeight) {
+    try (ImageInputStream iis = ImageIO.createImageInputStream(is)) {
+      if (iis == null) {
+        return null;
+      }
+      Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+      if (!readers.hasNext()) {
+        return null;
+      }
+      ImageReader reader = readers.next();
+      try {
+        reader.setInput(iis, true, true);
+
+        // image size is read from header only
+        int imageWidth = reader.getWidth(0);
+        int imageHeight = reader.getHeight(0);
+        Rectangle region = new Rectangle(0, 0, imageWidth, imageHeight);
+        if (cropDimension != null) {
+          region = region.intersection(new Rectangle((int)cropDimension.getLeft(), (int)cropDimension.getTop(),
+              (int)cropDimension.getWidth(), (int)cropDimension.getHeight()));
+          if (region.isEmpty()) {
+            return null;
+          }
+        }
+
+        int subsampling = getSubsampling(region.width, region.height, targetWidth, targetHeight);
+        if (subsampling <= 1 && cropDimension == null) {
+          // no benefit compared to full decoding
+          return null;
+        }
+
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceRegion(region);
+        param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+        return reader.read(0, param);
+      }
+      finally {
+        reader.dispose();
+      }
+    }
+    catch (IOException | RuntimeException ex) {
+      // image format or color model not supported by reader - fallback to full decoding
+      return null;
+    }
+  }
+
+  /**
+   * Calculate subsampling factor for the given source and target size, keeping the subsampled image at least
+   * {@link #MIN_OVERSAMPLING} times larger than the target size.
+   * @param sourceWidth Source width
+   * @param sourceHeight Source height
+   * @param targetWidth Target width
+   * @param targetHeight Target height
+   * @return Subsampling factor (1 = no subsampling)
+   */
+  static int getSubsampling(int sourceWidth, int sourceHeight, int targetWidth, int targetHeight) {
+    if (targetWidth <= 0 || targetHeight <= 0 || targetWidth > sourceWidth || targetHeight > sourceHeight) {
+      return 1;
+    }
+    int factor = Math.min(sourceWidth / (targetWidth * MIN_OVERSAMPLING), sourceHeight / (targetHeight * MIN_OVERSAMPLING));
+    return Math.max(1, factor);
+  }
+
+}
@@ -40,4 +40,15 @@ public interface MediaProcessor {
    */
   Media process(Media media);
 
+  /**
+   * Declares whether this processor may change the media URL. Processors that only modify the markup or other
+   * metadata not related to the URL may return false - they are skipped when only the URL is requested
+   * (e.g. via {@link io.wcm.handler.media.MediaBuilder#buildUrl()}).
+   * If a processor is applied when only the URL is requested no markup element is present.
+   * @return true if the processor may affect the media URL
+   */
+  default boolean affectsUrl() {
+    return true;
+  }
+
 }
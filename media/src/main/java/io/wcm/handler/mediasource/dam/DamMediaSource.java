@@ -31,6 +31,7 @@ import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ValueMap;
 import org.apache.sling.models.annotations.Model;
 import org.apache.sling.models.annotations.injectorspecific.InjectionStrategy;
+import org.apache.sling.models.annotations.injectorspecific.OSGiService;
 import org.apache.sling.models.annotations.injectorspecific.Self;
 import org.apache.sling.models.annotations.injectorspecific.SlingObject;
 import org.osgi.annotation.versioning.ProviderType;
@@ -52,6 +53,8 @@ import io.wcm.handler.media.MediaRequest;
 import io.wcm.handler.media.markup.MediaMarkupBuilderUtil;
 import io.wcm.handler.media.spi.MediaSource;
 import io.wcm.handler.mediasource.dam.impl.DamAsset;
+import io.wcm.handler.mediasource.dam.impl.RenditionIndex;
+import io.wcm.handler.mediasource.dam.impl.ScopedRenditionIndex;
 import io.wcm.sling.models.annotations.AemObject;
 
 /**
@@ -73,6 +76,10 @@ public final class DamMediaSource extends MediaSource {
   private WCMMode wcmMode;
   @AemObject(injectionStrategy = InjectionStrategy.OPTIONAL)
   private ComponentContext componentContext;
+  @OSGiService(injectionStrategy = InjectionStrategy.OPTIONAL)
+  private RenditionIndex sharedRenditionIndex;
+
+  private RenditionIndex renditionIndex;
 
   /**
    * Media source ID
@@ -84,6 +91,18 @@ public final class DamMediaSource extends MediaSource {
     return ID;
   }
 
+  /**
+   * Rendition index scoped to this instance, so repeated lookups of the same asset (e.g. when resolving a batch
+   * of media requests) share the rendition dimensions.
+   * @return Rendition index
+   */
+  private RenditionIndex getRenditionIndex() {
+    if (renditionIndex == null) {
+      renditionIndex = new ScopedRenditionIndex(sharedRenditionIndex);
+    }
+    return renditionIndex;
+  }
+
   @Override
   public boolean accepts(String mediaRef) {
     return StringUtils.startsWith(mediaRef, "/content/dam/");
@@ -119,7 +138,7 @@ public final class DamMediaSource extends MediaSource {
         damAsset = assetResource.adaptTo(com.day.cq.dam.api.Asset.class);
       }
       if (damAsset != null) {
-        Asset asset = new DamAsset(damAsset, media, adaptable);
+        Asset asset = new DamAsset(damAsset, media, adaptable, getRenditionIndex());
         media.setAsset(asset);
 
         // resolve rendition(s)
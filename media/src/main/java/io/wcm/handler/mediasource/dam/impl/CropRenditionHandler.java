@@ -44,9 +44,10 @@ class CropRenditionHandler extends DefaultRenditionHandler {
   /**
    * @param asset DAM asset
    * @param cropDimension Crop dimension
+   * @param renditionIndex Rendition index (optional)
    */
-  CropRenditionHandler(Asset asset, CropDimension cropDimension) {
-    super(asset);
+  CropRenditionHandler(Asset asset, CropDimension cropDimension, RenditionIndex renditionIndex) {
+    super(asset, renditionIndex);
     this.cropDimension = cropDimension;
     assetFileExtension = StringUtils.substringAfterLast(asset.getName(), ".");
   }
@@ -65,13 +66,12 @@ class CropRenditionHandler extends DefaultRenditionHandler {
     while (descendingIterator.hasNext()) {
       RenditionMetadata rendition = descendingIterator.next();
       if (DEFAULT_WEB_RENDITION_PATTERN.matcher(rendition.getRendition().getName()).matches()) {
-        RenditionMetadata sourceRendition = new RenditionMetadata(rendition.getRendition());
         boolean isImage = FileExtension.isImage(assetFileExtension);
         if (isImage
-            && sourceRendition.getWidth() >= cropDimension.getRight()
-            && sourceRendition.getHeight() >= cropDimension.getBottom()) {
+            && rendition.getWidth() >= cropDimension.getRight()
+            && rendition.getHeight() >= cropDimension.getBottom()) {
           // found biggest virtual rendition for cropped image
-          cropRendition = new VirtualCropRenditionMetadata(sourceRendition.getRendition(),
+          cropRendition = new VirtualCropRenditionMetadata(rendition.getRendition(),
               cropDimension.getWidth(), cropDimension.getHeight(), cropDimension);
           break;
         }
@@ -44,17 +44,28 @@ public final class DamAsset extends SlingAdaptable implements Asset {
   private final CropDimension cropDimension;
   private final MediaArgs defaultMediaArgs;
   private final ValueMap properties;
+  private final RenditionIndex renditionIndex;
 
   /**
    * @param damAsset DAM asset
    * @param media Media metadata
    */
   public DamAsset(com.day.cq.dam.api.Asset damAsset, Media media, Adaptable adaptable) {
+    this(damAsset, media, adaptable, null);
+  }
+
+  /**
+   * @param damAsset DAM asset
+   * @param media Media metadata
+   * @param renditionIndex Rendition index (optional)
+   */
+  public DamAsset(com.day.cq.dam.api.Asset damAsset, Media media, Adaptable adaptable, RenditionIndex renditionIndex) {
     this.damAsset = damAsset;
     this.cropDimension = media.getCropDimension();
     this.defaultMediaArgs = media.getMediaRequest().getMediaArgs();
     this.properties = new ValueMapDecorator(damAsset.getMetadata());
     this.adaptable = adaptable;
+    this.renditionIndex = renditionIndex;
   }
 
   @Override
@@ -155,7 +166,7 @@ public final class DamAsset extends SlingAdaptable implements Asset {
    * @return DAM rendition instance (may be invalid rendition)
    */
   protected Rendition getDamRendition(MediaArgs mediaArgs) {
-    return new DamRendition(this.damAsset, this.cropDimension, mediaArgs, adaptable);
+    return new DamRendition(this.damAsset, this.cropDimension, mediaArgs, adaptable, renditionIndex);
   }
 
   @Override
@@ -50,17 +50,19 @@ class DamRendition extends SlingAdaptable implements Rendition {
    * @param asset DAM asset
    * @param cropDimension Crop dimension
    * @param mediaArgs Media args
+   * @param renditionIndex Rendition index (optional)
    */
-  DamRendition(Asset asset, CropDimension cropDimension, MediaArgs mediaArgs, Adaptable adaptable) {
+  DamRendition(Asset asset, CropDimension cropDimension, MediaArgs mediaArgs, Adaptable adaptable,
+      RenditionIndex renditionIndex) {
     this.mediaArgs = mediaArgs;
 
     // resolve rendition from DAM assets
     RenditionHandler renditionHandler;
     if (cropDimension != null) {
-      renditionHandler = new CropRenditionHandler(asset, cropDimension);
+      renditionHandler = new CropRenditionHandler(asset, cropDimension, renditionIndex);
     }
     else {
-      renditionHandler = new DefaultRenditionHandler(asset);
+      renditionHandler = new DefaultRenditionHandler(asset, renditionIndex);
     }
     this.rendition = renditionHandler.getRendition(mediaArgs);
 
@@ -19,7 +19,18 @@
  */
 package io.wcm.handler.mediasource.dam.impl;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.jcr.Node;
 import javax.jcr.RepositoryException;
@@ -35,6 +46,7 @@ import org.apache.sling.settings.SlingSettingsService;
 import org.osgi.service.component.ComponentContext;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.event.Event;
 import org.osgi.service.event.EventConstants;
@@ -48,19 +60,29 @@ import org.slf4j.LoggerFactory;
 import com.day.cq.commons.jcr.JcrConstants;
 import com.day.cq.dam.api.Asset;
 import com.day.cq.dam.api.DamEvent;
-import com.day.image.Layer;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
+import io.wcm.handler.media.Dimension;
+import io.wcm.handler.media.impl.ImageDimensionProbe;
 import io.wcm.wcm.commons.contenttype.FileExtension;
 import io.wcm.wcm.commons.util.RunMode;
 
 /**
  * Background service that extracts additional metadata like width and height for DAM renditions.
+ * <p>
+ * DAM events are only queued on the event thread. A single worker thread drains the queue in batches,
+ * groups the events per asset and writes the metadata of a whole batch with one resource resolver and one save.
+ * If the queue is full, the event is processed synchronously on the event thread instead, so no rendition is left
+ * without metadata. Events are applied according to the current state of the rendition, so processing them out of
+ * order does not lead to outdated metadata.
+ * </p>
  */
 @Component(service = EventHandler.class, immediate = true, property = {
-    EventConstants.EVENT_TOPIC + "=" + DamEvent.EVENT_TOPIC
+    EventConstants.EVENT_TOPIC + "=" + DamEvent.EVENT_TOPIC,
+    "jmx.objectname=io.wcm.handler.media:type=DamRenditionMetadataService"
 })
 @Designate(ocd = DamRenditionMetadataService.Config.class)
-public final class DamRenditionMetadataService implements EventHandler {
+public final class DamRenditionMetadataService implements EventHandler, DamRenditionMetadataServiceMXBean {
 
   @ObjectClassDefinition(name = "wcm.io DAM Rendition Metadata Service",
       description = "Extracts additional metadata like width and height for DAM renditions")
@@ -69,6 +91,13 @@ public final class DamRenditionMetadataService implements EventHandler {
     @AttributeDefinition(name = "Enabled", description = "Switch to enable or disable this service.")
     boolean enabled() default true;
 
+    @AttributeDefinition(name = "Max. queue size", description = "Max. number of DAM events waiting for processing. "
+        + "If the queue is full further events are processed synchronously on the event thread.")
+    int maxQueueSize() default 50000;
+
+    @AttributeDefinition(name = "Max. batch size", description = "Max. number of DAM events processed and saved together.")
+    int maxBatchSize() default 500;
+
   }
 
   /**
@@ -90,6 +119,21 @@ public final class DamRenditionMetadataService implements EventHandler {
 
   private final Logger log = LoggerFactory.getLogger(this.getClass());
   private boolean enabled;
+  private int maxBatchSize;
+
+  private BlockingQueue<QueuedEvent> queue;
+  private ExecutorService executor;
+
+  // events enqueued but not yet processed completely (incl. the batch currently processed)
+  private final AtomicLong pendingCount = new AtomicLong();
+  private final AtomicLong processedCount = new AtomicLong();
+  private final AtomicLong overflowCount = new AtomicLong();
+  private final AtomicLong batchCount = new AtomicLong();
+  private volatile long lastBatchLagMs;
+  private volatile long maxLagMs;
+
+  // worker thread and event thread (on queue overflow) do not write rendition metadata concurrently
+  private final Object processLock = new Object();
 
   @Reference
   private ResourceResolverFactory resourceResolverFactory;
@@ -102,6 +146,24 @@ public final class DamRenditionMetadataService implements EventHandler {
     // Activate only in author mode, and check enabled status in service configuration as well
     enabled = !RunMode.disableIfNotAuthor(slingSettings.getRunModes(), componentContext, log)
         && config.enabled();
+    if (enabled) {
+      maxBatchSize = Math.max(1, config.maxBatchSize());
+      queue = new LinkedBlockingQueue<>(Math.max(1, config.maxQueueSize()));
+      executor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+          .setNameFormat("wcmio-media-rendition-metadata").setDaemon(true).build());
+      executor.execute(this::processQueue);
+    }
+  }
+
+  @Deactivate
+  private void deactivate() {
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+    if (queue != null && !queue.isEmpty()) {
+      log.info("Discarding {} unprocessed DAM rendition events.", queue.size());
+    }
   }
 
   @Override
@@ -116,7 +178,7 @@ public final class DamRenditionMetadataService implements EventHandler {
   }
 
   /**
-   * Handle dam event if certain conditions are fulfilled.
+   * Queue dam event if certain conditions are fulfilled.
    * @param event DAM event
    */
   private void handleDamEvent(DamEvent event) {
@@ -129,22 +191,95 @@ public final class DamRenditionMetadataService implements EventHandler {
       return;
     }
 
+    QueuedEvent queuedEvent = new QueuedEvent(event);
+    pendingCount.incrementAndGet();
+    if (!queue.offer(queuedEvent)) {
+      // queue is full - process event synchronously instead of dropping it
+      overflowCount.incrementAndGet();
+      log.debug("Rendition metadata queue is full, processing event for {} synchronously", renditionPath);
+      try {
+        processBatch(Collections.singletonList(queuedEvent));
+      }
+      catch (RuntimeException ex) {
+        log.error("Unable to process rendition metadata for " + renditionPath, ex);
+      }
+      finally {
+        pendingCount.decrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * Worker loop: Wait for events and process them in batches until the service is deactivated.
+   */
+  private void processQueue() {
+    List<QueuedEvent> batch = new ArrayList<>(maxBatchSize);
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        batch.add(queue.take());
+        queue.drainTo(batch, maxBatchSize - 1);
+        try {
+          processBatch(batch);
+        }
+        catch (RuntimeException ex) {
+          log.error("Unable to process rendition metadata for " + batch.size() + " DAM events.", ex);
+        }
+        finally {
+          pendingCount.addAndGet(-batch.size());
+          batch.clear();
+        }
+      }
+    }
+    catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Process a batch of events with a single resource resolver and save all changes at once.
+   * @param batch Queued events in order of arrival
+   */
+  private void processBatch(List<QueuedEvent> batch) {
+    synchronized (processLock) {
+      processBatchLocked(batch);
+    }
+  }
+
+  private void processBatchLocked(List<QueuedEvent> batch) {
+
+    // group events by asset, only the latest event per rendition is relevant
+    Map<String, Map<String, QueuedEvent>> eventsByAsset = new LinkedHashMap<>();
+    for (QueuedEvent event : batch) {
+      eventsByAsset.computeIfAbsent(event.assetPath, key -> new LinkedHashMap<>())
+          .put(event.renditionPath, event);
+    }
+
     // open admin session for reading/writing rendition metadata
     ResourceResolver adminResourceResolver = null;
     try {
       adminResourceResolver = resourceResolverFactory.getServiceResourceResolver(null);
+      Session session = adminResourceResolver.adaptTo(Session.class);
 
-      // make sure asset exists
-      Asset asset = getAsset(event.getAssetPath(), adminResourceResolver);
-      if (asset == null) {
-        return;
+      for (Map<String, QueuedEvent> assetEvents : eventsByAsset.values()) {
+        handleAssetEvents(assetEvents.values(), adminResourceResolver);
       }
-
-      if (event.getType() == DamEvent.Type.RENDITION_UPDATED) {
-        renditionAddedOrUpdated(asset, renditionPath, event.getUserId(), adminResourceResolver);
+      try {
+        session.save();
       }
-      else if (event.getType() == DamEvent.Type.RENDITION_REMOVED) {
-        renditionRemoved(asset, renditionPath, event.getUserId(), adminResourceResolver);
+      catch (RepositoryException ex) {
+        // save failed for the whole batch - discard changes and retry asset by asset to isolate the failure
+        log.warn("Unable to save rendition metadata for " + eventsByAsset.size() + " assets, retrying per asset.", ex);
+        refresh(session);
+        for (Map<String, QueuedEvent> assetEvents : eventsByAsset.values()) {
+          handleAssetEvents(assetEvents.values(), adminResourceResolver);
+          try {
+            session.save();
+          }
+          catch (RepositoryException ex2) {
+            log.error("Unable to save rendition metadata for " + assetEvents.values().iterator().next().assetPath, ex2);
+            refresh(session);
+          }
+        }
       }
 
     }
@@ -157,6 +292,34 @@ public final class DamRenditionMetadataService implements EventHandler {
         adminResourceResolver.close();
       }
     }
+
+    updateMetrics(batch);
+  }
+
+  /**
+   * Apply all events of a single asset without saving.
+   * @param events Events of one asset
+   * @param resolver Resource resolver
+   */
+  private void handleAssetEvents(Iterable<QueuedEvent> events, ResourceResolver resolver) {
+    Asset asset = null;
+    for (QueuedEvent event : events) {
+
+      // make sure asset exists
+      if (asset == null) {
+        asset = getAsset(event.assetPath, resolver);
+        if (asset == null) {
+          return;
+        }
+      }
+
+      if (event.type == DamEvent.Type.RENDITION_UPDATED) {
+        renditionAddedOrUpdated(asset, event.renditionPath, resolver);
+      }
+      else if (event.type == DamEvent.Type.RENDITION_REMOVED) {
+        renditionRemoved(asset, event.renditionPath, resolver);
+      }
+    }
   }
 
   /**
@@ -164,16 +327,16 @@ public final class DamRenditionMetadataService implements EventHandler {
    * @param asset Asset
    * @param renditionPath Rendition path
    */
-  private void renditionAddedOrUpdated(Asset asset, String renditionPath, String userId, ResourceResolver resolver) {
+  private void renditionAddedOrUpdated(Asset asset, String renditionPath, ResourceResolver resolver) {
     String renditionNodeName = Text.getName(renditionPath);
 
-    // check for resource existence and try to get layer from image
+    // check for resource existence and try to get dimension from image header
     Resource renditionResource = resolver.getResource(renditionPath);
     if (renditionResource == null) {
       return;
     }
-    Layer renditionLayer = renditionResource.adaptTo(Layer.class);
-    if (renditionLayer == null) {
+    Dimension dimension = ImageDimensionProbe.getDimension(renditionResource);
+    if (dimension == null) {
       return;
     }
 
@@ -188,11 +351,10 @@ public final class DamRenditionMetadataService implements EventHandler {
         else {
           metadataNode = renditionsMetadata.addNode(renditionNodeName, JcrConstants.NT_UNSTRUCTURED);
         }
-        metadataNode.setProperty(PN_IMAGE_WIDTH, renditionLayer.getWidth());
-        metadataNode.setProperty(PN_IMAGE_HEIGHT, renditionLayer.getHeight());
-        updateLastModifiedAndSave(asset, userId, resolver);
+        metadataNode.setProperty(PN_IMAGE_WIDTH, dimension.getWidth());
+        metadataNode.setProperty(PN_IMAGE_HEIGHT, dimension.getHeight());
         log.debug("Updated rendition metadata at " + metadataNode.getPath() + " "
-            + "(width=" + renditionLayer.getWidth() + ", height=" + renditionLayer.getHeight() + ").");
+            + "(width=" + dimension.getWidth() + ", height=" + dimension.getHeight() + ").");
       }
       catch (RepositoryException ex) {
         log.error("Unable to create or update rendition metadata node for " + renditionPath, ex);
@@ -205,7 +367,11 @@ public final class DamRenditionMetadataService implements EventHandler {
    * @param asset Asset
    * @param renditionPath Rendition path
    */
-  private void renditionRemoved(Asset asset, String renditionPath, String userId, ResourceResolver resolver) {
+  private void renditionRemoved(Asset asset, String renditionPath, ResourceResolver resolver) {
+    // rendition may have been added again after the event was fired
+    if (resolver.getResource(renditionPath) != null) {
+      return;
+    }
     Node renditionsMetadata = getRenditionsMetadataNode(asset, false);
     if (renditionsMetadata == null) {
       return;
@@ -216,7 +382,6 @@ public final class DamRenditionMetadataService implements EventHandler {
         Node metadataNode = renditionsMetadata.getNode(renditionNodeName);
         String pathToRemove = metadataNode.getPath();
         metadataNode.remove();
-        updateLastModifiedAndSave(asset, userId, resolver);
         log.debug("Removed rendition metadata at " + pathToRemove + ".");
       }
     }
@@ -225,22 +390,23 @@ public final class DamRenditionMetadataService implements EventHandler {
     }
   }
 
-  /**
-   * Updates last modified information and saves the session.
-   * @param asset Asset
-   * @param userId User id
-   * @throws RepositoryException
-   */
-  private void updateLastModifiedAndSave(Asset asset, String userId, ResourceResolver resolver) throws RepositoryException {
-    // -- this is currently DISABLED due to WCMIO-28, concurrency issues with DAM workflows
-    /*
-    Node node = asset.adaptTo(Node.class);
-    Node contentNode = node.getNode(JcrConstants.JCR_CONTENT);
-    // this is a workaround to make sure asset is marked as modified
-    contentNode.setProperty(JcrConstants.JCR_LASTMODIFIED, Calendar.getInstance());
-    contentNode.setProperty(JcrConstants.JCR_LAST_MODIFIED_BY, userId);
-     */
-    resolver.adaptTo(Session.class).save();
+  private void refresh(Session session) {
+    try {
+      session.refresh(false);
+    }
+    catch (RepositoryException ex) {
+      log.error("Unable to discard pending changes.", ex);
+    }
+  }
+
+  private void updateMetrics(List<QueuedEvent> batch) {
+    long lag = System.currentTimeMillis() - batch.get(0).timestamp;
+    lastBatchLagMs = lag;
+    if (lag > maxLagMs) {
+      maxLagMs = lag;
+    }
+    processedCount.addAndGet(batch.size());
+    batchCount.incrementAndGet();
   }
 
   /**
@@ -283,4 +449,76 @@ public final class DamRenditionMetadataService implements EventHandler {
     return null;
   }
 
+  /**
+   * Blocks until all queued events are processed.
+   * @param timeoutMs Max. time to wait
+   * @return true if all events are processed, false if timeout was reached
+   */
+  boolean awaitProcessed(long timeoutMs) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + timeoutMs;
+    while (pendingCount.get() > 0) {
+      if (System.currentTimeMillis() > deadline) {
+        return false;
+      }
+      TimeUnit.MILLISECONDS.sleep(5);
+    }
+    return true;
+  }
+
+  @Override
+  public int getQueueSize() {
+    return queue != null ? queue.size() : 0;
+  }
+
+  @Override
+  public long getCurrentLagMs() {
+    QueuedEvent oldest = queue != null ? queue.peek() : null;
+    return oldest != null ? System.currentTimeMillis() - oldest.timestamp : 0L;
+  }
+
+  @Override
+  public long getLastBatchLagMs() {
+    return lastBatchLagMs;
+  }
+
+  @Override
+  public long getMaxLagMs() {
+    return maxLagMs;
+  }
+
+  @Override
+  public long getProcessedEventCount() {
+    return processedCount.get();
+  }
+
+  @Override
+  public long getBatchCount() {
+    return batchCount.get();
+  }
+
+  @Override
+  public long getOverflowEventCount() {
+    return overflowCount.get();
+  }
+
+
+  /**
+   * DAM event waiting for processing.
+   */
+  private static final class QueuedEvent {
+
+    private final DamEvent.Type type;
+    private final String assetPath;
+    private final String renditionPath;
+    private final long timestamp;
+
+    QueuedEvent(DamEvent event) {
+      this.type = event.getType();
+      this.assetPath = event.getAssetPath();
+      this.renditionPath = event.getAdditionalInfo();
+      this.timestamp = System.currentTimeMillis();
+    }
+
+  }
+
 }
@@ -0,0 +1,62 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.mediasource.dam.impl;
+
+/**
+ * JMX metrics for {@link DamRenditionMetadataService}.
+ */
+public interface DamRenditionMetadataServiceMXBean {
+
+  /**
+   * @return Number of DAM events waiting for processing
+   */
+  int getQueueSize();
+
+  /**
+   * @return Age of the oldest DAM event waiting for processing (milliseconds)
+   */
+  long getCurrentLagMs();
+
+  /**
+   * @return Time between arrival of the oldest event of the last batch and completion of this batch (milliseconds)
+   */
+  long getLastBatchLagMs();
+
+  /**
+   * @return Max. lag of all batches processed so far (milliseconds)
+   */
+  long getMaxLagMs();
+
+  /**
+   * @return Number of DAM events processed
+   */
+  long getProcessedEventCount();
+
+  /**
+   * @return Number of batches processed
+   */
+  long getBatchCount();
+
+  /**
+   * @return Number of DAM events processed synchronously on the event thread because the queue was full
+   */
+  long getOverflowEventCount();
+
+}
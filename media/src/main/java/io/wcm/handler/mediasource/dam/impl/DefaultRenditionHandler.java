@@ -19,10 +19,16 @@
  */
 package io.wcm.handler.mediasource.dam.impl;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
 
 import org.apache.commons.lang3.StringUtils;
 
@@ -34,6 +40,7 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import io.wcm.handler.media.Dimension;
 import io.wcm.handler.media.MediaArgs;
 import io.wcm.handler.media.format.MediaFormat;
 import io.wcm.handler.media.format.MediaFormatHandler;
@@ -47,15 +54,29 @@ class DefaultRenditionHandler implements RenditionHandler {
   private Set<RenditionMetadata> renditions;
   private final RenditionMetadata originalRendition;
   private final Asset asset;
+  private final Map<String, Dimension> indexedRenditionDimensions;
+  private final RenditionSelectionIndex selectionIndex;
+  private Set<RenditionMetadata> lookupCandidates;
+  private CandidateLookup candidateLookup;
 
   /**
    * @param asset DAM asset
    */
   DefaultRenditionHandler(Asset asset) {
+    this(asset, null);
+  }
+
+  /**
+   * @param asset DAM asset
+   * @param renditionIndex Rendition index (optional)
+   */
+  DefaultRenditionHandler(Asset asset, RenditionIndex renditionIndex) {
     this.asset = asset;
+    this.indexedRenditionDimensions = renditionIndex != null ? renditionIndex.getRenditionDimensions(asset) : null;
+    this.selectionIndex = renditionIndex != null ? renditionIndex.getSelectionIndex(asset) : null;
 
     Rendition damOriginalRendition = asset.getOriginal();
-    originalRendition = damOriginalRendition != null ? new RenditionMetadata(damOriginalRendition) : null;
+    originalRendition = damOriginalRendition != null ? getRenditionMetadata(damOriginalRendition) : null;
   }
 
   /**
@@ -103,6 +124,21 @@ class DefaultRenditionHandler implements RenditionHandler {
    * @return Rendition metadata
    */
   protected RenditionMetadata createRenditionMetadata(Rendition rendition) {
+    return getRenditionMetadata(rendition);
+  }
+
+  /**
+   * Create rendition metadata, using the dimension from rendition index if available.
+   * @param rendition Rendition
+   * @return Rendition metadata
+   */
+  private RenditionMetadata getRenditionMetadata(Rendition rendition) {
+    if (indexedRenditionDimensions != null) {
+      Dimension dimension = indexedRenditionDimensions.get(rendition.getName());
+      if (dimension != null) {
+        return new RenditionMetadata(rendition, dimension.getWidth(), dimension.getHeight());
+      }
+    }
     return new RenditionMetadata(rendition);
   }
 
@@ -275,11 +311,11 @@ class DefaultRenditionHandler implements RenditionHandler {
   private RenditionMetadata getExactMatchRendition(final Set<RenditionMetadata> candidates, MediaArgs mediaArgs) {
     // check for fixed width and/or height request
     if (mediaArgs.getFixedWidth() > 0 || mediaArgs.getFixedHeight() > 0) {
-      for (RenditionMetadata candidate : candidates) {
-        if (candidate.matches(mediaArgs.getFixedWidth(), mediaArgs.getFixedHeight())) {
-          return candidate;
-        }
-      }
+      long width = mediaArgs.getFixedWidth();
+      long height = mediaArgs.getFixedHeight();
+      return getFirstMatchingRendition(candidates,
+          filter -> selectionIndex.findExactMatch(width, height, filter),
+          candidate -> candidate.matches(width, height));
     }
 
     // otherwise check for media format restriction
@@ -287,17 +323,18 @@ class DefaultRenditionHandler implements RenditionHandler {
       return visitMediaFormats(mediaArgs, new MediaFormatVisitor<RenditionMetadata>() {
         @Override
         public RenditionMetadata visit(MediaFormat mediaFormat) {
-          for (RenditionMetadata candidate : candidates) {
-            if (candidate.matches((int)mediaFormat.getEffectiveMinWidth(),
-                (int)mediaFormat.getEffectiveMinHeight(),
-                (int)mediaFormat.getEffectiveMaxWidth(),
-                (int)mediaFormat.getEffectiveMaxHeight(),
-                mediaFormat.getRatio())) {
-              candidate.setMediaFormat(mediaFormat);
-              return candidate;
-            }
+          int minWidth = (int)mediaFormat.getEffectiveMinWidth();
+          int minHeight = (int)mediaFormat.getEffectiveMinHeight();
+          int maxWidth = (int)mediaFormat.getEffectiveMaxWidth();
+          int maxHeight = (int)mediaFormat.getEffectiveMaxHeight();
+          double ratio = mediaFormat.getRatio();
+          RenditionMetadata candidate = getFirstMatchingRendition(candidates,
+              filter -> selectionIndex.findMatch(minWidth, minHeight, maxWidth, maxHeight, ratio, filter),
+              item -> item.matches(minWidth, minHeight, maxWidth, maxHeight, ratio));
+          if (candidate != null) {
+            candidate.setMediaFormat(mediaFormat);
           }
-          return null;
+          return candidate;
         }
       });
     }
@@ -306,9 +343,6 @@ class DefaultRenditionHandler implements RenditionHandler {
     else {
       return getOriginalOrFirstRendition(candidates);
     }
-
-    // none found
-    return null;
   }
 
   /**
@@ -378,24 +412,66 @@ class DefaultRenditionHandler implements RenditionHandler {
       long destWidth, long destHeight, double destRatio) {
 
     // if ratio is defined get first rendition with matching ratio and same or bigger size
-    if (destRatio > 0) {
+    // otherwise get first rendition which is same or bigger in width and height
+    double ratio = destRatio > 0 ? destRatio : 0d;
+    RenditionMetadata candidate = getFirstMatchingRendition(candidates,
+        filter -> selectionIndex.findMatch(destWidth, destHeight, 0, 0, ratio, filter),
+        item -> item.matches(destWidth, destHeight, 0, 0, ratio));
+    if (candidate != null) {
+      return getVirtualRendition(candidate, destWidth, destHeight, ratio);
+    }
+
+    // none found
+    return null;
+  }
+
+  /**
+   * Get first rendition in candidate order that matches. Uses the selection index if available,
+   * otherwise all candidates are scanned.
+   * @param candidates Candidates
+   * @param indexLookup Lookup in selection index with a filter for the allowed ranks, returns rank or -1
+   * @param matcher Matcher for candidates not covered by the selection index (same conditions as index lookup)
+   * @return Rendition or null
+   */
+  private RenditionMetadata getFirstMatchingRendition(Set<RenditionMetadata> candidates,
+      ToIntFunction<IntPredicate> indexLookup, Predicate<RenditionMetadata> matcher) {
+    CandidateLookup lookup = getCandidateLookup(candidates);
+    if (lookup == null) {
       for (RenditionMetadata candidate : candidates) {
-        if (candidate.matches(destWidth, destHeight, 0, 0, destRatio)) {
-          return getVirtualRendition(candidate, destWidth, destHeight, destRatio);
+        if (matcher.test(candidate)) {
+          return candidate;
         }
       }
+      return null;
     }
-    // otherwise get first rendition which is same or bigger in width and height
-    else {
-      for (RenditionMetadata candidate : candidates) {
-        if (candidate.matches(destWidth, destHeight, 0, 0, 0d)) {
-          return getVirtualRendition(candidate, destWidth, destHeight, 0d);
-        }
+
+    RenditionMetadata result = null;
+    int rank = indexLookup.applyAsInt(lookup::contains);
+    if (rank >= 0) {
+      result = lookup.get(rank);
+    }
+    // check candidates not covered by index which are ordered before the result from index
+    for (RenditionMetadata candidate : lookup.unindexed) {
+      if (result != null && candidate.compareTo(result) > 0) {
+        break;
+      }
+      if (matcher.test(candidate)) {
+        result = candidate;
+        break;
       }
     }
+    return result;
+  }
 
-    // none found
-    return null;
+  private CandidateLookup getCandidateLookup(Set<RenditionMetadata> candidates) {
+    if (selectionIndex == null) {
+      return null;
+    }
+    if (candidates != lookupCandidates) {
+      lookupCandidates = candidates;
+      candidateLookup = new CandidateLookup(candidates, selectionIndex);
+    }
+    return candidateLookup;
   }
 
   /**
@@ -463,4 +539,41 @@ class DefaultRenditionHandler implements RenditionHandler {
     return null;
   }
 
+
+
+  /**
+   * Maps ranks of the selection index to the current candidates.
+   */
+  private static final class CandidateLookup {
+
+    private final RenditionMetadata[] byRank;
+    private final List<RenditionMetadata> unindexed = new ArrayList<>();
+
+    CandidateLookup(Set<RenditionMetadata> candidates, RenditionSelectionIndex selectionIndex) {
+      byRank = new RenditionMetadata[selectionIndex.size()];
+      for (RenditionMetadata candidate : candidates) {
+        // only plain renditions with same dimension as in index are covered, virtual renditions are checked separately
+        int rank = candidate.getClass() == RenditionMetadata.class
+            ? selectionIndex.getRank(candidate.getRendition().getName()) : -1;
+        if (rank >= 0
+            && selectionIndex.getWidth(rank) == candidate.getWidth()
+            && selectionIndex.getHeight(rank) == candidate.getHeight()) {
+          byRank[rank] = candidate;
+        }
+        else {
+          unindexed.add(candidate);
+        }
+      }
+    }
+
+    boolean contains(int rank) {
+      return byRank[rank] != null;
+    }
+
+    RenditionMetadata get(int rank) {
+      return byRank[rank];
+    }
+
+  }
+
 }
@@ -0,0 +1,58 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.mediasource.dam.impl;
+
+import java.util.Map;
+
+import org.osgi.annotation.versioning.ProviderType;
+
+import com.day.cq.dam.api.Asset;
+
+import io.wcm.handler.media.Dimension;
+
+/**
+ * Shared index of the rendition dimensions of DAM assets, to avoid reading the rendition metadata
+ * each time an asset is resolved.
+ */
+@ProviderType
+public interface RenditionIndex {
+
+  /**
+   * Get dimensions of all renditions of the given asset.
+   * @param asset DAM asset
+   * @return Map with rendition name as key and rendition dimension as value, in order of rendition size.
+   *         Renditions without dimension (non-image renditions) are not included.
+   */
+  Map<String, Dimension> getRenditionDimensions(Asset asset);
+
+  /**
+   * Get selection index for looking up matching renditions without scanning all renditions of the given asset.
+   * @param asset DAM asset
+   * @return Selection index built from the rendition dimensions, or null if not available
+   */
+  RenditionSelectionIndex getSelectionIndex(Asset asset);
+
+  /**
+   * Removes the index entry of the given asset.
+   * @param assetPath Asset path
+   */
+  void invalidate(String assetPath);
+
+}
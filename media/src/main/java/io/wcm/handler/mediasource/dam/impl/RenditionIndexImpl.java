@@ -0,0 +1,189 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.mediasource.dam.impl;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.SlingConstants;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventConstants;
+import org.osgi.service.event.EventHandler;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+import com.day.cq.commons.jcr.JcrConstants;
+import com.day.cq.dam.api.Asset;
+import com.day.cq.dam.api.DamEvent;
+import com.day.cq.dam.api.Rendition;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+
+import io.wcm.handler.media.Dimension;
+
+/**
+ * Caches rendition dimensions per asset, keyed by asset path and last modification date.
+ * Entries are invalidated when the asset or any of its renditions is changed, either via DAM events (author)
+ * or resource change events (e.g. on replication).
+ */
+@Component(service = { RenditionIndex.class, EventHandler.class }, immediate = true, property = {
+    EventConstants.EVENT_TOPIC + "=" + DamEvent.EVENT_TOPIC,
+    EventConstants.EVENT_TOPIC + "=" + SlingConstants.TOPIC_RESOURCE_ADDED,
+    EventConstants.EVENT_TOPIC + "=" + SlingConstants.TOPIC_RESOURCE_CHANGED,
+    EventConstants.EVENT_TOPIC + "=" + SlingConstants.TOPIC_RESOURCE_REMOVED,
+    EventConstants.EVENT_FILTER + "=(|"
+        + "(" + EventConstants.EVENT_TOPIC + "=" + DamEvent.EVENT_TOPIC + ")"
+        + "(" + SlingConstants.PROPERTY_PATH + "=" + RenditionIndexImpl.DAM_ROOT + "*)"
+        + ")"
+})
+@Designate(ocd = RenditionIndexImpl.Config.class)
+public final class RenditionIndexImpl implements RenditionIndex, EventHandler {
+
+  @ObjectClassDefinition(name = "wcm.io Media Handler DAM Rendition Index",
+      description = "Caches dimensions of DAM renditions across requests.")
+  static @interface Config {
+
+    @AttributeDefinition(name = "Enabled", description = "Switch to enable or disable this service.")
+    boolean enabled() default true;
+
+    @AttributeDefinition(name = "Max. size", description = "Max. number of assets in the index.")
+    long maxSize() default 10000;
+
+  }
+
+  static final String DAM_ROOT = "/content/dam/";
+
+  private boolean enabled;
+  private Cache<String, IndexEntry> cache;
+
+  @Activate
+  private void activate(Config config) {
+    enabled = config.enabled();
+    cache = CacheBuilder.newBuilder()
+        .maximumSize(config.maxSize())
+        .build();
+  }
+
+  @Override
+  public Map<String, Dimension> getRenditionDimensions(Asset asset) {
+    if (!enabled) {
+      return buildRenditionDimensions(asset);
+    }
+    return getEntry(asset).renditionDimensions;
+  }
+
+  @Override
+  public RenditionSelectionIndex getSelectionIndex(Asset asset) {
+    if (!enabled) {
+      // building the selection index only pays off if it is shared between requests
+      return null;
+    }
+    return getEntry(asset).selectionIndex;
+  }
+
+  private IndexEntry getEntry(Asset asset) {
+    String assetPath = asset.getPath();
+    long lastModified = asset.getLastModified();
+    IndexEntry entry = cache.getIfPresent(assetPath);
+    if (entry == null || entry.lastModified != lastModified) {
+      entry = new IndexEntry(lastModified, buildRenditionDimensions(asset));
+      cache.put(assetPath, entry);
+    }
+    return entry;
+  }
+
+  /**
+   * Reads rendition metadata of all renditions.
+   * @param asset Asset
+   * @return Rendition dimensions ordered by size
+   */
+  static Map<String, Dimension> buildRenditionDimensions(Asset asset) {
+    Set<RenditionMetadata> renditions = new TreeSet<>();
+    for (Rendition rendition : asset.getRenditions()) {
+      renditions.add(new RenditionMetadata(rendition));
+    }
+    ImmutableMap.Builder<String, Dimension> result = ImmutableMap.builder();
+    for (RenditionMetadata rendition : renditions) {
+      if (rendition.getWidth() > 0 && rendition.getHeight() > 0) {
+        result.put(rendition.getRendition().getName(), new Dimension(rendition.getWidth(), rendition.getHeight()));
+      }
+    }
+    return result.build();
+  }
+
+  @Override
+  public void invalidate(String assetPath) {
+    cache.invalidate(assetPath);
+  }
+
+  @Override
+  public void handleEvent(Event event) {
+    if (!enabled) {
+      return;
+    }
+    if (StringUtils.equals(event.getTopic(), DamEvent.EVENT_TOPIC)) {
+      DamEvent damEvent = DamEvent.fromEvent(event);
+      if (damEvent.getAssetPath() != null) {
+        invalidate(damEvent.getAssetPath());
+      }
+      return;
+    }
+
+    String path = (String)event.getProperty(SlingConstants.PROPERTY_PATH);
+    if (!StringUtils.startsWith(path, DAM_ROOT)) {
+      return;
+    }
+    // map path of asset or any resource inside the asset to the asset path
+    String assetPath = StringUtils.substringBefore(path, "/" + JcrConstants.JCR_CONTENT);
+    invalidate(assetPath);
+    if (StringUtils.equals(event.getTopic(), SlingConstants.TOPIC_RESOURCE_REMOVED)
+        && StringUtils.equals(assetPath, path)) {
+      // a whole folder may have been removed - resources inside an asset cannot contain other assets
+      String prefix = assetPath + "/";
+      cache.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+    }
+  }
+
+  long getSize() {
+    return cache.size();
+  }
+
+
+  private static final class IndexEntry {
+
+    private final long lastModified;
+    private final Map<String, Dimension> renditionDimensions;
+    private final RenditionSelectionIndex selectionIndex;
+
+    IndexEntry(long lastModified, Map<String, Dimension> renditionDimensions) {
+      this.lastModified = lastModified;
+      this.renditionDimensions = renditionDimensions;
+      this.selectionIndex = new RenditionSelectionIndex(renditionDimensions);
+    }
+
+  }
+
+}
@@ -34,6 +34,7 @@ import com.day.cq.dam.api.DamConstants;
 import com.day.cq.dam.api.Rendition;
 import com.day.image.Layer;
 
+import io.wcm.handler.media.Dimension;
 import io.wcm.handler.media.format.MediaFormat;
 import io.wcm.handler.media.format.MediaFormatHandler;
 import io.wcm.handler.media.impl.MediaFileServlet;
@@ -55,24 +56,44 @@ class RenditionMetadata extends SlingAdaptable implements Comparable<RenditionMe
    * @param rendition DAM rendition
    */
   RenditionMetadata(Rendition rendition) {
-    this.rendition = rendition;
+    this(rendition, getImageDimension(rendition));
+  }
 
-    // check if rendition is original image
-    boolean isOriginal = isOriginalRendition(rendition);
-    Asset asset = rendition.getAsset();
+  private RenditionMetadata(Rendition rendition, Dimension dimension) {
+    this(rendition, dimension.getWidth(), dimension.getHeight());
+  }
+
+  /**
+   * @param rendition DAM rendition
+   * @param width Image width (already known from metadata)
+   * @param height Image height (already known from metadata)
+   */
+  RenditionMetadata(Rendition rendition, long width, long height) {
+    this.rendition = rendition;
 
     // get filename and extension
     String renditionName = rendition.getName();
-    if (isOriginal) {
-      renditionName = asset.getName();
+    if (isOriginalRendition(rendition)) {
+      renditionName = rendition.getAsset().getName();
     }
     this.fileName = renditionName;
     this.fileExtension = StringUtils.substringAfterLast(renditionName, ".");
 
-    // get image width/height
+    this.width = width;
+    this.height = height;
+  }
+
+  /**
+   * Get image width/height from asset metadata (original rendition) or from rendition metadata written
+   * by {@link DamRenditionMetadataService}.
+   * @param rendition DAM rendition
+   * @return Dimension, width/height is 0 if unknown
+   */
+  private static Dimension getImageDimension(Rendition rendition) {
+    Asset asset = rendition.getAsset();
     int imageWidth = 0;
     int imageHeight = 0;
-    if (isOriginal) {
+    if (isOriginalRendition(rendition)) {
       // get width/height from metadata for original renditions
       try {
         imageWidth = Integer.parseInt(StringUtils.defaultString(asset.getMetadataValue(DamConstants.TIFF_IMAGEWIDTH), "0"));
@@ -103,7 +124,7 @@ class RenditionMetadata extends SlingAdaptable implements Comparable<RenditionMe
         }
       }
     }
-    else if (FileExtension.isImage(this.fileExtension)) {
+    else if (FileExtension.isImage(StringUtils.substringAfterLast(rendition.getName(), "."))) {
       // otherwise get from rendition metadata written by {@link DamRenditionMetadataService}
       String metadataPath = JcrConstants.JCR_CONTENT + "/" + DamRenditionMetadataService.NN_RENDITIONS_METADATA + "/" + rendition.getName();
       Resource metadataResource = asset.adaptTo(Resource.class).getChild(metadataPath);
@@ -113,15 +134,14 @@ class RenditionMetadata extends SlingAdaptable implements Comparable<RenditionMe
         imageHeight = props.get(DamRenditionMetadataService.PN_IMAGE_HEIGHT, 0);
       }
     }
-    this.width = imageWidth;
-    this.height = imageHeight;
+    return new Dimension(imageWidth, imageHeight);
   }
 
   /**
    * @param value DAM rendition
    * @return true if rendition is the original file that was uploaded initially
    */
-  private boolean isOriginalRendition(Rendition value) {
+  private static boolean isOriginalRendition(Rendition value) {
     return StringUtils.equals(value.getName(), DamConstants.ORIGINAL_FILE);
   }
 
@@ -281,12 +301,12 @@ class RenditionMetadata extends SlingAdaptable implements Comparable<RenditionMe
     }
 
     // order by width, height, rendition path
-    Long thisWidth = getWidth();
-    Long otherWidth = obj.getWidth();
-    if (thisWidth.equals(otherWidth)) {
-      Long thisHeight = getHeight();
-      Long otherHeight = obj.getHeight();
-      if (thisHeight.equals(otherHeight)) {
+    long thisWidth = getWidth();
+    long otherWidth = obj.getWidth();
+    if (thisWidth == otherWidth) {
+      long thisHeight = getHeight();
+      long otherHeight = obj.getHeight();
+      if (thisHeight == otherHeight) {
         String thisPath = getRendition().getPath();
         String otherPath = obj.getRendition().getPath();
         if (!StringUtils.equals(thisPath, otherPath)) {
@@ -306,11 +326,11 @@ class RenditionMetadata extends SlingAdaptable implements Comparable<RenditionMe
         }
       }
       else {
-        return thisHeight.compareTo(otherHeight);
+        return Long.compare(thisHeight, otherHeight);
       }
     }
     else {
-      return thisWidth.compareTo(otherWidth);
+      return Long.compare(thisWidth, otherWidth);
     }
   }
 
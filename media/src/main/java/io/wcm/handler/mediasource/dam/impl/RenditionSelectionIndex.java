@@ -0,0 +1,337 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.mediasource.dam.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.IntPredicate;
+
+import org.osgi.annotation.versioning.ProviderType;
+
+import io.wcm.handler.media.Dimension;
+import io.wcm.handler.media.format.MediaFormatHandler;
+
+/**
+ * Immutable index for selecting renditions by size and ratio without scanning all renditions.
+ * <p>
+ * Renditions are identified by their rank in rendition order (as defined by {@link RenditionMetadata#compareTo}).
+ * All lookups return the rendition with the lowest rank that fulfills the same conditions as
+ * {@link RenditionMetadata#matches(long, long)} and {@link RenditionMetadata#matches(long, long, long, long, double)}.
+ * </p>
+ * <p>
+ * Renditions are grouped in buckets with a ratio range of {@link MediaFormatHandler#RATIO_TOLERANCE}, each bucket
+ * holds the renditions in rendition order (that is ordered by width) in primitive arrays. So a lookup only needs
+ * to check the buckets next to the requested ratio and can start with a binary search for the min. width.
+ * </p>
+ */
+@ProviderType
+public final class RenditionSelectionIndex {
+
+  private static final int[] EMPTY = new int[0];
+
+  private final String[] names;
+  private final long[] widths;
+  private final long[] heights;
+  private final double[] ratios;
+  private final Map<String, Integer> ranksByName;
+
+  // all ranks (= rendition order, ascending width)
+  private final Bucket all;
+  // ranks with finite ratio grouped by ratio bucket
+  private final Map<Long, Bucket> ratioBuckets;
+  // ranks with non-finite ratio (height 0), they are always checked
+  private final int[] nonFiniteRatioRanks;
+  // ranks ordered by height, then rank
+  private final int[] heightOrder;
+  private final long[] heightOrderHeights;
+
+  /**
+   * @param renditionDimensions Rendition dimensions with rendition name as key, in rendition order
+   */
+  RenditionSelectionIndex(Map<String, Dimension> renditionDimensions) {
+    int size = renditionDimensions.size();
+    names = new String[size];
+    widths = new long[size];
+    heights = new long[size];
+    ratios = new double[size];
+    ranksByName = new HashMap<>();
+
+    int rank = 0;
+    for (Map.Entry<String, Dimension> entry : renditionDimensions.entrySet()) {
+      names[rank] = entry.getKey();
+      widths[rank] = entry.getValue().getWidth();
+      heights[rank] = entry.getValue().getHeight();
+      ratios[rank] = (double)widths[rank] / (double)heights[rank];
+      ranksByName.put(names[rank], rank);
+      rank++;
+    }
+
+    int[] allRanks = new int[size];
+    Map<Long, List<Integer>> bucketRanks = new TreeMap<>();
+    List<Integer> nonFinite = new ArrayList<>();
+    for (int i = 0; i < size; i++) {
+      allRanks[i] = i;
+      if (Double.isFinite(ratios[i])) {
+        bucketRanks.computeIfAbsent(getBucketKey(ratios[i]), key -> new ArrayList<>()).add(i);
+      }
+      else {
+        nonFinite.add(i);
+      }
+    }
+    all = new Bucket(allRanks, widths);
+    ratioBuckets = new HashMap<>();
+    for (Map.Entry<Long, List<Integer>> entry : bucketRanks.entrySet()) {
+      ratioBuckets.put(entry.getKey(), new Bucket(toArray(entry.getValue()), widths));
+    }
+    nonFiniteRatioRanks = toArray(nonFinite);
+
+    heightOrder = Arrays.stream(allRanks).boxed()
+        .sorted((r1, r2) -> heights[r1] != heights[r2] ? Long.compare(heights[r1], heights[r2]) : Integer.compare(r1, r2))
+        .mapToInt(Integer::intValue)
+        .toArray();
+    heightOrderHeights = new long[size];
+    for (int i = 0; i < size; i++) {
+      heightOrderHeights[i] = heights[heightOrder[i]];
+    }
+  }
+
+  /**
+   * @return Number of renditions in index
+   */
+  int size() {
+    return names.length;
+  }
+
+  /**
+   * @param rank Rank
+   * @return Rendition name
+   */
+  String getName(int rank) {
+    return names[rank];
+  }
+
+  /**
+   * @param name Rendition name
+   * @return Rank or -1 if rendition is not indexed
+   */
+  int getRank(String name) {
+    Integer rank = ranksByName.get(name);
+    return rank != null ? rank : -1;
+  }
+
+  /**
+   * @param rank Rank
+   * @return Rendition width
+   */
+  long getWidth(int rank) {
+    return widths[rank];
+  }
+
+  /**
+   * @param rank Rank
+   * @return Rendition height
+   */
+  long getHeight(int rank) {
+    return heights[rank];
+  }
+
+  /**
+   * Find first rendition that has exactly the given width and/or height.
+   * @param width Width or 0 if not restricted
+   * @param height Height or 0 if not restricted
+   * @param filter Accepts ranks of renditions that are allowed
+   * @return Rank of rendition or -1 if none found
+   */
+  int findExactMatch(long width, long height, IntPredicate filter) {
+    if (width != 0) {
+      // ordered by width: all renditions with matching width form a contiguous range
+      for (int i = all.indexOfMinWidth(width); i < all.ranks.length && all.widths[i] == width; i++) {
+        int rank = all.ranks[i];
+        if ((height == 0 || heights[rank] == height) && filter.test(rank)) {
+          return rank;
+        }
+      }
+      return -1;
+    }
+    if (height != 0) {
+      for (int i = indexOfMinHeight(height); i < heightOrder.length && heightOrderHeights[i] == height; i++) {
+        if (filter.test(heightOrder[i])) {
+          return heightOrder[i];
+        }
+      }
+      return -1;
+    }
+    // no restriction
+    for (int rank = 0; rank < names.length; rank++) {
+      if (filter.test(rank)) {
+        return rank;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Find first rendition that matches the given size and ratio restrictions.
+   * @param minWidth Min. width
+   * @param minHeight Min. height
+   * @param maxWidth Max. width
+   * @param maxHeight Max. height
+   * @param ratio Ratio
+   * @param filter Accepts ranks of renditions that are allowed
+   * @return Rank of rendition or -1 if none found
+   */
+  int findMatch(long minWidth, long minHeight, long maxWidth, long maxHeight, double ratio, IntPredicate filter) {
+    int result = -1;
+    if (ratio > 0) {
+      // the ratio range [ratio - tolerance, ratio + tolerance] spans at most three buckets,
+      // check one more on each side to be safe against rounding
+      long minKey = getBucketKey(ratio - MediaFormatHandler.RATIO_TOLERANCE) - 1;
+      long maxKey = getBucketKey(ratio + MediaFormatHandler.RATIO_TOLERANCE) + 1;
+      for (long key = minKey; key <= maxKey; key++) {
+        Bucket bucket = ratioBuckets.get(key);
+        if (bucket != null) {
+          result = min(result, bucket.findMatch(minWidth, minHeight, maxWidth, maxHeight, ratio, filter));
+        }
+      }
+      for (int rank : nonFiniteRatioRanks) {
+        if ((result < 0 || rank < result) && matches(rank, minWidth, minHeight, maxWidth, maxHeight, ratio) && filter.test(rank)) {
+          result = rank;
+          break;
+        }
+      }
+    }
+    else {
+      result = all.findMatch(minWidth, minHeight, maxWidth, maxHeight, 0d, filter);
+    }
+    return result;
+  }
+
+  /**
+   * Same conditions as {@link RenditionMetadata#matches(long, long, long, long, double)}.
+   */
+  private boolean matches(int rank, long minWidth, long minHeight, long maxWidth, long maxHeight, double ratio) {
+    long width = widths[rank];
+    long height = heights[rank];
+    if (minWidth > 0 && width < minWidth) {
+      return false;
+    }
+    if (minHeight > 0 && height < minHeight) {
+      return false;
+    }
+    if (maxWidth > 0 && width > maxWidth) {
+      return false;
+    }
+    if (maxHeight > 0 && height > maxHeight) {
+      return false;
+    }
+    if (ratio > 0) {
+      double renditionRatio = ratios[rank];
+      if (renditionRatio > ratio + MediaFormatHandler.RATIO_TOLERANCE
+          || renditionRatio < ratio - MediaFormatHandler.RATIO_TOLERANCE) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private int indexOfMinHeight(long minHeight) {
+    int index = Arrays.binarySearch(heightOrderHeights, minHeight);
+    if (index < 0) {
+      return -index - 1;
+    }
+    // binary search returns any of the equal elements - go back to the first one
+    while (index > 0 && heightOrderHeights[index - 1] == minHeight) {
+      index--;
+    }
+    return index;
+  }
+
+  private static long getBucketKey(double ratio) {
+    return (long)Math.floor(ratio / MediaFormatHandler.RATIO_TOLERANCE);
+  }
+
+  private static int min(int rank1, int rank2) {
+    if (rank1 < 0) {
+      return rank2;
+    }
+    if (rank2 < 0) {
+      return rank1;
+    }
+    return Math.min(rank1, rank2);
+  }
+
+  private static int[] toArray(List<Integer> values) {
+    if (values.isEmpty()) {
+      return EMPTY;
+    }
+    return values.stream().mapToInt(Integer::intValue).toArray();
+  }
+
+
+  /**
+   * Renditions ranks in ascending order (= ascending width) with their widths.
+   */
+  private final class Bucket {
+
+    private final int[] ranks;
+    private final long[] widths;
+
+    Bucket(int[] ranks, long[] allWidths) {
+      this.ranks = ranks;
+      this.widths = new long[ranks.length];
+      for (int i = 0; i < ranks.length; i++) {
+        this.widths[i] = allWidths[ranks[i]];
+      }
+    }
+
+    int indexOfMinWidth(long minWidth) {
+      int index = Arrays.binarySearch(widths, minWidth);
+      if (index < 0) {
+        return -index - 1;
+      }
+      // binary search returns any of the equal elements - go back to the first one
+      while (index > 0 && widths[index - 1] == minWidth) {
+        index--;
+      }
+      return index;
+    }
+
+    int findMatch(long minWidth, long minHeight, long maxWidth, long maxHeight, double ratio, IntPredicate filter) {
+      int start = minWidth > 0 ? indexOfMinWidth(minWidth) : 0;
+      for (int i = start; i < ranks.length; i++) {
+        if (maxWidth > 0 && widths[i] > maxWidth) {
+          // all following renditions are wider
+          break;
+        }
+        int rank = ranks[i];
+        if (matches(rank, minWidth, minHeight, maxWidth, maxHeight, ratio) && filter.test(rank)) {
+          return rank;
+        }
+      }
+      return -1;
+    }
+
+  }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.mediasource.dam.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.day.cq.dam.api.Asset;
+
+import io.wcm.handler.media.Dimension;
+
+/**
+ * Rendition index with the lifetime of a single media source instance, e.g. while resolving a batch of media
+ * requests. Remembers rendition dimensions and selection index of each asset so repeated lookups for the same asset
+ * within the scope read the rendition metadata only once. Delegates to the shared {@link RenditionIndex} if available.
+ * This class is not thread-safe.
+ */
+public final class ScopedRenditionIndex implements RenditionIndex {
+
+  private final RenditionIndex sharedIndex;
+  private final Map<String, Entry> entries = new HashMap<>();
+
+  /**
+   * @param sharedIndex Shared rendition index (optional)
+   */
+  public ScopedRenditionIndex(RenditionIndex sharedIndex) {
+    this.sharedIndex = sharedIndex;
+  }
+
+  @Override
+  public Map<String, Dimension> getRenditionDimensions(Asset asset) {
+    Entry entry = getEntry(asset);
+    entry.lookups++;
+    return entry.renditionDimensions;
+  }
+
+  @Override
+  public RenditionSelectionIndex getSelectionIndex(Asset asset) {
+    Entry entry = getEntry(asset);
+    if (entry.selectionIndex == null) {
+      if (sharedIndex != null) {
+        entry.selectionIndex = sharedIndex.getSelectionIndex(asset);
+      }
+      // building a selection index of our own pays off only if the asset is looked up more than once
+      if (entry.selectionIndex == null && entry.lookups > 1) {
+        entry.selectionIndex = new RenditionSelectionIndex(entry.renditionDimensions);
+      }
+    }
+    return entry.selectionIndex;
+  }
+
+  private Entry getEntry(Asset asset) {
+    String assetPath = asset.getPath();
+    long lastModified = asset.getLastModified();
+    Entry entry = entries.get(assetPath);
+    if (entry == null || entry.lastModified != lastModified) {
+      Map<String, Dimension> renditionDimensions = sharedIndex != null
+          ? sharedIndex.getRenditionDimensions(asset)
+          : RenditionIndexImpl.buildRenditionDimensions(asset);
+      entry = new Entry(lastModified, renditionDimensions);
+      entries.put(assetPath, entry);
+    }
+    return entry;
+  }
+
+  @Override
+  public void invalidate(String assetPath) {
+    entries.remove(assetPath);
+    if (sharedIndex != null) {
+      sharedIndex.invalidate(assetPath);
+    }
+  }
+
+
+  private static final class Entry {
+
+    private final long lastModified;
+    private final Map<String, Dimension> renditionDimensions;
+    private RenditionSelectionIndex selectionIndex;
+    private int lookups;
+
+    Entry(long lastModified, Map<String, Dimension> renditionDimensions) {
+      this.lastModified = lastModified;
+      this.renditionDimensions = renditionDimensions;
+    }
+
+  }
+
+}
@@ -41,7 +41,7 @@ class VirtualCropRenditionMetadata extends RenditionMetadata {
   private final CropDimension cropDimension;
 
   VirtualCropRenditionMetadata(Rendition rendition, long width, long height, CropDimension cropDimension) {
-    super(rendition);
+    super(rendition, width, height);
     this.width = width;
     this.height = height;
     this.cropDimension = cropDimension;
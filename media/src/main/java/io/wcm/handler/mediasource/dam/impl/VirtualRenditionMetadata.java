@@ -39,7 +39,7 @@ class VirtualRenditionMetadata extends RenditionMetadata {
   private final long height;
 
   VirtualRenditionMetadata(Rendition rendition, long width, long height) {
-    super(rendition);
+    super(rendition, width, height);
     this.width = width;
     this.height = height;
   }
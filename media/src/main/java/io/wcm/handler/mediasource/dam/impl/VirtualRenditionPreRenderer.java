@@ -0,0 +1,313 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.mediasource.dam.impl;
+
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.jackrabbit.util.Text;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicy;
+import org.osgi.service.component.annotations.ReferencePolicyOption;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventConstants;
+import org.osgi.service.event.EventHandler;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.day.cq.dam.api.Asset;
+import com.day.cq.dam.api.DamEvent;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import io.wcm.handler.media.MediaArgs;
+import io.wcm.handler.media.format.MediaFormat;
+import io.wcm.handler.media.format.impl.MediaFormatProviderManager;
+import io.wcm.handler.media.impl.ImageFileCache;
+import io.wcm.handler.media.impl.ImageFileCacheKey;
+import io.wcm.handler.media.impl.ImageFileRenderer;
+import io.wcm.handler.media.impl.ImageRenderScheduler;
+import io.wcm.handler.media.spi.MediaHandlerConfig;
+import io.wcm.wcm.commons.contenttype.FileExtension;
+
+/**
+ * Background service that pre-renders the virtual renditions required by the media formats of an asset's context
+ * into the {@link ImageFileCache} when the asset or one of its renditions is uploaded or changed.
+ * This way the first visitor does not have to wait for the image to be resized on the fly.
+ */
+@Component(service = EventHandler.class, immediate = true, property = {
+    EventConstants.EVENT_TOPIC + "=" + DamEvent.EVENT_TOPIC,
+    "jmx.objectname=io.wcm.handler.media:type=VirtualRenditionPreRenderer"
+})
+@Designate(ocd = VirtualRenditionPreRenderer.Config.class)
+public final class VirtualRenditionPreRenderer implements EventHandler, VirtualRenditionPreRendererMXBean {
+
+  @ObjectClassDefinition(name = "wcm.io Media Handler Virtual Rendition Pre-Renderer",
+      description = "Pre-renders virtual renditions for configured media formats into the image file cache "
+          + "when DAM assets are uploaded or changed.")
+  static @interface Config {
+
+    @AttributeDefinition(name = "Enabled", description = "Switch to enable or disable this service.")
+    boolean enabled() default false;
+
+    @AttributeDefinition(name = "Threads", description = "Number of worker threads for pre-rendering.")
+    int threads() default 2;
+
+    @AttributeDefinition(name = "Max. backlog", description = "Max. number of assets waiting for pre-rendering. "
+        + "If the backlog is full further assets are skipped and rendered on first request.")
+    int maxBacklog() default 1000;
+
+  }
+
+  private static final EnumSet<DamEvent.Type> SUPPORTED_EVENT_TYPES = EnumSet.of(DamEvent.Type.RENDITION_UPDATED);
+
+  private static final Logger log = LoggerFactory.getLogger(VirtualRenditionPreRenderer.class);
+
+  @Reference
+  private ResourceResolverFactory resourceResolverFactory;
+
+  @Reference
+  private MediaFormatProviderManager mediaFormatProviderManager;
+
+  @Reference
+  private ImageFileCache imageFileCache;
+
+  @Reference(cardinality = ReferenceCardinality.OPTIONAL, policy = ReferencePolicy.DYNAMIC,
+      policyOption = ReferencePolicyOption.GREEDY)
+  private volatile ImageRenderScheduler imageRenderScheduler;
+
+  private boolean enabled;
+  private ThreadPoolExecutor executor;
+
+  // asset paths scheduled for pre-rendering but not started yet
+  private final Set<String> pendingAssetPaths = ConcurrentHashMap.newKeySet();
+  // number of assets currently pre-rendered
+  private final AtomicInteger activeCount = new AtomicInteger();
+
+  private final AtomicLong renderedCount = new AtomicLong();
+  private final AtomicLong rejectedCount = new AtomicLong();
+  private final AtomicLong failedCount = new AtomicLong();
+
+  @Activate
+  private void activate(Config config) {
+    enabled = config.enabled();
+    if (enabled) {
+      int threads = Math.max(1, config.threads());
+      executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+          new LinkedBlockingQueue<>(Math.max(1, config.maxBacklog())),
+          new ThreadFactoryBuilder().setNameFormat("wcmio-media-prerender-%d").setDaemon(true).build());
+    }
+  }
+
+  @Deactivate
+  private void deactivate() {
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+    pendingAssetPaths.clear();
+  }
+
+  @Override
+  public void handleEvent(Event event) {
+    if (!enabled || !StringUtils.equals(event.getTopic(), DamEvent.EVENT_TOPIC)) {
+      return;
+    }
+    DamEvent damEvent = DamEvent.fromEvent(event);
+    if (SUPPORTED_EVENT_TYPES.contains(damEvent.getType())) {
+      // make sure rendition file extension is an image extensions
+      String fileExtension = StringUtils.substringAfterLast(Text.getName(damEvent.getAdditionalInfo()), ".");
+      if (FileExtension.isImage(fileExtension)) {
+        schedule(damEvent.getAssetPath());
+      }
+    }
+  }
+
+  /**
+   * Schedule asset for pre-rendering. Multiple events for the same asset are collapsed as long as the
+   * pre-rendering has not started yet.
+   * @param assetPath Asset path
+   */
+  void schedule(String assetPath) {
+    if (!pendingAssetPaths.add(assetPath)) {
+      return;
+    }
+    try {
+      executor.execute(() -> {
+        activeCount.incrementAndGet();
+        pendingAssetPaths.remove(assetPath);
+        try {
+          preRender(assetPath);
+        }
+        finally {
+          activeCount.decrementAndGet();
+        }
+      });
+    }
+    catch (RejectedExecutionException ex) {
+      pendingAssetPaths.remove(assetPath);
+      rejectedCount.incrementAndGet();
+      log.debug("Pre-rendering backlog full, skipping {}", assetPath);
+    }
+  }
+
+  /**
+   * Pre-render all virtual renditions for the media formats of the asset's context.
+   * @param assetPath Asset path
+   */
+  private void preRender(String assetPath) {
+    ResourceResolver resolver = null;
+    try {
+      resolver = resourceResolverFactory.getServiceResourceResolver(null);
+
+      Resource assetResource = resolver.getResource(assetPath);
+      Asset asset = assetResource != null ? assetResource.adaptTo(Asset.class) : null;
+      MediaHandlerConfig config = assetResource != null ? assetResource.adaptTo(MediaHandlerConfig.class) : null;
+      if (asset == null || config == null) {
+        return;
+      }
+
+      DefaultRenditionHandler renditionHandler = new DefaultRenditionHandler(asset);
+      for (MediaFormat mediaFormat : mediaFormatProviderManager.getMediaFormats(assetResource)) {
+        if (!mediaFormat.isImage()) {
+          continue;
+        }
+        RenditionMetadata rendition = renditionHandler.getRendition(new MediaArgs(mediaFormat));
+        if (isPreRenderable(rendition)) {
+          preRender((VirtualRenditionMetadata)rendition, config);
+        }
+      }
+    }
+    catch (LoginException ex) {
+      failedCount.incrementAndGet();
+      log.warn("Getting service resource resolver failed. "
+          + "Please make sure a service user is defined for bundle 'io.wcm.handler.media'.", ex);
+    }
+    catch (IOException | RuntimeException ex) {
+      failedCount.incrementAndGet();
+      log.warn("Pre-rendering virtual renditions failed for " + assetPath, ex);
+    }
+    finally {
+      if (resolver != null) {
+        resolver.close();
+      }
+    }
+  }
+
+  /**
+   * Only virtual renditions that are resized from an existing rendition can be pre-rendered.
+   * Cropped virtual renditions depend on component content and are rendered on first request.
+   * @param rendition Rendition
+   * @return true if the rendition can be pre-rendered
+   */
+  static boolean isPreRenderable(RenditionMetadata rendition) {
+    return rendition instanceof VirtualRenditionMetadata;
+  }
+
+  private void preRender(VirtualRenditionMetadata rendition, MediaHandlerConfig config) throws IOException {
+    Resource renditionResource = rendition.getRendition().adaptTo(Resource.class);
+    if (renditionResource == null) {
+      return;
+    }
+    String contentType = ImageFileRenderer.getContentType(rendition.getFileName());
+    double quality = config.getDefaultImageQuality(contentType);
+    int width = (int)rendition.getWidth();
+    int height = (int)rendition.getHeight();
+    ImageFileCacheKey key = ImageFileCacheKey.of(renditionResource, width, height, null, quality, contentType);
+    if (key == null || imageFileCache.get(key) != null) {
+      return;
+    }
+
+    ImageRenderScheduler scheduler = this.imageRenderScheduler;
+    if (scheduler != null) {
+      scheduler.render(key, () -> renderAndCache(renditionResource, key, width, height, contentType, quality));
+    }
+    else {
+      renderAndCache(renditionResource, key, width, height, contentType, quality);
+    }
+  }
+
+  private byte[] renderAndCache(Resource renditionResource, ImageFileCacheKey key, int width, int height,
+      String contentType, double quality) throws IOException {
+    byte[] binaryData = ImageFileRenderer.render(renditionResource, width, height, null, contentType, quality);
+    if (binaryData != null) {
+      imageFileCache.put(key, binaryData);
+      renderedCount.incrementAndGet();
+      log.debug("Pre-rendered {}", key);
+    }
+    return binaryData;
+  }
+
+  /**
+   * Blocks until all scheduled assets are pre-rendered.
+   * @param timeoutMs Max. time to wait
+   * @return true if all assets are pre-rendered, false if timeout was reached
+   */
+  boolean awaitIdle(long timeoutMs) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + timeoutMs;
+    while (!pendingAssetPaths.isEmpty() || activeCount.get() > 0) {
+      if (System.currentTimeMillis() > deadline) {
+        return false;
+      }
+      TimeUnit.MILLISECONDS.sleep(5);
+    }
+    return true;
+  }
+
+  @Override
+  public int getBacklog() {
+    return pendingAssetPaths.size();
+  }
+
+  @Override
+  public long getRenderedCount() {
+    return renderedCount.get();
+  }
+
+  @Override
+  public long getRejectedCount() {
+    return rejectedCount.get();
+  }
+
+  @Override
+  public long getFailedCount() {
+    return failedCount.get();
+  }
+
+}
@@ -0,0 +1,47 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.mediasource.dam.impl;
+
+/**
+ * JMX metrics for {@link VirtualRenditionPreRenderer}.
+ */
+public interface VirtualRenditionPreRendererMXBean {
+
+  /**
+   * @return Number of assets waiting for pre-rendering
+   */
+  int getBacklog();
+
+  /**
+   * @return Number of virtual renditions rendered
+   */
+  long getRenderedCount();
+
+  /**
+   * @return Number of assets rejected because the backlog was full
+   */
+  long getRejectedCount();
+
+  /**
+   * @return Number of assets where pre-rendering failed
+   */
+  long getFailedCount();
+
+}
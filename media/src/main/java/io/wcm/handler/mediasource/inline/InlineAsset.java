@@ -29,6 +29,7 @@ import io.wcm.handler.media.Asset;
 import io.wcm.handler.media.Media;
 import io.wcm.handler.media.MediaArgs;
 import io.wcm.handler.media.Rendition;
+import io.wcm.handler.media.impl.ImageDimensionCache;
 
 /**
  * {@link Asset} implementation for inline media objects stored in a node in a content page.
@@ -40,18 +41,23 @@ class InlineAsset extends SlingAdaptable implements Asset {
   private final Media media;
   private final MediaArgs defaultMediaArgs;
   private final String fileName;
+  private final ImageDimensionCache imageDimensionCache;
 
   /**
    * @param resource Binary resource
    * @param media Media metadata
    * @param fileName File name
+   * @param adaptable Adaptable from current context
+   * @param imageDimensionCache Image dimension cache (optional)
    */
-  InlineAsset(Resource resource, Media media, String fileName, Adaptable adaptable) {
+  InlineAsset(Resource resource, Media media, String fileName, Adaptable adaptable,
+      ImageDimensionCache imageDimensionCache) {
     this.resource = resource;
     this.media = media;
     this.defaultMediaArgs = media.getMediaRequest().getMediaArgs();
     this.fileName = fileName;
     this.adaptable = adaptable;
+    this.imageDimensionCache = imageDimensionCache;
   }
 
   @Override
@@ -136,7 +142,8 @@ class InlineAsset extends SlingAdaptable implements Asset {
    * @return Inline rendition instance (may be invalid rendition)
    */
   private Rendition getInlineRendition(MediaArgs mediaArgs) {
-    return new InlineRendition(this.resource, this.media, mediaArgs, this.fileName, this.adaptable);
+    return new InlineRendition(this.resource, this.media, mediaArgs, this.fileName, this.adaptable,
+        this.imageDimensionCache);
   }
 
   @Override
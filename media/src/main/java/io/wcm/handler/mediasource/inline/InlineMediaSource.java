@@ -40,6 +40,7 @@ import io.wcm.handler.media.MediaArgs;
 import io.wcm.handler.media.MediaInvalidReason;
 import io.wcm.handler.media.MediaNameConstants;
 import io.wcm.handler.media.MediaRequest;
+import io.wcm.handler.media.impl.ImageDimensionCache;
 import io.wcm.handler.media.impl.JcrBinary;
 import io.wcm.handler.media.spi.MediaSource;
 import io.wcm.sling.commons.util.Escape;
@@ -57,6 +58,8 @@ public final class InlineMediaSource extends MediaSource {
   private Adaptable adaptable;
   @OSGiService(injectionStrategy = InjectionStrategy.OPTIONAL)
   private MimeTypeService mimeTypeService;
+  @OSGiService(injectionStrategy = InjectionStrategy.OPTIONAL)
+  private ImageDimensionCache imageDimensionCache;
 
   /**
    * Media source ID
@@ -162,7 +165,7 @@ public final class InlineMediaSource extends MediaSource {
    * @return Inline media item instance
    */
   private Asset getInlineAsset(Resource ntResourceResource, Media media, String fileName) {
-    return new InlineAsset(ntResourceResource, media, fileName, adaptable);
+    return new InlineAsset(ntResourceResource, media, fileName, adaptable, imageDimensionCache);
   }
 
   /**
@@ -44,6 +44,8 @@ import io.wcm.handler.media.MediaArgs;
 import io.wcm.handler.media.Rendition;
 import io.wcm.handler.media.format.MediaFormat;
 import io.wcm.handler.media.format.MediaFormatHandler;
+import io.wcm.handler.media.impl.ImageDimensionCache;
+import io.wcm.handler.media.impl.ImageDimensionProbe;
 import io.wcm.handler.media.impl.ImageFileServlet;
 import io.wcm.handler.media.impl.JcrBinary;
 import io.wcm.handler.media.impl.MediaFileServlet;
@@ -62,6 +64,7 @@ class InlineRendition extends SlingAdaptable implements Rendition {
   private final Media media;
   private final MediaArgs mediaArgs;
   private final String fileName;
+  private final ImageDimensionCache imageDimensionCache;
   private final Dimension imageDimension;
   private final String url;
   private MediaFormat resolvedMediaFormat;
@@ -76,12 +79,16 @@ class InlineRendition extends SlingAdaptable implements Rendition {
    * @param media Media metadata
    * @param mediaArgs Media args
    * @param fileName File name
+   * @param adaptable Adaptable from current context
+   * @param imageDimensionCache Image dimension cache (optional)
    */
-  InlineRendition(Resource resource, Media media, MediaArgs mediaArgs, String fileName, Adaptable adaptable) {
+  InlineRendition(Resource resource, Media media, MediaArgs mediaArgs, String fileName, Adaptable adaptable,
+      ImageDimensionCache imageDimensionCache) {
     this.resource = resource;
     this.media = media;
     this.mediaArgs = mediaArgs;
     this.adaptable = adaptable;
+    this.imageDimensionCache = imageDimensionCache;
 
     // detect image dimension
     String processedFileName = fileName;
@@ -130,10 +137,12 @@ class InlineRendition extends SlingAdaptable implements Rendition {
       dimension = this.media.getCropDimension();
     }
     else {
-      // if binary is image try to calculcate dimensions by loading it into a layer
-      Layer layer = this.resource.adaptTo(Layer.class);
-      if (layer != null) {
-        dimension = new Dimension(layer.getWidth(), layer.getHeight());
+      // if binary is image try to detect dimensions from image header
+      if (this.imageDimensionCache != null) {
+        dimension = this.imageDimensionCache.getDimension(this.resource);
+      }
+      else {
+        dimension = ImageDimensionProbe.getDimension(this.resource);
       }
     }
 
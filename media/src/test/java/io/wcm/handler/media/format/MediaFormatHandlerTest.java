@@ -356,6 +356,24 @@ public class MediaFormatHandlerTest {
 
   }
 
+  @Test
+  public void testGetSameBiggerMediaFormats_Modifiable() {
+    SortedSet<MediaFormat> matchingFormats = underTest.getSameBiggerMediaFormats(EDITORIAL_2COL, true);
+    matchingFormats.remove(EDITORIAL_2COL);
+
+    // precomputed media formats of the catalog are not affected
+    assertTrue(underTest.getSameBiggerMediaFormats(EDITORIAL_2COL, true).contains(EDITORIAL_2COL));
+  }
+
+  @Test
+  public void testGetSameSmallerMediaFormats_Modifiable() {
+    SortedSet<MediaFormat> matchingFormats = underTest.getSameSmallerMediaFormats(EDITORIAL_2COL, true);
+    matchingFormats.remove(EDITORIAL_2COL);
+
+    // precomputed media formats of the catalog are not affected
+    assertTrue(underTest.getSameSmallerMediaFormats(EDITORIAL_2COL, true).contains(EDITORIAL_2COL));
+  }
+
   @Test
   public void testDetectMediaFormat() {
 
@@ -20,6 +20,10 @@
 package io.wcm.handler.media.format.impl;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.mockito.Mockito.when;
 
 import java.util.SortedSet;
@@ -33,6 +37,7 @@ import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.osgi.framework.Constants;
 
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 
 import io.wcm.handler.media.format.MediaFormat;
@@ -91,6 +96,29 @@ public class MediaFormatProviderManagerImplTest {
     assertEquals("desc-from-1", first.getDescription());
   }
 
+  @Test
+  public void testMediaFormatCatalog() {
+    MediaFormatCatalog catalog = underTest.getMediaFormatCatalog(resource);
+    assertSame(MF11, catalog.getMediaFormat("mf11"));
+    assertNull(catalog.getMediaFormat("unknown"));
+    assertSame(catalog, underTest.getMediaFormatCatalog(resource));
+  }
+
+  @Test
+  public void testMediaFormatCatalog_InvalidateOnProviderChange() {
+    MediaFormatCatalog catalog = underTest.getMediaFormatCatalog(resource);
+
+    MediaFormatProvider provider3 = new MediaFormatProvider(ImmutableSet.of(
+        MediaFormatBuilder.create("mf31").build())) {
+      // dummy provider
+    };
+    context.registerService(MediaFormatProvider.class, provider3);
+
+    MediaFormatCatalog newCatalog = underTest.getMediaFormatCatalog(resource);
+    assertNotSame(catalog, newCatalog);
+    assertNotNull(newCatalog.getMediaFormat("mf31"));
+  }
+
   @Test
   public void testNullResource() {
     assertEquals(ImmutableSortedSet.of(), underTest.getMediaFormats(null));
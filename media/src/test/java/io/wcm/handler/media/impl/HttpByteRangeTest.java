@@ -0,0 +1,140 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.media.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class HttpByteRangeTest {
+
+  private static final long CONTENT_LENGTH = 1000;
+
+  @Test
+  public void testSingleRange() {
+    List<HttpByteRange> ranges = HttpByteRange.parse("bytes=100-199", CONTENT_LENGTH);
+    assertEquals(1, ranges.size());
+    assertRange(100, 199, ranges.get(0));
+    assertEquals(100, ranges.get(0).getLength());
+    assertEquals("bytes 100-199/1000", ranges.get(0).toContentRange(CONTENT_LENGTH));
+  }
+
+  @Test
+  public void testOpenRange() {
+    List<HttpByteRange> ranges = HttpByteRange.parse("bytes=900-", CONTENT_LENGTH);
+    assertEquals(1, ranges.size());
+    assertRange(900, 999, ranges.get(0));
+  }
+
+  @Test
+  public void testSuffixRange() {
+    List<HttpByteRange> ranges = HttpByteRange.parse("bytes=-100", CONTENT_LENGTH);
+    assertEquals(1, ranges.size());
+    assertRange(900, 999, ranges.get(0));
+  }
+
+  @Test
+  public void testSuffixRangeLargerThanContent() {
+    List<HttpByteRange> ranges = HttpByteRange.parse("bytes=-5000", CONTENT_LENGTH);
+    assertEquals(1, ranges.size());
+    assertRange(0, 999, ranges.get(0));
+  }
+
+  @Test
+  public void testEndBeyondContentLength() {
+    List<HttpByteRange> ranges = HttpByteRange.parse("bytes=500-5000", CONTENT_LENGTH);
+    assertEquals(1, ranges.size());
+    assertRange(500, 999, ranges.get(0));
+  }
+
+  @Test
+  public void testMultipleRanges() {
+    List<HttpByteRange> ranges = HttpByteRange.parse("bytes=0-9, 20-29,-10", CONTENT_LENGTH);
+    assertEquals(3, ranges.size());
+    assertRange(0, 9, ranges.get(0));
+    assertRange(20, 29, ranges.get(1));
+    assertRange(990, 999, ranges.get(2));
+  }
+
+  @Test
+  public void testNotSatisfiable() {
+    assertTrue(HttpByteRange.parse("bytes=1000-1100", CONTENT_LENGTH).isEmpty());
+    assertTrue(HttpByteRange.parse("bytes=-0", CONTENT_LENGTH).isEmpty());
+  }
+
+  @Test
+  public void testInvalid() {
+    assertNull(HttpByteRange.parse(null, CONTENT_LENGTH));
+    assertNull(HttpByteRange.parse("", CONTENT_LENGTH));
+    assertNull(HttpByteRange.parse("items=0-10", CONTENT_LENGTH));
+    assertNull(HttpByteRange.parse("bytes=abc", CONTENT_LENGTH));
+    assertNull(HttpByteRange.parse("bytes=20-10", CONTENT_LENGTH));
+    assertNull(HttpByteRange.parse("bytes=-", CONTENT_LENGTH));
+    assertNull(HttpByteRange.parse("bytes=1-2-3", CONTENT_LENGTH));
+  }
+
+  @Test
+  public void testTooManyRanges() {
+    StringBuilder header = new StringBuilder("bytes=");
+    for (int i = 0; i <= HttpByteRange.MAX_RANGES; i++) {
+      header.append(i > 0 ? "," : "").append(i * 10).append('-').append(i * 10 + 5);
+    }
+    assertNull(HttpByteRange.parse(header.toString(), CONTENT_LENGTH));
+  }
+
+  @Test
+  public void testMerge() {
+    List<HttpByteRange> ranges = HttpByteRange.merge(
+        HttpByteRange.parse("bytes=500-599,0-9,5-19,20-29,550-560,990-", CONTENT_LENGTH));
+    assertEquals(3, ranges.size());
+    assertRange(0, 29, ranges.get(0));
+    assertRange(500, 599, ranges.get(1));
+    assertRange(990, 999, ranges.get(2));
+  }
+
+  @Test
+  public void testMerge_NotOverlapping() {
+    List<HttpByteRange> ranges = HttpByteRange.merge(HttpByteRange.parse("bytes=20-29,0-9", CONTENT_LENGTH));
+    assertEquals(2, ranges.size());
+    assertRange(0, 9, ranges.get(0));
+    assertRange(20, 29, ranges.get(1));
+  }
+
+  @Test
+  public void testMerge_SameRepeated() {
+    StringBuilder header = new StringBuilder("bytes=");
+    for (int i = 0; i < HttpByteRange.MAX_RANGES; i++) {
+      header.append(i > 0 ? "," : "").append("0-");
+    }
+    List<HttpByteRange> ranges = HttpByteRange.merge(HttpByteRange.parse(header.toString(), CONTENT_LENGTH));
+    assertEquals(1, ranges.size());
+    assertRange(0, 999, ranges.get(0));
+  }
+
+  private static void assertRange(long start, long end, HttpByteRange range) {
+    assertEquals(start, range.getStart());
+    assertEquals(end, range.getEnd());
+  }
+
+}
@@ -0,0 +1,128 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2014 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.media.impl;
+
+import static io.wcm.handler.media.impl.ImageDimensionCacheImpl.PN_BINARY_LAST_MODIFIED;
+import static io.wcm.handler.media.impl.ImageDimensionCacheImpl.PN_IMAGE_HEIGHT;
+import static io.wcm.handler.media.impl.ImageDimensionCacheImpl.PN_IMAGE_WIDTH;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ValueMap;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.day.cq.commons.jcr.JcrConstants;
+
+import io.wcm.handler.media.Dimension;
+import io.wcm.handler.media.testcontext.AppAemContext;
+import io.wcm.testing.mock.aem.junit.AemContext;
+
+public class ImageDimensionCacheImplTest {
+
+  private static final String METADATA_PATH = "/content/test/mediaInlineMetadata";
+
+  @Rule
+  public AemContext context = AppAemContext.newAemContext();
+
+  private Resource binary;
+
+  @Before
+  public void setUp() {
+    context.create().resource("/content/test");
+    binary = context.load().binaryFile("/sample_image_215x102.jpg", "/content/test/mediaInline")
+        .getChild(JcrConstants.JCR_CONTENT);
+  }
+
+  @Test
+  public void testGetDimension() {
+    ImageDimensionCache underTest = context.registerInjectActivateService(new ImageDimensionCacheImpl());
+    assertEquals(new Dimension(215, 102), underTest.getDimension(binary));
+    assertEquals(new Dimension(215, 102), underTest.getDimension(binary));
+    assertNull(context.resourceResolver().getResource(METADATA_PATH));
+  }
+
+  @Test
+  public void testGetDimension_Disabled() {
+    ImageDimensionCache underTest = context.registerInjectActivateService(new ImageDimensionCacheImpl(),
+        "enabled", false);
+    assertEquals(new Dimension(215, 102), underTest.getDimension(binary));
+  }
+
+  @Test
+  public void testGetDimension_WriteThrough() throws InterruptedException {
+    ImageDimensionCacheImpl underTest = context.registerInjectActivateService(new ImageDimensionCacheImpl(),
+        "writeThrough", true);
+    assertEquals(new Dimension(215, 102), underTest.getDimension(binary));
+    assertTrue(underTest.awaitWritten(5000));
+
+    Resource metadata = context.resourceResolver().getResource(METADATA_PATH);
+    assertNotNull(metadata);
+    ValueMap props = metadata.getValueMap();
+    assertEquals(215L, (long)props.get(PN_IMAGE_WIDTH, 0L));
+    assertEquals(102L, (long)props.get(PN_IMAGE_HEIGHT, 0L));
+  }
+
+  @Test
+  public void testGetDimension_ReadFromMetadata() throws PersistenceException, InterruptedException {
+    ImageDimensionCacheImpl underTest = context.registerInjectActivateService(new ImageDimensionCacheImpl(),
+        "writeThrough", true);
+    underTest.getDimension(binary);
+    assertTrue(underTest.awaitWritten(5000));
+
+    // manipulate stored dimension and read it with an empty in-memory cache
+    context.resourceResolver().getResource(METADATA_PATH).adaptTo(ModifiableValueMap.class).put(PN_IMAGE_WIDTH, 10L);
+    context.resourceResolver().commit();
+    underTest = context.registerInjectActivateService(new ImageDimensionCacheImpl(), "writeThrough", true);
+    assertEquals(new Dimension(10, 102), underTest.getDimension(binary));
+  }
+
+  @Test
+  public void testGetDimension_OutdatedMetadata() throws PersistenceException, InterruptedException {
+    ImageDimensionCacheImpl underTest = context.registerInjectActivateService(new ImageDimensionCacheImpl(),
+        "writeThrough", true);
+    underTest.getDimension(binary);
+    assertTrue(underTest.awaitWritten(5000));
+
+    // metadata of other binary version is ignored and overwritten
+    ModifiableValueMap props = context.resourceResolver().getResource(METADATA_PATH).adaptTo(ModifiableValueMap.class);
+    props.put(PN_IMAGE_WIDTH, 10L);
+    props.put(PN_BINARY_LAST_MODIFIED, props.get(PN_BINARY_LAST_MODIFIED, 0L) - 1000L);
+    context.resourceResolver().commit();
+    underTest = context.registerInjectActivateService(new ImageDimensionCacheImpl(), "writeThrough", true);
+    assertEquals(new Dimension(215, 102), underTest.getDimension(binary));
+    assertTrue(underTest.awaitWritten(5000));
+    assertEquals(215L, (long)context.resourceResolver().getResource(METADATA_PATH).getValueMap().get(PN_IMAGE_WIDTH, 0L));
+  }
+
+  @Test
+  public void testMetadataLocation() {
+    assertEquals(METADATA_PATH, ImageDimensionCacheImpl.MetadataLocation.of(binary).getPath());
+    assertEquals(METADATA_PATH, ImageDimensionCacheImpl.MetadataLocation.of(binary.getParent()).getPath());
+    assertNull(ImageDimensionCacheImpl.MetadataLocation.of(context.resourceResolver().getResource("/")));
+  }
+
+}
@@ -0,0 +1,157 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.media.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.apache.sling.api.resource.Resource;
+import org.junit.Rule;
+import org.junit.Test;
+
+import io.wcm.handler.media.Dimension;
+import io.wcm.handler.media.testcontext.AppAemContext;
+import io.wcm.testing.mock.aem.junit.AemContext;
+
+public class ImageDimensionProbeTest {
+
+  @Rule
+  public AemContext context = AppAemContext.newAemContext();
+
+  @Test
+  public void testGetDimension() {
+    Resource resource = context.load().binaryFile("/sample_image_215x102.jpg", "/content/sample_image.jpg");
+    assertEquals(new Dimension(215, 102), ImageDimensionProbe.getDimension(resource));
+  }
+
+  @Test
+  public void testJpeg() throws IOException {
+    assertEquals(new Dimension(300, 200), probe(writeImage("jpg", 300, 200)));
+  }
+
+  @Test
+  public void testJpeg_LargeApplicationSegment() throws IOException {
+    byte[] jpeg = writeImage("jpg", 300, 200);
+    // insert APP1 segment with max. length directly after SOI marker
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    bos.write(jpeg, 0, 2);
+    bos.write(new byte[] { (byte)0xFF, (byte)0xE1, (byte)0xFF, (byte)0xFF });
+    bos.write(new byte[0xFFFF - 2]);
+    bos.write(jpeg, 2, jpeg.length - 2);
+    assertEquals(new Dimension(300, 200), probe(bos.toByteArray()));
+  }
+
+  @Test
+  public void testPng() throws IOException {
+    assertEquals(new Dimension(300, 200), probe(writeImage("png", 300, 200)));
+  }
+
+  @Test
+  public void testGif() throws IOException {
+    assertEquals(new Dimension(300, 200), probe(writeImage("gif", 300, 200)));
+  }
+
+  @Test
+  public void testWebpLossy() throws IOException {
+    assertEquals(new Dimension(300, 200), probe(bytes(
+        'R', 'I', 'F', 'F', 0, 0, 0, 0, 'W', 'E', 'B', 'P',
+        'V', 'P', '8', ' ', 0, 0, 0, 0,
+        0, 0, 0, 0x9D, 0x01, 0x2A,
+        0x2C, 0x01, 0xC8, 0x00)));
+  }
+
+  @Test
+  public void testWebpLossless() throws IOException {
+    // width-1 = 299 and height-1 = 199 as 14 bit values
+    long bits = 299 | (199L << 14);
+    assertEquals(new Dimension(300, 200), probe(bytes(
+        'R', 'I', 'F', 'F', 0, 0, 0, 0, 'W', 'E', 'B', 'P',
+        'V', 'P', '8', 'L', 0, 0, 0, 0,
+        0x2F, (int)(bits & 0xFF), (int)((bits >> 8) & 0xFF), (int)((bits >> 16) & 0xFF), (int)((bits >> 24) & 0xFF))));
+  }
+
+  @Test
+  public void testWebpExtended() throws IOException {
+    assertEquals(new Dimension(3000, 2000), probe(bytes(
+        'R', 'I', 'F', 'F', 0, 0, 0, 0, 'W', 'E', 'B', 'P',
+        'V', 'P', '8', 'X', 0, 0, 0, 0,
+        0, 0, 0, 0,
+        0xB7, 0x0B, 0x00, 0xCF, 0x07, 0x00)));
+  }
+
+  @Test
+  public void testTiffLittleEndian() throws IOException {
+    assertEquals(new Dimension(300, 70000), probe(bytes(
+        'I', 'I', 42, 0, 8, 0, 0, 0,
+        2, 0,
+        0x00, 0x01, 3, 0, 1, 0, 0, 0, 0x2C, 0x01, 0, 0,
+        0x01, 0x01, 4, 0, 1, 0, 0, 0, 0x70, 0x11, 0x01, 0x00)));
+  }
+
+  @Test
+  public void testTiffBigEndian() throws IOException {
+    assertEquals(new Dimension(300, 200), probe(bytes(
+        'M', 'M', 0, 42, 0, 0, 0, 10,
+        0, 0,
+        0, 2,
+        0x01, 0x00, 0, 3, 0, 0, 0, 1, 0x01, 0x2C, 0, 0,
+        0x01, 0x01, 0, 3, 0, 0, 0, 1, 0x00, 0xC8, 0, 0)));
+  }
+
+  @Test
+  public void testUnknownFormat() throws IOException {
+    assertNull(probe(bytes(1, 2, 3, 4)));
+  }
+
+  @Test(expected = IOException.class)
+  public void testTruncated() throws IOException {
+    byte[] png = writeImage("png", 300, 200);
+    byte[] truncated = new byte[16];
+    System.arraycopy(png, 0, truncated, 0, truncated.length);
+    probe(truncated);
+  }
+
+  private static Dimension probe(byte[] data) throws IOException {
+    return ImageDimensionProbe.probe(new ByteArrayInputStream(data));
+  }
+
+  private static byte[] writeImage(String format, int width, int height) throws IOException {
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    ImageIO.write(image, format, bos);
+    return bos.toByteArray();
+  }
+
+  private static byte[] bytes(int... values) {
+    byte[] result = new byte[values.length];
+    for (int i = 0; i < values.length; i++) {
+      result[i] = (byte)values[i];
+    }
+    return result;
+  }
+
+}
@@ -0,0 +1,136 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.media.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.wcm.testing.mock.aem.junit.AemContext;
+import io.wcm.wcm.commons.contenttype.ContentType;
+
+public class ImageFileCacheImplTest {
+
+  private static final int KB = 1024;
+
+  @Rule
+  public AemContext context = new AemContext();
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private ImageFileCacheImpl underTest;
+
+  @Before
+  public void setUp() {
+    underTest = context.registerInjectActivateService(new ImageFileCacheImpl(),
+        "cacheDirectory", folder.getRoot().getAbsolutePath(),
+        "maxSizeMb", 1L);
+  }
+
+  @Test
+  public void testPutGet() throws Exception {
+    ImageFileCacheKey key = key("/content/dam/image1.jpg", 1000L, 100, 50, null);
+    assertNull(underTest.get(key));
+
+    byte[] data = new byte[10 * KB];
+    data[0] = 1;
+    underTest.put(key, data);
+
+    File file = underTest.get(key);
+    assertNotNull(file);
+    assertArrayEquals(data, Files.readAllBytes(file.toPath()));
+    assertNull(underTest.get(key("/content/dam/image1.jpg", 1000L, 100, 50, "0,0,10,10")));
+    assertNull(underTest.get(key("/content/dam/image2.jpg", 1000L, 100, 50, null)));
+  }
+
+  @Test
+  public void testInvalidateOnModifiedRendition() throws Exception {
+    ImageFileCacheKey oldKey1 = key("/content/dam/image1.jpg", 1000L, 100, 50, null);
+    ImageFileCacheKey oldKey2 = key("/content/dam/image1.jpg", 1000L, 200, 100, null);
+    underTest.put(oldKey1, new byte[KB]);
+    underTest.put(oldKey2, new byte[KB]);
+    File oldFile = underTest.get(oldKey1);
+
+    ImageFileCacheKey newKey = key("/content/dam/image1.jpg", 2000L, 100, 50, null);
+    underTest.put(newKey, new byte[KB]);
+
+    assertNotNull(underTest.get(newKey));
+    assertNull(underTest.get(oldKey1));
+    assertNull(underTest.get(oldKey2));
+    assertFalse(oldFile.exists());
+    assertEquals(1, underTest.getSize());
+    assertEquals(KB, underTest.getTotalSize());
+  }
+
+  @Test
+  public void testEvictLeastRecentlyUsed() throws Exception {
+    ImageFileCacheKey key1 = key("/content/dam/image1.jpg", 1000L, 100, 50, null);
+    ImageFileCacheKey key2 = key("/content/dam/image2.jpg", 1000L, 100, 50, null);
+    ImageFileCacheKey key3 = key("/content/dam/image3.jpg", 1000L, 100, 50, null);
+    underTest.put(key1, new byte[400 * KB]);
+    underTest.put(key2, new byte[400 * KB]);
+
+    // access key1 so key2 is the least recently used one
+    assertNotNull(underTest.get(key1));
+
+    underTest.put(key3, new byte[400 * KB]);
+
+    assertNotNull(underTest.get(key1));
+    assertNull(underTest.get(key2));
+    assertNotNull(underTest.get(key3));
+    assertEquals(800 * KB, underTest.getTotalSize());
+  }
+
+  @Test
+  public void testRebuildIndexOnActivate() throws Exception {
+    ImageFileCacheKey key = key("/content/dam/image1.jpg", 1000L, 100, 50, null);
+    underTest.put(key, new byte[KB]);
+
+    ImageFileCacheImpl newInstance = context.registerInjectActivateService(new ImageFileCacheImpl(),
+        "cacheDirectory", folder.getRoot().getAbsolutePath(),
+        "maxSizeMb", 1L);
+    assertNotNull(newInstance.get(key));
+    assertEquals(KB, newInstance.getTotalSize());
+  }
+
+  @Test
+  public void testDisabled() throws Exception {
+    ImageFileCacheImpl disabled = context.registerInjectActivateService(new ImageFileCacheImpl(),
+        "enabled", false);
+    ImageFileCacheKey key = key("/content/dam/image1.jpg", 1000L, 100, 50, null);
+    disabled.put(key, new byte[KB]);
+    assertNull(disabled.get(key));
+  }
+
+  private static ImageFileCacheKey key(String path, long lastModified, long width, long height, String cropString) {
+    return new ImageFileCacheKey(path, lastModified, width, height, cropString, 0.85d, ContentType.JPEG);
+  }
+
+}
@@ -0,0 +1,72 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.media.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Calendar;
+
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.Resource;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.day.cq.commons.jcr.JcrConstants;
+
+import io.wcm.handler.media.CropDimension;
+import io.wcm.testing.mock.aem.junit.AemContext;
+import io.wcm.wcm.commons.contenttype.ContentType;
+
+public class ImageFileCacheKeyTest {
+
+  @Rule
+  public AemContext context = new AemContext();
+
+  private Resource resource;
+
+  @Before
+  public void setUp() {
+    resource = context.load().binaryFile("/sample_image_215x102.jpg", "/content/sample_image.jpg");
+  }
+
+  @Test
+  public void testOf() throws Exception {
+    Calendar lastModified = Calendar.getInstance();
+    resource.getChild(JcrConstants.JCR_CONTENT).adaptTo(ModifiableValueMap.class)
+        .put(JcrConstants.JCR_LASTMODIFIED, lastModified);
+    context.resourceResolver().commit();
+
+    ImageFileCacheKey key = ImageFileCacheKey.of(resource, 100, 50, new CropDimension(0, 0, 10, 5), 0.85d,
+        ContentType.JPEG);
+    assertEquals(resource.getPath(), key.getRenditionPath());
+    assertEquals(lastModified.getTimeInMillis(), key.getLastModified());
+    assertEquals("0,0,10,5", key.getCropString());
+    assertEquals(new ImageFileCacheKey(resource.getPath(), lastModified.getTimeInMillis(), 100, 50, "0,0,10,5",
+        0.85d, ContentType.JPEG), key);
+  }
+
+  @Test
+  public void testOf_NoLastModified() {
+    assertNull(ImageFileCacheKey.of(resource, 100, 50, null, 0.85d, ContentType.JPEG));
+  }
+
+}
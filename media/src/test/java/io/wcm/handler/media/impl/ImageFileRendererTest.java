@@ -0,0 +1,106 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.media.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.sling.api.resource.Resource;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.day.image.Layer;
+
+import io.wcm.handler.media.CropDimension;
+import io.wcm.testing.mock.aem.junit.AemContext;
+import io.wcm.wcm.commons.contenttype.ContentType;
+
+public class ImageFileRendererTest {
+
+  @Rule
+  public AemContext context = new AemContext();
+
+  private Resource resource;
+
+  @Before
+  public void setUp() {
+    resource = context.load().binaryFile("/sample_image_215x102.jpg", "/content/sample_image.jpg");
+  }
+
+  @Test
+  public void testRender() throws Exception {
+    assertLayerSize(100, 50, ImageFileRenderer.render(resource, 100, 50, null, ContentType.JPEG, 0.85d));
+  }
+
+  @Test
+  public void testRender_Cropping() throws Exception {
+    assertLayerSize(20, 25, ImageFileRenderer.render(resource, 20, 25, new CropDimension(10, 10, 20, 25),
+        ContentType.JPEG, 0.85d));
+  }
+
+  @Test
+  public void testRender_CroppingResize() throws Exception {
+    assertLayerSize(50, 25, ImageFileRenderer.render(resource, 50, 25, new CropDimension(10, 10, 100, 50),
+        ContentType.JPEG, 0.85d));
+  }
+
+  @Test
+  public void testRender_SizeTooLarge() throws Exception {
+    assertLayerSize(215, 102, ImageFileRenderer.render(resource, 2150, 1020, null, ContentType.JPEG, 0.85d));
+  }
+
+  @Test
+  public void testRender_Png() throws Exception {
+    byte[] data = ImageFileRenderer.render(resource, 100, 50, null, ContentType.PNG, 1d);
+    assertLayerSize(100, 50, data);
+    // PNG signature
+    assertEquals((byte)0x89, data[0]);
+    assertEquals((byte)'P', data[1]);
+  }
+
+  @Test
+  public void testRender_NoImage() throws Exception {
+    Resource noImage = context.create().resource("/content/noimage");
+    assertNull(ImageFileRenderer.render(noImage, 100, 50, null, ContentType.JPEG, 0.85d));
+  }
+
+  @Test
+  public void testGetContentType() {
+    assertEquals(ContentType.PNG, ImageFileRenderer.getContentType("image.png"));
+    assertEquals(ContentType.PNG, ImageFileRenderer.getContentType("image.PNG"));
+    assertEquals(ContentType.JPEG, ImageFileRenderer.getContentType("image.jpg"));
+    assertEquals(ContentType.JPEG, ImageFileRenderer.getContentType("image.gif"));
+    assertEquals(ContentType.JPEG, ImageFileRenderer.getContentType(null));
+  }
+
+  private static void assertLayerSize(int width, int height, byte[] data) throws IOException {
+    try (InputStream is = new ByteArrayInputStream(data)) {
+      Layer layer = new Layer(is);
+      assertEquals(width, layer.getWidth());
+      assertEquals(height, layer.getHeight());
+    }
+  }
+
+}
@@ -19,18 +19,24 @@
  */
 package io.wcm.handler.media.impl;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Calendar;
 
 import javax.servlet.http.HttpServletResponse;
 
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.Resource;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import com.day.cq.commons.jcr.JcrConstants;
 import com.day.image.Layer;
 
 import io.wcm.handler.media.testcontext.AppAemContext;
@@ -41,6 +47,8 @@ public class ImageFileServletTest {
 
   @Rule
   public AemContext context = AppAemContext.newAemContext();
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
 
   private ImageFileServlet underTest;
 
@@ -113,6 +121,43 @@ public class ImageFileServletTest {
     assertResponseLayerSize(215, 102);
   }
 
+  @Test
+  public void testGet_ImageFileCache() throws Exception {
+    setLastModified(context.currentResource());
+    ImageFileCacheImpl imageFileCache = context.registerInjectActivateService(new ImageFileCacheImpl(),
+        "cacheDirectory", folder.getRoot().getAbsolutePath());
+    underTest = context.registerInjectActivateService(new ImageFileServlet());
+    context.requestPathInfo().setSelectorString("image_file.100.50");
+
+    underTest.service(context.request(), context.response());
+    byte[] renderedImage = context.response().getOutput();
+    assertEquals(1, imageFileCache.getSize());
+
+    // second request is served from cache
+    context.response().resetBuffer();
+    underTest.service(context.request(), context.response());
+
+    assertEquals(HttpServletResponse.SC_OK, context.response().getStatus());
+    assertEquals(ContentType.JPEG, context.response().getContentType());
+    assertArrayEquals(renderedImage, context.response().getOutput());
+    assertResponseLayerSize(100, 50);
+  }
+
+  @Test
+  public void testGet_ImageFileCache_NoLastModified() throws Exception {
+    ImageFileCacheImpl imageFileCache = context.registerInjectActivateService(new ImageFileCacheImpl(),
+        "cacheDirectory", folder.getRoot().getAbsolutePath());
+    underTest = context.registerInjectActivateService(new ImageFileServlet());
+    context.requestPathInfo().setSelectorString("image_file.100.50");
+
+    underTest.service(context.request(), context.response());
+
+    // without modification date a replaced binary could not be detected - rendered image is not cached
+    assertEquals(HttpServletResponse.SC_OK, context.response().getStatus());
+    assertResponseLayerSize(100, 50);
+    assertEquals(0, imageFileCache.getSize());
+  }
+
   @Test
   public void testGetImageFileNameJpeg() {
     assertEquals("myimage.jpg", ImageFileServlet.getImageFileName("myimage.jpg"));
@@ -137,4 +182,10 @@ public class ImageFileServletTest {
     assertEquals(height, layer.getHeight());
   }
 
+  private void setLastModified(Resource resource) throws IOException {
+    ModifiableValueMap props = resource.getChild(JcrConstants.JCR_CONTENT).adaptTo(ModifiableValueMap.class);
+    props.put(JcrConstants.JCR_LASTMODIFIED, Calendar.getInstance());
+    context.resourceResolver().commit();
+  }
+
 }
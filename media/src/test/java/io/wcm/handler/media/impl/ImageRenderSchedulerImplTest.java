@@ -0,0 +1,150 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.media.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+
+import io.wcm.testing.mock.aem.junit.AemContext;
+import io.wcm.wcm.commons.contenttype.ContentType;
+
+public class ImageRenderSchedulerImplTest {
+
+  private static final ImageFileCacheKey KEY1 = key("/content/dam/image1.jpg");
+  private static final ImageFileCacheKey KEY2 = key("/content/dam/image2.jpg");
+
+  @Rule
+  public AemContext context = new AemContext();
+
+  private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testRender() throws Exception {
+    ImageRenderSchedulerImpl underTest = context.registerInjectActivateService(new ImageRenderSchedulerImpl());
+    byte[] data = new byte[] { 1, 2, 3 };
+
+    assertArrayEquals(data, underTest.render(KEY1, () -> data));
+    assertEquals(1, underTest.getRenderCount());
+    assertEquals(0, underTest.getActiveRenders());
+  }
+
+  @Test
+  public void testRender_NoKey() throws Exception {
+    ImageRenderSchedulerImpl underTest = context.registerInjectActivateService(new ImageRenderSchedulerImpl());
+    byte[] data = new byte[] { 1, 2, 3 };
+
+    assertArrayEquals(data, underTest.render(null, () -> data));
+    assertEquals(1, underTest.getRenderCount());
+    assertEquals(0, underTest.getActiveRenders());
+  }
+
+  @Test
+  public void testCoalesceIdenticalRenders() throws Exception {
+    ImageRenderSchedulerImpl underTest = context.registerInjectActivateService(new ImageRenderSchedulerImpl());
+    CountDownLatch renderStarted = new CountDownLatch(1);
+    CountDownLatch releaseRender = new CountDownLatch(1);
+    AtomicInteger renderCalls = new AtomicInteger();
+    byte[] data = new byte[] { 1, 2, 3 };
+
+    Future<byte[]> first = executor.submit(() -> underTest.render(KEY1, () -> {
+      renderCalls.incrementAndGet();
+      renderStarted.countDown();
+      releaseRender.await();
+      return data;
+    }));
+    renderStarted.await();
+    Future<byte[]> second = executor.submit(() -> underTest.render(KEY1, () -> {
+      renderCalls.incrementAndGet();
+      return new byte[0];
+    }));
+
+    // wait until second request joined the first rendering
+    while (underTest.getCoalescedCount() == 0) {
+      Thread.sleep(5);
+    }
+    releaseRender.countDown();
+
+    assertSame(data, first.get(5, TimeUnit.SECONDS));
+    assertSame(data, second.get(5, TimeUnit.SECONDS));
+    assertEquals(1, renderCalls.get());
+    assertEquals(1, underTest.getRenderCount());
+  }
+
+  @Test(expected = IOException.class)
+  public void testCoalescedRenderFailure() throws Exception {
+    ImageRenderSchedulerImpl underTest = context.registerInjectActivateService(new ImageRenderSchedulerImpl());
+    underTest.render(KEY1, () -> {
+      throw new IOException("failed");
+    });
+  }
+
+  @Test
+  public void testRejectIfNoSlotAvailable() throws Exception {
+    ImageRenderSchedulerImpl underTest = context.registerInjectActivateService(new ImageRenderSchedulerImpl(),
+        "maxConcurrentRenders", 1,
+        "queueTimeoutMs", 10L);
+    CountDownLatch renderStarted = new CountDownLatch(1);
+    CountDownLatch releaseRender = new CountDownLatch(1);
+
+    Future<byte[]> first = executor.submit(() -> underTest.render(KEY1, () -> {
+      renderStarted.countDown();
+      releaseRender.await();
+      return new byte[0];
+    }));
+    renderStarted.await();
+
+    try {
+      underTest.render(KEY2, () -> new byte[0]);
+    }
+    catch (RejectedExecutionException ex) {
+      assertEquals(1, underTest.getRejectedCount());
+    }
+    finally {
+      releaseRender.countDown();
+    }
+    first.get(5, TimeUnit.SECONDS);
+    assertEquals(1, underTest.getRejectedCount());
+    assertEquals(1, underTest.getMaxConcurrentRenders());
+  }
+
+  private static ImageFileCacheKey key(String path) {
+    return new ImageFileCacheKey(path, 1000L, 100, 50, null, 0.85d, ContentType.JPEG);
+  }
+
+}
@@ -22,10 +22,16 @@ package io.wcm.handler.media.impl;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.when;
 
+import javax.jcr.Binary;
+import javax.jcr.Node;
+import javax.jcr.Property;
+
 import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceMetadata;
 import org.apache.sling.api.resource.ValueMap;
 import org.apache.sling.api.wrappers.ValueMapDecorator;
 import org.junit.Test;
@@ -45,6 +51,12 @@ public class JcrBinaryTest {
   private Resource resource;
   @Mock
   private Resource subResource;
+  @Mock
+  private Node node;
+  @Mock
+  private Property property;
+  @Mock
+  private Binary binary;
 
   @Test
   public void testIsNtFileResource_Resource() {
@@ -114,4 +126,68 @@ public class JcrBinaryTest {
     assertNull(JcrBinary.getMimeType(resource));
   }
 
+  @Test
+  public void testGetDataLength_Resource() {
+    ResourceMetadata metadata = new ResourceMetadata();
+    metadata.setContentLength(1234L);
+    when(resource.getResourceType()).thenReturn(JcrConstants.NT_RESOURCE);
+    when(resource.getResourceMetadata()).thenReturn(metadata);
+
+    assertEquals(1234L, JcrBinary.getDataLength(resource));
+  }
+
+  @Test
+  public void testGetDataLength_Resource_Unknown() {
+    when(resource.getResourceType()).thenReturn(JcrConstants.NT_RESOURCE);
+    when(resource.getResourceMetadata()).thenReturn(new ResourceMetadata());
+
+    assertEquals(-1L, JcrBinary.getDataLength(resource));
+  }
+
+  @Test
+  public void testGetDataLength_File() {
+    ResourceMetadata metadata = new ResourceMetadata();
+    metadata.setContentLength(1234L);
+    when(resource.getResourceType()).thenReturn(JcrConstants.NT_FILE);
+    when(resource.getChild(JcrConstants.JCR_CONTENT)).thenReturn(subResource);
+    when(subResource.getResourceType()).thenReturn(JcrConstants.NT_RESOURCE);
+    when(subResource.getResourceMetadata()).thenReturn(metadata);
+
+    assertEquals(1234L, JcrBinary.getDataLength(resource));
+  }
+
+  @Test
+  public void testGetDataLength_Other() {
+    when(resource.getResourceType()).thenReturn("otherType");
+
+    assertEquals(-1L, JcrBinary.getDataLength(resource));
+  }
+
+  @Test
+  public void testGetBinary_File() throws Exception {
+    when(resource.getResourceType()).thenReturn(JcrConstants.NT_FILE);
+    when(resource.getChild(JcrConstants.JCR_CONTENT)).thenReturn(subResource);
+    when(subResource.getResourceType()).thenReturn(JcrConstants.NT_RESOURCE);
+    when(subResource.adaptTo(Node.class)).thenReturn(node);
+    when(node.hasProperty(JcrConstants.JCR_DATA)).thenReturn(true);
+    when(node.getProperty(JcrConstants.JCR_DATA)).thenReturn(property);
+    when(property.getBinary()).thenReturn(binary);
+
+    assertSame(binary, JcrBinary.getBinary(resource));
+  }
+
+  @Test
+  public void testGetBinary_NoNode() {
+    when(resource.getResourceType()).thenReturn(JcrConstants.NT_RESOURCE);
+
+    assertNull(JcrBinary.getBinary(resource));
+  }
+
+  @Test
+  public void testGetBinary_Other() {
+    when(resource.getResourceType()).thenReturn("otherType");
+
+    assertNull(JcrBinary.getBinary(resource));
+  }
+
 }
@@ -19,10 +19,18 @@
  */
 package io.wcm.handler.media.impl;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
 
 import javax.servlet.http.HttpServletResponse;
 
+import org.apache.commons.io.IOUtils;
+
 import org.apache.sling.api.resource.Resource;
 import org.junit.Before;
 import org.junit.Rule;
@@ -102,4 +110,59 @@ public class MediaFileServletTest {
     assertEquals(HttpServletResponse.SC_NOT_FOUND, context.response().getStatus());
   }
 
+  @Test
+  public void testGet_Range() throws Exception {
+    context.request().addHeader(AbstractMediaFileServlet.HEADER_RANGE, "bytes=1000-1099");
+
+    underTest.service(context.request(), context.response());
+
+    assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, context.response().getStatus());
+    assertEquals("bytes 1000-1099/" + EXPECTED_CONTENT_LENGTH,
+        context.response().getHeader(AbstractMediaFileServlet.HEADER_CONTENT_RANGE));
+    assertArrayEquals(Arrays.copyOfRange(getSampleImage(), 1000, 1100), context.response().getOutput());
+  }
+
+  @Test
+  public void testGet_Range_Merged() throws Exception {
+    context.request().addHeader(AbstractMediaFileServlet.HEADER_RANGE, "bytes=100-199,0-49,50-149");
+
+    underTest.service(context.request(), context.response());
+
+    assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, context.response().getStatus());
+    assertEquals("bytes 0-199/" + EXPECTED_CONTENT_LENGTH,
+        context.response().getHeader(AbstractMediaFileServlet.HEADER_CONTENT_RANGE));
+    assertArrayEquals(Arrays.copyOfRange(getSampleImage(), 0, 200), context.response().getOutput());
+  }
+
+  @Test
+  public void testGet_MultipleRanges() throws Exception {
+    context.request().addHeader(AbstractMediaFileServlet.HEADER_RANGE, "bytes=-10,0-9");
+
+    underTest.service(context.request(), context.response());
+
+    assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, context.response().getStatus());
+    assertTrue(context.response().getContentType().startsWith(AbstractMediaFileServlet.CONTENT_TYPE_MULTIPART_BYTERANGES));
+    String output = new String(context.response().getOutput(), "ISO-8859-1");
+    int firstPart = output.indexOf("Content-Range: bytes 0-9/" + EXPECTED_CONTENT_LENGTH);
+    int secondPart = output.indexOf("Content-Range: bytes " + (EXPECTED_CONTENT_LENGTH - 10) + "-"
+        + (EXPECTED_CONTENT_LENGTH - 1) + "/" + EXPECTED_CONTENT_LENGTH);
+    assertTrue(firstPart >= 0 && secondPart > firstPart);
+    assertEquals(output.length(), context.response().getContentLength());
+  }
+
+  @Test
+  public void testGet_Range_NotSatisfiable() throws Exception {
+    context.request().addHeader(AbstractMediaFileServlet.HEADER_RANGE, "bytes=20000-");
+
+    underTest.service(context.request(), context.response());
+
+    assertEquals(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE, context.response().getStatus());
+  }
+
+  private static byte[] getSampleImage() throws IOException {
+    try (InputStream is = MediaFileServletTest.class.getResourceAsStream("/sample_image_215x102.jpg")) {
+      return IOUtils.toByteArray(is);
+    }
+  }
+
 }
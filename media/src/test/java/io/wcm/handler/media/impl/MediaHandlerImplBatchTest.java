@@ -0,0 +1,116 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.media.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import io.wcm.handler.media.Media;
+import io.wcm.handler.media.MediaArgs;
+import io.wcm.handler.media.MediaInvalidReason;
+import io.wcm.handler.media.MediaRequest;
+import io.wcm.handler.media.testcontext.DummyMediaFormats;
+import io.wcm.handler.mediasource.dam.AbstractDamTest;
+
+public class MediaHandlerImplBatchTest extends AbstractDamTest {
+
+  @Test
+  public void testBuild() {
+    List<MediaRequest> mediaRequests = ImmutableList.of(
+        new MediaRequest(MEDIAITEM_PATH_STANDARD, new MediaArgs().fixedDimension(450, 213)),
+        new MediaRequest(MEDIAITEM_PATH_16_10, new MediaArgs()),
+        new MediaRequest(MEDIAITEM_PATH_NONEXISTANT, new MediaArgs()),
+        new MediaRequest(parStandardMediaRef, new MediaArgs()));
+
+    List<Media> result = mediaHandler().build(mediaRequests);
+    assertEquals(mediaRequests.size(), result.size());
+
+    // results in order of requests, equal to resolving each request separately
+    for (int i = 0; i < mediaRequests.size(); i++) {
+      Media expected = mediaHandler().get(mediaRequests.get(i)).build();
+      Media actual = result.get(i);
+      assertEquals(expected.isValid(), actual.isValid());
+      assertEquals(expected.getUrl(), actual.getUrl());
+      assertEquals(expected.getMarkup(), actual.getMarkup());
+      assertEquals(expected.getMediaInvalidReason(), actual.getMediaInvalidReason());
+    }
+    assertEquals(MediaInvalidReason.MEDIA_REFERENCE_INVALID, result.get(2).getMediaInvalidReason());
+
+    // media sources are shared
+    assertSame(result.get(0).getMediaSource(), result.get(1).getMediaSource());
+  }
+
+  @Test
+  public void testBuild_Duplicates() {
+    MediaArgs mediaArgs = new MediaArgs().mediaFormatName(DummyMediaFormats.EDITORIAL_1COL.getName());
+    List<Media> result = mediaHandler().build(ImmutableList.of(
+        new MediaRequest(MEDIAITEM_PATH_STANDARD, mediaArgs),
+        new MediaRequest(MEDIAITEM_PATH_16_10, mediaArgs),
+        new MediaRequest(MEDIAITEM_PATH_STANDARD, mediaArgs)));
+
+    Media media1 = result.get(0);
+    Media media3 = result.get(2);
+    assertTrue(media1.isValid());
+    assertNotSame(media1, media3);
+    assertEquals(media1.getUrl(), media3.getUrl());
+    assertEquals(media1.getMarkup(), media3.getMarkup());
+    assertNotSame(media1.getElement(), media3.getElement());
+    assertEquals(media1.getRendition().getPath(), media3.getRendition().getPath());
+
+    // media format names are resolved in media args of each result
+    assertEquals(DummyMediaFormats.EDITORIAL_1COL, media1.getMediaRequest().getMediaArgs().getMediaFormats()[0]);
+    assertEquals(DummyMediaFormats.EDITORIAL_1COL, result.get(1).getMediaRequest().getMediaArgs().getMediaFormats()[0]);
+    assertEquals(DummyMediaFormats.EDITORIAL_1COL, media3.getMediaRequest().getMediaArgs().getMediaFormats()[0]);
+    assertNull(media3.getMediaRequest().getMediaArgs().getMediaFormatNames());
+    assertNotSame(media1.getMediaRequest().getMediaArgs(), media3.getMediaRequest().getMediaArgs());
+
+    // original media args are not modified
+    assertNull(mediaArgs.getMediaFormats());
+    assertEquals(DummyMediaFormats.EDITORIAL_1COL.getName(), mediaArgs.getMediaFormatNames()[0]);
+  }
+
+  @Test
+  public void testBuild_InvalidMediaFormat() {
+    MediaArgs mediaArgs = new MediaArgs().mediaFormatName("invalid");
+    List<Media> result = mediaHandler().build(ImmutableList.of(
+        new MediaRequest(MEDIAITEM_PATH_STANDARD, mediaArgs),
+        new MediaRequest(MEDIAITEM_PATH_16_10, mediaArgs)));
+    for (Media media : result) {
+      assertFalse(media.isValid());
+      assertEquals(MediaInvalidReason.INVALID_MEDIA_FORMAT, media.getMediaInvalidReason());
+    }
+  }
+
+  @Test
+  public void testBuild_Empty() {
+    assertTrue(mediaHandler().build(ImmutableList.<MediaRequest>of()).isEmpty());
+  }
+
+}
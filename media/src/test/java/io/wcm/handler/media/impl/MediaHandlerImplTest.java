@@ -103,7 +103,20 @@ public class MediaHandlerImplTest {
     assertNotNull(media.getElement());
     assertEquals("http://xyz/content/dummymedia/item1/pre1.gif", media.getElement().getAttributeValue("src"));
 
-    assertEquals("<img src=\"http://xyz/content/dummymedia/item1/pre1.gif\" />", media.getMarkup());
+    assertEquals("<img src=\"http://xyz/content/dummymedia/item1/pre1.gif\" data-post2=\"true\" />", media.getMarkup());
+  }
+
+  @Test
+  public void testPipelining_UrlOnly() {
+    MediaHandler mediaHandler = AdaptTo.notNull(adaptable(), MediaHandler.class);
+
+    // markup builder and markup post processor are skipped
+    MediaRequest mediaRequest = new MediaRequest("/content/dummymedia/item1", new MediaArgs().urlMode(UrlModes.DEFAULT));
+    assertEquals("http://xyz/content/dummymedia.post1/item1/pre1.gif", mediaHandler.get(mediaRequest).buildUrl());
+
+    // make sure initial media request is unmodified
+    assertEquals("/content/dummymedia/item1", mediaRequest.getMediaRef());
+    assertEquals(UrlModes.DEFAULT, mediaRequest.getMediaArgs().getUrlMode());
   }
 
   @Test
@@ -214,7 +227,7 @@ public class MediaHandlerImplTest {
 
     @Override
     public List<Class<? extends MediaProcessor>> getPostProcessors() {
-      return ImmutableList.<Class<? extends MediaProcessor>>of(TestPostProcessor.class);
+      return ImmutableList.<Class<? extends MediaProcessor>>of(TestPostProcessor.class, TestMarkupPostProcessor.class);
     }
 
   };
@@ -319,6 +332,27 @@ public class MediaHandlerImplTest {
 
   }
 
+  @Model(adaptables = {
+      SlingHttpServletRequest.class, Resource.class
+  })
+  public static class TestMarkupPostProcessor implements MediaProcessor {
+
+    @Override
+    public Media process(Media media) {
+      // expects markup for all gif images
+      if (StringUtils.endsWith(media.getUrl(), ".gif")) {
+        media.getElement().setData("post2", "true");
+      }
+      return media;
+    }
+
+    @Override
+    public boolean affectsUrl() {
+      return false;
+    }
+
+  }
+
   public static final class TestMediaFormats {
 
     private TestMediaFormats() {
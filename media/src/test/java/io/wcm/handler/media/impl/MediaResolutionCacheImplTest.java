@@ -0,0 +1,161 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.media.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.sling.api.SlingConstants;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.service.event.Event;
+
+import com.day.cq.dam.api.DamEvent;
+import com.day.cq.wcm.api.WCMMode;
+import com.google.common.collect.ImmutableMap;
+
+import io.wcm.handler.media.Media;
+import io.wcm.handler.media.MediaHandler;
+import io.wcm.handler.mediasource.dam.AbstractDamTest;
+import io.wcm.sling.commons.adapter.AdaptTo;
+
+public class MediaResolutionCacheImplTest extends AbstractDamTest {
+
+  private MediaResolutionCacheImpl underTest;
+
+  @Before
+  public void setUp() {
+    underTest = context.registerInjectActivateService(new MediaResolutionCacheImpl(), "enabled", true);
+  }
+
+  @Test
+  public void testCachedResolution() {
+    Media media1 = resolve();
+    assertTrue(media1.isValid());
+    assertEquals(0, underTest.getHitCount());
+    assertEquals(1, underTest.getMissCount());
+    assertEquals(1, underTest.getSize());
+
+    Media media2 = resolve();
+    assertTrue(media2.isValid());
+    assertEquals(1, underTest.getHitCount());
+    assertEquals(media1.getUrl(), media2.getUrl());
+    assertEquals(media1.getMarkup(), media2.getMarkup());
+    assertNotSame(media1.getElement(), media2.getElement());
+    assertEquals(media1.getAsset().getTitle(), media2.getAsset().getTitle());
+    assertEquals(media1.getRendition().getPath(), media2.getRendition().getPath());
+    assertEquals(media1.getRendition().getWidth(), media2.getRendition().getWidth());
+    assertEquals(media1.getRendition().getHeight(), media2.getRendition().getHeight());
+    assertEquals(media1.getMediaSource().getClass(), media2.getMediaSource().getClass());
+  }
+
+  @Test
+  public void testInvalidate_DamEvent() {
+    resolve();
+    underTest.handleEvent(DamEvent.renditionUpdated(MEDIAITEM_PATH_STANDARD, null,
+        MEDIAITEM_PATH_STANDARD + "/jcr:content/renditions/original").toEvent());
+    assertEquals(0, underTest.getSize());
+    assertEquals(1, underTest.getInvalidationCount());
+
+    resolve();
+    assertEquals(0, underTest.getHitCount());
+    assertEquals(2, underTest.getMissCount());
+  }
+
+  @Test
+  public void testInvalidate_ResourceEvent() {
+    resolve();
+    underTest.handleEvent(resourceEvent(SlingConstants.TOPIC_RESOURCE_CHANGED,
+        MEDIAITEM_PATH_STANDARD + "/jcr:content/renditionsMetadata/cq5dam.web.450.213.jpg"));
+    assertEquals(0, underTest.getSize());
+    assertEquals(1, underTest.getInvalidationCount());
+  }
+
+  @Test
+  public void testInvalidate_ResourceEvent_OtherAsset() {
+    resolve();
+    underTest.handleEvent(resourceEvent(SlingConstants.TOPIC_RESOURCE_CHANGED,
+        MEDIAITEM_PATH_16_10 + "/jcr:content/renditionsMetadata/cq5dam.web.450.213.jpg"));
+    assertEquals(1, underTest.getSize());
+  }
+
+  @Test
+  public void testInvalidate_ParentPath() {
+    resolve();
+    assertTrue(underTest.getIndexedPathCount() > 0);
+    underTest.invalidate(ROOTPATH_DAM);
+    assertEquals(0, underTest.getSize());
+    assertEquals(0, underTest.getIndexedPathCount());
+  }
+
+  @Test
+  public void testInvalidate_ChildPath() {
+    resolve();
+    underTest.invalidate(MEDIAITEM_PATH_STANDARD + "/jcr:content/renditions/original");
+    assertEquals(0, underTest.getSize());
+    assertEquals(0, underTest.getIndexedPathCount());
+  }
+
+  @Test
+  public void testClear_IndexRemoved() {
+    resolve();
+    underTest.clear();
+    assertEquals(0, underTest.getSize());
+    assertEquals(0, underTest.getIndexedPathCount());
+  }
+
+  @Test
+  public void testInvalidate_OtherPath() {
+    resolve();
+    underTest.invalidate(MEDIAITEM_PATH_16_10);
+    assertEquals(1, underTest.getSize());
+  }
+
+  @Test
+  public void testEditMode() {
+    WCMMode.EDIT.toRequest(context.request());
+    resolve();
+    resolve();
+    assertEquals(0, underTest.getSize());
+    assertEquals(0, underTest.getHitCount());
+  }
+
+  @Test
+  public void testDisabled() {
+    underTest = context.registerInjectActivateService(new MediaResolutionCacheImpl(), "enabled", false);
+    assertFalse(underTest.isEnabled());
+    assertNull(underTest.get("key", context.resourceResolver()));
+    assertEquals(0, underTest.getMissCount());
+  }
+
+  private static Event resourceEvent(String topic, String path) {
+    return new Event(topic, ImmutableMap.<String, Object>of(SlingConstants.PROPERTY_PATH, path));
+  }
+
+  private Media resolve() {
+    // use a new media handler for each resolution to simulate different requests
+    MediaHandler mediaHandler = AdaptTo.notNull(adaptable(), MediaHandler.class);
+    return mediaHandler.get(MEDIAITEM_PATH_STANDARD).build();
+  }
+
+}
@@ -0,0 +1,97 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.media.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import io.wcm.handler.media.CropDimension;
+
+public class SubsampledImageDecoderTest {
+
+  private static byte[] pngImage;
+
+  @BeforeClass
+  public static void setUpClass() throws IOException {
+    BufferedImage image = new BufferedImage(2000, 1000, BufferedImage.TYPE_INT_RGB);
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    ImageIO.write(image, "png", bos);
+    pngImage = bos.toByteArray();
+  }
+
+  @Test
+  public void testGetSubsampling() {
+    assertEquals(10, SubsampledImageDecoder.getSubsampling(2000, 1000, 100, 50));
+    assertEquals(5, SubsampledImageDecoder.getSubsampling(2000, 1000, 100, 100));
+    assertEquals(1, SubsampledImageDecoder.getSubsampling(2000, 1000, 1000, 500));
+    assertEquals(1, SubsampledImageDecoder.getSubsampling(2000, 1000, 3000, 500));
+    assertEquals(1, SubsampledImageDecoder.getSubsampling(2000, 1000, 0, 0));
+  }
+
+  @Test
+  public void testDecodeSubsampled() {
+    BufferedImage image = SubsampledImageDecoder.decode(new ByteArrayInputStream(pngImage), null, 100, 50);
+    assertEquals(200, image.getWidth());
+    assertEquals(100, image.getHeight());
+  }
+
+  @Test
+  public void testDecodeCropped() {
+    BufferedImage image = SubsampledImageDecoder.decode(new ByteArrayInputStream(pngImage),
+        new CropDimension(100, 100, 400, 200), 400, 200);
+    assertEquals(400, image.getWidth());
+    assertEquals(200, image.getHeight());
+  }
+
+  @Test
+  public void testDecodeCroppedSubsampled() {
+    BufferedImage image = SubsampledImageDecoder.decode(new ByteArrayInputStream(pngImage),
+        new CropDimension(100, 100, 800, 400), 100, 50);
+    assertEquals(200, image.getWidth());
+    assertEquals(100, image.getHeight());
+  }
+
+  @Test
+  public void testDecodeCroppedOutsideImage() {
+    assertNull(SubsampledImageDecoder.decode(new ByteArrayInputStream(pngImage),
+        new CropDimension(3000, 100, 800, 400), 100, 50));
+  }
+
+  @Test
+  public void testNoSubsamplingRequired() {
+    assertNull(SubsampledImageDecoder.decode(new ByteArrayInputStream(pngImage), null, 1500, 750));
+  }
+
+  @Test
+  public void testInvalidImage() {
+    assertNull(SubsampledImageDecoder.decode(new ByteArrayInputStream(new byte[] { 1, 2, 3 }), null, 100, 50));
+  }
+
+}
@@ -25,6 +25,7 @@ import static org.apache.sling.testing.mock.caconfig.ContextPlugins.CACONFIG;
 
 import io.wcm.handler.media.format.impl.MediaFormatProviderManagerImpl;
 import io.wcm.handler.media.impl.DefaultMediaHandlerConfig;
+import io.wcm.handler.media.impl.ImageDimensionCacheImpl;
 import io.wcm.handler.media.impl.MediaHandlerConfigAdapterFactory;
 import io.wcm.handler.media.spi.MediaFormatProvider;
 import io.wcm.handler.media.spi.MediaHandlerConfig;
@@ -91,6 +92,9 @@ public final class AppAemContext {
       context.registerService(MediaFormatProvider.class, new DummyMediaFormatProvider());
       context.registerInjectActivateService(new MediaFormatProviderManagerImpl());
 
+      // image dimension cache for inline media
+      context.registerInjectActivateService(new ImageDimensionCacheImpl());
+
       // sling models registration
       context.addModelsForPackage(
           "io.wcm.handler.media",
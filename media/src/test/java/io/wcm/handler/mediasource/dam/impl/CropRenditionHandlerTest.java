@@ -46,7 +46,7 @@ public class CropRenditionHandlerTest extends AbstractDamTest {
     Media media = mediaHandler().get(MEDIAITEM_PATH_STANDARD).build();
     Asset asset = media.getAsset().adaptTo(Asset.class);
 
-    underTest = new CropRenditionHandler(asset, new CropDimension(0, 0, 960, 315));
+    underTest = new CropRenditionHandler(asset, new CropDimension(0, 0, 960, 315), null);
 
     originalRendition = new RenditionMetadata(asset.getRendition("original"));
     assertNotNull(originalRendition);
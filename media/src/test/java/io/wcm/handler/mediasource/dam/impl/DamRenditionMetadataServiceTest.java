@@ -25,6 +25,7 @@ import static io.wcm.handler.mediasource.dam.impl.DamRenditionMetadataService.PN
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import org.apache.sling.api.resource.PersistenceException;
 import org.apache.sling.api.resource.Resource;
@@ -119,6 +120,7 @@ public class DamRenditionMetadataServiceTest {
     String renditionPath = assetPath + "/jcr:content/renditions/cq5dam.video.hq.m4v";
     assertNotNull(context.resourceResolver().getResource(renditionPath));
     underTest.handleEvent(DamEvent.renditionUpdated(assetPath, null, renditionPath).toEvent());
+    awaitProcessed();
 
     // ensure metadata was not generated
     String metadataPath = assetPath + "/jcr:content/" + NN_RENDITIONS_METADATA + "/cq5dam.video.hq.m4v";
@@ -139,9 +141,61 @@ public class DamRenditionMetadataServiceTest {
     assertNoRenditionMetadata("cq5dam.web.450.213.jpg");
   }
 
+  @Test
+  public void testAddMultipleRenditions_Batched() {
+    underTest = context.registerInjectActivateService(new DamRenditionMetadataService());
+    for (int i = 0; i < 10; i++) {
+      context.load().binaryFile("/sample_image_215x102.jpg", RENDITIONS_PATH + "/test" + i + ".jpg");
+    }
+    for (int i = 0; i < 10; i++) {
+      underTest.handleEvent(DamEvent.renditionUpdated(assetResource.getPath(), null, RENDITIONS_PATH + "/test" + i + ".jpg").toEvent());
+    }
+    awaitProcessed();
+
+    assertEquals(10, underTest.getProcessedEventCount());
+    assertTrue(underTest.getBatchCount() >= 1 && underTest.getBatchCount() <= 10);
+    assertEquals(0, underTest.getQueueSize());
+    assertEquals(0, underTest.getOverflowEventCount());
+    for (int i = 0; i < 10; i++) {
+      assertRenditionMetadata("test" + i + ".jpg", 215, 102);
+    }
+  }
+
+  @Test
+  public void testAddMultipleRenditions_QueueFull() {
+    underTest = context.registerInjectActivateService(new DamRenditionMetadataService(), "maxQueueSize", 1);
+    for (int i = 0; i < 10; i++) {
+      context.load().binaryFile("/sample_image_215x102.jpg", RENDITIONS_PATH + "/test" + i + ".jpg");
+    }
+    for (int i = 0; i < 10; i++) {
+      underTest.handleEvent(DamEvent.renditionUpdated(assetResource.getPath(), null, RENDITIONS_PATH + "/test" + i + ".jpg").toEvent());
+    }
+    awaitProcessed();
+
+    // events not fitting in the queue are processed synchronously, not dropped
+    assertEquals(10, underTest.getProcessedEventCount());
+    for (int i = 0; i < 10; i++) {
+      assertRenditionMetadata("test" + i + ".jpg", 215, 102);
+    }
+  }
+
+  @Test
+  public void testRemoveRendition_AddedAgain() throws PersistenceException {
+    underTest = context.registerInjectActivateService(new DamRenditionMetadataService());
+    assertRenditionMetadata("cq5dam.web.450.213.jpg", 450, 213);
+
+    // removal event processed after the rendition was added again keeps the metadata
+    underTest.handleEvent(DamEvent.renditionRemoved(assetResource.getPath(), null,
+        RENDITIONS_PATH + "/cq5dam.web.450.213.jpg").toEvent());
+    awaitProcessed();
+
+    assertRenditionMetadata("cq5dam.web.450.213.jpg", 450, 213);
+  }
+
   private void addRendition(String renditionName) {
     Resource rendition = context.load().binaryFile("/sample_image_215x102.jpg", RENDITIONS_PATH + "/" + renditionName);
     underTest.handleEvent(DamEvent.renditionUpdated(assetResource.getPath(), null, rendition.getPath()).toEvent());
+    awaitProcessed();
   }
 
   private void updateRendition(String renditionName) throws PersistenceException {
@@ -149,12 +203,23 @@ public class DamRenditionMetadataServiceTest {
     context.resourceResolver().delete(context.resourceResolver().getResource(existingPath));
     context.load().binaryFile("/sample_image_215x102.jpg", existingPath);
     underTest.handleEvent(DamEvent.renditionUpdated(assetResource.getPath(), null, existingPath).toEvent());
+    awaitProcessed();
   }
 
   private void removeRendition(String renditionName) throws PersistenceException {
     String existingPath = RENDITIONS_PATH + "/" + renditionName;
     context.resourceResolver().delete(context.resourceResolver().getResource(existingPath));
     underTest.handleEvent(DamEvent.renditionRemoved(assetResource.getPath(), null, existingPath).toEvent());
+    awaitProcessed();
+  }
+
+  private void awaitProcessed() {
+    try {
+      assertTrue(underTest.awaitProcessed(5000));
+    }
+    catch (InterruptedException ex) {
+      throw new RuntimeException(ex);
+    }
   }
 
   private void assertRenditionMetadata(String renditionName, int width, int height) {
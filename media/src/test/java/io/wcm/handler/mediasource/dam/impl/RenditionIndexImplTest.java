@@ -0,0 +1,141 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2014 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.mediasource.dam.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Map;
+
+import org.apache.sling.api.SlingConstants;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.service.event.Event;
+
+import com.day.cq.dam.api.Asset;
+import com.day.cq.dam.api.DamEvent;
+import com.google.common.collect.ImmutableMap;
+
+import io.wcm.handler.media.Dimension;
+import io.wcm.handler.media.MediaArgs;
+import io.wcm.handler.mediasource.dam.AbstractDamTest;
+
+public class RenditionIndexImplTest extends AbstractDamTest {
+
+  private RenditionIndexImpl underTest;
+  private Asset asset;
+
+  @Before
+  public void setUp() {
+    underTest = context.registerInjectActivateService(new RenditionIndexImpl());
+    asset = context.resourceResolver().getResource(MEDIAITEM_PATH_STANDARD).adaptTo(Asset.class);
+  }
+
+  @Test
+  public void testGetRenditionDimensions() {
+    Map<String, Dimension> dimensions = underTest.getRenditionDimensions(asset);
+    assertEquals(new Dimension(215, 102), dimensions.get("original"));
+    assertEquals(new Dimension(450, 213), dimensions.get("cq5dam.web.450.213.jpg"));
+
+    // ordered by size
+    assertEquals("original", dimensions.keySet().iterator().next());
+
+    assertSame(dimensions, underTest.getRenditionDimensions(asset));
+    assertEquals(1, underTest.getSize());
+  }
+
+  @Test
+  public void testGetRenditionDimensions_Disabled() {
+    underTest = context.registerInjectActivateService(new RenditionIndexImpl(), "enabled", false);
+    Map<String, Dimension> dimensions = underTest.getRenditionDimensions(asset);
+    assertNotSame(dimensions, underTest.getRenditionDimensions(asset));
+    assertEquals(0, underTest.getSize());
+  }
+
+  @Test
+  public void testGetSelectionIndex() {
+    RenditionSelectionIndex selectionIndex = underTest.getSelectionIndex(asset);
+    assertEquals(underTest.getRenditionDimensions(asset).size(), selectionIndex.size());
+    assertEquals(0, selectionIndex.getRank("original"));
+    assertSame(selectionIndex, underTest.getSelectionIndex(asset));
+  }
+
+  @Test
+  public void testGetSelectionIndex_Disabled() {
+    underTest = context.registerInjectActivateService(new RenditionIndexImpl(), "enabled", false);
+    assertNull(underTest.getSelectionIndex(asset));
+  }
+
+  @Test
+  public void testInvalidate_DamEvent() {
+    Map<String, Dimension> dimensions = underTest.getRenditionDimensions(asset);
+    underTest.handleEvent(DamEvent.renditionUpdated(MEDIAITEM_PATH_STANDARD, null,
+        MEDIAITEM_PATH_STANDARD + "/jcr:content/renditions/cq5dam.web.450.213.jpg").toEvent());
+    assertNotSame(dimensions, underTest.getRenditionDimensions(asset));
+  }
+
+  @Test
+  public void testInvalidate_ResourceEvent() {
+    Map<String, Dimension> dimensions = underTest.getRenditionDimensions(asset);
+    underTest.handleEvent(resourceEvent(SlingConstants.TOPIC_RESOURCE_CHANGED,
+        MEDIAITEM_PATH_STANDARD + "/jcr:content/renditionsMetadata/cq5dam.web.450.213.jpg"));
+    assertNotSame(dimensions, underTest.getRenditionDimensions(asset));
+  }
+
+  @Test
+  public void testInvalidate_FolderRemoved() {
+    Map<String, Dimension> dimensions = underTest.getRenditionDimensions(asset);
+    underTest.handleEvent(resourceEvent(SlingConstants.TOPIC_RESOURCE_REMOVED, ROOTPATH_DAM));
+    assertNotSame(dimensions, underTest.getRenditionDimensions(asset));
+  }
+
+  @Test
+  public void testInvalidate_RenditionRemoved() {
+    Map<String, Dimension> dimensions = underTest.getRenditionDimensions(asset);
+    underTest.handleEvent(resourceEvent(SlingConstants.TOPIC_RESOURCE_REMOVED,
+        MEDIAITEM_PATH_STANDARD + "/jcr:content/renditions/cq5dam.web.450.213.jpg"));
+    assertNotSame(dimensions, underTest.getRenditionDimensions(asset));
+  }
+
+  @Test
+  public void testIgnoreOtherResourceEvents() {
+    Map<String, Dimension> dimensions = underTest.getRenditionDimensions(asset);
+    underTest.handleEvent(resourceEvent(SlingConstants.TOPIC_RESOURCE_REMOVED, ROOTPATH_CONTENT));
+    underTest.handleEvent(resourceEvent(SlingConstants.TOPIC_RESOURCE_CHANGED, ROOTPATH_DAM + "/other.jpg/jcr:content"));
+    assertSame(dimensions, underTest.getRenditionDimensions(asset));
+  }
+
+  @Test
+  public void testDefaultRenditionHandler() {
+    MediaArgs mediaArgs = new MediaArgs().fixedDimension(450, 213);
+    RenditionMetadata withoutIndex = new DefaultRenditionHandler(asset).getRendition(mediaArgs);
+    RenditionMetadata withIndex = new DefaultRenditionHandler(asset, underTest).getRendition(mediaArgs);
+    assertEquals(withoutIndex, withIndex);
+    assertEquals(withoutIndex.getWidth(), withIndex.getWidth());
+    assertEquals(withoutIndex.getHeight(), withIndex.getHeight());
+  }
+
+  private static Event resourceEvent(String topic, String path) {
+    return new Event(topic, ImmutableMap.<String, Object>of(SlingConstants.PROPERTY_PATH, path));
+  }
+
+}
@@ -0,0 +1,156 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.mediasource.dam.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.wcm.handler.media.Dimension;
+import io.wcm.handler.media.format.MediaFormatHandler;
+
+public class RenditionSelectionIndexTest {
+
+  private long[] widths;
+  private long[] heights;
+  private RenditionSelectionIndex underTest;
+
+  @Before
+  public void setUp() {
+    // renditions in rendition order: ordered by width, then height
+    Map<String, Dimension> dimensions = new LinkedHashMap<>();
+    dimensions.put("r0", new Dimension(100, 50));
+    dimensions.put("r1", new Dimension(100, 75));
+    dimensions.put("r2", new Dimension(160, 90));
+    dimensions.put("r3", new Dimension(200, 100));
+    dimensions.put("r4", new Dimension(200, 100));
+    dimensions.put("r5", new Dimension(300, 300));
+    dimensions.put("r6", new Dimension(320, 180));
+    dimensions.put("r7", new Dimension(400, 200));
+    dimensions.put("r8", new Dimension(640, 480));
+    dimensions.put("r9", new Dimension(1920, 1080));
+    init(dimensions);
+  }
+
+  private void init(Map<String, Dimension> dimensions) {
+    widths = dimensions.values().stream().mapToLong(Dimension::getWidth).toArray();
+    heights = dimensions.values().stream().mapToLong(Dimension::getHeight).toArray();
+    underTest = new RenditionSelectionIndex(dimensions);
+  }
+
+  @Test
+  public void testRanks() {
+    assertEquals(10, underTest.size());
+    assertEquals(3, underTest.getRank("r3"));
+    assertEquals("r3", underTest.getName(3));
+    assertEquals(200, underTest.getWidth(3));
+    assertEquals(100, underTest.getHeight(3));
+    assertEquals(-1, underTest.getRank("unknown"));
+  }
+
+  @Test
+  public void testFindExactMatch() {
+    assertEquals(3, underTest.findExactMatch(200, 100, rank -> true));
+    assertEquals(4, underTest.findExactMatch(200, 100, rank -> rank != 3));
+    assertEquals(0, underTest.findExactMatch(100, 0, rank -> true));
+    assertEquals(6, underTest.findExactMatch(0, 180, rank -> true));
+    assertEquals(-1, underTest.findExactMatch(200, 101, rank -> true));
+    assertEquals(-1, underTest.findExactMatch(0, 181, rank -> true));
+  }
+
+  @Test
+  public void testFindMatch() {
+    // same or bigger with ratio 16:9
+    assertEquals(6, underTest.findMatch(300, 150, 0, 0, 16d / 9d, rank -> true));
+    assertEquals(9, underTest.findMatch(300, 150, 0, 0, 16d / 9d, rank -> rank != 6));
+    // min/max range with ratio 2:1
+    assertEquals(7, underTest.findMatch(300, 0, 500, 0, 2d, rank -> true));
+    // no ratio restriction
+    assertEquals(5, underTest.findMatch(250, 250, 0, 0, 0d, rank -> true));
+    assertEquals(-1, underTest.findMatch(2000, 0, 0, 0, 0d, rank -> true));
+    assertEquals(-1, underTest.findMatch(0, 0, 0, 0, 3d, rank -> true));
+  }
+
+  @Test
+  public void testMatchesLinearScan() {
+    Random random = new Random(42);
+    Map<String, Dimension> dimensions = new LinkedHashMap<>();
+    long width = 10;
+    for (int i = 0; i < 300; i++) {
+      width += random.nextInt(3) * 10;
+      dimensions.put("r" + i, new Dimension(width, 10 + random.nextInt(200) * 5));
+    }
+    init(dimensions);
+
+    for (int i = 0; i < 2000; i++) {
+      long minWidth = random.nextInt(4) == 0 ? 0 : random.nextInt(3000);
+      long minHeight = random.nextInt(4) == 0 ? 0 : random.nextInt(1000);
+      long maxWidth = random.nextInt(2) == 0 ? 0 : minWidth + random.nextInt(3000);
+      long maxHeight = random.nextInt(2) == 0 ? 0 : minHeight + random.nextInt(1000);
+      double ratio = random.nextInt(4) == 0 ? 0d : 0.1d + random.nextInt(40) * 0.1d;
+      int excluded = random.nextInt(widths.length);
+      assertEquals(scanMatch(minWidth, minHeight, maxWidth, maxHeight, ratio, excluded),
+          underTest.findMatch(minWidth, minHeight, maxWidth, maxHeight, ratio, rank -> rank != excluded));
+
+      long exactWidth = random.nextInt(3) == 0 ? 0 : widths[random.nextInt(widths.length)];
+      long exactHeight = random.nextInt(3) == 0 ? 0 : heights[random.nextInt(heights.length)];
+      assertEquals(scanExactMatch(exactWidth, exactHeight, excluded),
+          underTest.findExactMatch(exactWidth, exactHeight, rank -> rank != excluded));
+    }
+  }
+
+  private int scanExactMatch(long width, long height, int excluded) {
+    for (int rank = 0; rank < widths.length; rank++) {
+      if (rank != excluded
+          && (width == 0 || widths[rank] == width)
+          && (height == 0 || heights[rank] == height)) {
+        return rank;
+      }
+    }
+    return -1;
+  }
+
+  private int scanMatch(long minWidth, long minHeight, long maxWidth, long maxHeight, double ratio, int excluded) {
+    for (int rank = 0; rank < widths.length; rank++) {
+      if (rank == excluded
+          || (minWidth > 0 && widths[rank] < minWidth)
+          || (minHeight > 0 && heights[rank] < minHeight)
+          || (maxWidth > 0 && widths[rank] > maxWidth)
+          || (maxHeight > 0 && heights[rank] > maxHeight)) {
+        continue;
+      }
+      if (ratio > 0) {
+        double renditionRatio = (double)widths[rank] / (double)heights[rank];
+        if (renditionRatio > ratio + MediaFormatHandler.RATIO_TOLERANCE
+            || renditionRatio < ratio - MediaFormatHandler.RATIO_TOLERANCE) {
+          continue;
+        }
+      }
+      return rank;
+    }
+    return -1;
+  }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.mediasource.dam.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.day.cq.dam.api.Asset;
+
+import io.wcm.handler.media.Dimension;
+import io.wcm.handler.mediasource.dam.AbstractDamTest;
+
+public class ScopedRenditionIndexTest extends AbstractDamTest {
+
+  private Asset asset;
+
+  @Before
+  public void setUp() {
+    asset = context.resourceResolver().getResource(MEDIAITEM_PATH_STANDARD).adaptTo(Asset.class);
+  }
+
+  @Test
+  public void testWithoutSharedIndex() {
+    ScopedRenditionIndex underTest = new ScopedRenditionIndex(null);
+
+    Map<String, Dimension> dimensions = underTest.getRenditionDimensions(asset);
+    assertEquals(new Dimension(450, 213), dimensions.get("cq5dam.web.450.213.jpg"));
+    // selection index is built only for repeated lookups of the same asset
+    assertNull(underTest.getSelectionIndex(asset));
+
+    assertSame(dimensions, underTest.getRenditionDimensions(asset));
+    RenditionSelectionIndex selectionIndex = underTest.getSelectionIndex(asset);
+    assertNotNull(selectionIndex);
+    assertEquals(dimensions.size(), selectionIndex.size());
+    assertSame(selectionIndex, underTest.getSelectionIndex(asset));
+  }
+
+  @Test
+  public void testWithSharedIndex() {
+    RenditionIndexImpl sharedIndex = context.registerInjectActivateService(new RenditionIndexImpl());
+    ScopedRenditionIndex underTest = new ScopedRenditionIndex(sharedIndex);
+
+    assertSame(sharedIndex.getRenditionDimensions(asset), underTest.getRenditionDimensions(asset));
+    assertSame(sharedIndex.getSelectionIndex(asset), underTest.getSelectionIndex(asset));
+  }
+
+  @Test
+  public void testInvalidate() {
+    ScopedRenditionIndex underTest = new ScopedRenditionIndex(null);
+    Map<String, Dimension> dimensions = underTest.getRenditionDimensions(asset);
+    underTest.invalidate(MEDIAITEM_PATH_STANDARD);
+    assertEquals(dimensions, underTest.getRenditionDimensions(asset));
+    assertNull(underTest.getSelectionIndex(asset));
+  }
+
+}
@@ -0,0 +1,253 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.mediasource.dam.impl;
+
+import static io.wcm.handler.media.testcontext.DummyMediaFormats.EDITORIAL_1COL;
+import static io.wcm.handler.media.testcontext.DummyMediaFormats.EDITORIAL_2COL;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.Resource;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.osgi.service.event.Event;
+
+import com.day.cq.commons.jcr.JcrConstants;
+import com.day.cq.dam.api.Asset;
+import com.day.cq.dam.api.DamEvent;
+
+import io.wcm.handler.media.CropDimension;
+import io.wcm.handler.media.impl.ImageFileCacheImpl;
+import io.wcm.handler.media.impl.ImageFileCacheKey;
+import io.wcm.handler.media.impl.ImageFileServlet;
+import io.wcm.handler.media.impl.ImageRenderScheduler;
+import io.wcm.handler.media.impl.MediaFileServlet;
+import io.wcm.handler.media.spi.MediaHandlerConfig;
+import io.wcm.handler.media.testcontext.AppAemContext;
+import io.wcm.sling.commons.adapter.AdaptTo;
+import io.wcm.testing.mock.aem.junit.AemContext;
+import io.wcm.wcm.commons.contenttype.ContentType;
+
+public class VirtualRenditionPreRendererTest {
+
+  private static final String ASSET_PATH = AppAemContext.DAM_PATH + "/asset1.jpg";
+  private static final String RENDITIONS_PATH = ASSET_PATH + "/jcr:content/renditions";
+  private static final long TIMEOUT_MS = 10000;
+
+  @Rule
+  public AemContext context = AppAemContext.newAemContext();
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private ImageFileCacheImpl imageFileCache;
+  private Asset asset;
+  private Resource originalRendition;
+
+  @Before
+  public void setUp() throws Exception {
+    asset = context.create().asset(ASSET_PATH,
+        (int)EDITORIAL_2COL.getWidth(), (int)EDITORIAL_2COL.getHeight(), ContentType.JPEG);
+    originalRendition = context.resourceResolver().getResource(asset.getOriginal().getPath());
+    originalRendition.getChild(JcrConstants.JCR_CONTENT).adaptTo(ModifiableValueMap.class)
+        .put(JcrConstants.JCR_LASTMODIFIED, Calendar.getInstance());
+    context.resourceResolver().commit();
+
+    imageFileCache = context.registerInjectActivateService(new ImageFileCacheImpl(),
+        "cacheDirectory", folder.getRoot().getAbsolutePath());
+  }
+
+  @Test
+  public void testRenditionUpdated() throws Exception {
+    VirtualRenditionPreRenderer underTest = context.registerInjectActivateService(new VirtualRenditionPreRenderer(),
+        "enabled", true);
+
+    underTest.handleEvent(renditionUpdated("cq5dam.web.1280.1280.jpg"));
+    assertTrue(underTest.awaitIdle(TIMEOUT_MS));
+
+    assertTrue(underTest.getRenderedCount() > 0);
+    assertEquals(0, underTest.getFailedCount());
+    assertNotNull(imageFileCache.get(servletCacheKey(EDITORIAL_1COL.getWidth(), EDITORIAL_1COL.getHeight())));
+  }
+
+  @Test
+  public void testPreRenderedImageServedFromCache() throws Exception {
+    VirtualRenditionPreRenderer underTest = context.registerInjectActivateService(new VirtualRenditionPreRenderer(),
+        "enabled", true);
+    underTest.handleEvent(renditionUpdated("cq5dam.web.1280.1280.jpg"));
+    assertTrue(underTest.awaitIdle(TIMEOUT_MS));
+    File cachedFile = imageFileCache.get(servletCacheKey(EDITORIAL_1COL.getWidth(), EDITORIAL_1COL.getHeight()));
+    assertNotNull(cachedFile);
+
+    // replace binary data without changing the modification date - image can only be served from cache
+    originalRendition.getChild(JcrConstants.JCR_CONTENT).adaptTo(ModifiableValueMap.class)
+        .put(JcrConstants.JCR_DATA, new ByteArrayInputStream(new byte[] { 1, 2, 3 }));
+    context.resourceResolver().commit();
+
+    ImageFileServlet servlet = context.registerInjectActivateService(new ImageFileServlet());
+    context.currentResource(originalRendition.getPath());
+    context.requestPathInfo().setSelectorString(ImageFileServlet.SELECTOR
+        + "." + EDITORIAL_1COL.getWidth() + "." + EDITORIAL_1COL.getHeight());
+    context.requestPathInfo().setExtension(MediaFileServlet.EXTENSION);
+    context.requestPathInfo().setSuffix("asset1.jpg");
+
+    servlet.service(context.request(), context.response());
+
+    assertEquals(HttpServletResponse.SC_OK, context.response().getStatus());
+    assertArrayEquals(Files.readAllBytes(cachedFile.toPath()), context.response().getOutput());
+  }
+
+  @Test
+  public void testDisabled() throws Exception {
+    VirtualRenditionPreRenderer underTest = context.registerInjectActivateService(new VirtualRenditionPreRenderer());
+
+    underTest.handleEvent(renditionUpdated("cq5dam.web.1280.1280.jpg"));
+
+    assertTrue(underTest.awaitIdle(TIMEOUT_MS));
+    assertEquals(0, underTest.getRenderedCount());
+    assertNull(imageFileCache.get(servletCacheKey(EDITORIAL_1COL.getWidth(), EDITORIAL_1COL.getHeight())));
+  }
+
+  @Test
+  public void testIgnoreNonImageRendition() throws Exception {
+    VirtualRenditionPreRenderer underTest = context.registerInjectActivateService(new VirtualRenditionPreRenderer(),
+        "enabled", true);
+
+    underTest.handleEvent(renditionUpdated("cq5dam.video.hq.m4v"));
+
+    assertTrue(underTest.awaitIdle(TIMEOUT_MS));
+    assertEquals(0, underTest.getRenderedCount());
+  }
+
+  @Test
+  public void testIgnoreOtherDamEventTypes() throws Exception {
+    VirtualRenditionPreRenderer underTest = context.registerInjectActivateService(new VirtualRenditionPreRenderer(),
+        "enabled", true);
+
+    underTest.handleEvent(DamEvent.renditionRemoved(ASSET_PATH, null, RENDITIONS_PATH + "/cq5dam.web.1280.1280.jpg")
+        .toEvent());
+
+    assertTrue(underTest.awaitIdle(TIMEOUT_MS));
+    assertEquals(0, underTest.getRenderedCount());
+  }
+
+  @Test
+  public void testIgnoreOtherTopics() throws Exception {
+    VirtualRenditionPreRenderer underTest = context.registerInjectActivateService(new VirtualRenditionPreRenderer(),
+        "enabled", true);
+
+    underTest.handleEvent(new Event("org/apache/sling/api/resource/Resource/CHANGED", Collections.emptyMap()));
+
+    assertTrue(underTest.awaitIdle(TIMEOUT_MS));
+    assertEquals(0, underTest.getRenderedCount());
+  }
+
+  @Test
+  public void testBacklogFull() throws Exception {
+    BlockingImageRenderScheduler scheduler = new BlockingImageRenderScheduler();
+    context.registerService(ImageRenderScheduler.class, scheduler);
+    VirtualRenditionPreRenderer underTest = context.registerInjectActivateService(new VirtualRenditionPreRenderer(),
+        "enabled", true, "threads", 1, "maxBacklog", 1);
+
+    // worker thread is blocked while rendering the first asset
+    underTest.schedule(ASSET_PATH);
+    assertTrue(scheduler.renderStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+
+    // second asset fills the backlog, scheduling it again is collapsed
+    underTest.schedule(AppAemContext.DAM_PATH + "/asset2.jpg");
+    underTest.schedule(AppAemContext.DAM_PATH + "/asset2.jpg");
+    assertEquals(1, underTest.getBacklog());
+    assertEquals(0, underTest.getRejectedCount());
+
+    // third asset is rejected
+    underTest.schedule(AppAemContext.DAM_PATH + "/asset3.jpg");
+    assertEquals(1, underTest.getBacklog());
+    assertEquals(1, underTest.getRejectedCount());
+
+    scheduler.releaseRender.countDown();
+    assertTrue(underTest.awaitIdle(TIMEOUT_MS));
+    assertEquals(0, underTest.getBacklog());
+    assertTrue(underTest.getRenderedCount() > 0);
+  }
+
+  @Test
+  public void testIsPreRenderable() {
+    assertTrue(VirtualRenditionPreRenderer.isPreRenderable(
+        new VirtualRenditionMetadata(asset.getOriginal(), 215, 102)));
+    assertFalse(VirtualRenditionPreRenderer.isPreRenderable(
+        new VirtualCropRenditionMetadata(asset.getOriginal(), 215, 102, new CropDimension(0, 0, 430, 204))));
+    assertFalse(VirtualRenditionPreRenderer.isPreRenderable(new RenditionMetadata(asset.getOriginal())));
+    assertFalse(VirtualRenditionPreRenderer.isPreRenderable(null));
+  }
+
+  private Event renditionUpdated(String renditionName) {
+    return DamEvent.renditionUpdated(ASSET_PATH, null, RENDITIONS_PATH + "/" + renditionName).toEvent();
+  }
+
+  /**
+   * Cache key as looked up by {@link ImageFileServlet} for the virtual rendition of the original rendition.
+   */
+  private ImageFileCacheKey servletCacheKey(long width, long height) {
+    MediaHandlerConfig config = AdaptTo.notNull(context.request(), MediaHandlerConfig.class);
+    return ImageFileCacheKey.of(originalRendition, width, height, null,
+        config.getDefaultImageQuality(ContentType.JPEG), ContentType.JPEG);
+  }
+
+  private static class BlockingImageRenderScheduler implements ImageRenderScheduler {
+
+    private final CountDownLatch renderStarted = new CountDownLatch(1);
+    private final CountDownLatch releaseRender = new CountDownLatch(1);
+
+    @Override
+    public byte[] render(ImageFileCacheKey key, Callable<byte[]> renderer) throws IOException {
+      renderStarted.countDown();
+      try {
+        releaseRender.await();
+        return renderer.call();
+      }
+      catch (IOException ex) {
+        throw ex;
+      }
+      catch (Exception ex) {
+        throw new IOException(ex);
+      }
+    }
+
+  }
+
+}
@@ -21,15 +21,11 @@ package io.wcm.handler.url.impl;
 
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.resource.ResourceResolver;
 
-import io.wcm.sling.commons.util.Escape;
-
 /**
  * Utility methods for externalizing URLs.
  */
@@ -50,6 +46,22 @@ final class Externalizer {
    *         configured), and the path is URL-encoded if it contains special chars.
    */
   public static String externalizeUrl(String url, ResourceResolver resolver, SlingHttpServletRequest request) {
+    return externalizeUrl(url, resolver, request, null);
+  }
+
+  /**
+   * Externalizes an URL by applying Sling Mapping. Hostname and scheme are not added because they are added by the
+   * link handler depending on site URL configuration and secure/non-secure mode. URLs that are already externalized
+   * remain untouched.
+   * @param url Unexternalized URL (without scheme or hostname)
+   * @param resolver Resource resolver
+   * @param request Request
+   * @param mappingCache Cache for mapped paths (may be null)
+   * @return Exernalized URL without scheme or hostname, but with short URLs (if configured in Sling Mapping is
+   *         configured), and the path is URL-encoded if it contains special chars.
+   */
+  public static String externalizeUrl(String url, ResourceResolver resolver, SlingHttpServletRequest request,
+      UrlMappingCache mappingCache) {
 
     // apply externalization only path part
     String path = url;
@@ -64,6 +76,26 @@ final class Externalizer {
 
     // apply reverse mapping based on current sling mapping configuration for current request
     // e.g. to support a host-based prefix stripping mapping configuration configured at /etc/map
+    if (mappingCache != null) {
+      path = mappingCache.map(path, request, unmappedPath -> mapPath(unmappedPath, resolver, request));
+    }
+    else {
+      path = mapPath(path, resolver, request);
+    }
+
+    // build full URL again
+    return path + (urlRemainder != null ? urlRemainder : "");
+  }
+
+  /**
+   * Applies Sling Mapping to the given path and removes scheme and hostname.
+   * @param path Path without query string or fragment
+   * @param resolver Resource resolver
+   * @param request Request
+   * @return Mapped path, URL-encoded
+   */
+  private static String mapPath(String path, ResourceResolver resolver, SlingHttpServletRequest request) {
+    String mappedPath;
 
     // please note: the sling map method does a lot of things:
     // 1. applies reverse mapping depending on the sling mapping configuration
@@ -72,24 +104,21 @@ final class Externalizer {
     // 3. adds webapp context path if required
     // 4. url-encodes the whole url
     if (request != null) {
-      path = resolver.map(request, path);
+      mappedPath = resolver.map(request, path);
     }
     else {
-      path = resolver.map(path);
+      mappedPath = resolver.map(path);
     }
 
     // remove scheme and hostname (probably added by sling mapping), but leave path in escaped form
     try {
-      path = new URI(path).getRawPath();
+      mappedPath = new URI(mappedPath).getRawPath();
       // replace %2F back to / for better readability
-      path = StringUtils.replace(path, "%2F", "/");
+      return StringUtils.replace(mappedPath, "%2F", "/");
     }
     catch (URISyntaxException ex) {
-      throw new RuntimeException("Sling map method returned invalid URI: " + path, ex);
+      throw new RuntimeException("Sling map method returned invalid URI: " + mappedPath, ex);
     }
-
-    // build full URL again
-    return path + (urlRemainder != null ? urlRemainder : "");
   }
 
   /**
@@ -102,34 +131,29 @@ final class Externalizer {
    * @return Exernalized URL without scheme or hostname, the path is URL-encoded if it contains special chars.
    */
   public static String externalizeUrlWithoutMapping(String url, SlingHttpServletRequest request) {
-
-    // apply externalization only path part
-    String path = url;
-
-    // split off query string or fragment that may be appended to the URL
-    String urlRemainder = null;
-    int urlRemainderPos = StringUtils.indexOfAny(path, '?', '#');
-    if (urlRemainderPos >= 0) {
-      urlRemainder = path.substring(urlRemainderPos);
-      path = path.substring(0, urlRemainderPos);
+    if (url == null) {
+      return null;
     }
 
-    // apply namespace mangling (e.g. replace jcr: with _jcr_)
-    path = mangleNamespaces(path);
-
-    // add webapp context path
-    if (request != null) {
-      path = StringUtils.defaultString(request.getContextPath()) + path; //NOPMD
+    // apply externalization only path part, leave query string or fragment that may be appended to the URL untouched
+    int pathEnd = StringUtils.indexOfAny(url, '?', '#');
+    if (pathEnd < 0) {
+      pathEnd = url.length();
     }
 
-    // url-encode path
-    path = Escape.urlEncode(path);
-    path = StringUtils.replace(path, "+", "%20");
-    // replace %2F back to / for better readability
-    path = StringUtils.replace(path, "%2F", "/");
+    // webapp context path
+    String contextPath = request != null ? StringUtils.defaultString(request.getContextPath()) : "";
 
-    // build full URL again
-    return path + (urlRemainder != null ? urlRemainder : "");
+    // apply namespace mangling (e.g. replace jcr: with _jcr_) and url-encode path in a single scan over
+    // the input: first pass computes the exact output length, second pass writes the output
+    int length = writePath(contextPath, 0, contextPath.length(), false, null, 0)
+        + writePath(url, 0, pathEnd, true, null, 0)
+        + (url.length() - pathEnd);
+    char[] output = new char[length];
+    int pos = writePath(contextPath, 0, contextPath.length(), false, output, 0);
+    pos = writePath(url, 0, pathEnd, true, output, pos);
+    url.getChars(pathEnd, url.length(), output, pos);
+    return new String(output);
   }
 
   /**
@@ -145,10 +169,30 @@ final class Externalizer {
         || StringUtils.startsWith(url, "#"); // anchor or integrator placeholder detected
   }
 
-  private static final String MANGLED_NAMESPACE_PREFIX = "/_";
-  private static final String MANGLED_NAMESPACE_SUFFIX = "_";
   private static final char NAMESPACE_SEPARATOR = ':';
-  private static final Pattern NAMESPACE_PATTERN = Pattern.compile("/([^:/]+):");
+  private static final char MANGLED_NAMESPACE_DELIMITER = '_';
+  private static final char PATH_SEPARATOR = '/';
+
+  // characters not url-encoded, as defined by java.net.URLEncoder plus "/" which is kept for better readability
+  private static final boolean[] UNRESERVED = new boolean[128];
+  static {
+    for (char c = 'a'; c <= 'z'; c++) {
+      UNRESERVED[c] = true;
+    }
+    for (char c = 'A'; c <= 'Z'; c++) {
+      UNRESERVED[c] = true;
+    }
+    for (char c = '0'; c <= '9'; c++) {
+      UNRESERVED[c] = true;
+    }
+    for (char c : new char[] { '.', '-', '*', '_', PATH_SEPARATOR }) {
+      UNRESERVED[c] = true;
+    }
+  }
+  private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+  // character that replaces unpaired surrogates when encoding to UTF-8
+  private static final int REPLACEMENT_CHAR = '?';
 
   /**
    * Mangle the namespaces in the given path for usage in sling-based URLs.
@@ -162,14 +206,122 @@ final class Externalizer {
     if (!StringUtils.contains(path, NAMESPACE_SEPARATOR)) {
       return path;
     }
-    Matcher matcher = NAMESPACE_PATTERN.matcher(path);
-    StringBuffer sb = new StringBuffer();
-    while (matcher.find()) {
-      String replacement = MANGLED_NAMESPACE_PREFIX + matcher.group(1) + MANGLED_NAMESPACE_SUFFIX;
-      matcher.appendReplacement(sb, replacement);
+    StringBuilder sb = new StringBuilder(path.length() + 8);
+    int namespaceEnd = -1;
+    for (int i = 0; i < path.length(); i++) {
+      char c = path.charAt(i);
+      if (i == namespaceEnd) {
+        sb.append(MANGLED_NAMESPACE_DELIMITER);
+      }
+      else if (c == PATH_SEPARATOR && (namespaceEnd = getNamespaceEnd(path, i + 1, path.length())) > 0) {
+        sb.append(PATH_SEPARATOR).append(MANGLED_NAMESPACE_DELIMITER);
+      }
+      else {
+        sb.append(c);
+      }
     }
-    matcher.appendTail(sb);
     return sb.toString();
   }
 
+  /**
+   * Checks if the path segment starting at the given index is prefixed with a namespace.
+   * @param path Path
+   * @param start Start index of path segment
+   * @param end End index of path
+   * @return Index of namespace separator or -1 if the path segment has no namespace prefix
+   */
+  private static int getNamespaceEnd(String path, int start, int end) {
+    for (int i = start; i < end; i++) {
+      char c = path.charAt(i);
+      if (c == PATH_SEPARATOR) {
+        return -1;
+      }
+      if (c == NAMESPACE_SEPARATOR) {
+        return i > start ? i : -1;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * URL-encodes the given part of a path as done by {@link java.net.URLEncoder} with UTF-8, but encodes
+   * spaces as "%20" and keeps "/" unencoded. Optionally mangles namespaces in the same scan.
+   * @param path Path
+   * @param start Start index
+   * @param end End index
+   * @param mangleNamespaces Apply namespace mangling
+   * @param output Output buffer, or null to only compute the output length
+   * @param offset Position in output buffer
+   * @return Position in output buffer after the written chars
+   */
+  private static int writePath(String path, int start, int end, boolean mangleNamespaces, char[] output, int offset) {
+    int pos = offset;
+    int namespaceEnd = -1;
+    int i = start;
+    while (i < end) {
+      char c = path.charAt(i);
+      if (i == namespaceEnd) {
+        pos = write(output, pos, MANGLED_NAMESPACE_DELIMITER);
+        i++;
+      }
+      else if (c < UNRESERVED.length && UNRESERVED[c]) {
+        pos = write(output, pos, c);
+        if (mangleNamespaces && c == PATH_SEPARATOR && (namespaceEnd = getNamespaceEnd(path, i + 1, end)) > 0) {
+          pos = write(output, pos, MANGLED_NAMESPACE_DELIMITER);
+        }
+        i++;
+      }
+      else if (c == ' ') {
+        pos = writeEncoded(output, pos, 0x20);
+        i++;
+      }
+      else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(path.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, path.charAt(i + 1));
+        pos = writeEncoded(output, pos, 0xF0 | (codePoint >> 18));
+        pos = writeEncoded(output, pos, 0x80 | ((codePoint >> 12) & 0x3F));
+        pos = writeEncoded(output, pos, 0x80 | ((codePoint >> 6) & 0x3F));
+        pos = writeEncoded(output, pos, 0x80 | (codePoint & 0x3F));
+        i += 2;
+      }
+      else {
+        pos = writeEncodedChar(output, pos, Character.isSurrogate(c) ? REPLACEMENT_CHAR : c);
+        i++;
+      }
+    }
+    return pos;
+  }
+
+  private static int writeEncodedChar(char[] output, int offset, int c) {
+    int pos = offset;
+    if (c < 0x80) {
+      pos = writeEncoded(output, pos, c);
+    }
+    else if (c < 0x800) {
+      pos = writeEncoded(output, pos, 0xC0 | (c >> 6));
+      pos = writeEncoded(output, pos, 0x80 | (c & 0x3F));
+    }
+    else {
+      pos = writeEncoded(output, pos, 0xE0 | (c >> 12));
+      pos = writeEncoded(output, pos, 0x80 | ((c >> 6) & 0x3F));
+      pos = writeEncoded(output, pos, 0x80 | (c & 0x3F));
+    }
+    return pos;
+  }
+
+  private static int writeEncoded(char[] output, int offset, int b) {
+    if (output != null) {
+      output[offset] = '%';
+      output[offset + 1] = HEX_DIGITS[(b >> 4) & 0xF];
+      output[offset + 2] = HEX_DIGITS[b & 0xF];
+    }
+    return offset + 3;
+  }
+
+  private static int write(char[] output, int offset, char c) {
+    if (output != null) {
+      output[offset] = c;
+    }
+    return offset + 1;
+  }
+
 }
@@ -0,0 +1,81 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.url.impl;
+
+/**
+ * Marks the current thread as externalizing a large number of URLs only once, e.g. when walking the page tree of
+ * a whole site. While active, {@link UrlMappingCacheImpl} and {@link SiteRootDetectorImpl} still return cached
+ * results, but do not store new ones, so a single walk does not displace the entries of all other requests.
+ * <p>
+ * Usage:
+ * </p>
+ *
+ * <pre>
+ * try (NoStoreMode noStore = NoStoreMode.enter()) {
+ *   // externalize URLs
+ * }
+ * </pre>
+ */
+public final class NoStoreMode implements AutoCloseable {
+
+  private static final ThreadLocal<NoStoreMode> THREAD_LOCAL = new ThreadLocal<>();
+
+  private int count;
+
+  private NoStoreMode() {
+    // instantiated via enter()
+  }
+
+  /**
+   * Enters no-store mode for the current thread. Calls may be nested.
+   * @return No-store mode instance to be closed when leaving
+   */
+  public static NoStoreMode enter() {
+    NoStoreMode mode = THREAD_LOCAL.get();
+    if (mode == null) {
+      mode = new NoStoreMode();
+      THREAD_LOCAL.set(mode);
+    }
+    mode.count++;
+    return mode;
+  }
+
+  /**
+   * Leaves no-store mode. If the outermost call is left the instance is removed from the current thread.
+   */
+  @Override
+  public void close() {
+    if (this.count == 0) {
+      throw new IllegalStateException("No-store mode already left.");
+    }
+    this.count--;
+    if (this.count == 0) {
+      THREAD_LOCAL.remove();
+    }
+  }
+
+  /**
+   * @return true if no-store mode is active for the current thread
+   */
+  public static boolean isActive() {
+    return THREAD_LOCAL.get() != null;
+  }
+
+}
@@ -19,51 +19,135 @@
  */
 package io.wcm.handler.url.impl;
 
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.sling.api.SlingConstants;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.caconfig.resource.ConfigurationResourceResolver;
+import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventConstants;
+import org.osgi.service.event.EventHandler;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
-
 import io.wcm.handler.url.SiteRootDetector;
 import io.wcm.sling.commons.resource.ResourcePath;
 
 /**
  * Implements {@link SiteRootDetector}.
+ * <p>
+ * Detected site root levels are kept in a trie of path segments. A single context path lookup resolves the site root
+ * level not only for the resource path itself, but also for all its ancestors down to the context path - so paths
+ * sharing the same site only need a lookup for the segments not visited before.
+ * The trie is cleared when a context-aware configuration or a configuration reference is changed.
+ * Site root levels detected in {@link NoStoreMode} are not stored.
+ * </p>
  */
-@Component(service = SiteRootDetector.class)
-public class SiteRootDetectorImpl implements SiteRootDetector {
+@Component(service = { SiteRootDetector.class, EventHandler.class }, immediate = true, property = {
+    EventConstants.EVENT_TOPIC + "=" + SlingConstants.TOPIC_RESOURCE_ADDED,
+    EventConstants.EVENT_TOPIC + "=" + SlingConstants.TOPIC_RESOURCE_CHANGED,
+    EventConstants.EVENT_TOPIC + "=" + SlingConstants.TOPIC_RESOURCE_REMOVED,
+    EventConstants.EVENT_FILTER + "=(|"
+        + "(" + SlingConstants.PROPERTY_PATH + "=/conf/*)"
+        + "(" + SlingConstants.PROPERTY_PATH + "=/apps/conf/*)"
+        + "(" + SlingConstants.PROPERTY_PATH + "=/libs/conf/*)"
+        + "(" + SlingConstants.PROPERTY_ADDED_ATTRIBUTES + "=" + SiteRootDetectorImpl.PN_CONFIG_REF + ")"
+        + "(" + SlingConstants.PROPERTY_CHANGED_ATTRIBUTES + "=" + SiteRootDetectorImpl.PN_CONFIG_REF + ")"
+        + "(" + SlingConstants.PROPERTY_REMOVED_ATTRIBUTES + "=" + SiteRootDetectorImpl.PN_CONFIG_REF + ")"
+        + ")",
+    "jmx.objectname=io.wcm.handler.url:type=SiteRootDetector"
+})
+@Designate(ocd = SiteRootDetectorImpl.Config.class)
+public class SiteRootDetectorImpl implements SiteRootDetector, EventHandler, SiteRootDetectorMXBean {
+
+  @ObjectClassDefinition(name = "wcm.io URL Handler Site Root Detector",
+      description = "Caches the site root levels detected from context-aware configuration context paths.")
+  static @interface Config {
+
+    @AttributeDefinition(name = "Enabled", description = "Switch to enable or disable caching of site root levels.")
+    boolean enabled() default true;
+
+    @AttributeDefinition(name = "Max. size", description = "Max. number of cached path segments. "
+        + "If exceeded all cached site root levels are discarded.")
+    long maxSize() default 100000;
+
+    @AttributeDefinition(name = "Max. age (sec)", description = "Max. time in seconds site root levels are cached. "
+        + "Covers context path changes not signaled by resource events.")
+    long maxAgeSec() default 300;
+
+  }
+
+  static final String PN_CONFIG_REF = "sling:configRef";
+
+  // marks trie nodes whose site root level was not detected yet
+  private static final int UNKNOWN = -1;
 
   @Reference
   private ConfigurationResourceResolver configurationResourceResolver;
 
   private static final Logger log = LoggerFactory.getLogger(SiteRootDetectorImpl.class);
 
-  // cache resolving of site root level per resource path
-  private final Cache<String, Integer> cache = CacheBuilder.newBuilder()
-      .expireAfterWrite(1, TimeUnit.MINUTES)
-      .maximumSize(10000)
-      .build();
+  private boolean enabled;
+  private long maxSize;
+  private long maxAgeMillis;
+
+  private volatile Trie trie = new Trie();
+
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+
+  @Activate
+  private void activate(Config config) {
+    enabled = config.enabled();
+    maxSize = config.maxSize();
+    maxAgeMillis = TimeUnit.SECONDS.toMillis(config.maxAgeSec());
+    clear();
+  }
 
   @Override
   public int getSiteRootLevel(Resource contextResource) {
     if (contextResource == null) {
       return 0;
     }
-    try {
-      return cache.get(contextResource.getPath(), () -> detectSiteRootLevel(contextResource));
+    if (!enabled) {
+      return detectSiteRootLevel(contextResource);
     }
-    catch (ExecutionException ex) {
-      log.warn("Unexpected exception.", ex);
-      return 0;
+
+    Trie currentTrie = trie;
+    if (System.currentTimeMillis() - currentTrie.created > maxAgeMillis) {
+      clear();
+      currentTrie = trie;
     }
+    String path = contextResource.getPath();
+    Node node = find(currentTrie.root, path);
+    if (node != null) {
+      int level = node.level;
+      if (level != UNKNOWN) {
+        hitCount.incrementAndGet();
+        return level;
+      }
+    }
+
+    missCount.incrementAndGet();
+    int level = detectSiteRootLevel(contextResource);
+    if (NoStoreMode.isActive()) {
+      return level;
+    }
+    if (currentTrie.size.get() >= maxSize) {
+      clear();
+      currentTrie = trie;
+    }
+    put(currentTrie, path, level);
+    return level;
   }
 
   private int detectSiteRootLevel(Resource contextResource) {
@@ -79,4 +163,131 @@ public class SiteRootDetectorImpl implements SiteRootDetector {
     return 0;
   }
 
+  /**
+   * Walks the path segments down the trie.
+   * @param node Root node
+   * @param path Absolute path
+   * @return Node for path or null if not in trie
+   */
+  private static Node find(Node node, String path) {
+    Node current = node;
+    int start = 1;
+    int length = path.length();
+    while (current != null && start < length) {
+      int end = path.indexOf('/', start);
+      if (end < 0) {
+        end = length;
+      }
+      if (end > start) {
+        current = current.getChild(path.substring(start, end));
+      }
+      start = end + 1;
+    }
+    return current;
+  }
+
+  /**
+   * Stores the detected site root level for the path. The inner-most context path of each ancestor between
+   * the site root and the path is the same as the one of the path itself, so the level is stored for them as well.
+   * If no site root was detected, none of the ancestors has a site root either.
+   * Nodes are counted in the size of the given trie only, so a concurrent put into a trie that was discarded
+   * meanwhile does not affect the size of the current one.
+   * @param target Trie
+   * @param path Absolute path
+   * @param level Detected site root level
+   */
+  private static void put(Trie target, String path, int level) {
+    Node current = target.root;
+    int absoluteLevel = -1;
+    int start = 1;
+    int length = path.length();
+    while (start < length) {
+      int end = path.indexOf('/', start);
+      if (end < 0) {
+        end = length;
+      }
+      if (end > start) {
+        current = current.getOrCreateChild(path.substring(start, end), target.size);
+        absoluteLevel++;
+        if (level == 0 || absoluteLevel >= level) {
+          current.level = level;
+        }
+      }
+      start = end + 1;
+    }
+    current.level = level;
+  }
+
+  @Override
+  public void handleEvent(Event event) {
+    // context path changes are rare, and may affect any path below the changed resource
+    if (enabled) {
+      clear();
+    }
+  }
+
+  @Override
+  public long getSize() {
+    return trie.size.get();
+  }
+
+  @Override
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  @Override
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  @Override
+  public void clear() {
+    trie = new Trie();
+  }
+
+
+  /**
+   * Path segment trie with its creation time and number of nodes.
+   */
+  private static final class Trie {
+
+    private final Node root = new Node();
+    private final long created = System.currentTimeMillis();
+    private final AtomicLong size = new AtomicLong();
+
+  }
+
+  /**
+   * Trie node for a path segment. The children map is created on first insert, as most nodes are leaves.
+   */
+  private static final class Node {
+
+    private volatile ConcurrentMap<String, Node> children;
+    private volatile int level = UNKNOWN;
+
+    Node getChild(String segment) {
+      ConcurrentMap<String, Node> map = children;
+      return map != null ? map.get(segment) : null;
+    }
+
+    Node getOrCreateChild(String segment, AtomicLong size) {
+      ConcurrentMap<String, Node> map = children;
+      if (map == null) {
+        synchronized (this) {
+          map = children;
+          if (map == null) {
+            map = new ConcurrentHashMap<>(4);
+            children = map;
+          }
+        }
+      }
+      return map.computeIfAbsent(segment, key -> {
+        size.incrementAndGet();
+        return new Node();
+      });
+    }
+
+  }
+
 }
@@ -0,0 +1,47 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.url.impl;
+
+/**
+ * JMX metrics for {@link SiteRootDetectorImpl}.
+ */
+public interface SiteRootDetectorMXBean {
+
+  /**
+   * @return Number of cached path segments
+   */
+  long getSize();
+
+  /**
+   * @return Number of site root level lookups served from cache
+   */
+  long getHitCount();
+
+  /**
+   * @return Number of site root level lookups that required a context path detection
+   */
+  long getMissCount();
+
+  /**
+   * Removes all cached site root levels.
+   */
+  void clear();
+
+}
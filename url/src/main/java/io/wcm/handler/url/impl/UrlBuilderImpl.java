@@ -21,7 +21,6 @@ package io.wcm.handler.url.impl;
 
 import java.util.Set;
 
-import org.apache.commons.lang3.StringUtils;
 import org.apache.sling.api.resource.Resource;
 
 import com.day.cq.wcm.api.Page;
@@ -126,14 +125,7 @@ final class UrlBuilderImpl implements UrlBuilder {
 
   @Override
   public String build() {
-    String url = urlHandler.buildUrl(path, selectors, extension, suffix);
-    if (StringUtils.isNotEmpty(queryString) || inheritableParameterNames != null) {
-      url = urlHandler.appendQueryString(url, queryString, inheritableParameterNames);
-    }
-    if (StringUtils.isNotEmpty(fragment)) {
-      url = urlHandler.setFragment(url, fragment);
-    }
-    return url;
+    return urlHandler.buildUrl(path, selectors, extension, suffix, queryString, inheritableParameterNames, fragment);
   }
 
   @Override
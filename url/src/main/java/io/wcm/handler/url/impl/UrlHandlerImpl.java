@@ -65,6 +65,8 @@ public final class UrlHandlerImpl implements UrlHandler {
   private SlingHttpServletRequest request;
   @AemObject(injectionStrategy = InjectionStrategy.OPTIONAL)
   private Page currentPage;
+  @OSGiService(injectionStrategy = InjectionStrategy.OPTIONAL)
+  private UrlMappingCache mappingCache;
 
   @Override
   public UrlBuilder get(String path) {
@@ -141,7 +143,7 @@ public final class UrlHandlerImpl implements UrlHandler {
     }
 
     // apply sling mapping, namespace mangling and add webapp context path if required
-    String externalizedUrl = Externalizer.externalizeUrl(url, resolver, request);
+    String externalizedUrl = Externalizer.externalizeUrl(url, resolver, request, mappingCache);
 
     // add link URL prefix (scheme/hostname or integrator placeholder) if required
     String linkUrlPrefix = getLinkUrlPrefix(urlMode, targetPage);
@@ -174,7 +176,7 @@ public final class UrlHandlerImpl implements UrlHandler {
     }
 
     // apply sling mapping when externalizing URLs
-    String externalizedUrl = Externalizer.externalizeUrl(url, resolver, request);
+    String externalizedUrl = Externalizer.externalizeUrl(url, resolver, request, mappingCache);
 
     // add resource URL prefix (scheme/hostname or integrator placeholder) if required
     String resourceUrlPrefix = getResourceUrlPrefix(urlMode, resource);
@@ -192,84 +194,131 @@ public final class UrlHandlerImpl implements UrlHandler {
     if (StringUtils.isBlank(path)) {
       return null;
     }
+    StringBuilder url = new StringBuilder(estimateLength(path, selector, extension, suffix, null, null));
+    appendUrlPath(url, path, selector, extension, suffix);
+    return url.toString();
+  }
 
-    // Extension url part
-    StringBuilder extensionPart = new StringBuilder();
-    if (StringUtils.isNotBlank(extension)) {
-      extensionPart.append('.').append(extension);
+  /**
+   * Builds the URL including query string and fragment in a single string builder.
+   * Produces the same result as calling {@link #buildUrl(String, String, String, String)},
+   * {@link #appendQueryString(String, String, Set)} and {@link #setFragment(String, String)} one after another.
+   * @param path Path
+   * @param selector Selector(s)
+   * @param extension Extension
+   * @param suffix Suffix
+   * @param queryString Query string (optional)
+   * @param inheritableParameterNames Names of request parameters to inherit (optional)
+   * @param fragment Fragment (optional)
+   * @return URL or null if path is blank
+   */
+  String buildUrl(String path, String selector, String extension, String suffix, //NOPMD
+      String queryString, Set<String> inheritableParameterNames, String fragment) {
+    if (StringUtils.isBlank(path)) {
+      return null;
+    }
+    StringBuilder url = new StringBuilder(estimateLength(path, selector, extension, suffix, queryString, fragment));
+    appendUrlPath(url, path, selector, extension, suffix);
+    if (StringUtils.isNotEmpty(queryString) || inheritableParameterNames != null) {
+      appendQueryParams(url, queryString, inheritableParameterNames);
     }
+    // url may be empty if it only consisted of an empty query string
+    if (StringUtils.isNotEmpty(fragment) && url.length() > 0) {
+      appendFragment(url, fragment);
+    }
+    return url.toString();
+  }
+
+  private static int estimateLength(String path, String selector, String extension, String suffix,
+      String queryString, String fragment) {
+    return path.length()
+        + StringUtils.length(selector)
+        + StringUtils.length(extension) * 2
+        + StringUtils.length(suffix)
+        + StringUtils.length(queryString)
+        + StringUtils.length(fragment)
+        + UrlHandler.SELECTOR_SUFFIX.length() + 8;
+  }
+
+  private static void appendUrlPath(StringBuilder url, String path, String selector, String extension, String suffix) {
+    boolean hasExtension = StringUtils.isNotBlank(extension);
+    boolean hasSuffix = StringUtils.isNotBlank(suffix);
+
+    url.append(path);
 
     // Selector url part
-    StringBuilder selectorPart = new StringBuilder();
     if (StringUtils.isNotBlank(selector)) {
       // prepend delimiter to selector if required
       if (!StringUtils.startsWith(selector, ".")) {
-        selectorPart.append('.');
+        url.append('.');
       }
-      selectorPart.append(selector);
+      url.append(selector);
+    }
+    if (hasSuffix) {
+      // add a ".suffix" selector to avoid overlapping of filenames between suffixed and non-suffixed versions of the same page in the dispatcher cache
+      url.append('.').append(UrlHandler.SELECTOR_SUFFIX);
+    }
+
+    // Extension url part
+    if (hasExtension) {
+      url.append('.').append(extension);
     }
 
     // Suffix part
-    StringBuilder suffixPart = new StringBuilder();
-    if (StringUtils.isNotBlank(suffix)) {
+    if (hasSuffix) {
       // prepend delimiter to suffix if required and add extension
       if (!StringUtils.startsWith(suffix, "/")) {
-        suffixPart = suffixPart.append("/");
+        url.append('/');
       }
-      suffixPart.append(suffix);
+      url.append(suffix);
 
       // if suffix does not contain a file extension add main file extension
-      if (!StringUtils.contains(suffix, ".")) {
-        suffixPart.append(extensionPart);
+      if (hasExtension && !StringUtils.contains(suffix, ".")) {
+        url.append('.').append(extension);
       }
-
-      // add a ".suffix" selector to avoid overlapping of filenames between suffixed and non-suffixed versions of the same page in the dispatcher cache
-      selectorPart.append('.').append(UrlHandler.SELECTOR_SUFFIX);
     }
-
-    // build externalized url
-    return path + selectorPart.toString() + extensionPart.toString() + suffixPart.toString();
   }
 
   String appendQueryString(String url, String queryString, Set<String> inheritableParameterNames) {
     if (StringUtils.isEmpty(url)) {
       return url;
     }
+    StringBuilder urlBuilder = new StringBuilder(url.length() + StringUtils.length(queryString) + 16);
+    urlBuilder.append(url);
+    appendQueryParams(urlBuilder, queryString, inheritableParameterNames);
+    return urlBuilder.toString();
+  }
 
-    // split url from existing query parameters
-    StringBuilder urlBuilder = new StringBuilder();
-    StringBuilder queryParams = new StringBuilder();
-    int separatorPos = url.indexOf('?');
-    if (separatorPos >= 0) {
-      queryParams.append(url.substring(separatorPos + 1));
-      urlBuilder.append(url.substring(0, separatorPos));
-    }
-    else {
-      urlBuilder.append(url);
+  private void appendQueryParams(StringBuilder url, String queryString, Set<String> inheritableParameterNames) {
+
+    // keep existing query parameters in place
+    int separatorPos = url.indexOf("?");
+    if (separatorPos < 0) {
+      separatorPos = url.length();
+      url.append('?');
     }
+    int queryStart = separatorPos + 1;
 
     // append new query parameters
     if (StringUtils.isNotBlank(queryString)) {
-      if (queryParams.length() > 0) {
-        queryParams.append('&');
+      if (url.length() > queryStart) {
+        url.append('&');
       }
-      queryParams.append(queryString);
+      url.append(queryString);
     }
 
     // inherit query parameters from current request (only if the parameter is not already included in the params list)
     if (inheritableParameterNames != null && request != null) {
       for (String parameterName : inheritableParameterNames) {
-        if (queryParams.indexOf(parameterName + "=") == -1) {
+        if (!containsParameter(url, queryStart, parameterName)) {
           String[] values = RequestParam.getMultiple(request, parameterName);
           if (values != null) {
             for (String value : values) {
               if (StringUtils.isNotEmpty(value)) {
-                if (queryParams.length() > 0) {
-                  queryParams.append('&');
+                if (url.length() > queryStart) {
+                  url.append('&');
                 }
-                queryParams.append(parameterName);
-                queryParams.append('=');
-                queryParams.append(value);
+                url.append(parameterName).append('=').append(value);
               }
             }
           }
@@ -277,38 +326,52 @@ public final class UrlHandlerImpl implements UrlHandler {
       }
     }
 
-    // build complete url
-    if (queryParams.length() > 0) {
-      urlBuilder.append('?');
-      urlBuilder.append(queryParams);
+    // remove separator if no query parameters present
+    if (url.length() == queryStart) {
+      url.setLength(separatorPos);
     }
-    return urlBuilder.toString();
+  }
+
+  /**
+   * @return true if "parameterName=" is contained in the query string starting at the given position
+   */
+  private static boolean containsParameter(StringBuilder url, int queryStart, String parameterName) {
+    int index = url.indexOf(parameterName, queryStart);
+    while (index >= 0) {
+      int end = index + parameterName.length();
+      if (end < url.length() && url.charAt(end) == '=') {
+        return true;
+      }
+      index = url.indexOf(parameterName, index + 1);
+    }
+    return false;
   }
 
   String setFragment(String url, String fragment) {
     if (StringUtils.isEmpty(url)) {
       return url;
     }
+    StringBuilder urlBuilder = new StringBuilder(url.length() + StringUtils.length(fragment) + 1);
+    urlBuilder.append(url);
+    appendFragment(urlBuilder, fragment);
+    return urlBuilder.toString();
+  }
+
+  private static void appendFragment(StringBuilder url, String fragment) {
 
     // strip off anchor if already present
-    StringBuilder urlBuilder;
-    int index = url.indexOf('#');
+    int index = url.indexOf("#");
     if (index >= 0) {
-      urlBuilder = new StringBuilder(url.substring(0, index));
-    }
-    else {
-      urlBuilder = new StringBuilder(url);
+      url.setLength(index);
     }
 
     // prepend "#" for anchor if not present
     if (StringUtils.isNotBlank(fragment)) {
       if (!StringUtils.startsWith(fragment, "#")) {
-        urlBuilder.append('#');
+        url.append('#');
       }
-      urlBuilder.append(fragment);
+      url.append(fragment);
     }
-
-    return urlBuilder.toString();
   }
 
 }
@@ -0,0 +1,42 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.url.impl;
+
+import java.util.function.Function;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * Caches the result of reverse Sling mappings applied by {@link Externalizer} across requests.
+ */
+@ProviderType
+public interface UrlMappingCache {
+
+  /**
+   * Get mapped path from cache, or map it and store the result in cache.
+   * @param path Unmapped path (without query string or fragment)
+   * @param request Request (may be null)
+   * @param mapper Function applying the Sling mapping to the path
+   * @return Mapped path
+   */
+  String map(String path, SlingHttpServletRequest request, Function<String, String> mapper);
+
+}
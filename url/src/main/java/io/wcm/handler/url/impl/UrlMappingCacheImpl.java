@@ -0,0 +1,179 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.url.impl;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.SlingConstants;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventConstants;
+import org.osgi.service.event.EventHandler;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Caches reverse Sling mappings per path and the request properties the mapping depends on
+ * (scheme, host, port and servlet context path).
+ * The cache is cleared when the Sling mapping configuration, vanity paths or aliases are changed.
+ * Mappings applied in {@link NoStoreMode} are not stored.
+ */
+@Component(service = { UrlMappingCache.class, EventHandler.class }, immediate = true, property = {
+    EventConstants.EVENT_TOPIC + "=" + SlingConstants.TOPIC_RESOURCE_RESOLVER_MAPPING_CHANGED,
+    EventConstants.EVENT_TOPIC + "=" + SlingConstants.TOPIC_RESOURCE_ADDED,
+    EventConstants.EVENT_TOPIC + "=" + SlingConstants.TOPIC_RESOURCE_CHANGED,
+    EventConstants.EVENT_TOPIC + "=" + SlingConstants.TOPIC_RESOURCE_REMOVED,
+    EventConstants.EVENT_FILTER + "=(|"
+        + "(" + EventConstants.EVENT_TOPIC + "=" + SlingConstants.TOPIC_RESOURCE_RESOLVER_MAPPING_CHANGED + ")"
+        + "(" + SlingConstants.PROPERTY_PATH + "=/etc/map/*)"
+        + "(" + SlingConstants.PROPERTY_ADDED_ATTRIBUTES + "=" + UrlMappingCacheImpl.PN_VANITY_PATH + ")"
+        + "(" + SlingConstants.PROPERTY_CHANGED_ATTRIBUTES + "=" + UrlMappingCacheImpl.PN_VANITY_PATH + ")"
+        + "(" + SlingConstants.PROPERTY_REMOVED_ATTRIBUTES + "=" + UrlMappingCacheImpl.PN_VANITY_PATH + ")"
+        + "(" + SlingConstants.PROPERTY_ADDED_ATTRIBUTES + "=" + UrlMappingCacheImpl.PN_ALIAS + ")"
+        + "(" + SlingConstants.PROPERTY_CHANGED_ATTRIBUTES + "=" + UrlMappingCacheImpl.PN_ALIAS + ")"
+        + "(" + SlingConstants.PROPERTY_REMOVED_ATTRIBUTES + "=" + UrlMappingCacheImpl.PN_ALIAS + ")"
+        + ")",
+    "jmx.objectname=io.wcm.handler.url:type=UrlMappingCache"
+})
+@Designate(ocd = UrlMappingCacheImpl.Config.class)
+public final class UrlMappingCacheImpl implements UrlMappingCache, EventHandler, UrlMappingCacheMXBean {
+
+  @ObjectClassDefinition(name = "wcm.io URL Handler Mapping Cache",
+      description = "Caches the reverse Sling mapping of paths applied when externalizing URLs.")
+  static @interface Config {
+
+    @AttributeDefinition(name = "Enabled", description = "Switch to enable or disable this service.")
+    boolean enabled() default true;
+
+    @AttributeDefinition(name = "Max. size", description = "Max. number of cached mappings.")
+    long maxSize() default 10000;
+
+    @AttributeDefinition(name = "Max. age (sec)", description = "Max. time in seconds a mapping is cached. "
+        + "Covers mapping changes not signaled by events.")
+    long maxAgeSec() default 3600;
+
+  }
+
+  static final String PN_VANITY_PATH = "sling:vanityPath";
+  static final String PN_ALIAS = "sling:alias";
+
+  private boolean enabled;
+  private Cache<String, String> cache;
+
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+  private final AtomicLong invalidationCount = new AtomicLong();
+
+  @Activate
+  private void activate(Config config) {
+    enabled = config.enabled();
+    cache = CacheBuilder.newBuilder()
+        .maximumSize(config.maxSize())
+        .expireAfterWrite(config.maxAgeSec(), TimeUnit.SECONDS)
+        .build();
+  }
+
+  @Override
+  public String map(String path, SlingHttpServletRequest request, Function<String, String> mapper) {
+    if (!enabled) {
+      return mapper.apply(path);
+    }
+    String key = buildKey(path, request);
+    String mappedPath = cache.getIfPresent(key);
+    if (mappedPath != null) {
+      hitCount.incrementAndGet();
+      return mappedPath;
+    }
+    missCount.incrementAndGet();
+    if (NoStoreMode.isActive()) {
+      return mapper.apply(path);
+    }
+    try {
+      return cache.get(key, () -> mapper.apply(path));
+    }
+    catch (ExecutionException ex) {
+      throw new RuntimeException("Unable to map path " + path, ex.getCause());
+    }
+  }
+
+  private static String buildKey(String path, SlingHttpServletRequest request) {
+    if (request == null) {
+      return path;
+    }
+    return new StringBuilder()
+        .append(request.getScheme())
+        .append("://").append(request.getServerName())
+        .append(':').append(request.getServerPort())
+        .append(StringUtils.defaultString(request.getContextPath()))
+        .append('|').append(path)
+        .toString();
+  }
+
+  @Override
+  public void handleEvent(Event event) {
+    if (enabled) {
+      invalidationCount.incrementAndGet();
+      cache.invalidateAll();
+    }
+  }
+
+  @Override
+  public long getSize() {
+    return cache.size();
+  }
+
+  @Override
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  @Override
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  @Override
+  public double getHitRatio() {
+    long hits = hitCount.get();
+    long total = hits + missCount.get();
+    return total > 0 ? (double)hits / total : 0d;
+  }
+
+  @Override
+  public long getInvalidationCount() {
+    return invalidationCount.get();
+  }
+
+  @Override
+  public void clear() {
+    cache.invalidateAll();
+  }
+
+}
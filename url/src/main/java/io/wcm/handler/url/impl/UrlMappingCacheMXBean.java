@@ -0,0 +1,57 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.url.impl;
+
+/**
+ * JMX metrics for {@link UrlMappingCache}.
+ */
+public interface UrlMappingCacheMXBean {
+
+  /**
+   * @return Number of cached mappings
+   */
+  long getSize();
+
+  /**
+   * @return Number of mappings served from cache
+   */
+  long getHitCount();
+
+  /**
+   * @return Number of mappings not found in cache
+   */
+  long getMissCount();
+
+  /**
+   * @return Ratio of mappings served from cache (0..1)
+   */
+  double getHitRatio();
+
+  /**
+   * @return Number of times the cache was cleared by mapping change events
+   */
+  long getInvalidationCount();
+
+  /**
+   * Removes all cache entries.
+   */
+  void clear();
+
+}
@@ -49,30 +49,32 @@ abstract class AbstractUrlMode implements UrlMode {
   /**
    * Get URL configuration for target page. If this is invalid or not available, get it from adaptable.
    * @param adaptable Adaptable (request or resource)
+   * @param urlContext URL context
    * @param targetPage Target page (may be null)
    * @return Url config (never null)
    */
-  protected UrlConfig getUrlConfigForTarget(Adaptable adaptable, Page targetPage) {
+  protected UrlConfig getUrlConfigForTarget(Adaptable adaptable, UrlContext urlContext, Page targetPage) {
     Resource targetResource = null;
     if (targetPage != null) {
       targetResource = targetPage.adaptTo(Resource.class);
     }
-    return getUrlConfigForTarget(adaptable, targetResource);
+    return getUrlConfigForTarget(adaptable, urlContext, targetResource);
   }
 
   /**
    * Get URL configuration for target resource. If this is invalid or not available, get it from adaptable.
    * @param adaptable Adaptable (request or resource)
+   * @param urlContext URL context
    * @param targetResource Target resource (may be null)
    * @return Url config (never null)
    */
-  protected UrlConfig getUrlConfigForTarget(Adaptable adaptable, Resource targetResource) {
+  protected UrlConfig getUrlConfigForTarget(Adaptable adaptable, UrlContext urlContext, Resource targetResource) {
     UrlConfig config = null;
     if (targetResource != null) {
-      config = new UrlConfig(targetResource);
+      config = UrlConfig.get(adaptable, targetResource);
     }
     if (config == null || !config.isValid()) {
-      config = new UrlConfig(adaptable);
+      config = urlContext.getUrlConfig(adaptable);
     }
     return config;
   }
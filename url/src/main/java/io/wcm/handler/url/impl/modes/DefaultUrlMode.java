@@ -29,9 +29,7 @@ import org.apache.sling.api.resource.Resource;
 import com.day.cq.wcm.api.Page;
 
 import io.wcm.handler.url.UrlModes;
-import io.wcm.handler.url.integrator.IntegratorHandler;
 import io.wcm.handler.url.spi.UrlHandlerConfig;
-import io.wcm.sling.commons.adapter.AdaptTo;
 
 /**
  * Default mode: Does generate a full externalized URL only if both siteUrl and siteUrlSecure parameter
@@ -55,9 +53,9 @@ public final class DefaultUrlMode extends AbstractUrlMode {
   @Override
   public String getResourceUrlPrefix(Adaptable adaptable, Set<String> runModes, Page currentPage, Resource targetResource) {
     // in integrator template mode or if resource is from another site default to full URL mode, otherwise to no-hostname mode
-    IntegratorHandler integratorHandler = AdaptTo.notNull(adaptable, IntegratorHandler.class);
-    if (integratorHandler.isIntegratorTemplateMode()
-        || linksToOtherDomain(adaptable, currentPage, targetResource)) {
+    UrlContext urlContext = UrlContext.get(adaptable, currentPage);
+    if (urlContext.isIntegratorTemplateMode()
+        || linksToOtherDomain(adaptable, urlContext, currentPage, targetResource)) {
       return UrlModes.FULL_URL.getResourceUrlPrefix(adaptable, runModes, currentPage, targetResource);
     }
     return UrlModes.NO_HOSTNAME.getResourceUrlPrefix(adaptable, runModes, currentPage, targetResource);
@@ -67,23 +65,24 @@ public final class DefaultUrlMode extends AbstractUrlMode {
    * Checks if the target resource is located outsite the current site, and if for this other
    * resource context a valid url configuration with a specific hostname exists.
    * @param adaptable Adaptable
+   * @param urlContext URL context
    * @param currentPage Current page (may be null)
    * @param targetResource Target resource (may be null)
    * @return true if the target resources is located in another site/context with separate url configuration
    */
-  private boolean linksToOtherDomain(Adaptable adaptable, Page currentPage, Resource targetResource) {
+  private boolean linksToOtherDomain(Adaptable adaptable, UrlContext urlContext, Page currentPage, Resource targetResource) {
     if (currentPage == null || targetResource == null) {
       return false;
     }
 
-    UrlHandlerConfig urlHandlerConfig = AdaptTo.notNull(adaptable, UrlHandlerConfig.class);
+    UrlHandlerConfig urlHandlerConfig = urlContext.getUrlHandlerConfig();
     Resource currentResource = currentPage.adaptTo(Resource.class);
     String currentSiteRoot = getRootPath(currentPage.getPath(), urlHandlerConfig.getSiteRootLevel(currentResource));
     String pathSiteRoot = getRootPath(targetResource.getPath(), urlHandlerConfig.getSiteRootLevel(targetResource));
     boolean notInCurrentSite = !StringUtils.equals(currentSiteRoot, pathSiteRoot);
 
     if (notInCurrentSite) {
-      UrlConfig targetUrlConfig = new UrlConfig(targetResource);
+      UrlConfig targetUrlConfig = UrlConfig.get(adaptable, targetResource);
       return targetUrlConfig.isValid();
     }
     else {
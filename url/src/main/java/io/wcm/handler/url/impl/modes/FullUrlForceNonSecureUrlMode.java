@@ -26,9 +26,7 @@ import org.apache.sling.api.resource.Resource;
 
 import com.day.cq.wcm.api.Page;
 
-import io.wcm.handler.url.integrator.IntegratorHandler;
 import io.wcm.handler.url.integrator.IntegratorPlaceholder;
-import io.wcm.sling.commons.adapter.AdaptTo;
 import io.wcm.wcm.commons.util.RunMode;
 
 /**
@@ -54,13 +52,12 @@ public final class FullUrlForceNonSecureUrlMode extends AbstractUrlMode {
   public String getLinkUrlPrefix(Adaptable adaptable, Set<String> runModes, Page currentPage, Page targetPage) {
 
     // if integrator template mode with placeholders is active return link url placeholder
-    IntegratorHandler integratorHandler = AdaptTo.notNull(adaptable, IntegratorHandler.class);
-    if (integratorHandler.isIntegratorTemplateMode()
-        && integratorHandler.getIntegratorMode().isUseUrlPlaceholders()) {
+    UrlContext urlContext = UrlContext.get(adaptable, currentPage);
+    if (urlContext.isIntegratorUrlPlaceholders()) {
       return IntegratorPlaceholder.URL_CONTENT;
     }
 
-    UrlConfig config = getUrlConfigForTarget(adaptable, targetPage);
+    UrlConfig config = getUrlConfigForTarget(adaptable, urlContext, targetPage);
 
     // in author mode return author site url
     if (!forcePublish && RunMode.isAuthor(runModes) && config.hasSiteUrlAuthor()) {
@@ -75,13 +72,12 @@ public final class FullUrlForceNonSecureUrlMode extends AbstractUrlMode {
   public String getResourceUrlPrefix(Adaptable adaptable, Set<String> runModes, Page currentPage, Resource targetResource) {
 
     // if integrator template mode with placeholders is active return resource url placeholder
-    IntegratorHandler integratorHandler = AdaptTo.notNull(adaptable, IntegratorHandler.class);
-    if (integratorHandler.isIntegratorTemplateMode()
-        && integratorHandler.getIntegratorMode().isUseUrlPlaceholders()) {
+    UrlContext urlContext = UrlContext.get(adaptable, currentPage);
+    if (urlContext.isIntegratorUrlPlaceholders()) {
       return IntegratorPlaceholder.URL_CONTENT_PROXY;
     }
 
-    UrlConfig config = getUrlConfigForTarget(adaptable, targetResource);
+    UrlConfig config = getUrlConfigForTarget(adaptable, urlContext, targetResource);
 
     // in author mode return author site url
     if (!forcePublish && RunMode.isAuthor(runModes) && config.hasSiteUrlAuthor()) {
@@ -26,10 +26,7 @@ import org.apache.sling.api.resource.Resource;
 
 import com.day.cq.wcm.api.Page;
 
-import io.wcm.handler.url.integrator.IntegratorHandler;
 import io.wcm.handler.url.integrator.IntegratorPlaceholder;
-import io.wcm.handler.url.spi.UrlHandlerConfig;
-import io.wcm.sling.commons.adapter.AdaptTo;
 import io.wcm.wcm.commons.util.RunMode;
 
 /**
@@ -55,13 +52,10 @@ public final class FullUrlUrlMode extends AbstractUrlMode {
 
   @Override
   public String getLinkUrlPrefix(Adaptable adaptable, Set<String> runModes, Page currentPage, Page targetPage) {
-    UrlHandlerConfig urlHandlerConfig = AdaptTo.notNull(adaptable, UrlHandlerConfig.class);
-
     // if integrator template mode with placeholders is active return link url placeholder
-    IntegratorHandler integratorHandler = AdaptTo.notNull(adaptable, IntegratorHandler.class);
-    if (integratorHandler.isIntegratorTemplateMode()
-        && integratorHandler.getIntegratorMode().isUseUrlPlaceholders()) {
-      if (targetPage != null && urlHandlerConfig.isSecure(targetPage)) {
+    UrlContext urlContext = UrlContext.get(adaptable, currentPage);
+    if (urlContext.isIntegratorUrlPlaceholders()) {
+      if (targetPage != null && urlContext.getUrlHandlerConfig().isSecure(targetPage)) {
         return IntegratorPlaceholder.URL_CONTENT_SECURE;
       }
       else {
@@ -69,7 +63,7 @@ public final class FullUrlUrlMode extends AbstractUrlMode {
       }
     }
 
-    UrlConfig config = getUrlConfigForTarget(adaptable, targetPage);
+    UrlConfig config = getUrlConfigForTarget(adaptable, urlContext, targetPage);
 
     // in author mode return author site url
     if (!forcePublish && RunMode.isAuthor(runModes) && config.hasSiteUrlAuthor()) {
@@ -77,7 +71,7 @@ public final class FullUrlUrlMode extends AbstractUrlMode {
     }
 
     // return secure or non-secure site url
-    if (targetPage != null && urlHandlerConfig.isSecure(targetPage)) {
+    if (targetPage != null && urlContext.getUrlHandlerConfig().isSecure(targetPage)) {
       return config.getSiteUrlSecure();
     }
     else {
@@ -89,13 +83,12 @@ public final class FullUrlUrlMode extends AbstractUrlMode {
   public String getResourceUrlPrefix(Adaptable adaptable, Set<String> runModes, Page currentPage, Resource targetResource) {
 
     // if integrator template mode with placeholders is active return resource url placeholder
-    IntegratorHandler integratorHandler = AdaptTo.notNull(adaptable, IntegratorHandler.class);
-    if (integratorHandler.isIntegratorTemplateMode()
-        && integratorHandler.getIntegratorMode().isUseUrlPlaceholders()) {
+    UrlContext urlContext = UrlContext.get(adaptable, currentPage);
+    if (urlContext.isIntegratorUrlPlaceholders()) {
       return IntegratorPlaceholder.URL_CONTENT_PROXY;
     }
 
-    UrlConfig config = getUrlConfigForTarget(adaptable, targetResource);
+    UrlConfig config = getUrlConfigForTarget(adaptable, urlContext, targetResource);
 
     // in author mode return author site url
     if (!forcePublish && RunMode.isAuthor(runModes) && config.hasSiteUrlAuthor()) {
@@ -103,9 +96,7 @@ public final class FullUrlUrlMode extends AbstractUrlMode {
     }
 
     // return secure or non-secure site url
-    UrlHandlerConfig urlHandlerConfig = AdaptTo.notNull(adaptable, UrlHandlerConfig.class);
-    if ((currentPage != null && urlHandlerConfig.isSecure(currentPage))
-        || integratorHandler.isIntegratorTemplateSecureMode()) {
+    if (urlContext.isCurrentPageSecure() || urlContext.isIntegratorTemplateSecureMode()) {
       return config.getSiteUrlSecure();
     }
     else {
@@ -19,6 +19,9 @@
  */
 package io.wcm.handler.url.impl.modes;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import org.apache.commons.lang3.StringUtils;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.adapter.Adaptable;
@@ -32,21 +35,18 @@ import io.wcm.handler.url.SiteConfig;
  */
 class UrlConfig {
 
+  static final UrlConfig EMPTY = new UrlConfig(null);
+
+  private static final String REQUEST_ATTRIBUTE_MEMO = UrlConfig.class.getName() + ".memo";
+
+  // max. number of resource paths memorized per request, keeps memory constant when iterating over large page trees
+  static final int MAX_MEMO_SIZE = 1000;
+
   private final String siteUrl;
   private final String siteUrlSecure;
   private final String siteUrlAuthor;
 
-  UrlConfig(Adaptable adaptable) {
-    SiteConfig config = null;
-    if (adaptable instanceof Resource) {
-      config = adaptable.adaptTo(ConfigurationBuilder.class).as(SiteConfig.class);
-    }
-    else if (adaptable instanceof SlingHttpServletRequest) {
-      Resource resource = ((SlingHttpServletRequest)adaptable).getResource();
-      if (resource != null) {
-        config = resource.adaptTo(ConfigurationBuilder.class).as(SiteConfig.class);
-      }
-    }
+  UrlConfig(SiteConfig config) {
     if (config != null) {
       this.siteUrl = config.siteUrl();
       this.siteUrlSecure = StringUtils.defaultString(config.siteUrlSecure(), this.siteUrl);
@@ -59,6 +59,80 @@ class UrlConfig {
     }
   }
 
+  /**
+   * Get URL configuration for adaptable.
+   * @param adaptable Adaptable (request or resource)
+   * @return Url config (never null)
+   */
+  static UrlConfig get(Adaptable adaptable) {
+    if (adaptable instanceof Resource) {
+      return get(adaptable, (Resource)adaptable);
+    }
+    else if (adaptable instanceof SlingHttpServletRequest) {
+      return get(adaptable, ((SlingHttpServletRequest)adaptable).getResource());
+    }
+    return EMPTY;
+  }
+
+  /**
+   * Get URL configuration for resource. If the adaptable is a request the result is memorized for the request.
+   * Otherwise the configuration is looked up via {@link UrlConfigCache} if available.
+   * @param adaptable Adaptable (request or resource)
+   * @param resource Resource (may be null)
+   * @return Url config (never null)
+   */
+  static UrlConfig get(Adaptable adaptable, Resource resource) {
+    if (resource == null) {
+      return EMPTY;
+    }
+    Map<String, UrlConfig> memo = null;
+    if (adaptable instanceof SlingHttpServletRequest) {
+      memo = getRequestMemo((SlingHttpServletRequest)adaptable);
+      UrlConfig config = memo.get(resource.getPath());
+      if (config != null) {
+        return config;
+      }
+    }
+    UrlConfig config = resource.adaptTo(UrlConfig.class);
+    if (config == null) {
+      // fallback to direct lookup if cache service is not available
+      config = lookup(resource);
+    }
+    if (memo != null) {
+      memo.put(resource.getPath(), config);
+    }
+    return config;
+  }
+
+  /**
+   * Look up URL configuration for resource from context-aware configuration.
+   * @param resource Resource
+   * @return Url config (never null)
+   */
+  static UrlConfig lookup(Resource resource) {
+    ConfigurationBuilder configurationBuilder = resource.adaptTo(ConfigurationBuilder.class);
+    if (configurationBuilder == null) {
+      return EMPTY;
+    }
+    return new UrlConfig(configurationBuilder.as(SiteConfig.class));
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, UrlConfig> getRequestMemo(SlingHttpServletRequest request) {
+    Map<String, UrlConfig> memo = (Map<String, UrlConfig>)request.getAttribute(REQUEST_ATTRIBUTE_MEMO);
+    if (memo == null) {
+      memo = new LinkedHashMap<String, UrlConfig>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, UrlConfig> eldest) {
+          return size() > MAX_MEMO_SIZE;
+        }
+      };
+      request.setAttribute(REQUEST_ATTRIBUTE_MEMO, memo);
+    }
+    return memo;
+  }
+
   /**
    * @return Site URL
    */
@@ -0,0 +1,162 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.url.impl.modes;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.SlingConstants;
+import org.apache.sling.api.adapter.AdapterFactory;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.caconfig.resource.ConfigurationResourceResolver;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventConstants;
+import org.osgi.service.event.EventHandler;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Adapts resources to {@link UrlConfig} and caches the site URLs per configuration context path.
+ * The cache is cleared when a context-aware configuration or a configuration reference is changed.
+ */
+@Component(service = { AdapterFactory.class, EventHandler.class }, immediate = true, property = {
+    AdapterFactory.ADAPTABLE_CLASSES + "=org.apache.sling.api.resource.Resource",
+    AdapterFactory.ADAPTER_CLASSES + "=io.wcm.handler.url.impl.modes.UrlConfig",
+    EventConstants.EVENT_TOPIC + "=" + SlingConstants.TOPIC_RESOURCE_ADDED,
+    EventConstants.EVENT_TOPIC + "=" + SlingConstants.TOPIC_RESOURCE_CHANGED,
+    EventConstants.EVENT_TOPIC + "=" + SlingConstants.TOPIC_RESOURCE_REMOVED,
+    EventConstants.EVENT_FILTER + "=(|"
+        + "(" + SlingConstants.PROPERTY_PATH + "=/conf/*)"
+        + "(" + SlingConstants.PROPERTY_PATH + "=/apps/conf/*)"
+        + "(" + SlingConstants.PROPERTY_PATH + "=/libs/conf/*)"
+        + "(" + SlingConstants.PROPERTY_ADDED_ATTRIBUTES + "=" + UrlConfigCache.PN_CONFIG_REF + ")"
+        + "(" + SlingConstants.PROPERTY_CHANGED_ATTRIBUTES + "=" + UrlConfigCache.PN_CONFIG_REF + ")"
+        + "(" + SlingConstants.PROPERTY_REMOVED_ATTRIBUTES + "=" + UrlConfigCache.PN_CONFIG_REF + ")"
+        + ")",
+    "jmx.objectname=io.wcm.handler.url:type=UrlConfigCache"
+})
+@Designate(ocd = UrlConfigCache.Config.class)
+public final class UrlConfigCache implements AdapterFactory, EventHandler, UrlConfigCacheMXBean {
+
+  @ObjectClassDefinition(name = "wcm.io URL Handler Site Configuration Cache",
+      description = "Caches the site URLs from the context-aware site configuration per configuration context path.")
+  static @interface Config {
+
+    @AttributeDefinition(name = "Enabled", description = "Switch to enable or disable this service.")
+    boolean enabled() default true;
+
+    @AttributeDefinition(name = "Max. size", description = "Max. number of cached configuration context paths.")
+    long maxSize() default 1000;
+
+    @AttributeDefinition(name = "Max. age (sec)", description = "Max. time in seconds site URLs are cached. "
+        + "Covers configuration changes not signaled by resource events.")
+    long maxAgeSec() default 300;
+
+  }
+
+  static final String PN_CONFIG_REF = "sling:configRef";
+
+  // cache key for resources without configuration context path, they all share the fallback configuration
+  private static final String NO_CONTEXT_PATH = "";
+
+  @Reference
+  private ConfigurationResourceResolver configurationResourceResolver;
+
+  private boolean enabled;
+  private Cache<String, UrlConfig> cache;
+
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+
+  @Activate
+  private void activate(Config config) {
+    enabled = config.enabled();
+    cache = CacheBuilder.newBuilder()
+        .maximumSize(config.maxSize())
+        .expireAfterWrite(config.maxAgeSec(), TimeUnit.SECONDS)
+        .build();
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public <AdapterType> AdapterType getAdapter(Object adaptable, Class<AdapterType> type) {
+    if (type == UrlConfig.class && adaptable instanceof Resource) {
+      return (AdapterType)getUrlConfig((Resource)adaptable);
+    }
+    return null;
+  }
+
+  private UrlConfig getUrlConfig(Resource resource) {
+    if (!enabled) {
+      return UrlConfig.lookup(resource);
+    }
+    String contextPath = StringUtils.defaultString(configurationResourceResolver.getContextPath(resource), NO_CONTEXT_PATH);
+    UrlConfig config = cache.getIfPresent(contextPath);
+    if (config != null) {
+      hitCount.incrementAndGet();
+      return config;
+    }
+    missCount.incrementAndGet();
+    try {
+      return cache.get(contextPath, () -> UrlConfig.lookup(resource));
+    }
+    catch (ExecutionException ex) {
+      throw new RuntimeException("Unable to get site configuration for " + resource.getPath(), ex.getCause());
+    }
+  }
+
+  @Override
+  public void handleEvent(Event event) {
+    // configuration changes are rare, and may affect any context path via inheritance
+    if (enabled) {
+      cache.invalidateAll();
+    }
+  }
+
+  @Override
+  public long getSize() {
+    return cache.size();
+  }
+
+  @Override
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  @Override
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  @Override
+  public void clear() {
+    cache.invalidateAll();
+  }
+
+}
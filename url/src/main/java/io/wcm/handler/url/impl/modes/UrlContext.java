@@ -0,0 +1,146 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.url.impl.modes;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.adapter.Adaptable;
+
+import com.day.cq.wcm.api.Page;
+
+import io.wcm.handler.url.integrator.IntegratorHandler;
+import io.wcm.handler.url.spi.UrlHandlerConfig;
+import io.wcm.sling.commons.adapter.AdaptTo;
+
+/**
+ * Snapshot of the URL handler configuration and integrator state of the current request shared by all URL mode
+ * implementations. If the adaptable is a request it is computed once per request, and only recomputed if the
+ * current page, the resource or the selectors of the request change.
+ */
+final class UrlContext {
+
+  private static final String REQUEST_ATTRIBUTE = UrlContext.class.getName();
+
+  private final String currentPagePath;
+  private final String resourcePath;
+  private final String selectorString;
+  private final UrlHandlerConfig urlHandlerConfig;
+  private final boolean integratorTemplateMode;
+  private final boolean integratorTemplateSecureMode;
+  private final boolean integratorUrlPlaceholders;
+  private final boolean currentPageSecure;
+
+  // site url config of adaptable, resolved on first access
+  private UrlConfig urlConfig;
+
+  private UrlContext(Adaptable adaptable, Page currentPage, String resourcePath, String selectorString) {
+    this.currentPagePath = currentPage != null ? currentPage.getPath() : null;
+    this.resourcePath = resourcePath;
+    this.selectorString = selectorString;
+    this.urlHandlerConfig = AdaptTo.notNull(adaptable, UrlHandlerConfig.class);
+
+    IntegratorHandler integratorHandler = AdaptTo.notNull(adaptable, IntegratorHandler.class);
+    this.integratorTemplateMode = integratorHandler.isIntegratorTemplateMode();
+    this.integratorTemplateSecureMode = integratorHandler.isIntegratorTemplateSecureMode();
+    this.integratorUrlPlaceholders = integratorTemplateMode
+        && integratorHandler.getIntegratorMode().isUseUrlPlaceholders();
+
+    this.currentPageSecure = currentPage != null && urlHandlerConfig.isSecure(currentPage);
+  }
+
+  /**
+   * Get URL context for adaptable.
+   * @param adaptable Adaptable (request or resource)
+   * @param currentPage Current page (may be null)
+   * @return URL context (never null)
+   */
+  static UrlContext get(Adaptable adaptable, Page currentPage) {
+    if (!(adaptable instanceof SlingHttpServletRequest)) {
+      return new UrlContext(adaptable, currentPage, null, null);
+    }
+    SlingHttpServletRequest request = (SlingHttpServletRequest)adaptable;
+    String resourcePath = request.getResource() != null ? request.getResource().getPath() : null;
+    String selectorString = request.getRequestPathInfo().getSelectorString();
+    Object attribute = request.getAttribute(REQUEST_ATTRIBUTE);
+    if (attribute instanceof UrlContext) {
+      UrlContext urlContext = (UrlContext)attribute;
+      if (urlContext.matches(currentPage, resourcePath, selectorString)) {
+        return urlContext;
+      }
+    }
+    UrlContext urlContext = new UrlContext(adaptable, currentPage, resourcePath, selectorString);
+    request.setAttribute(REQUEST_ATTRIBUTE, urlContext);
+    return urlContext;
+  }
+
+  private boolean matches(Page currentPage, String currentResourcePath, String currentSelectorString) {
+    return StringUtils.equals(currentPagePath, currentPage != null ? currentPage.getPath() : null)
+        && StringUtils.equals(resourcePath, currentResourcePath)
+        && StringUtils.equals(selectorString, currentSelectorString);
+  }
+
+  /**
+   * @return URL handler configuration
+   */
+  public UrlHandlerConfig getUrlHandlerConfig() {
+    return this.urlHandlerConfig;
+  }
+
+  /**
+   * @return true if in integrator template or integrator template secure mode
+   */
+  public boolean isIntegratorTemplateMode() {
+    return this.integratorTemplateMode;
+  }
+
+  /**
+   * @return true if in integrator template secure mode
+   */
+  public boolean isIntegratorTemplateSecureMode() {
+    return this.integratorTemplateSecureMode;
+  }
+
+  /**
+   * @return true if in integrator template mode and the integrator mode of the current page uses URL placeholders
+   */
+  public boolean isIntegratorUrlPlaceholders() {
+    return this.integratorUrlPlaceholders;
+  }
+
+  /**
+   * @return true if current page is set and is secure
+   */
+  public boolean isCurrentPageSecure() {
+    return this.currentPageSecure;
+  }
+
+  /**
+   * Get URL configuration of the adaptable this context was created for.
+   * @param adaptable Adaptable (request or resource)
+   * @return Url config (never null)
+   */
+  public UrlConfig getUrlConfig(Adaptable adaptable) {
+    if (this.urlConfig == null) {
+      this.urlConfig = UrlConfig.get(adaptable);
+    }
+    return this.urlConfig;
+  }
+
+}
@@ -0,0 +1,318 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.url.sitemap;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.models.annotations.Model;
+import org.apache.sling.models.annotations.injectorspecific.Self;
+import org.osgi.annotation.versioning.ProviderType;
+
+import com.day.cq.wcm.api.Page;
+
+import io.wcm.handler.url.UrlHandler;
+import io.wcm.handler.url.UrlMode;
+import io.wcm.handler.url.UrlModes;
+import io.wcm.handler.url.impl.NoStoreMode;
+import io.wcm.handler.url.sitemap.impl.PageTreeIterator;
+import io.wcm.handler.url.sitemap.impl.SitemapXmlWriter;
+import io.wcm.handler.url.ui.SiteRoot;
+
+/**
+ * Generates XML sitemaps for all pages below the site root page of the current page.
+ * <p>
+ * Pages are read with a streaming iterator and written directly to the output, so memory usage does not depend on
+ * the number of pages. All URLs are externalized with the same URL handler and URL mode, sharing the URL
+ * configuration and Sling mapping state of the current request. Mappings and site root levels resolved for the
+ * pages are not stored in the caches shared with other requests, as each page is visited only once per walk and
+ * would displace their entries. Sites with more URLs than allowed in a single sitemap are split into multiple
+ * sitemaps referenced by a sitemap index.
+ * </p>
+ * <p>
+ * Sitemaps are split by URLs: pages without externalized URL are skipped and do not count towards the max. number
+ * of URLs per sitemap. Because nothing is cached between calls, each of {@link #getSitemapCount()},
+ * {@link #writeSitemap(Writer, int)} and {@link #writeSitemapIndex(Writer, IntFunction)} iterates over the page
+ * tree from the site root page and externalizes the URLs of the pages visited. For sites with many pages prefer
+ * {@link #writeFiles(File, String, boolean)} which writes all sitemaps and the index iterating only once.
+ * </p>
+ */
+@ProviderType
+@Model(adaptables = SlingHttpServletRequest.class)
+public final class SitemapGenerator {
+
+  /**
+   * Max. number of URLs in a single sitemap as defined by the sitemap protocol.
+   */
+  public static final int MAX_URLS_PER_SITEMAP = 50000;
+
+  /**
+   * File name of sitemap index written by {@link #writeFiles(File, String, boolean)}.
+   */
+  public static final String INDEX_FILE_NAME = "sitemap.xml";
+
+  private static final String FILE_NAME_PREFIX = "sitemap-";
+
+  @Self
+  private UrlHandler urlHandler;
+  @Self
+  private SiteRoot siteRoot;
+
+  private UrlMode urlMode = UrlModes.FULL_URL;
+  private Predicate<Page> filter = Page::isValid;
+  private int maxUrlsPerSitemap = MAX_URLS_PER_SITEMAP;
+
+  /**
+   * @param value URL mode for externalizing page URLs. Defaults to {@link UrlModes#FULL_URL}.
+   * @return this
+   */
+  public SitemapGenerator urlMode(UrlMode value) {
+    this.urlMode = value;
+    return this;
+  }
+
+  /**
+   * @param value Filter for pages to include. Defaults to pages that are valid according to their on/off time.
+   *          Children of pages not accepted by the filter are still included if accepted themselves.
+   * @return this
+   */
+  public SitemapGenerator filter(Predicate<Page> value) {
+    this.filter = value;
+    return this;
+  }
+
+  /**
+   * @param value Max. number of URLs per sitemap. Defaults to {@link #MAX_URLS_PER_SITEMAP}.
+   * @return this
+   */
+  public SitemapGenerator maxUrlsPerSitemap(int value) {
+    if (value < 1 || value > MAX_URLS_PER_SITEMAP) {
+      throw new IllegalArgumentException("Invalid max. URLs per sitemap: " + value);
+    }
+    this.maxUrlsPerSitemap = value;
+    return this;
+  }
+
+  /**
+   * @return Site root page of the current page or null if not detected
+   */
+  public Page getRootPage() {
+    return siteRoot.getRootPage();
+  }
+
+  /**
+   * @return Iterator over all pages included in the sitemap in document order, starting with the site root page
+   */
+  public Iterator<Page> getPages() {
+    return new PageTreeIterator(getRootPage(), filter);
+  }
+
+  /**
+   * Counts the URLs included in the sitemap. This iterates over all pages and externalizes their URLs.
+   * @return Number of sitemaps required for all URLs (at least 1)
+   */
+  public int getSitemapCount() {
+    long urlCount = 0;
+    Iterator<Entry> entries = new EntryIterator(getPages());
+    while (entries.hasNext()) {
+      entries.next();
+      urlCount++;
+    }
+    return (int)Math.max(1, (urlCount + maxUrlsPerSitemap - 1) / maxUrlsPerSitemap);
+  }
+
+  /**
+   * Writes a single sitemap. This iterates over all pages up to the last URL of the sitemap.
+   * @param writer Writer (is flushed, but not closed). Nothing is written to it before the URLs of the preceding
+   *          sitemaps are skipped.
+   * @param sitemapNumber Number of sitemap starting with 1. All URLs are split into sitemaps with max. number of
+   *          URLs per sitemap.
+   * @return false if the sitemap number exceeds the number of sitemaps - nothing is written in this case.
+   *         The first sitemap is always written, even if it contains no URLs.
+   * @throws IOException I/O exception
+   */
+  public boolean writeSitemap(Writer writer, int sitemapNumber) throws IOException {
+    if (sitemapNumber < 1) {
+      throw new IllegalArgumentException("Invalid sitemap number: " + sitemapNumber);
+    }
+    Iterator<Entry> entries = new EntryIterator(getPages());
+    long skip = (long)(sitemapNumber - 1) * maxUrlsPerSitemap;
+    for (long i = 0; i < skip && entries.hasNext(); i++) {
+      entries.next();
+    }
+    if (sitemapNumber > 1 && !entries.hasNext()) {
+      return false;
+    }
+    writeSitemap(writer, entries);
+    return true;
+  }
+
+  /**
+   * Writes a sitemap index referencing all sitemaps. This iterates over all pages to count the sitemaps.
+   * @param writer Writer (is flushed, but not closed)
+   * @param sitemapUrlProvider Provides the externalized URL of the sitemap with the given number (starting with 1)
+   * @throws IOException I/O exception
+   */
+  public void writeSitemapIndex(Writer writer, IntFunction<String> sitemapUrlProvider) throws IOException {
+    writeSitemapIndex(writer, getSitemapCount(), sitemapUrlProvider);
+  }
+
+  /**
+   * Writes a sitemap index referencing the given number of sitemaps, e.g. as returned by a previous call of
+   * {@link #getSitemapCount()}. This does not iterate over the pages.
+   * @param writer Writer (is flushed, but not closed)
+   * @param sitemapCount Number of sitemaps
+   * @param sitemapUrlProvider Provides the externalized URL of the sitemap with the given number (starting with 1)
+   * @throws IOException I/O exception
+   */
+  public void writeSitemapIndex(Writer writer, int sitemapCount, IntFunction<String> sitemapUrlProvider)
+      throws IOException {
+    SitemapXmlWriter indexWriter = new SitemapXmlWriter(writer, true);
+    for (int i = 1; i <= sitemapCount; i++) {
+      indexWriter.write(sitemapUrlProvider.apply(i), null);
+    }
+    indexWriter.finish();
+  }
+
+  /**
+   * Writes all sitemaps and a sitemap index to files, iterating only once over all pages.
+   * The sitemaps are named <code>sitemap-1.xml</code>, <code>sitemap-2.xml</code> etc.,
+   * the sitemap index is named {@link #INDEX_FILE_NAME}.
+   * @param directory Target directory (has to exist)
+   * @param baseUrl Externalized URL of the target directory used for referencing the sitemaps in the index
+   * @param gzip Compress sitemaps with gzip (file extension <code>.xml.gz</code>). The index is not compressed.
+   * @return Sitemap index file
+   * @throws IOException I/O exception
+   */
+  public File writeFiles(File directory, String baseUrl, boolean gzip) throws IOException {
+    String fileExtension = gzip ? ".xml.gz" : ".xml";
+    Iterator<Entry> entries = new EntryIterator(getPages());
+    int sitemapCount = 0;
+    do {
+      sitemapCount++;
+      File file = new File(directory, FILE_NAME_PREFIX + sitemapCount + fileExtension);
+      try (Writer writer = openFile(file, gzip)) {
+        writeSitemap(writer, entries);
+      }
+    }
+    while (entries.hasNext());
+
+    File indexFile = new File(directory, INDEX_FILE_NAME);
+    try (Writer writer = openFile(indexFile, false)) {
+      writeSitemapIndex(writer, sitemapCount, number -> baseUrl + "/" + FILE_NAME_PREFIX + number + fileExtension);
+    }
+    return indexFile;
+  }
+
+  /**
+   * Writes the next entries to a sitemap until the max. number of URLs is reached.
+   */
+  private void writeSitemap(Writer writer, Iterator<Entry> entries) throws IOException {
+    SitemapXmlWriter sitemapWriter = new SitemapXmlWriter(writer, false);
+    while (sitemapWriter.getCount() < maxUrlsPerSitemap && entries.hasNext()) {
+      Entry entry = entries.next();
+      sitemapWriter.write(entry.url, entry.page.getLastModified());
+    }
+    sitemapWriter.finish();
+  }
+
+  private static Writer openFile(File file, boolean gzip) throws IOException {
+    OutputStream os = new BufferedOutputStream(new FileOutputStream(file));
+    try {
+      if (gzip) {
+        os = new GZIPOutputStream(os);
+      }
+      return new OutputStreamWriter(os, StandardCharsets.UTF_8);
+    }
+    catch (IOException ex) {
+      os.close();
+      throw ex;
+    }
+  }
+
+
+
+  /**
+   * Page with its externalized URL.
+   */
+  private static final class Entry {
+
+    private final Page page;
+    private final String url;
+
+    Entry(Page page, String url) {
+      this.page = page;
+      this.url = url;
+    }
+
+  }
+
+  /**
+   * Externalizes the URLs of the given pages, skipping pages without URL.
+   */
+  private final class EntryIterator implements Iterator<Entry> {
+
+    private final Iterator<Page> pages;
+    private Entry next;
+
+    EntryIterator(Iterator<Page> pages) {
+      this.pages = pages;
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (next == null && pages.hasNext()) {
+        Page page = pages.next();
+        String url;
+        try (NoStoreMode noStore = NoStoreMode.enter()) {
+          url = urlHandler.get(page).urlMode(urlMode).buildExternalLinkUrl();
+        }
+        if (url != null) {
+          next = new Entry(page, url);
+        }
+      }
+      return next != null;
+    }
+
+    @Override
+    public Entry next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      Entry result = next;
+      next = null;
+      return result;
+    }
+
+  }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.url.sitemap.impl;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
+
+import com.day.cq.wcm.api.Page;
+import com.google.common.collect.Iterators;
+
+/**
+ * Iterates lazily over a page and all its descendants in document order.
+ * Only the child iterators of the pages on the current path are kept, so memory usage depends on the depth
+ * of the page tree but not on the number of pages.
+ */
+public final class PageTreeIterator implements Iterator<Page> {
+
+  private final Deque<Iterator<Page>> stack = new ArrayDeque<>();
+  private final Predicate<Page> filter;
+  private Page next;
+
+  /**
+   * @param rootPage Root page (may be null)
+   * @param filter Filter for pages to return (may be null). Children of pages not accepted by the filter are
+   *          still visited.
+   */
+  public PageTreeIterator(Page rootPage, Predicate<Page> filter) {
+    this.filter = filter;
+    if (rootPage != null) {
+      stack.push(Iterators.singletonIterator(rootPage));
+    }
+    this.next = fetchNext();
+  }
+
+  private Page fetchNext() {
+    while (!stack.isEmpty()) {
+      Iterator<Page> children = stack.peek();
+      if (!children.hasNext()) {
+        stack.pop();
+        continue;
+      }
+      Page page = children.next();
+      stack.push(page.listChildren());
+      if (filter == null || filter.test(page)) {
+        return page;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public boolean hasNext() {
+    return next != null;
+  }
+
+  @Override
+  public Page next() {
+    if (next == null) {
+      throw new NoSuchElementException();
+    }
+    Page page = next;
+    next = fetchNext();
+    return page;
+  }
+
+}
@@ -0,0 +1,237 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.url.sitemap.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.Servlet;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang3.CharEncoding;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.servlets.HttpConstants;
+import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.ConfigurationPolicy;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+import com.day.cq.wcm.api.NameConstants;
+import com.day.cq.wcm.api.Page;
+
+import io.wcm.handler.url.UrlHandler;
+import io.wcm.handler.url.UrlModes;
+import io.wcm.handler.url.sitemap.SitemapGenerator;
+
+/**
+ * Delivers the XML sitemap for a site root page.
+ * <p>
+ * <code>/content/site/root.sitemap.xml</code> returns the sitemap if all URLs fit in a single sitemap,
+ * otherwise a sitemap index referencing <code>/content/site/root.sitemap.1.xml</code>,
+ * <code>/content/site/root.sitemap.2.xml</code> etc. Sitemap numbers exceeding the number of sitemaps return 404.
+ * </p>
+ * <p>
+ * Nothing is cached between requests: each request iterates over the page tree and externalizes the page URLs,
+ * a numbered sitemap request up to the last URL of that sitemap. This is suitable for small and medium sites.
+ * For large sites write the sitemaps with {@link SitemapGenerator#writeFiles(java.io.File, String, boolean)}
+ * in a background job instead and deliver the files statically.
+ * </p>
+ * <p>
+ * The servlet is only registered if an OSGi configuration is present.
+ * </p>
+ */
+@Component(service = Servlet.class, immediate = true, configurationPolicy = ConfigurationPolicy.REQUIRE, property = {
+    "sling.servlet.extensions=" + SitemapServlet.EXTENSION,
+    "sling.servlet.selectors=" + SitemapServlet.SELECTOR,
+    "sling.servlet.resourceTypes=" + NameConstants.NT_PAGE,
+    "sling.servlet.methods=" + HttpConstants.METHOD_GET
+})
+@Designate(ocd = SitemapServlet.Config.class)
+public final class SitemapServlet extends SlingSafeMethodsServlet {
+  private static final long serialVersionUID = 1L;
+
+  @ObjectClassDefinition(name = "wcm.io URL Handler Sitemap Servlet",
+      description = "Delivers XML sitemaps for site root pages.")
+  static @interface Config {
+
+    @AttributeDefinition(name = "Gzip", description = "Compress sitemaps with gzip if accepted by the client.")
+    boolean gzip() default false;
+
+  }
+
+  /**
+   * Selector
+   */
+  public static final String SELECTOR = "sitemap";
+
+  /**
+   * Extension
+   */
+  public static final String EXTENSION = "xml";
+
+  static final String CONTENT_TYPE = "application/xml";
+
+  private static final String GZIP = "gzip";
+
+  private boolean gzip;
+
+  @Activate
+  private void activate(Config config) {
+    gzip = config.gzip();
+  }
+
+  @Override
+  protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response)
+      throws ServletException, IOException {
+    // sitemaps are only delivered for the site root page
+    SitemapGenerator generator = request.adaptTo(SitemapGenerator.class);
+    Page rootPage = generator != null ? generator.getRootPage() : null;
+    if (rootPage == null || !StringUtils.equals(rootPage.getPath(), request.getResource().getPath())) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+
+    // sitemap number from second selector, 0 for sitemap or sitemap index
+    String[] selectors = request.getRequestPathInfo().getSelectors();
+    int sitemapNumber = 0;
+    if (selectors.length == 2) {
+      sitemapNumber = NumberUtils.toInt(selectors[1]);
+      if (sitemapNumber < 1) {
+        response.sendError(HttpServletResponse.SC_NOT_FOUND);
+        return;
+      }
+    }
+    else if (selectors.length != 1) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+
+    // response is only opened when the generator starts writing
+    ResponseWriter writer = new ResponseWriter(request, response);
+
+    if (sitemapNumber > 0) {
+      if (!generator.writeSitemap(writer, sitemapNumber)) {
+        response.sendError(HttpServletResponse.SC_NOT_FOUND);
+        return;
+      }
+    }
+    else {
+      // count only once - each call iterates over the whole page tree
+      int sitemapCount = generator.getSitemapCount();
+      if (sitemapCount == 1) {
+        generator.writeSitemap(writer, 1);
+      }
+      else {
+        UrlHandler urlHandler = request.adaptTo(UrlHandler.class);
+        generator.writeSitemapIndex(writer, sitemapCount, number -> urlHandler.get(rootPage)
+            .selectors(SELECTOR + "." + number)
+            .extension(EXTENSION)
+            .urlMode(UrlModes.FULL_URL)
+            .buildExternalLinkUrl());
+      }
+    }
+
+    writer.finish();
+  }
+
+  /**
+   * Sets the response headers and opens the response output on first write, so the response can still be
+   * changed to an error as long as nothing was written.
+   */
+  private final class ResponseWriter extends Writer {
+
+    private final SlingHttpServletRequest request;
+    private final SlingHttpServletResponse response;
+    private OutputStream os;
+    private Writer writer;
+
+    ResponseWriter(SlingHttpServletRequest request, SlingHttpServletResponse response) {
+      this.request = request;
+      this.response = response;
+    }
+
+    private Writer open() throws IOException {
+      if (writer == null) {
+        response.setContentType(CONTENT_TYPE);
+        response.setCharacterEncoding(CharEncoding.UTF_8);
+        os = response.getOutputStream();
+        if (gzip) {
+          // response depends on accepted encodings - make sure caches do not deliver gzip content to other clients
+          response.setHeader("Vary", "Accept-Encoding");
+          if (StringUtils.contains(request.getHeader("Accept-Encoding"), GZIP)) {
+            response.setHeader("Content-Encoding", GZIP);
+            os = new GZIPOutputStream(os);
+          }
+        }
+        writer = new OutputStreamWriter(os, StandardCharsets.UTF_8);
+      }
+      return writer;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+      open().write(cbuf, off, len);
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+      open().write(str, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      if (writer != null) {
+        writer.flush();
+      }
+    }
+
+    /**
+     * Flushes all output and finishes gzip compression. The response output stream is not closed.
+     * @throws IOException I/O exception
+     */
+    void finish() throws IOException {
+      if (writer != null) {
+        writer.flush();
+        if (os instanceof GZIPOutputStream) {
+          ((GZIPOutputStream)os).finish();
+        }
+        os.flush();
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      finish();
+    }
+
+  }
+
+}
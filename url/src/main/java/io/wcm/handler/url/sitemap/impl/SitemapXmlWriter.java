@@ -0,0 +1,102 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.url.sitemap.impl;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.Calendar;
+
+import org.apache.commons.lang3.StringEscapeUtils;
+
+/**
+ * Writes sitemap or sitemap index XML as defined by the sitemap protocol directly to a writer.
+ */
+public final class SitemapXmlWriter {
+
+  /**
+   * Namespace of sitemap protocol
+   */
+  public static final String NAMESPACE = "http://www.sitemaps.org/schemas/sitemap/0.9";
+
+  private final Writer writer;
+  private final boolean index;
+  private int count;
+
+  /**
+   * Writes XML declaration and start element.
+   * @param writer Writer
+   * @param index true for sitemap index, false for sitemap
+   * @throws IOException I/O exception
+   */
+  public SitemapXmlWriter(Writer writer, boolean index) throws IOException {
+    this.writer = writer;
+    this.index = index;
+    writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+    writer.write(index ? "<sitemapindex" : "<urlset");
+    writer.write(" xmlns=\"" + NAMESPACE + "\">\n");
+  }
+
+  /**
+   * Writes an URL entry of a sitemap or a sitemap entry of a sitemap index.
+   * @param loc Externalized URL
+   * @param lastModified Last modification date (may be null)
+   * @throws IOException I/O exception
+   */
+  public void write(String loc, Calendar lastModified) throws IOException {
+    writer.write(index ? "<sitemap>" : "<url>");
+    writer.write("<loc>");
+    writer.write(StringEscapeUtils.escapeXml10(loc));
+    writer.write("</loc>");
+    if (lastModified != null) {
+      writer.write("<lastmod>");
+      writer.write(formatDate(lastModified));
+      writer.write("</lastmod>");
+    }
+    writer.write(index ? "</sitemap>\n" : "</url>\n");
+    count++;
+  }
+
+  /**
+   * Writes end element and flushes the writer. The writer is not closed.
+   * @throws IOException I/O exception
+   */
+  public void finish() throws IOException {
+    writer.write(index ? "</sitemapindex>\n" : "</urlset>\n");
+    writer.flush();
+  }
+
+  /**
+   * @return Number of entries written
+   */
+  public int getCount() {
+    return this.count;
+  }
+
+  static String formatDate(Calendar date) {
+    return OffsetDateTime.ofInstant(date.toInstant(), ZoneOffset.UTC)
+        .truncatedTo(ChronoUnit.SECONDS)
+        .format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+  }
+
+}
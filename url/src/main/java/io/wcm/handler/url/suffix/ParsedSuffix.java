@@ -0,0 +1,118 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.url.suffix;
+
+import static io.wcm.handler.url.suffix.impl.UrlSuffixUtil.KEY_VALUE_DELIMITER;
+import static io.wcm.handler.url.suffix.impl.UrlSuffixUtil.decodeKey;
+import static io.wcm.handler.url.suffix.impl.UrlSuffixUtil.decodeResourcePathPart;
+import static io.wcm.handler.url.suffix.impl.UrlSuffixUtil.decodeValue;
+import static io.wcm.handler.url.suffix.impl.UrlSuffixUtil.splitSuffix;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+
+/**
+ * Suffix of the current request split and decoded once, and shared by all {@link SuffixParser} instances
+ * of the request. It is rebuilt when the suffix of the request changes.
+ */
+final class ParsedSuffix {
+
+  private static final String REQUEST_ATTRIBUTE = ParsedSuffix.class.getName();
+
+  private final String suffix;
+  private final Map<String, String> values = new HashMap<>();
+  private final List<String> resourcePaths = new ArrayList<>();
+
+  // resolved resource parts per base resource path
+  private final Map<String, List<Resource>> resources = new HashMap<>();
+
+  private ParsedSuffix(String suffix) {
+    this.suffix = suffix;
+    for (String part : splitSuffix(suffix)) {
+      if (part.indexOf(KEY_VALUE_DELIMITER) >= 0) {
+        // first occurrence of a key wins
+        values.putIfAbsent(decodeKey(part), decodeValue(part));
+      }
+      else {
+        resourcePaths.add(decodeResourcePathPart(part));
+      }
+    }
+  }
+
+  /**
+   * Get parsed suffix of the request.
+   * @param request Request
+   * @return Parsed suffix
+   */
+  static ParsedSuffix get(SlingHttpServletRequest request) {
+    String suffix = request.getRequestPathInfo().getSuffix();
+    Object attribute = request.getAttribute(REQUEST_ATTRIBUTE);
+    if (attribute instanceof ParsedSuffix) {
+      ParsedSuffix parsedSuffix = (ParsedSuffix)attribute;
+      if (StringUtils.equals(parsedSuffix.suffix, suffix)) {
+        return parsedSuffix;
+      }
+    }
+    ParsedSuffix parsedSuffix = new ParsedSuffix(suffix);
+    request.setAttribute(REQUEST_ATTRIBUTE, parsedSuffix);
+    return parsedSuffix;
+  }
+
+  /**
+   * @param key Key of named suffix part
+   * @return Decoded value or null if not set
+   */
+  String getValue(String key) {
+    return values.get(key);
+  }
+
+  /**
+   * Resolves the resource path parts relative to the base resource. Resource path parts that do not point to an
+   * existing resource are skipped.
+   * @param resolver Resource resolver
+   * @param baseResource Base resource (may be null)
+   * @return Existing resources in order of the suffix
+   */
+  List<Resource> getResources(ResourceResolver resolver, Resource baseResource) {
+    String basePath = baseResource != null ? baseResource.getPath() : null;
+    List<Resource> result = resources.get(basePath);
+    if (result == null) {
+      result = new ArrayList<>(resourcePaths.size());
+      for (String path : resourcePaths) {
+        Resource resource = resolver.getResource(baseResource, path);
+        if (resource != null) {
+          result.add(resource);
+        }
+      }
+      result = Collections.unmodifiableList(result);
+      resources.put(basePath, result);
+    }
+    return result;
+  }
+
+}
@@ -27,6 +27,7 @@ import static io.wcm.handler.url.suffix.impl.UrlSuffixUtil.decodeValue;
 import static io.wcm.handler.url.suffix.impl.UrlSuffixUtil.encodeKeyValuePart;
 import static io.wcm.handler.url.suffix.impl.UrlSuffixUtil.encodeResourcePathPart;
 import static io.wcm.handler.url.suffix.impl.UrlSuffixUtil.getRelativePath;
+import static io.wcm.handler.url.suffix.impl.UrlSuffixUtil.normalizeResourcePath;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -46,7 +47,6 @@ import org.osgi.annotation.versioning.ProviderType;
 
 import com.day.cq.wcm.api.Page;
 import com.google.common.base.Function;
-import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 
 import io.wcm.handler.url.suffix.impl.ExcludeNamedPartsFilter;
@@ -66,6 +66,7 @@ public final class SuffixBuilder {
   private final List<String> initialSuffixParts;
   private final Map<String, Object> parameterMap = new HashMap<>();
   private final List<String> resourcePaths = new ArrayList<>();
+  private boolean canonical;
 
   /**
    * Create a {@link SuffixBuilder} which discards all existing suffix state when constructing a new suffix.
@@ -279,6 +280,18 @@ public final class SuffixBuilder {
     return resources(resources, suffixBasePage.adaptTo(Resource.class));
   }
 
+  /**
+   * Enables the canonical mode: In addition to the ordering of resource parts and named parts, resource paths
+   * kept from the current request or added to the builder are normalized. This way the same suffix state always
+   * results in the same suffix, which improves the cache hit rate for the resulting URLs.
+   * Suffixes built in canonical mode can be parsed by {@link SuffixParser} as well.
+   * @return this
+   */
+  public SuffixBuilder canonical() {
+    this.canonical = true;
+    return this;
+  }
+
   /**
    * Build complete suffix.
    * @return the suffix
@@ -301,17 +314,14 @@ public final class SuffixBuilder {
         }
       }
       else {
-        // decode and keep the resource paths (unless they are specified again in resourcePaths)
-        String path = decodeResourcePathPart(nextPart);
-        if (!resourcePaths.contains(path)) {
-          resourcePathsSet.add(path);
-        }
+        // decode and keep the resource paths (the sorted set removes duplicates)
+        resourcePathsSet.add(toResourcePath(decodeResourcePathPart(nextPart)));
       }
     }
 
     // copy the resources specified as parameters to the sorted set of paths
-    if (resourcePaths != null) {
-      resourcePathsSet.addAll(ImmutableList.copyOf(resourcePaths));
+    for (String path : resourcePaths) {
+      resourcePathsSet.add(toResourcePath(path));
     }
 
     // gather all suffix parts in this list
@@ -338,4 +348,11 @@ public final class SuffixBuilder {
     return StringUtils.join(suffixParts, SUFFIX_PART_DELIMITER);
   }
 
+  private String toResourcePath(String path) {
+    if (canonical) {
+      return normalizeResourcePath(path);
+    }
+    return path;
+  }
+
 }
@@ -19,17 +19,10 @@
  */
 package io.wcm.handler.url.suffix;
 
-import static io.wcm.handler.url.suffix.impl.UrlSuffixUtil.KEY_VALUE_DELIMITER;
-import static io.wcm.handler.url.suffix.impl.UrlSuffixUtil.decodeKey;
-import static io.wcm.handler.url.suffix.impl.UrlSuffixUtil.decodeResourcePathPart;
-import static io.wcm.handler.url.suffix.impl.UrlSuffixUtil.decodeValue;
-import static io.wcm.handler.url.suffix.impl.UrlSuffixUtil.splitSuffix;
-
 import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Predicate;
 
-import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.math.NumberUtils;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.resource.Resource;
@@ -42,6 +35,7 @@ import com.google.common.collect.Lists;
 
 /**
  * Parses suffixes from Sling URLs build with {@link SuffixBuilder}.
+ * The suffix is split and decoded only once per request, and shared by all parser instances of the request.
  */
 @ProviderType
 public final class SuffixParser {
@@ -165,16 +159,7 @@ public final class SuffixParser {
    * @return the value of that named parameter (or null if not used)
    */
   private String findSuffixPartByKey(String key) {
-    for (String part : splitSuffix(request.getRequestPathInfo().getSuffix())) {
-      if (part.indexOf(KEY_VALUE_DELIMITER) >= 0) {
-        String partKey = decodeKey(part);
-        if (partKey.equals(key)) {
-          String value = decodeValue(part);
-          return value;
-        }
-      }
-    }
-    return null;
+    return ParsedSuffix.get(request).getValue(key);
   }
 
   /**
@@ -380,32 +365,15 @@ public final class SuffixParser {
   }
 
   private List<Resource> getResourcesWithBaseResource(Predicate<Resource> filter, Resource baseResource) {
-    // split the suffix to extract the paths of the selected components
-    String[] suffixParts = splitSuffix(request.getRequestPathInfo().getSuffix());
+    // lookup the resources specified by the paths in the suffix (relative to the base resource)
+    List<Resource> suffixResources = ParsedSuffix.get(request).getResources(request.getResourceResolver(), baseResource);
 
-    // iterate over all parts and gather those resources
+    // if a filter is given - check
     List<Resource> selectedResources = new ArrayList<>();
-    for (String path : suffixParts) {
-
-      // if path contains the key/value-delimiter then don't try to resolve it as a content path
-      if (StringUtils.contains(path, KEY_VALUE_DELIMITER)) {
-        continue;
-      }
-
-      String decodedPath = decodeResourcePathPart(path);
-
-      // lookup the resource specified by the path (which is relative to the current page's content resource)
-      Resource resource = request.getResourceResolver().getResource(baseResource, decodedPath);
-      if (resource == null) {
-        // no resource found with given path, continue with next path in suffix
-        continue;
-      }
-
-      // if a filter is given - check
+    for (Resource resource : suffixResources) {
       if (filter == null || filter.test(resource)) {
         selectedResources.add(resource);
       }
-
     }
 
     return selectedResources;
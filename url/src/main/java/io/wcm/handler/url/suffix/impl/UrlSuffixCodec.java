@@ -0,0 +1,196 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.url.suffix.impl;
+
+/**
+ * Table-driven codec for the <code>~XX</code> escaping scheme used in URL suffix parts.
+ * <p>
+ * The chars <code>/ = . % : (space)</code> are escaped as <code>~</code> followed by their upper case hex code.
+ * All other chars - including <code>~</code> itself - are kept as they are. Decoding only replaces the escape
+ * sequences of these chars and keeps all other content unchanged.
+ * </p>
+ */
+public final class UrlSuffixCodec {
+
+  /**
+   * Chars that are escaped in suffix parts
+   */
+  private static final char[] SPECIAL_CHARS = {
+      UrlSuffixUtil.SUFFIX_PART_DELIMITER,
+      UrlSuffixUtil.KEY_VALUE_DELIMITER,
+      // '.' must be custom-escaped (if no file extension is added to suffix,
+      // anything after a dot would be interpreted as file extension during parsing)
+      '.',
+      // escape '%' to avoid confusion with URL escaping
+      '%',
+      // escape ':'
+      ':',
+      // escape ' ' as well (singular problem occurred once)
+      ' '
+  };
+
+  private static final char ESCAPE_CHAR = UrlSuffixUtil.ESCAPE_DELIMITER.charAt(0);
+
+  private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+  // flags for all ASCII chars that have to be escaped
+  private static final boolean[] ESCAPE = new boolean[128];
+
+  // value of upper case hex digits, -1 for all other ASCII chars
+  private static final int[] HEX_VALUES = new int[128];
+
+  static {
+    for (char c : SPECIAL_CHARS) {
+      ESCAPE[c] = true;
+    }
+    for (int i = 0; i < HEX_VALUES.length; i++) {
+      HEX_VALUES[i] = -1;
+    }
+    for (int i = 0; i < HEX_DIGITS.length; i++) {
+      HEX_VALUES[HEX_DIGITS[i]] = i;
+    }
+  }
+
+  private UrlSuffixCodec() {
+    // static methods only
+  }
+
+  /**
+   * Escape special chars for suffix.
+   * @param value Unescaped value
+   * @return Escaped value or null if value is null
+   */
+  public static String encode(String value) {
+    if (value == null) {
+      return null;
+    }
+    int length = value.length();
+    int specialChars = 0;
+    for (int i = 0; i < length; i++) {
+      if (isSpecialChar(value.charAt(i))) {
+        specialChars++;
+      }
+    }
+    if (specialChars == 0) {
+      return value;
+    }
+    char[] output = new char[length + specialChars * 2];
+    int pos = 0;
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      if (isSpecialChar(c)) {
+        output[pos++] = ESCAPE_CHAR;
+        output[pos++] = HEX_DIGITS[c >> 4];
+        output[pos++] = HEX_DIGITS[c & 0xF];
+      }
+      else {
+        output[pos++] = c;
+      }
+    }
+    return new String(output);
+  }
+
+  /**
+   * Escape special chars for suffix and append the result.
+   * @param value Unescaped value
+   * @param output Builder to append escaped value to
+   */
+  public static void encode(String value, StringBuilder output) {
+    int length = value.length();
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      if (isSpecialChar(c)) {
+        output.append(ESCAPE_CHAR).append(HEX_DIGITS[c >> 4]).append(HEX_DIGITS[c & 0xF]);
+      }
+      else {
+        output.append(c);
+      }
+    }
+  }
+
+  /**
+   * Unescape special chars in suffix.
+   * @param value Escaped value
+   * @return Unescaped value or null if value is null
+   */
+  public static String decode(String value) {
+    if (value == null) {
+      return null;
+    }
+    return decode(value, 0, value.length());
+  }
+
+  /**
+   * Unescape special chars in a section of a suffix.
+   * @param value Escaped value
+   * @param start Start index (inclusive)
+   * @param end End index (exclusive)
+   * @return Unescaped value
+   */
+  public static String decode(String value, int start, int end) {
+    int first = indexOfEscapeSequence(value, start, end);
+    if (first < 0) {
+      return value.substring(start, end);
+    }
+    char[] output = new char[end - start];
+    int pos = 0;
+    int copyFrom = start;
+    int i = first;
+    while (i >= 0) {
+      value.getChars(copyFrom, i, output, pos);
+      pos += i - copyFrom;
+      output[pos++] = (char)((HEX_VALUES[value.charAt(i + 1)] << 4) | HEX_VALUES[value.charAt(i + 2)]);
+      copyFrom = i + 3;
+      i = indexOfEscapeSequence(value, copyFrom, end);
+    }
+    value.getChars(copyFrom, end, output, pos);
+    pos += end - copyFrom;
+    return new String(output, 0, pos);
+  }
+
+  private static boolean isSpecialChar(char c) {
+    return c < 128 && ESCAPE[c];
+  }
+
+  /**
+   * Finds the next escape sequence of a special char.
+   * @param value Value
+   * @param start Start index (inclusive)
+   * @param end End index (exclusive)
+   * @return Index of escape char or -1 if not found
+   */
+  private static int indexOfEscapeSequence(String value, int start, int end) {
+    for (int i = start; i + 2 < end; i++) {
+      if (value.charAt(i) == ESCAPE_CHAR) {
+        int high = hexValue(value.charAt(i + 1));
+        int low = hexValue(value.charAt(i + 2));
+        if (high >= 0 && low >= 0 && isSpecialChar((char)((high << 4) | low))) {
+          return i;
+        }
+      }
+    }
+    return -1;
+  }
+
+  private static int hexValue(char c) {
+    return c < 128 ? HEX_VALUES[c] : -1;
+  }
+
+}
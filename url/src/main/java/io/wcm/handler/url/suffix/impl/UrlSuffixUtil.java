@@ -19,13 +19,12 @@
  */
 package io.wcm.handler.url.suffix.impl;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.text.translate.CharSequenceTranslator;
-import org.apache.commons.lang3.text.translate.EntityArrays;
-import org.apache.commons.lang3.text.translate.LookupTranslator;
 import org.apache.sling.api.resource.Resource;
 
 /**
@@ -53,50 +52,6 @@ public final class UrlSuffixUtil {
    */
   public static final String ESCAPED_SLASH = ESCAPE_DELIMITER + hexCode('/');
 
-  /**
-   * Map with special chars and their replacements that are escaped with special ~ and hexcode
-   */
-  private static final String[][] SPECIAL_CHARS_MAPPING = {
-    // escape delimiter chars
-    {
-      Character.toString(SUFFIX_PART_DELIMITER), ESCAPE_DELIMITER + hexCode(SUFFIX_PART_DELIMITER)
-    },
-    {
-      Character.toString(KEY_VALUE_DELIMITER), ESCAPE_DELIMITER + hexCode(KEY_VALUE_DELIMITER)
-    },
-    // '.' must be custom-escaped (if no file extension is added to suffix,
-    // anything after a dot would be interpreted as file extension during parsing)
-    {
-      Character.toString('.'), ESCAPE_DELIMITER + hexCode('.')
-    },
-    // escape '%' to avoid confusion with URL escaping
-    {
-      Character.toString('%'), ESCAPE_DELIMITER + hexCode('%')
-    },
-    // '/' must be custom-escaped (dispatcher/webserver may filter out/misinterpret urls with unescaped slashes)
-    {
-      Character.toString('/'), ESCAPE_DELIMITER + hexCode('/')
-    },
-    // escape ':'
-    {
-      Character.toString(':'), ESCAPE_DELIMITER + hexCode(':')
-    },
-    // escape ' ' as well (singular problem occurred once)
-    {
-      Character.toString(' '), ESCAPE_DELIMITER + hexCode(' ')
-    }
-  };
-
-  /**
-   * Escape special chars for suffix.
-   */
-  private static final CharSequenceTranslator ESCAPE_SPECIAL_CHARS = new LookupTranslator(SPECIAL_CHARS_MAPPING);
-
-  /**
-   * Unesacpe special chars in suffix.
-   */
-  private static final CharSequenceTranslator UNESCAPE_SPECIAL_CHARS = new LookupTranslator(EntityArrays.invert(SPECIAL_CHARS_MAPPING));
-
   private UrlSuffixUtil() {
     // static methods only
   }
@@ -116,7 +71,7 @@ public final class UrlSuffixUtil {
    * @return Encodes path part
    */
   public static String encodeResourcePathPart(String relativePath) {
-    return ESCAPE_SPECIAL_CHARS.translate(relativePath);
+    return UrlSuffixCodec.encode(relativePath);
   }
 
   /**
@@ -125,7 +80,7 @@ public final class UrlSuffixUtil {
    * @return Decoded path part
    */
   public static String decodeResourcePathPart(String suffixPart) {
-    return UNESCAPE_SPECIAL_CHARS.translate(suffixPart);
+    return UrlSuffixCodec.decode(suffixPart);
   }
 
   /**
@@ -134,7 +89,7 @@ public final class UrlSuffixUtil {
    * @return Encoded string
    */
   public static String encodeKeyValuePart(String string) {
-    return ESCAPE_SPECIAL_CHARS.translate(string);
+    return UrlSuffixCodec.encode(string);
   }
 
   /**
@@ -143,9 +98,15 @@ public final class UrlSuffixUtil {
    * @return Decoded value
    */
   public static String decodeValue(String suffixPart) {
+    if (suffixPart == null) {
+      return null;
+    }
     // value is the part *after* KEY_VALUE_DELIMITER
-    String value = StringUtils.substringAfter(suffixPart, Character.toString(KEY_VALUE_DELIMITER));
-    return UNESCAPE_SPECIAL_CHARS.translate(value);
+    int delimiterIndex = suffixPart.indexOf(KEY_VALUE_DELIMITER);
+    if (delimiterIndex < 0) {
+      return "";
+    }
+    return UrlSuffixCodec.decode(suffixPart, delimiterIndex + 1, suffixPart.length());
   }
 
   /**
@@ -154,9 +115,12 @@ public final class UrlSuffixUtil {
    * @return Decoded key
    */
   public static String decodeKey(String suffixPart) {
+    if (suffixPart == null) {
+      return null;
+    }
     // key is the part *before* KEY_VALUE_DELIMITER
-    String key = StringUtils.substringBefore(suffixPart, Character.toString(KEY_VALUE_DELIMITER));
-    return UNESCAPE_SPECIAL_CHARS.translate(key);
+    int delimiterIndex = suffixPart.indexOf(KEY_VALUE_DELIMITER);
+    return UrlSuffixCodec.decode(suffixPart, 0, delimiterIndex >= 0 ? delimiterIndex : suffixPart.length());
   }
 
   /**
@@ -188,6 +152,36 @@ public final class UrlSuffixUtil {
     return parts;
   }
 
+  /**
+   * Normalize resource path part: Removes empty and <code>.</code> segments and resolves <code>..</code> segments
+   * where possible. The normalized path addresses the same resource relative to the same base resource.
+   * @param path Relative resource path
+   * @return Normalized path, <code>.</code> if the path addresses the base resource itself
+   */
+  public static String normalizeResourcePath(String path) {
+    boolean absolute = StringUtils.startsWith(path, "/");
+    List<String> segments = new ArrayList<>();
+    for (String segment : StringUtils.split(path, SUFFIX_PART_DELIMITER)) {
+      if (StringUtils.equals(segment, ".")) {
+        continue;
+      }
+      if (StringUtils.equals(segment, "..") && !segments.isEmpty() && !StringUtils.equals(segments.get(segments.size() - 1), "..")) {
+        segments.remove(segments.size() - 1);
+        continue;
+      }
+      segments.add(segment);
+    }
+    String normalizedPath = StringUtils.join(segments, SUFFIX_PART_DELIMITER);
+    if (absolute) {
+      return SUFFIX_PART_DELIMITER + normalizedPath;
+    }
+    if (normalizedPath.isEmpty()) {
+      // relative path for the base resource itself is "."
+      return ".";
+    }
+    return normalizedPath;
+  }
+
   /**
    * Convert key value pair to map
    * @param key Key
@@ -20,5 +20,5 @@
 /**
  * URL Suffix Helper.
  */
-@org.osgi.annotation.versioning.Version("1.0.0")
+@org.osgi.annotation.versioning.Version("1.1.0")
 package io.wcm.handler.url.suffix;
@@ -25,6 +25,8 @@ import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.same;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import org.apache.sling.api.resource.ResourceResolver;
@@ -74,6 +76,25 @@ public class ExternalizerTest {
     assertExternalize("/context/the/path#hash", "/the/path#hash", mockedResolver);
   }
 
+  @Test
+  public void testExternalizeUrl_MappingCache() {
+    UrlMappingCache mappingCache = context.registerInjectActivateService(new UrlMappingCacheImpl());
+
+    ResourceResolver mockedResolver = mock(ResourceResolver.class);
+    when(mockedResolver.map(same(context.request()), anyString())).then(new Answer<String>() {
+      @Override
+      public String answer(InvocationOnMock invocation) {
+        return "http://host/mapped" + (String)invocation.getArguments()[1];
+      }
+    });
+
+    assertEquals("/mapped/the/path", Externalizer.externalizeUrl("/the/path", mockedResolver, context.request(), mappingCache));
+    assertEquals("/mapped/the/path?param=1", Externalizer.externalizeUrl("/the/path?param=1", mockedResolver, context.request(), mappingCache));
+    assertEquals("/mapped/the/path#hash", Externalizer.externalizeUrl("/the/path#hash", mockedResolver, context.request(), mappingCache));
+
+    verify(mockedResolver, times(1)).map(same(context.request()), anyString());
+  }
+
   @Test
   public void testExternalizeUrl_SpecialChars() {
     assertExternalize("/the/path%20with%20spaces", "/the/path with spaces");
@@ -0,0 +1,229 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.url.impl;
+
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.SlingHttpServletRequest;
+
+import io.wcm.handler.url.UrlHandler;
+import io.wcm.sling.commons.request.RequestParam;
+import io.wcm.sling.commons.util.Escape;
+
+/**
+ * Former string-concatenation based implementation of URL assembly in {@link UrlHandlerImpl} and
+ * {@link Externalizer}. Kept as reference for differential tests and benchmarks.
+ */
+final class LegacyUrlAssembly {
+
+  private LegacyUrlAssembly() {
+    // static methods only
+  }
+
+  static String build(String path, String selector, String extension, String suffix,
+      String queryString, Set<String> inheritableParameterNames, String fragment, SlingHttpServletRequest request) {
+    String url = buildUrl(path, selector, extension, suffix);
+    if (StringUtils.isNotEmpty(queryString) || inheritableParameterNames != null) {
+      url = appendQueryString(url, queryString, inheritableParameterNames, request);
+    }
+    if (StringUtils.isNotEmpty(fragment)) {
+      url = setFragment(url, fragment);
+    }
+    return url;
+  }
+
+  static String buildUrl(String path, String selector, String extension, String suffix) { //NOPMD
+    if (StringUtils.isBlank(path)) {
+      return null;
+    }
+
+    // Extension url part
+    StringBuilder extensionPart = new StringBuilder();
+    if (StringUtils.isNotBlank(extension)) {
+      extensionPart.append('.').append(extension);
+    }
+
+    // Selector url part
+    StringBuilder selectorPart = new StringBuilder();
+    if (StringUtils.isNotBlank(selector)) {
+      // prepend delimiter to selector if required
+      if (!StringUtils.startsWith(selector, ".")) {
+        selectorPart.append('.');
+      }
+      selectorPart.append(selector);
+    }
+
+    // Suffix part
+    StringBuilder suffixPart = new StringBuilder();
+    if (StringUtils.isNotBlank(suffix)) {
+      // prepend delimiter to suffix if required and add extension
+      if (!StringUtils.startsWith(suffix, "/")) {
+        suffixPart = suffixPart.append("/");
+      }
+      suffixPart.append(suffix);
+
+      // if suffix does not contain a file extension add main file extension
+      if (!StringUtils.contains(suffix, ".")) {
+        suffixPart.append(extensionPart);
+      }
+
+      // add a ".suffix" selector to avoid overlapping of filenames between suffixed and non-suffixed versions of the same page in the dispatcher cache
+      selectorPart.append('.').append(UrlHandler.SELECTOR_SUFFIX);
+    }
+
+    // build externalized url
+    return path + selectorPart.toString() + extensionPart.toString() + suffixPart.toString();
+  }
+
+  static String appendQueryString(String url, String queryString, Set<String> inheritableParameterNames,
+      SlingHttpServletRequest request) {
+    if (StringUtils.isEmpty(url)) {
+      return url;
+    }
+
+    // split url from existing query parameters
+    StringBuilder urlBuilder = new StringBuilder();
+    StringBuilder queryParams = new StringBuilder();
+    int separatorPos = url.indexOf('?');
+    if (separatorPos >= 0) {
+      queryParams.append(url.substring(separatorPos + 1));
+      urlBuilder.append(url.substring(0, separatorPos));
+    }
+    else {
+      urlBuilder.append(url);
+    }
+
+    // append new query parameters
+    if (StringUtils.isNotBlank(queryString)) {
+      if (queryParams.length() > 0) {
+        queryParams.append('&');
+      }
+      queryParams.append(queryString);
+    }
+
+    // inherit query parameters from current request (only if the parameter is not already included in the params list)
+    if (inheritableParameterNames != null && request != null) {
+      for (String parameterName : inheritableParameterNames) {
+        if (queryParams.indexOf(parameterName + "=") == -1) {
+          String[] values = RequestParam.getMultiple(request, parameterName);
+          if (values != null) {
+            for (String value : values) {
+              if (StringUtils.isNotEmpty(value)) {
+                if (queryParams.length() > 0) {
+                  queryParams.append('&');
+                }
+                queryParams.append(parameterName);
+                queryParams.append('=');
+                queryParams.append(value);
+              }
+            }
+          }
+        }
+      }
+    }
+
+    // build complete url
+    if (queryParams.length() > 0) {
+      urlBuilder.append('?');
+      urlBuilder.append(queryParams);
+    }
+    return urlBuilder.toString();
+  }
+
+  static String setFragment(String url, String fragment) {
+    if (StringUtils.isEmpty(url)) {
+      return url;
+    }
+
+    // strip off anchor if already present
+    StringBuilder urlBuilder;
+    int index = url.indexOf('#');
+    if (index >= 0) {
+      urlBuilder = new StringBuilder(url.substring(0, index));
+    }
+    else {
+      urlBuilder = new StringBuilder(url);
+    }
+
+    // prepend "#" for anchor if not present
+    if (StringUtils.isNotBlank(fragment)) {
+      if (!StringUtils.startsWith(fragment, "#")) {
+        urlBuilder.append('#');
+      }
+      urlBuilder.append(fragment);
+    }
+
+    return urlBuilder.toString();
+  }
+
+  static String externalizeUrlWithoutMapping(String url, SlingHttpServletRequest request) {
+
+    // apply externalization only path part
+    String path = url;
+
+    // split off query string or fragment that may be appended to the URL
+    String urlRemainder = null;
+    int urlRemainderPos = StringUtils.indexOfAny(path, '?', '#');
+    if (urlRemainderPos >= 0) {
+      urlRemainder = path.substring(urlRemainderPos);
+      path = path.substring(0, urlRemainderPos);
+    }
+
+    // apply namespace mangling (e.g. replace jcr: with _jcr_)
+    path = mangleNamespaces(path);
+
+    // add webapp context path
+    if (request != null) {
+      path = StringUtils.defaultString(request.getContextPath()) + path; //NOPMD
+    }
+
+    // url-encode path
+    path = Escape.urlEncode(path);
+    path = StringUtils.replace(path, "+", "%20");
+    // replace %2F back to / for better readability
+    path = StringUtils.replace(path, "%2F", "/");
+
+    // build full URL again
+    return path + (urlRemainder != null ? urlRemainder : "");
+  }
+
+  private static final String MANGLED_NAMESPACE_PREFIX = "/_";
+  private static final String MANGLED_NAMESPACE_SUFFIX = "_";
+  private static final char NAMESPACE_SEPARATOR = ':';
+  private static final Pattern NAMESPACE_PATTERN = Pattern.compile("/([^:/]+):");
+
+  static String mangleNamespaces(String path) {
+    if (!StringUtils.contains(path, NAMESPACE_SEPARATOR)) {
+      return path;
+    }
+    Matcher matcher = NAMESPACE_PATTERN.matcher(path);
+    StringBuffer sb = new StringBuffer();
+    while (matcher.find()) {
+      String replacement = MANGLED_NAMESPACE_PREFIX + matcher.group(1) + MANGLED_NAMESPACE_SUFFIX;
+      matcher.appendReplacement(sb, replacement);
+    }
+    matcher.appendTail(sb);
+    return sb.toString();
+  }
+
+}
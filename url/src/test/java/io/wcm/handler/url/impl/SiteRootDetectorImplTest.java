@@ -24,11 +24,14 @@ import static io.wcm.testing.mock.wcmio.sling.ContextPlugins.WCMIO_SLING;
 import static org.apache.sling.testing.mock.caconfig.ContextPlugins.CACONFIG;
 import static org.junit.Assert.assertEquals;
 
+import org.apache.sling.api.SlingConstants;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.osgi.service.event.Event;
+
+import com.google.common.collect.ImmutableMap;
 
-import io.wcm.handler.url.SiteRootDetector;
 import io.wcm.testing.mock.aem.junit.AemContext;
 import io.wcm.testing.mock.aem.junit.AemContextBuilder;
 import io.wcm.testing.mock.wcmio.caconfig.MockCAConfig;
@@ -43,7 +46,7 @@ public class SiteRootDetectorImplTest {
       .plugin(WCMIO_SLING, WCMIO_CACONFIG)
       .build();
 
-  private SiteRootDetector underTest;
+  private SiteRootDetectorImpl underTest;
 
   @Before
   public void setUp() throws Exception {
@@ -60,4 +63,73 @@ public class SiteRootDetectorImplTest {
     assertEquals(0, underTest.getSiteRootLevel(null));
   }
 
+  @Test
+  public void testAncestorsResolvedFromSingleDetection() {
+    context.create().resource("/content/test1/test2/test3/test4");
+    context.create().resource("/content/test1/test2/test3b");
+
+    assertEquals(ROOT_LEVEL, underTest.getSiteRootLevel(context.resourceResolver().getResource("/content/test1/test2/test3/test4")));
+    assertEquals(1, underTest.getMissCount());
+
+    // ancestors down to the site root are resolved as well
+    assertEquals(ROOT_LEVEL, underTest.getSiteRootLevel(context.resourceResolver().getResource("/content/test1/test2/test3")));
+    assertEquals(ROOT_LEVEL, underTest.getSiteRootLevel(context.resourceResolver().getResource("/content/test1/test2")));
+    assertEquals(2, underTest.getHitCount());
+    assertEquals(1, underTest.getMissCount());
+
+    // ancestors above site root and unvisited siblings require detection
+    assertEquals(0, underTest.getSiteRootLevel(context.resourceResolver().getResource("/content/test1")));
+    assertEquals(ROOT_LEVEL, underTest.getSiteRootLevel(context.resourceResolver().getResource("/content/test1/test2/test3b")));
+    assertEquals(3, underTest.getMissCount());
+
+    assertEquals(0, underTest.getSiteRootLevel(context.resourceResolver().getResource("/content")));
+    assertEquals(3, underTest.getHitCount());
+  }
+
+  @Test
+  public void testInvalidateOnConfigRefChange() {
+    assertEquals(ROOT_LEVEL, underTest.getSiteRootLevel(context.create().resource("/content/test1/test2/test3")));
+    assertEquals(4, underTest.getSize());
+
+    underTest.handleEvent(new Event(SlingConstants.TOPIC_RESOURCE_CHANGED, ImmutableMap.<String, Object>of(
+        SlingConstants.PROPERTY_PATH, "/content/test1/test2",
+        SlingConstants.PROPERTY_CHANGED_ATTRIBUTES, new String[] { SiteRootDetectorImpl.PN_CONFIG_REF })));
+    assertEquals(0, underTest.getSize());
+
+    assertEquals(ROOT_LEVEL, underTest.getSiteRootLevel(context.resourceResolver().getResource("/content/test1/test2/test3")));
+    assertEquals(2, underTest.getMissCount());
+  }
+
+  @Test
+  public void testNoStoreMode() {
+    assertEquals(ROOT_LEVEL, underTest.getSiteRootLevel(context.create().resource("/content/test1/test2/test3")));
+    try (NoStoreMode noStore = NoStoreMode.enter()) {
+      assertEquals(ROOT_LEVEL, underTest.getSiteRootLevel(context.resourceResolver().getResource("/content/test1/test2/test3")));
+      assertEquals(ROOT_LEVEL, underTest.getSiteRootLevel(context.create().resource("/content/test1/test2/test3b")));
+    }
+    assertEquals(4, underTest.getSize());
+    assertEquals(1, underTest.getHitCount());
+    assertEquals(2, underTest.getMissCount());
+  }
+
+  @Test
+  public void testMaxSize() {
+    underTest = context.registerInjectActivateService(new SiteRootDetectorImpl(), "maxSize", 4L);
+    assertEquals(ROOT_LEVEL, underTest.getSiteRootLevel(context.create().resource("/content/test1/test2/test3")));
+    assertEquals(4, underTest.getSize());
+
+    // trie is discarded before inserting beyond max. size
+    assertEquals(ROOT_LEVEL, underTest.getSiteRootLevel(context.create().resource("/content/test1/test4")));
+    assertEquals(3, underTest.getSize());
+  }
+
+  @Test
+  public void testDisabled() {
+    underTest = context.registerInjectActivateService(new SiteRootDetectorImpl(), "enabled", false);
+    assertEquals(ROOT_LEVEL, underTest.getSiteRootLevel(context.create().resource("/content/test1/test2/test3")));
+    assertEquals(ROOT_LEVEL, underTest.getSiteRootLevel(context.resourceResolver().getResource("/content/test1/test2/test3")));
+    assertEquals(0, underTest.getSize());
+    assertEquals(0, underTest.getHitCount());
+  }
+
 }
@@ -0,0 +1,139 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.url.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+
+import io.wcm.handler.url.UrlHandler;
+import io.wcm.handler.url.testcontext.AppAemContext;
+import io.wcm.sling.commons.adapter.AdaptTo;
+import io.wcm.testing.mock.aem.junit.AemContext;
+
+/**
+ * Compares URL assembly and externalization with the former implementation in {@link LegacyUrlAssembly}
+ * for randomly generated input.
+ */
+public class UrlAssemblyDifferentialTest {
+
+  private static final int ITERATIONS = 20000;
+
+  // includes URL delimiters, chars that have to be encoded, a surrogate pair and an unpaired surrogate.
+  // "$" and "\" are excluded from namespace prefixes because they broke the former regex-based namespace mangling.
+  private static final String[] TOKENS = {
+      "a", "B", "0", "content", "jcr", "_", "-", "*", ".", "/", "/", "/", ":", "?", "#", "&", "=", " ", "+", "%", "%2F",
+      "~", "ä", "ß", "€", "😀", "\uD800", "p1", "p2", "p3"
+  };
+
+  private static final Set<String> INHERITABLE_PARAMETER_NAMES = ImmutableSet.of("p1", "p2", "p3", "");
+
+  @Rule
+  public final AemContext context = AppAemContext.newAemContext();
+
+  private final Random random = new Random(0);
+  private UrlHandlerImpl urlHandler;
+
+  @Before
+  public void setUp() {
+    context.request().setQueryString("p1=v1&p1=v2&p2=&p3=v%263");
+    urlHandler = (UrlHandlerImpl)AdaptTo.notNull(context.request(), UrlHandler.class);
+  }
+
+  @Test
+  public void testBuildUrl() {
+    for (int i = 0; i < ITERATIONS; i++) {
+      String path = randomString();
+      String selector = randomString();
+      String extension = randomString();
+      String suffix = randomString();
+      String queryString = randomString();
+      Set<String> inheritableParameterNames = random.nextBoolean() ? INHERITABLE_PARAMETER_NAMES : null;
+      String fragment = randomString();
+      String message = "path=" + path + ", selector=" + selector + ", extension=" + extension + ", suffix=" + suffix
+          + ", queryString=" + queryString + ", inheritableParameterNames=" + inheritableParameterNames
+          + ", fragment=" + fragment;
+
+      assertEquals(message, LegacyUrlAssembly.buildUrl(path, selector, extension, suffix),
+          urlHandler.buildUrl(path, selector, extension, suffix));
+      assertEquals(message, LegacyUrlAssembly.build(path, selector, extension, suffix,
+          queryString, inheritableParameterNames, fragment, context.request()),
+          urlHandler.buildUrl(path, selector, extension, suffix, queryString, inheritableParameterNames, fragment));
+    }
+  }
+
+  @Test
+  public void testAppendQueryStringAndSetFragment() {
+    for (int i = 0; i < ITERATIONS; i++) {
+      String url = randomString();
+      String queryString = randomString();
+      Set<String> inheritableParameterNames = random.nextBoolean() ? INHERITABLE_PARAMETER_NAMES : null;
+      String fragment = randomString();
+      String message = "url=" + url + ", queryString=" + queryString
+          + ", inheritableParameterNames=" + inheritableParameterNames + ", fragment=" + fragment;
+
+      assertEquals(message, LegacyUrlAssembly.appendQueryString(url, queryString, inheritableParameterNames, context.request()),
+          urlHandler.appendQueryString(url, queryString, inheritableParameterNames));
+      assertEquals(message, LegacyUrlAssembly.setFragment(url, fragment),
+          urlHandler.setFragment(url, fragment));
+    }
+  }
+
+  @Test
+  public void testExternalizeUrlWithoutMapping() {
+    for (int i = 0; i < ITERATIONS; i++) {
+      String url = randomString();
+      if (url == null) {
+        continue;
+      }
+      context.request().setContextPath(random.nextBoolean() ? randomString() : null);
+
+      assertEquals("url=" + url, LegacyUrlAssembly.mangleNamespaces(url), Externalizer.mangleNamespaces(url));
+      assertEquals("url=" + url, LegacyUrlAssembly.externalizeUrlWithoutMapping(url, null),
+          Externalizer.externalizeUrlWithoutMapping(url, null));
+      assertEquals("url=" + url + ", contextPath=" + context.request().getContextPath(),
+          LegacyUrlAssembly.externalizeUrlWithoutMapping(url, context.request()),
+          Externalizer.externalizeUrlWithoutMapping(url, context.request()));
+    }
+  }
+
+  /**
+   * @return Random string built from tokens, or null or empty string
+   */
+  private String randomString() {
+    int length = random.nextInt(12) - 2;
+    if (length < 0) {
+      return length == -1 ? null : "";
+    }
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < length; i++) {
+      sb.append(TOKENS[random.nextInt(TOKENS.length)]);
+    }
+    return sb.toString();
+  }
+
+}
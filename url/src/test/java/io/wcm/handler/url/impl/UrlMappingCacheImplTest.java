@@ -0,0 +1,118 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.url.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.apache.sling.api.SlingConstants;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletRequest;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.osgi.service.event.Event;
+
+import com.google.common.collect.ImmutableMap;
+
+import io.wcm.handler.url.testcontext.AppAemContext;
+import io.wcm.testing.mock.aem.junit.AemContext;
+
+public class UrlMappingCacheImplTest {
+
+  @Rule
+  public final AemContext context = AppAemContext.newAemContext();
+
+  private UrlMappingCacheImpl underTest;
+  private final AtomicInteger mapCount = new AtomicInteger();
+  private final Function<String, String> mapper = path -> {
+    mapCount.incrementAndGet();
+    return "/mapped" + path;
+  };
+
+  @Before
+  public void setUp() {
+    underTest = context.registerInjectActivateService(new UrlMappingCacheImpl());
+  }
+
+  @Test
+  public void testMap() {
+    assertEquals("/mapped/content/a", underTest.map("/content/a", context.request(), mapper));
+    assertEquals("/mapped/content/a", underTest.map("/content/a", context.request(), mapper));
+    assertEquals("/mapped/content/b", underTest.map("/content/b", context.request(), mapper));
+    assertEquals("/mapped/content/a", underTest.map("/content/a", null, mapper));
+
+    assertEquals(3, mapCount.get());
+    assertEquals(3, underTest.getSize());
+    assertEquals(1, underTest.getHitCount());
+    assertEquals(3, underTest.getMissCount());
+    assertEquals(0.25d, underTest.getHitRatio(), 0.0001d);
+  }
+
+  @Test
+  public void testMapPerHost() {
+    MockSlingHttpServletRequest otherHostRequest = new MockSlingHttpServletRequest(context.resourceResolver(),
+        context.bundleContext());
+    otherHostRequest.setServerName("otherhost");
+
+    underTest.map("/content/a", context.request(), mapper);
+    underTest.map("/content/a", otherHostRequest, mapper);
+    assertEquals(2, mapCount.get());
+  }
+
+  @Test
+  public void testInvalidateOnMappingChange() {
+    underTest.map("/content/a", context.request(), mapper);
+    underTest.handleEvent(new Event(SlingConstants.TOPIC_RESOURCE_RESOLVER_MAPPING_CHANGED,
+        ImmutableMap.<String, Object>of()));
+    assertEquals(0, underTest.getSize());
+    assertEquals(1, underTest.getInvalidationCount());
+
+    underTest.map("/content/a", context.request(), mapper);
+    assertEquals(2, mapCount.get());
+  }
+
+  @Test
+  public void testNoStoreMode() {
+    underTest.map("/content/a", context.request(), mapper);
+    try (NoStoreMode noStore = NoStoreMode.enter()) {
+      assertEquals("/mapped/content/a", underTest.map("/content/a", context.request(), mapper));
+      assertEquals("/mapped/content/b", underTest.map("/content/b", context.request(), mapper));
+      assertEquals("/mapped/content/b", underTest.map("/content/b", context.request(), mapper));
+    }
+    assertEquals(3, mapCount.get());
+    assertEquals(1, underTest.getSize());
+    assertEquals(1, underTest.getHitCount());
+
+    underTest.map("/content/b", context.request(), mapper);
+    assertEquals(2, underTest.getSize());
+  }
+
+  @Test
+  public void testDisabled() {
+    underTest = context.registerInjectActivateService(new UrlMappingCacheImpl(), "enabled", false);
+    underTest.map("/content/a", context.request(), mapper);
+    underTest.map("/content/a", context.request(), mapper);
+    assertEquals(2, mapCount.get());
+    assertEquals(0, underTest.getSize());
+  }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.url.impl.modes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.apache.sling.api.SlingConstants;
+import org.apache.sling.api.resource.Resource;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.osgi.service.event.Event;
+
+import com.google.common.collect.ImmutableMap;
+
+import io.wcm.handler.url.SiteConfig;
+import io.wcm.handler.url.testcontext.AppAemContext;
+import io.wcm.testing.mock.aem.junit.AemContext;
+import io.wcm.testing.mock.wcmio.caconfig.MockCAConfig;
+
+public class UrlConfigCacheTest {
+
+  @Rule
+  public final AemContext context = AppAemContext.newAemContext();
+
+  private UrlConfigCache underTest;
+  private Resource page1;
+  private Resource page2;
+  private Resource otherSitePage;
+
+  @Before
+  public void setUp() {
+    underTest = context.registerInjectActivateService(new UrlConfigCache());
+    page1 = context.resourceResolver().getResource("/content/unittest/de_test/brand/de/section2/page2");
+    page2 = context.resourceResolver().getResource("/content/unittest/de_test/brand/de/section2/page3");
+    otherSitePage = context.resourceResolver().getResource("/content/unittest/de_test/brand/en/section/page");
+  }
+
+  @Test
+  public void testCachePerContextPath() {
+    UrlConfig config1 = underTest.getAdapter(page1, UrlConfig.class);
+    assertEquals("http://de.dummysite.org", config1.getSiteUrl());
+    assertEquals("https://de.dummysite.org", config1.getSiteUrlSecure());
+    assertEquals("https://author.dummysite.org", config1.getSiteUrlAuthor());
+
+    // same context path
+    assertSame(config1, underTest.getAdapter(page2, UrlConfig.class));
+
+    // other context path
+    UrlConfig config2 = underTest.getAdapter(otherSitePage, UrlConfig.class);
+    assertEquals("http://en.dummysite.org", config2.getSiteUrl());
+
+    assertEquals(2, underTest.getSize());
+    assertEquals(1, underTest.getHitCount());
+    assertEquals(2, underTest.getMissCount());
+  }
+
+  @Test
+  public void testInvalidateOnConfigurationChange() {
+    assertEquals("http://de.dummysite.org", underTest.getAdapter(page1, UrlConfig.class).getSiteUrl());
+
+    MockCAConfig.writeConfiguration(context, "/content/unittest/de_test/brand/de", SiteConfig.class.getName(),
+        "siteUrl", "http://de2.dummysite.org");
+    underTest.handleEvent(new Event(SlingConstants.TOPIC_RESOURCE_CHANGED,
+        ImmutableMap.<String, Object>of(SlingConstants.PROPERTY_PATH, "/conf/content/unittest/de_test/brand/de")));
+
+    assertEquals(0, underTest.getSize());
+    UrlConfig config = underTest.getAdapter(page1, UrlConfig.class);
+    assertEquals("http://de2.dummysite.org", config.getSiteUrl());
+    assertEquals("http://de2.dummysite.org", config.getSiteUrlSecure());
+  }
+
+  @Test
+  public void testDisabled() {
+    underTest = context.registerInjectActivateService(new UrlConfigCache(), "enabled", false);
+    assertEquals("http://de.dummysite.org", underTest.getAdapter(page1, UrlConfig.class).getSiteUrl());
+    assertEquals(0, underTest.getSize());
+  }
+
+  @Test
+  public void testRequestMemo() {
+    context.currentResource(page1);
+    UrlConfig config = UrlConfig.get(context.request());
+    assertSame(config, UrlConfig.get(context.request(), page1));
+    assertEquals("http://de.dummysite.org", config.getSiteUrl());
+  }
+
+}
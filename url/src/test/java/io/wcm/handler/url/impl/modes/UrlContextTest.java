@@ -0,0 +1,119 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.url.impl.modes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.day.cq.wcm.api.Page;
+
+import io.wcm.handler.url.integrator.IntegratorHandler;
+import io.wcm.handler.url.integrator.IntegratorModes;
+import io.wcm.handler.url.integrator.IntegratorNameConstants;
+import io.wcm.handler.url.integrator.IntegratorProtocol;
+import io.wcm.handler.url.testcontext.AppAemContext;
+import io.wcm.handler.url.testcontext.DummyAppTemplate;
+import io.wcm.sling.commons.resource.ImmutableValueMap;
+import io.wcm.testing.mock.aem.junit.AemContext;
+
+public class UrlContextTest {
+
+  @Rule
+  public final AemContext context = AppAemContext.newAemContext();
+
+  private Page currentPage;
+  private Page securePage;
+  private Page integratorPage;
+
+  @Before
+  public void setUp() {
+    currentPage = context.create().page("/content/unittest/de_test/brand/de/section/page",
+        DummyAppTemplate.CONTENT.getTemplatePath());
+    securePage = context.create().page("/content/unittest/de_test/brand/de/section/page2",
+        DummyAppTemplate.CONTENT_SECURE.getTemplatePath());
+    integratorPage = context.create().page("/content/unittest/de_test/brand/de/section/page3",
+        DummyAppTemplate.INTEGRATOR.getTemplatePath(),
+        ImmutableValueMap.builder()
+        .put(IntegratorNameConstants.PN_INTEGRATOR_MODE, IntegratorModes.SIMPLE.getId())
+        .put(IntegratorNameConstants.PN_INTEGRATOR_PROTOCOL, IntegratorProtocol.HTTPS.name())
+        .build());
+    context.currentPage(currentPage);
+  }
+
+  @Test
+  public void testReusedWithinRequest() {
+    UrlContext urlContext = UrlContext.get(context.request(), currentPage);
+    assertFalse(urlContext.isIntegratorTemplateMode());
+    assertFalse(urlContext.isIntegratorUrlPlaceholders());
+    assertFalse(urlContext.isCurrentPageSecure());
+    assertEquals("http://de.dummysite.org", urlContext.getUrlConfig(context.request()).getSiteUrl());
+
+    assertSame(urlContext, UrlContext.get(context.request(), currentPage));
+    assertSame(urlContext.getUrlConfig(context.request()), UrlContext.get(context.request(), currentPage).getUrlConfig(context.request()));
+  }
+
+  @Test
+  public void testRecomputedOnCurrentPageChange() {
+    UrlContext urlContext = UrlContext.get(context.request(), currentPage);
+
+    UrlContext secureUrlContext = UrlContext.get(context.request(), securePage);
+    assertNotSame(urlContext, secureUrlContext);
+    assertTrue(secureUrlContext.isCurrentPageSecure());
+
+    assertNotSame(urlContext, UrlContext.get(context.request(), null));
+  }
+
+  @Test
+  public void testRecomputedOnSelectorChange() {
+    context.currentPage(integratorPage);
+    UrlContext urlContext = UrlContext.get(context.request(), integratorPage);
+    assertFalse(urlContext.isIntegratorTemplateMode());
+
+    context.requestPathInfo().setSelectorString(IntegratorHandler.SELECTOR_INTEGRATORTEMPLATE_SECURE);
+    UrlContext integratorUrlContext = UrlContext.get(context.request(), integratorPage);
+    assertNotSame(urlContext, integratorUrlContext);
+    assertTrue(integratorUrlContext.isIntegratorTemplateMode());
+    assertTrue(integratorUrlContext.isIntegratorTemplateSecureMode());
+    assertFalse(integratorUrlContext.isIntegratorUrlPlaceholders());
+  }
+
+  @Test
+  public void testRecomputedOnResourceChange() {
+    UrlContext urlContext = UrlContext.get(context.request(), currentPage);
+
+    context.currentResource(securePage.getContentResource());
+    assertNotSame(urlContext, UrlContext.get(context.request(), currentPage));
+  }
+
+  @Test
+  public void testResourceNotCached() {
+    UrlContext urlContext = UrlContext.get(currentPage.getContentResource(), currentPage);
+    assertEquals("http://de.dummysite.org", urlContext.getUrlConfig(currentPage.getContentResource()).getSiteUrl());
+    assertNotSame(urlContext, UrlContext.get(currentPage.getContentResource(), currentPage));
+  }
+
+}
@@ -0,0 +1,228 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.url.sitemap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.day.cq.wcm.api.Page;
+
+import io.wcm.handler.url.UrlModes;
+import io.wcm.handler.url.impl.UrlMappingCacheImpl;
+import io.wcm.handler.url.testcontext.AppAemContext;
+import io.wcm.testing.mock.aem.junit.AemContext;
+
+public class SitemapGeneratorTest {
+
+  private static final String ROOT_PATH = "/content/unittest/de_test/brand/de";
+
+  @Rule
+  public final AemContext context = AppAemContext.newAemContext();
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private SitemapGenerator underTest;
+  private int pageCount;
+
+  @Before
+  public void setUp() {
+    context.create().page(ROOT_PATH + "/section2/page2/page21");
+    context.create().page(ROOT_PATH + "/section3");
+    underTest = context.request().adaptTo(SitemapGenerator.class);
+    pageCount = 0;
+    Iterator<Page> pages = underTest.getPages();
+    while (pages.hasNext()) {
+      pages.next();
+      pageCount++;
+    }
+  }
+
+  @Test
+  public void testGetPages() {
+    Iterator<Page> pages = underTest.getPages();
+    assertEquals(ROOT_PATH, pages.next().getPath());
+    while (pages.hasNext()) {
+      assertTrue(StringUtils.startsWith(pages.next().getPath(), ROOT_PATH + "/"));
+    }
+    assertTrue(pageCount >= 5);
+  }
+
+  @Test
+  public void testGetPages_NoCurrentPage() {
+    context.currentPage((String)null);
+    underTest = context.request().adaptTo(SitemapGenerator.class);
+    assertFalse(underTest.getPages().hasNext());
+    assertEquals(1, underTest.getSitemapCount());
+  }
+
+  @Test
+  public void testWriteSitemap() throws IOException {
+    StringWriter writer = new StringWriter();
+    underTest.writeSitemap(writer, 1);
+    String xml = writer.toString();
+
+    assertTrue(xml.startsWith("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"));
+    assertTrue(xml.contains("<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">"));
+    assertTrue(xml.contains("<url><loc>http://de.dummysite.org" + ROOT_PATH + ".html</loc></url>"));
+    assertTrue(xml.contains("<url><loc>http://de.dummysite.org" + ROOT_PATH + "/section2/page2/page21.html</loc></url>"));
+    assertTrue(xml.trim().endsWith("</urlset>"));
+    assertEquals(pageCount, StringUtils.countMatches(xml, "<url>"));
+    assertEquals(1, underTest.getSitemapCount());
+  }
+
+  @Test
+  public void testWriteSitemap_NoStore() throws IOException {
+    UrlMappingCacheImpl mappingCache = context.registerInjectActivateService(new UrlMappingCacheImpl());
+    underTest = context.request().adaptTo(SitemapGenerator.class);
+    underTest.writeSitemap(new StringWriter(), 1);
+    assertEquals(pageCount, mappingCache.getMissCount());
+    assertEquals(0, mappingCache.getSize());
+  }
+
+  @Test
+  public void testWriteSitemap_UrlMode() throws IOException {
+    StringWriter writer = new StringWriter();
+    underTest.urlMode(UrlModes.FULL_URL_FORCESECURE).writeSitemap(writer, 1);
+    assertTrue(writer.toString().contains("<loc>https://de.dummysite.org" + ROOT_PATH + ".html</loc>"));
+  }
+
+  @Test
+  public void testWriteSitemap_Filter() throws IOException {
+    StringWriter writer = new StringWriter();
+    underTest.filter(page -> !StringUtils.equals(page.getName(), "section2")).writeSitemap(writer, 1);
+    String xml = writer.toString();
+    assertFalse(xml.contains(ROOT_PATH + "/section2.html"));
+    assertTrue(xml.contains(ROOT_PATH + "/section2/page2.html"));
+    assertEquals(pageCount - 1, StringUtils.countMatches(xml, "<url>"));
+  }
+
+  @Test
+  public void testWriteSitemap_Split() throws IOException {
+    underTest.maxUrlsPerSitemap(2);
+    int sitemapCount = underTest.getSitemapCount();
+    assertEquals((pageCount + 1) / 2, sitemapCount);
+
+    int urlCount = 0;
+    for (int i = 1; i <= sitemapCount; i++) {
+      StringWriter writer = new StringWriter();
+      assertTrue(underTest.writeSitemap(writer, i));
+      int count = StringUtils.countMatches(writer.toString(), "<url>");
+      assertTrue(count >= 1 && count <= 2);
+      urlCount += count;
+    }
+    assertEquals(pageCount, urlCount);
+
+    StringWriter writer = new StringWriter();
+    assertFalse(underTest.writeSitemap(writer, sitemapCount + 1));
+    assertEquals("", writer.toString());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testWriteSitemap_InvalidNumber() throws IOException {
+    underTest.writeSitemap(new StringWriter(), 0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMaxUrlsPerSitemap_Invalid() {
+    underTest.maxUrlsPerSitemap(SitemapGenerator.MAX_URLS_PER_SITEMAP + 1);
+  }
+
+  @Test
+  public void testWriteSitemapIndex() throws IOException {
+    underTest.maxUrlsPerSitemap(2);
+    StringWriter writer = new StringWriter();
+    underTest.writeSitemapIndex(writer, number -> "http://de.dummysite.org/sitemap-" + number + ".xml");
+    String xml = writer.toString();
+
+    assertTrue(xml.contains("<sitemapindex xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">"));
+    assertTrue(xml.contains("<sitemap><loc>http://de.dummysite.org/sitemap-1.xml</loc></sitemap>"));
+    assertEquals(underTest.getSitemapCount(), StringUtils.countMatches(xml, "<sitemap>"));
+    assertTrue(xml.trim().endsWith("</sitemapindex>"));
+  }
+
+  @Test
+  public void testWriteSitemapIndex_SitemapCount() throws IOException {
+    StringWriter writer = new StringWriter();
+    underTest.writeSitemapIndex(writer, 3, number -> "http://de.dummysite.org/sitemap-" + number + ".xml");
+    String xml = writer.toString();
+
+    assertTrue(xml.contains("<sitemap><loc>http://de.dummysite.org/sitemap-3.xml</loc></sitemap>"));
+    assertEquals(3, StringUtils.countMatches(xml, "<sitemap>"));
+  }
+
+  @Test
+  public void testWriteFiles() throws IOException {
+    underTest.maxUrlsPerSitemap(2);
+    File directory = folder.getRoot();
+    File indexFile = underTest.writeFiles(directory, "http://de.dummysite.org/sitemaps", false);
+
+    int sitemapCount = underTest.getSitemapCount();
+    String index = readFile(indexFile, false);
+    assertEquals(sitemapCount, StringUtils.countMatches(index, "<sitemap>"));
+    assertTrue(index.contains("<loc>http://de.dummysite.org/sitemaps/sitemap-" + sitemapCount + ".xml</loc>"));
+
+    int urlCount = 0;
+    for (int i = 1; i <= sitemapCount; i++) {
+      urlCount += StringUtils.countMatches(readFile(new File(directory, "sitemap-" + i + ".xml"), false), "<url>");
+    }
+    assertEquals(pageCount, urlCount);
+    assertFalse(new File(directory, "sitemap-" + (sitemapCount + 1) + ".xml").exists());
+  }
+
+  @Test
+  public void testWriteFiles_Gzip() throws IOException {
+    File directory = folder.getRoot();
+    File indexFile = underTest.writeFiles(directory, "http://de.dummysite.org", true);
+
+    assertTrue(readFile(indexFile, false).contains("<loc>http://de.dummysite.org/sitemap-1.xml.gz</loc>"));
+    String xml = readFile(new File(directory, "sitemap-1.xml.gz"), true);
+    assertEquals(pageCount, StringUtils.countMatches(xml, "<url>"));
+  }
+
+  private static String readFile(File file, boolean gzip) throws IOException {
+    try (InputStream is = gzip ? new GZIPInputStream(new FileInputStream(file)) : new FileInputStream(file)) {
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      int length;
+      while ((length = is.read(buffer)) != -1) {
+        bos.write(buffer, 0, length);
+      }
+      return new String(bos.toByteArray(), StandardCharsets.UTF_8);
+    }
+  }
+
+}
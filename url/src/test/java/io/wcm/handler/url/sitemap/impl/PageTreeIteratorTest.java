@@ -0,0 +1,111 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.url.sitemap.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.day.cq.wcm.api.Page;
+import com.google.common.collect.ImmutableList;
+
+import io.wcm.handler.url.testcontext.AppAemContext;
+import io.wcm.testing.mock.aem.junit.AemContext;
+
+public class PageTreeIteratorTest {
+
+  @Rule
+  public final AemContext context = AppAemContext.newAemContext();
+
+  private Page rootPage;
+
+  @Before
+  public void setUp() {
+    rootPage = context.create().page("/content/tree");
+    context.create().page("/content/tree/a");
+    context.create().page("/content/tree/a/a1");
+    context.create().page("/content/tree/a/a1/a11");
+    context.create().page("/content/tree/a/a2");
+    context.create().page("/content/tree/b");
+    context.create().page("/content/tree/c");
+    context.create().page("/content/tree/c/c1");
+  }
+
+  @Test
+  public void testIterate() {
+    assertEquals(ImmutableList.of("/content/tree",
+        "/content/tree/a",
+        "/content/tree/a/a1",
+        "/content/tree/a/a1/a11",
+        "/content/tree/a/a2",
+        "/content/tree/b",
+        "/content/tree/c",
+        "/content/tree/c/c1"),
+        toPaths(new PageTreeIterator(rootPage, null)));
+  }
+
+  @Test
+  public void testFilter() {
+    assertEquals(ImmutableList.of("/content/tree",
+        "/content/tree/a/a1",
+        "/content/tree/a/a1/a11",
+        "/content/tree/a/a2",
+        "/content/tree/b",
+        "/content/tree/c/c1"),
+        toPaths(new PageTreeIterator(rootPage,
+            page -> !StringUtils.equals(page.getName(), "a") && !StringUtils.equals(page.getName(), "c"))));
+  }
+
+  @Test
+  public void testFilterRootPage() {
+    assertEquals(ImmutableList.of("/content/tree/b"),
+        toPaths(new PageTreeIterator(rootPage, page -> StringUtils.equals(page.getName(), "b"))));
+  }
+
+  @Test
+  public void testNullRootPage() {
+    assertFalse(new PageTreeIterator(null, null).hasNext());
+  }
+
+  @Test(expected = NoSuchElementException.class)
+  public void testNextAfterEnd() {
+    Iterator<Page> underTest = new PageTreeIterator(context.pageManager().getPage("/content/tree/b"), null);
+    underTest.next();
+    underTest.next();
+  }
+
+  private static List<String> toPaths(Iterator<Page> pages) {
+    List<String> paths = new ArrayList<>();
+    while (pages.hasNext()) {
+      paths.add(pages.next().getPath());
+    }
+    return paths;
+  }
+
+}
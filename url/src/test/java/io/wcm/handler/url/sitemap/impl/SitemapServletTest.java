@@ -0,0 +1,149 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.url.sitemap.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import io.wcm.handler.url.testcontext.AppAemContext;
+import io.wcm.testing.mock.aem.junit.AemContext;
+
+public class SitemapServletTest {
+
+  private static final String ROOT_PATH = "/content/unittest/de_test/brand/de";
+
+  @Rule
+  public final AemContext context = AppAemContext.newAemContext();
+
+  @Before
+  public void setUp() {
+    context.currentResource(ROOT_PATH);
+    context.requestPathInfo().setSelectorString(SitemapServlet.SELECTOR);
+    context.requestPathInfo().setExtension(SitemapServlet.EXTENSION);
+  }
+
+  @Test
+  public void testGet() throws Exception {
+    SitemapServlet underTest = context.registerInjectActivateService(new SitemapServlet());
+
+    underTest.service(context.request(), context.response());
+
+    assertEquals(HttpServletResponse.SC_OK, context.response().getStatus());
+    assertTrue(StringUtils.startsWith(context.response().getContentType(), SitemapServlet.CONTENT_TYPE));
+    assertNull(context.response().getHeader("Vary"));
+    String xml = context.response().getOutputAsString();
+    assertTrue(xml.contains("<urlset"));
+    assertTrue(xml.contains("<url><loc>http://de.dummysite.org" + ROOT_PATH + ".html</loc></url>"));
+  }
+
+  @Test
+  public void testGet_NoSiteRoot() throws Exception {
+    SitemapServlet underTest = context.registerInjectActivateService(new SitemapServlet());
+    context.currentResource(ROOT_PATH + "/section2");
+
+    underTest.service(context.request(), context.response());
+
+    assertEquals(HttpServletResponse.SC_NOT_FOUND, context.response().getStatus());
+  }
+
+  @Test
+  public void testGet_SitemapNumber() throws Exception {
+    SitemapServlet underTest = context.registerInjectActivateService(new SitemapServlet());
+    context.requestPathInfo().setSelectorString(SitemapServlet.SELECTOR + ".1");
+
+    underTest.service(context.request(), context.response());
+
+    assertEquals(HttpServletResponse.SC_OK, context.response().getStatus());
+    assertTrue(context.response().getOutputAsString().contains("<loc>http://de.dummysite.org" + ROOT_PATH + ".html</loc>"));
+  }
+
+  @Test
+  public void testGet_SitemapNumberExceeded() throws Exception {
+    SitemapServlet underTest = context.registerInjectActivateService(new SitemapServlet());
+    context.requestPathInfo().setSelectorString(SitemapServlet.SELECTOR + ".2");
+
+    underTest.service(context.request(), context.response());
+
+    assertEquals(HttpServletResponse.SC_NOT_FOUND, context.response().getStatus());
+  }
+
+  @Test
+  public void testGet_InvalidSitemapNumber() throws Exception {
+    SitemapServlet underTest = context.registerInjectActivateService(new SitemapServlet());
+    context.requestPathInfo().setSelectorString(SitemapServlet.SELECTOR + ".abc");
+
+    underTest.service(context.request(), context.response());
+
+    assertEquals(HttpServletResponse.SC_NOT_FOUND, context.response().getStatus());
+  }
+
+  @Test
+  public void testGet_Gzip() throws Exception {
+    SitemapServlet underTest = context.registerInjectActivateService(new SitemapServlet(), "gzip", true);
+    context.request().addHeader("Accept-Encoding", "gzip, deflate");
+
+    underTest.service(context.request(), context.response());
+
+    assertEquals(HttpServletResponse.SC_OK, context.response().getStatus());
+    assertEquals("gzip", context.response().getHeader("Content-Encoding"));
+    assertEquals("Accept-Encoding", context.response().getHeader("Vary"));
+    assertTrue(gunzip(context.response().getOutput()).contains("<urlset"));
+  }
+
+  @Test
+  public void testGet_GzipNotAccepted() throws Exception {
+    SitemapServlet underTest = context.registerInjectActivateService(new SitemapServlet(), "gzip", true);
+
+    underTest.service(context.request(), context.response());
+
+    assertEquals(HttpServletResponse.SC_OK, context.response().getStatus());
+    assertNull(context.response().getHeader("Content-Encoding"));
+    assertEquals("Accept-Encoding", context.response().getHeader("Vary"));
+    assertTrue(context.response().getOutputAsString().contains("<urlset"));
+  }
+
+  private static String gunzip(byte[] data) throws IOException {
+    try (InputStream is = new GZIPInputStream(new ByteArrayInputStream(data))) {
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      int length;
+      while ((length = is.read(buffer)) != -1) {
+        bos.write(buffer, 0, length);
+      }
+      return new String(bos.toByteArray(), StandardCharsets.UTF_8);
+    }
+  }
+
+}
@@ -0,0 +1,78 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.url.sitemap.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+public class SitemapXmlWriterTest {
+
+  @Test
+  public void testSitemap() throws IOException {
+    StringWriter writer = new StringWriter();
+    SitemapXmlWriter underTest = new SitemapXmlWriter(writer, false);
+    underTest.write("http://host/page1.html", null);
+    underTest.write("http://host/page2.html?a=1&b=2", calendar());
+    underTest.finish();
+
+    assertEquals(2, underTest.getCount());
+    assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+        + "<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n"
+        + "<url><loc>http://host/page1.html</loc></url>\n"
+        + "<url><loc>http://host/page2.html?a=1&amp;b=2</loc><lastmod>2017-03-01T09:30:15Z</lastmod></url>\n"
+        + "</urlset>\n", writer.toString());
+  }
+
+  @Test
+  public void testSitemapIndex() throws IOException {
+    StringWriter writer = new StringWriter();
+    SitemapXmlWriter underTest = new SitemapXmlWriter(writer, true);
+    underTest.write("http://host/sitemap-1.xml", null);
+    underTest.finish();
+
+    assertEquals(1, underTest.getCount());
+    assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+        + "<sitemapindex xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n"
+        + "<sitemap><loc>http://host/sitemap-1.xml</loc></sitemap>\n"
+        + "</sitemapindex>\n", writer.toString());
+  }
+
+  @Test
+  public void testFormatDate() {
+    assertEquals("2017-03-01T09:30:15Z", SitemapXmlWriter.formatDate(calendar()));
+  }
+
+  private static Calendar calendar() {
+    // 10:30:15.500 in CET is 09:30:15 UTC
+    Calendar calendar = new GregorianCalendar(TimeZone.getTimeZone("Europe/Berlin"));
+    calendar.clear();
+    calendar.set(2017, Calendar.MARCH, 1, 10, 30, 15);
+    calendar.set(Calendar.MILLISECOND, 500);
+    return calendar;
+  }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.url.suffix;
+
+import static io.wcm.handler.url.suffix.impl.UrlSuffixUtil.ESCAPED_SLASH;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.List;
+
+import org.apache.sling.api.resource.Resource;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.day.cq.wcm.api.Page;
+
+import io.wcm.handler.url.testcontext.AppAemContext;
+import io.wcm.testing.mock.aem.junit.AemContext;
+
+public class ParsedSuffixTest {
+
+  @Rule
+  public AemContext context = AppAemContext.newAemContext();
+
+  private Page page;
+
+  @Before
+  public void setUp() {
+    page = context.create().page("/content/a", "template", "title");
+    context.create().resource("/content/a/jcr:content/b/c");
+    context.create().resource("/content/a/jcr:content/d");
+  }
+
+  @Test
+  public void testSharedWithinRequest() {
+    context.requestPathInfo().setSuffix("/abc=def/b" + ESCAPED_SLASH + "c");
+    ParsedSuffix parsedSuffix = ParsedSuffix.get(context.request());
+    assertSame(parsedSuffix, ParsedSuffix.get(context.request()));
+
+    // rebuilt if suffix changes
+    context.requestPathInfo().setSuffix("/abc=xyz");
+    ParsedSuffix changedSuffix = ParsedSuffix.get(context.request());
+    assertNotSame(parsedSuffix, changedSuffix);
+    assertEquals("xyz", changedSuffix.getValue("abc"));
+  }
+
+  @Test
+  public void testValues() {
+    context.requestPathInfo().setSuffix("/abc=def/abc=ghi/key~3D1=value~2F1/b" + ESCAPED_SLASH + "c");
+    ParsedSuffix parsedSuffix = ParsedSuffix.get(context.request());
+    assertEquals("def", parsedSuffix.getValue("abc"));
+    assertEquals("value/1", parsedSuffix.getValue("key=1"));
+    assertNull(parsedSuffix.getValue("b/c"));
+    assertNull(parsedSuffix.getValue("other"));
+  }
+
+  @Test
+  public void testResources() {
+    context.requestPathInfo().setSuffix("/d/abc=def/x/b" + ESCAPED_SLASH + "c");
+    ParsedSuffix parsedSuffix = ParsedSuffix.get(context.request());
+
+    List<Resource> resources = parsedSuffix.getResources(context.resourceResolver(), page.getContentResource());
+    assertEquals(2, resources.size());
+    assertEquals("/content/a/jcr:content/d", resources.get(0).getPath());
+    assertEquals("/content/a/jcr:content/b/c", resources.get(1).getPath());
+
+    // memoized per base resource
+    assertSame(resources, parsedSuffix.getResources(context.resourceResolver(), page.getContentResource()));
+    assertEquals(0, parsedSuffix.getResources(context.resourceResolver(), context.resourceResolver().getResource("/content")).size());
+  }
+
+  @Test
+  public void testNoSuffix() {
+    context.requestPathInfo().setSuffix(null);
+    ParsedSuffix parsedSuffix = ParsedSuffix.get(context.request());
+    assertNull(parsedSuffix.getValue("abc"));
+    assertEquals(0, parsedSuffix.getResources(context.resourceResolver(), page.getContentResource()).size());
+    assertSame(parsedSuffix, ParsedSuffix.get(context.request()));
+  }
+
+}
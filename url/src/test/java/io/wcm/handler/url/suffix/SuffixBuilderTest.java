@@ -674,4 +674,51 @@ public class SuffixBuilderTest {
         + "ghi=123", builder.build());
   }
 
+  @Test
+  public void testCanonical() {
+    // same resources and named parts in different order and with non-normalized paths
+    String incomingSuffix1 = encodeResourcePathPart("b/./c//d/") + SUFFIX_PART_DELIMITER + encodeResourcePathPart("a")
+        + SUFFIX_PART_DELIMITER + "y=2" + SUFFIX_PART_DELIMITER + "x=1";
+    String incomingSuffix2 = "x=1" + SUFFIX_PART_DELIMITER + encodeResourcePathPart("./a") + SUFFIX_PART_DELIMITER + "y=2"
+        + SUFFIX_PART_DELIMITER + encodeResourcePathPart("b/e/../c/d");
+    String expectedSuffix = "a" + SUFFIX_PART_DELIMITER + "b" + ESCAPED_SLASH + "c" + ESCAPED_SLASH + "d"
+        + SUFFIX_PART_DELIMITER + "x=1" + SUFFIX_PART_DELIMITER + "y=2";
+
+    setContextAttributes(incomingSuffix1, null);
+    assertEquals(expectedSuffix, SuffixBuilder.thatKeepsAllParts(context.request()).canonical().build());
+
+    setContextAttributes(incomingSuffix2, null);
+    assertEquals(expectedSuffix, SuffixBuilder.thatKeepsAllParts(context.request()).canonical().build());
+
+    // without canonical mode resource paths are kept as they are
+    assertEquals(encodeResourcePathPart("./a") + SUFFIX_PART_DELIMITER + encodeResourcePathPart("b/e/../c/d")
+        + SUFFIX_PART_DELIMITER + "x=1" + SUFFIX_PART_DELIMITER + "y=2",
+        SuffixBuilder.thatKeepsAllParts(context.request()).build());
+  }
+
+  @Test
+  public void testCanonicalParsable() {
+    Page currentPage = context.create().page("/content/a", "template", "title");
+    Resource resourceA = createResource(currentPage.getContentResource().getPath() + "/a");
+    Resource resourceB = createResource(currentPage.getContentResource().getPath() + "/b/c");
+
+    // incoming suffix with non-normalized paths pointing to the same resources
+    String incomingSuffix = encodeResourcePathPart("./b/x/../c") + SUFFIX_PART_DELIMITER + encodeResourcePathPart("./a");
+    SuffixParser parser = getParserWithIncommingSuffix(incomingSuffix, currentPage);
+    List<Resource> resources = parser.getResources();
+    assertEquals(2, resources.size());
+    assertEquals(resourceB.getPath(), resources.get(0).getPath());
+    assertEquals(resourceA.getPath(), resources.get(1).getPath());
+
+    // canonical suffix addresses the same resources
+    String canonicalSuffix = SuffixBuilder.thatKeepsAllParts(context.request()).canonical()
+        .resource(resourceB, currentPage.getContentResource())
+        .build();
+    parser = getParserWithIncommingSuffix(canonicalSuffix, currentPage);
+    resources = parser.getResources();
+    assertEquals(2, resources.size());
+    assertEquals(resourceA.getPath(), resources.get(0).getPath());
+    assertEquals(resourceB.getPath(), resources.get(1).getPath());
+  }
+
 }
@@ -0,0 +1,118 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.url.suffix.impl;
+
+import static io.wcm.handler.url.suffix.impl.UrlSuffixUtil.ESCAPE_DELIMITER;
+import static io.wcm.handler.url.suffix.impl.UrlSuffixUtil.hexCode;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Random;
+
+import org.apache.commons.lang3.text.translate.CharSequenceTranslator;
+import org.apache.commons.lang3.text.translate.EntityArrays;
+import org.apache.commons.lang3.text.translate.LookupTranslator;
+import org.junit.Test;
+
+/**
+ * Compares {@link UrlSuffixCodec} with the former escaping based on {@link LookupTranslator} for randomly generated
+ * input, and checks that decoding restores the encoded value.
+ */
+public class UrlSuffixCodecTest {
+
+  private static final int ITERATIONS = 20000;
+
+  // mapping of the former implementation
+  private static final String[][] SPECIAL_CHARS_MAPPING = {
+      { "/", ESCAPE_DELIMITER + hexCode('/') },
+      { "=", ESCAPE_DELIMITER + hexCode('=') },
+      { ".", ESCAPE_DELIMITER + hexCode('.') },
+      { "%", ESCAPE_DELIMITER + hexCode('%') },
+      { ":", ESCAPE_DELIMITER + hexCode(':') },
+      { " ", ESCAPE_DELIMITER + hexCode(' ') }
+  };
+  private static final CharSequenceTranslator LEGACY_ESCAPE = new LookupTranslator(SPECIAL_CHARS_MAPPING);
+  private static final CharSequenceTranslator LEGACY_UNESCAPE = new LookupTranslator(EntityArrays.invert(SPECIAL_CHARS_MAPPING));
+
+  // includes special chars, their escape sequences, lower case and unknown escape sequences,
+  // a surrogate pair and unpaired surrogates.
+  private static final String[] TOKENS = {
+      "/", "=", ".", "%", ":", " ", "~", "~~", "2", "F", "f", "3", "D", "E", "A", "a", "0",
+      "~2F", "~3D", "~2E", "~25", "~3A", "~20", "~2f", "~7E", "~FF", "ä", "😀", "\uD83D", "\uDE00"
+  };
+
+  private final Random random = new Random(0);
+
+  @Test
+  public void testEncode() {
+    assertEquals("a~2Fb~3Dc~2Ed~25e~3Af~20g~h", UrlSuffixCodec.encode("a/b=c.d%e:f g~h"));
+    assertEquals("", UrlSuffixCodec.encode(""));
+    assertNull(UrlSuffixCodec.encode(null));
+
+    String unchanged = "abc~2F";
+    assertSame(unchanged, UrlSuffixCodec.encode(unchanged));
+
+    StringBuilder sb = new StringBuilder("x");
+    UrlSuffixCodec.encode("a/b", sb);
+    assertEquals("xa~2Fb", sb.toString());
+  }
+
+  @Test
+  public void testDecode() {
+    assertEquals("a/b=c.d%e:f g~h", UrlSuffixCodec.decode("a~2Fb~3Dc~2Ed~25e~3Af~20g~h"));
+    assertEquals("~2f~7E~", UrlSuffixCodec.decode("~2f~7E~"));
+    assertEquals("", UrlSuffixCodec.decode(""));
+    assertNull(UrlSuffixCodec.decode(null));
+    assertEquals("b/c", UrlSuffixCodec.decode("a~2Fb~2Fc", 4, 9));
+  }
+
+  @Test
+  public void testCompatibility() {
+    for (int i = 0; i < ITERATIONS; i++) {
+      String value = randomString();
+      assertEquals(value, LEGACY_ESCAPE.translate(value), UrlSuffixCodec.encode(value));
+      assertEquals(value, LEGACY_UNESCAPE.translate(value), UrlSuffixCodec.decode(value));
+
+      int start = random.nextInt(value.length() + 1);
+      int end = start + random.nextInt(value.length() - start + 1);
+      assertEquals(value, LEGACY_UNESCAPE.translate(value.substring(start, end)), UrlSuffixCodec.decode(value, start, end));
+    }
+  }
+
+  @Test
+  public void testRoundTrip() {
+    for (int i = 0; i < ITERATIONS; i++) {
+      // escape char itself is not escaped, so only values without it survive a round trip
+      String value = randomString().replace("~", "");
+      assertEquals(value, value, UrlSuffixCodec.decode(UrlSuffixCodec.encode(value)));
+    }
+  }
+
+  private String randomString() {
+    StringBuilder sb = new StringBuilder();
+    int length = random.nextInt(12);
+    for (int i = 0; i < length; i++) {
+      sb.append(TOKENS[random.nextInt(TOKENS.length)]);
+    }
+    return sb.toString();
+  }
+
+}
@@ -0,0 +1,42 @@
+/*
+ * #%L
+ * wcm.io
+ * %%
+ * Copyright (C) 2017 wcm.io
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package io.wcm.handler.url.suffix.impl;
+
+import static io.wcm.handler.url.suffix.impl.UrlSuffixUtil.normalizeResourcePath;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class UrlSuffixUtilTest {
+
+  @Test
+  public void testNormalizeResourcePath() {
+    assertEquals("a/b", normalizeResourcePath("a/b"));
+    assertEquals("a/b", normalizeResourcePath("a//b/"));
+    assertEquals("a/b", normalizeResourcePath("./a/./b"));
+    assertEquals("b", normalizeResourcePath("a/../b"));
+    assertEquals(".", normalizeResourcePath("a/.."));
+    assertEquals(".", normalizeResourcePath("."));
+    assertEquals("../a", normalizeResourcePath("../a"));
+    assertEquals("../../a", normalizeResourcePath("../b/../../a"));
+    assertEquals("/a/b", normalizeResourcePath("/a//b"));
+  }
+
+}
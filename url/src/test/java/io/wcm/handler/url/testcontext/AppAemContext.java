@@ -33,6 +33,7 @@ import io.wcm.handler.url.SiteConfig;
 import io.wcm.handler.url.impl.DefaultUrlHandlerConfig;
 import io.wcm.handler.url.impl.SiteRootDetectorImpl;
 import io.wcm.handler.url.impl.UrlHandlerConfigAdapterFactory;
+import io.wcm.handler.url.impl.modes.UrlConfigCache;
 import io.wcm.handler.url.spi.UrlHandlerConfig;
 import io.wcm.testing.mock.aem.junit.AemContext;
 import io.wcm.testing.mock.aem.junit.AemContextBuilder;
@@ -68,6 +69,7 @@ public final class AppAemContext {
       context.registerInjectActivateService(new SiteRootDetectorImpl());
       context.registerInjectActivateService(new UrlHandlerConfigAdapterFactory());
       context.registerInjectActivateService(new DefaultUrlHandlerConfig());
+      context.registerInjectActivateService(new UrlConfigCache());
       context.registerService(UrlHandlerConfig.class, new DummyUrlHandlerConfig());
 
       // register configuration classes